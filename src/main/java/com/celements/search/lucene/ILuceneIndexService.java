@@ -1,15 +1,19 @@
 package com.celements.search.lucene;
 
+import java.util.Optional;
+
 import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
 
 import org.xwiki.component.annotation.ComponentRole;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.SpaceReference;
 import org.xwiki.model.reference.WikiReference;
 
 import com.celements.model.access.exception.DocumentLoadException;
 import com.celements.model.access.exception.DocumentNotExistsException;
+import com.celements.search.lucene.analysis.AclFields;
 import com.celements.search.lucene.index.queue.IndexQueuePriority;
 import com.celements.search.lucene.index.queue.QueueTask;
 import com.celements.search.lucene.index.rebuild.LuceneIndexRebuildService.IndexRebuildFuture;
@@ -60,4 +64,23 @@ public interface ILuceneIndexService {
 
   void optimizeIndex();
 
+  /**
+   * @return true if documents are indexed with their {@link AclFields}, configurable with
+   *         'celements.search.lucene.acl.enabled'. Enabling requires a rebuild of the index.
+   */
+  boolean isAclEnabled();
+
+  /**
+   * @return the effective view principals of the document to be indexed, absent if not
+   *         {@link #isAclEnabled()}
+   */
+  @NotNull
+  Optional<AclFields> getViewAcl(@NotNull XWikiDocument doc);
+
+  /**
+   * @return true if the preferences of the space grant view rights, thus the view principals of
+   *         its documents don't depend on the wiki preferences, see {@link #getViewAcl}
+   */
+  boolean hasSpaceViewRights(@NotNull SpaceReference spaceRef);
+
 }
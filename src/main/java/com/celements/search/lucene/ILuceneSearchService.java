@@ -1,5 +1,6 @@
 package com.celements.search.lucene;
 
+import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
@@ -7,13 +8,19 @@ import java.time.LocalDateTime;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.Temporal;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
 
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.util.Version;
 import org.xwiki.component.annotation.ComponentRole;
 import org.xwiki.model.reference.ClassReference;
@@ -25,13 +32,22 @@ import com.celements.model.access.exception.DocumentLoadException;
 import com.celements.model.access.exception.DocumentNotExistsException;
 import com.celements.model.classes.fields.ClassField;
 import com.celements.model.classes.fields.ref.ReferenceField;
+import com.celements.search.lucene.analysis.AclFields;
+import com.celements.search.lucene.query.FuzzyBounds;
+import com.celements.search.lucene.query.HitCount;
 import com.celements.search.lucene.query.IQueryRestriction;
 import com.celements.search.lucene.query.LuceneDocType;
 import com.celements.search.lucene.query.LuceneQuery;
+import com.celements.search.lucene.query.QueryPlan;
 import com.celements.search.lucene.query.QueryRestriction;
 import com.celements.search.lucene.query.QueryRestrictionGroup;
 import com.celements.search.lucene.query.QueryRestrictionGroup.Type;
+import com.celements.search.lucene.query.QueryRestrictionNumericRange;
+import com.celements.search.lucene.query.QueryRestrictionOverlap;
+import com.celements.search.lucene.query.QueryRestrictionParsed;
 import com.celements.search.lucene.query.QueryRestrictionString;
+import com.celements.search.lucene.query.QueryRestrictionTerms;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.Range;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.plugin.lucene.IndexFields;
@@ -79,8 +95,24 @@ public interface ILuceneSearchService {
   public QueryRestrictionGroup createRestrictionGroup(Type type, List<String> fields,
       List<String> values, boolean tokenize, boolean fuzzy);
 
+  /**
+   * same as {@link #createRestriction(String, boolean)} without keeping the parsed query
+   */
   public QueryRestrictionString createRestriction(String query) throws ParseException;
 
+  /**
+   * parses the given query into a normalized restriction with the default field and analyzer of
+   * the search, thus both forms match the same documents. Parse results are cached per analyzer
+   * and lucene {@link #getVersion()} for repeated calls with the same query
+   *
+   * @param keepParsed
+   *          if true, returns a {@link QueryRestrictionParsed} keeping the parsed {@link Query}
+   *          to be searched as is instead of parsing its query string again
+   */
+  @NotNull
+  public QueryRestrictionString createRestriction(@NotNull String query, boolean keepParsed)
+      throws ParseException;
+
   public QueryRestriction createRestriction(String field, String value);
 
   public QueryRestriction createRestriction(String field, String value, boolean tokenize);
@@ -94,6 +126,14 @@ public interface ILuceneSearchService {
 
   public QueryRestriction createDocRestriction(DocumentReference docRef);
 
+  /**
+   * @return restriction exactly matching any of the given values on the field, executed as a non
+   *         scoring filter and thus suitable for large value lists
+   */
+  @NotNull
+  public QueryRestrictionTerms createTermsRestriction(@NotNull String field,
+      @NotNull Collection<String> values);
+
   /**
    * @deprecated instead use {@link #createObjectRestriction(ClassReference)}
    */
@@ -183,6 +223,16 @@ public interface ILuceneSearchService {
       @Nullable String startField, @Nullable String endField,
       @NotNull Range<LocalDateTime> range);
 
+  /**
+   * Restricts intervals given by their start and end date fields to those overlapping the range.
+   * If enabled by 'celements.search.lucene.numericFields.enabled' it's evaluated as one filter on
+   * the trie encoded fields, see {@link QueryRestrictionOverlap}, else like
+   * {@link #createDateRangeRestriction(String, String, Range)}.
+   */
+  @NotNull
+  public IQueryRestriction createDateOverlapRestriction(@Nullable String startField,
+      @Nullable String endField, @NotNull Range<LocalDateTime> range);
+
   public QueryRestriction createNumberRestriction(String field, Number number);
 
   /**
@@ -196,9 +246,142 @@ public interface ILuceneSearchService {
   public QueryRestriction createNumberRangeRestriction(@Nullable String field,
       @NotNull Range<? extends Number> range);
 
+  /**
+   * @return a range restriction on a trie encoded numeric field, the field has to be indexed as
+   *         numeric field of the type of the range endpoints with the precision step configured
+   *         by 'celements.search.lucene.numericFields.precisionStep'
+   */
+  @NotNull
+  public QueryRestrictionNumericRange createNumericRangeRestriction(@Nullable String field,
+      @NotNull Range<? extends Number> range);
+
+  /**
+   * @return a restriction of intervals given by their trie encoded start and end fields to those
+   *         overlapping the range, see {@link QueryRestrictionOverlap}
+   */
+  @NotNull
+  public QueryRestrictionOverlap createOverlapRestriction(@Nullable String startField,
+      @Nullable String endField, @NotNull Range<? extends Number> range);
+
+  /**
+   * Creates a range restriction on the given class field. Number and date fields are restricted
+   * as trie encoded numeric fields if enabled by 'celements.search.lucene.numericFields.enabled',
+   * else as string encoded ranges like {@link #createNumberRangeRestriction(String, Range)} and
+   * {@link #createDateRangeRestriction(String, Range)}. Use {@link Range#singleton(Comparable)}
+   * to restrict to a single value.
+   */
+  @NotNull
+  public <T extends Comparable<?>> IQueryRestriction createRangeRestriction(
+      @NotNull ClassField<T> field, @NotNull Range<T> range);
+
+  /**
+   * @return the restriction tree decoded from the encoding of
+   *         {@link com.celements.search.lucene.query.QueryCodec#encode(IQueryRestriction)}, e.g. a
+   *         saved search or a query shipped from another node. Restrictions encoded with an
+   *         analyzer get the lucene plugin's analyzer.
+   * @throws IllegalArgumentException
+   *           if the bytes aren't a valid encoding
+   */
+  @NotNull
+  public IQueryRestriction decodeRestriction(@NotNull byte[] bytes);
+
   public QueryRestrictionGroup createAttachmentRestrictionGroup(List<String> mimeTypes,
       List<String> mimeTypesBlackList, List<String> filenamePrefs);
 
+  /**
+   * compiles the given restriction tree directly into a lucene {@link Query}, avoiding the
+   * round-trip over {@link IQueryRestriction#getQueryString()} and the query parser. The tree is
+   * rewritten by the {@link com.celements.search.lucene.query.QueryOptimizer} beforehand. Compiled
+   * queries are cached by the restriction's
+   * {@link com.celements.search.lucene.query.QueryCodec#fingerprint(IQueryRestriction)}.
+   */
+  @NotNull
+  public Query compile(@NotNull IQueryRestriction restr) throws ParseException;
+
+  /**
+   * @return hit and miss counters of the cache backing {@link #compile(IQueryRestriction)}, its
+   *         size is configurable with 'celements.search.lucene.queryCache.size' (0 disables it)
+   */
+  @NotNull
+  public CacheStats getQueryCacheStats();
+
+  /**
+   * @return the bounds of fuzzy restrictions not defining their own, configurable with
+   *         'celements.search.lucene.fuzzy.prefixLength' and
+   *         'celements.search.lucene.fuzzy.maxExpansions'
+   */
+  @NotNull
+  public FuzzyBounds getFuzzyBounds();
+
+  /**
+   * @return hit and miss counters of the memoized token filtering by the lucene plugin's analyzer
+   *         since startup, the misses count how often the analysis actually ran. The size is
+   *         configurable with 'celements.search.lucene.tokenFilterCache.size'.
+   */
+  @NotNull
+  public CacheStats getTokenFilterStats();
+
+  /**
+   * @return the counters of {@link #getTokenFilterStats()} recorded within the current execution
+   *         context only, i.e. by the current request
+   */
+  @NotNull
+  public CacheStats getRequestTokenFilterStats();
+
+  /**
+   * @return the execution plan of the compiled restriction on the given reader, stating the
+   *         required clauses moved into filters and the estimated costs
+   */
+  @NotNull
+  public QueryPlan explain(@NotNull IQueryRestriction restr, @NotNull IndexReader reader)
+      throws ParseException, IOException;
+
+  /**
+   * @see #count(LuceneQuery, int)
+   */
+  @NotNull
+  public HitCount count(@NotNull LuceneQuery query) throws LuceneSearchException;
+
+  /**
+   * Counts the documents matching the query on the plugin's searcher, without loading, scoring or
+   * sorting them. The rights are applied by the indexed acl if enabled, else always by
+   * {@link #getViewRightsFilter()}, regardless of 'celements.search.lucene.rightsFilter.enabled'.
+   * The hit by hit checks of a search without acl aren't applied, thus the count may still exceed
+   * the size of such a search for documents with their own rights objects.
+   *
+   * @param maxCount
+   *          count at which counting stops with an inexact {@link HitCount}, e.g. to show
+   *          "more than N results"
+   */
+  @NotNull
+  public HitCount count(@NotNull LuceneQuery query, int maxCount) throws LuceneSearchException;
+
+  /**
+   * @return the filter of the documents in spaces the current user may view. The view rights are
+   *         resolved per space in one batch per index segment and the bitsets are cached per user
+   *         and segment until {@link #invalidateRightsFilters()}. Documents with rights objects
+   *         and their attachments are always matched, since they may grant more than their
+   *         space. Checked searches apply it before the hit by hit checks if
+   *         'celements.search.lucene.rightsFilter.enabled' is set.
+   */
+  @NotNull
+  public Filter getViewRightsFilter();
+
+  /**
+   * discards the bitsets of {@link #getViewRightsFilter()}, e.g. on changed rights or group
+   * memberships
+   */
+  public void invalidateRightsFilters();
+
+  /**
+   * @return the filter of the documents the current user may view according to the indexed
+   *         {@link AclFields}, built from the user and its group memberships and cached per set of
+   *         principals. Absent if not {@link ILuceneIndexService#isAclEnabled()}, otherwise checked
+   *         searches are restricted by it instead of being checked hit by hit.
+   */
+  @NotNull
+  public Optional<Filter> getViewAclFilter();
+
   public LuceneSearchResult search(LuceneQuery query);
 
   public LuceneSearchResult search(LuceneQuery query, List<String> sortFields,
@@ -209,12 +392,69 @@ public interface ILuceneSearchService {
   public LuceneSearchResult searchWithoutChecks(LuceneQuery query, List<String> sortFields,
       List<String> languages);
 
+  /**
+   * executes the given query as is, e.g. as returned by {@link #compile(IQueryRestriction)}
+   */
+  @NotNull
+  public LuceneSearchResult search(@NotNull Query query, @Nullable List<String> sortFields,
+      @Nullable List<String> languages);
+
+  /**
+   * executes the given query as is, e.g. as returned by {@link #compile(IQueryRestriction)}
+   */
+  @NotNull
+  public LuceneSearchResult searchWithoutChecks(@NotNull Query query,
+      @Nullable List<String> sortFields, @Nullable List<String> languages);
+
   public LuceneSearchResult search(String queryString, List<String> sortFields,
       List<String> languages);
 
   public LuceneSearchResult searchWithoutChecks(String queryString, List<String> sortFields,
       List<String> languages);
 
+  /**
+   * Executes the search on a bounded pool of 'celements.search.lucene.async.threads' (default 4)
+   * threads queueing at most 'celements.search.lucene.async.queueSize' (default 100) searches,
+   * the returned future fails with a {@link java.util.concurrent.RejectedExecutionException} if
+   * the queue is full. The collection stops once the timeout of the options is exceeded or the
+   * future is cancelled, the snapshot holds the hits collected so far and is flagged as
+   * {@link LuceneSearchSnapshot#isPartial() partial}.
+   * <p>
+   * Unlike {@link #search(LuceneQuery)} the future yields a {@link LuceneSearchSnapshot} instead
+   * of a {@link LuceneSearchResult}: a result executes lazily on first access in the accessing
+   * thread, bypassing the pool and the timeout, and the plugin's searchers are bound to the
+   * executing thread. Thus the results are materialised within the task, which runs with the
+   * current user, database and language only.
+   */
+  @NotNull
+  public CompletableFuture<LuceneSearchSnapshot> searchAsync(@NotNull LuceneQuery query,
+      @NotNull SearchOptions options);
+
+  /**
+   * Returns the results of the given search within its offset and limit from a cache shared
+   * between requests, e.g. for navigations and listings firing the same queries over and over.
+   * Entries are keyed by the search's fingerprint, offset and limit, for searches with checks by
+   * the current user and the rights version advanced by {@link #invalidateRightsFilters()}, and
+   * by the version of the plugin's index readers, thus a reopened reader misses the snapshots
+   * taken before. Partial snapshots of time limited searches aren't cached. Entries expire after
+   * 'celements.search.lucene.resultCache.expireSeconds' (default 60), and the cache holds at most
+   * 'celements.search.lucene.resultCache.size' results (0 disables it).
+   */
+  @NotNull
+  public LuceneSearchSnapshot getSnapshot(@NotNull LuceneSearchResult result)
+      throws LuceneSearchException;
+
+  /**
+   * discards all snapshots of {@link #getSnapshot}, index changes don't need it
+   */
+  public void invalidateResultCache();
+
+  /**
+   * @return hit and miss counters of the cache backing {@link #getSnapshot}
+   */
+  @NotNull
+  public CacheStats getResultCacheStats();
+
   public int getResultLimit();
 
   public int getResultLimit(boolean skipChecks);
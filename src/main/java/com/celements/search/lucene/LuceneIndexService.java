@@ -1,17 +1,23 @@
 package com.celements.search.lucene;
 
 import static com.celements.logging.LogUtils.*;
+import static com.celements.model.util.ReferenceSerializationMode.*;
+import static com.google.common.base.MoreObjects.*;
 import static com.google.common.collect.ImmutableList.*;
 
+import java.util.LinkedHashSet;
 import java.util.Optional;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.Requirement;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.context.Execution;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.SpaceReference;
 import org.xwiki.model.reference.WikiReference;
 
 import com.celements.model.access.IModelAccessFacade;
@@ -19,15 +25,21 @@ import com.celements.model.access.exception.DocumentLoadException;
 import com.celements.model.access.exception.DocumentNotExistsException;
 import com.celements.model.context.ModelContext;
 import com.celements.model.util.ModelUtils;
+import com.celements.search.lucene.analysis.AclFields;
 import com.celements.search.lucene.index.queue.IndexQueuePriority;
 import com.celements.search.lucene.index.queue.QueueTask;
 import com.celements.search.lucene.index.rebuild.LuceneIndexRebuildService;
 import com.celements.search.lucene.index.rebuild.LuceneIndexRebuildService.IndexRebuildFuture;
 import com.celements.search.lucene.observation.event.LuceneQueueDeleteEvent;
 import com.celements.search.lucene.observation.event.LuceneQueueIndexEvent;
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
 import com.xpn.xwiki.plugin.lucene.LucenePlugin;
 
 @Component
@@ -35,6 +47,18 @@ public class LuceneIndexService implements ILuceneIndexService {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(LuceneIndexService.class);
 
+  static final String CFG_ACL_ENABLED = "celements.search.lucene.acl.enabled";
+
+  private static final String RIGHTS_SPACE = "XWiki";
+  private static final String RIGHTS_CLASS = "XWikiRights";
+  private static final String GLOBAL_RIGHTS_CLASS = "XWikiGlobalRights";
+  private static final String SPACE_PREFERENCES = "WebPreferences";
+  private static final String WIKI_PREFERENCES = "XWikiPreferences";
+  private static final String VIEW_LEVEL = "view";
+  private static final String ADMIN_LEVEL = "admin";
+  private static final Splitter RIGHTS_SPLITTER = Splitter.on(CharMatcher.anyOf(",| "))
+      .trimResults().omitEmptyStrings();
+
   @Requirement
   private IModelAccessFacade modelAccess;
 
@@ -50,6 +74,9 @@ public class LuceneIndexService implements ILuceneIndexService {
   @Requirement
   private LuceneIndexRebuildService rebuildService;
 
+  @Requirement
+  private ConfigurationSource cfgSrc;
+
   @Override
   public long getIndexSize() {
     return getLucenePlugin().map(LucenePlugin::getLuceneDocCount).orElse(-1L);
@@ -118,6 +145,84 @@ public class LuceneIndexService implements ILuceneIndexService {
         .collect(toImmutableList());
   }
 
+  @Override
+  public boolean isAclEnabled() {
+    return cfgSrc.getProperty(CFG_ACL_ENABLED, false);
+  }
+
+  /**
+   * The view rules of the document, its space preferences and its wiki preferences are evaluated
+   * in this order. The first level granting view rights decides the allowed principals, denials
+   * are collected up to this level. If no level grants view rights the document is public.
+   * Principals granted admin rights in the space preferences view the document regardless, wiki
+   * admins aren't indexed since their searches aren't filtered.
+   */
+  @Override
+  public Optional<AclFields> getViewAcl(XWikiDocument doc) {
+    if (!isAclEnabled()) {
+      return Optional.empty();
+    }
+    DocumentReference docRef = doc.getDocumentReference();
+    WikiReference wikiRef = docRef.getWikiReference();
+    XWikiDocument spacePrefs = getSpacePreferences(docRef.getLastSpaceReference());
+    Set<String> denied = new LinkedHashSet<>();
+    Set<String> allowed = collectRules(doc, getRightsClassRef(wikiRef, RIGHTS_CLASS), VIEW_LEVEL,
+        denied);
+    if (allowed.isEmpty()) {
+      allowed = collectRules(spacePrefs, getRightsClassRef(wikiRef, GLOBAL_RIGHTS_CLASS),
+          VIEW_LEVEL, denied);
+    }
+    if (allowed.isEmpty()) {
+      allowed = collectRules(modelAccess.getOrCreateDocument(new DocumentReference(
+          WIKI_PREFERENCES, new SpaceReference(RIGHTS_SPACE, wikiRef))),
+          getRightsClassRef(wikiRef, GLOBAL_RIGHTS_CLASS), VIEW_LEVEL, denied);
+    }
+    if (allowed.isEmpty()) {
+      allowed = ImmutableSet.of(AclFields.PUBLIC);
+    }
+    Set<String> admins = collectRules(spacePrefs, getRightsClassRef(wikiRef,
+        GLOBAL_RIGHTS_CLASS), ADMIN_LEVEL, new LinkedHashSet<>());
+    return Optional.of(new AclFields(allowed, denied, admins));
+  }
+
+  @Override
+  public boolean hasSpaceViewRights(SpaceReference spaceRef) {
+    XWikiDocument spacePrefs = getSpacePreferences(spaceRef);
+    return !collectRules(spacePrefs, getRightsClassRef(spacePrefs.getDocumentReference()
+        .getWikiReference(), GLOBAL_RIGHTS_CLASS), VIEW_LEVEL, new LinkedHashSet<>()).isEmpty();
+  }
+
+  private XWikiDocument getSpacePreferences(SpaceReference spaceRef) {
+    return modelAccess.getOrCreateDocument(new DocumentReference(SPACE_PREFERENCES, spaceRef));
+  }
+
+  private DocumentReference getRightsClassRef(WikiReference wikiRef, String className) {
+    return new DocumentReference(className, new SpaceReference(RIGHTS_SPACE, wikiRef));
+  }
+
+  /**
+   * @return the principals allowed by the rules of the given rights class for the level, adds
+   *         the denied ones to the given set
+   */
+  private Set<String> collectRules(XWikiDocument doc, DocumentReference classRef, String level,
+      Set<String> denied) {
+    Set<String> allowed = new LinkedHashSet<>();
+    WikiReference wikiRef = doc.getDocumentReference().getWikiReference();
+    for (BaseObject obj : firstNonNull(doc.getXObjects(classRef),
+        ImmutableList.<BaseObject>of())) {
+      if ((obj != null) && Iterables.contains(RIGHTS_SPLITTER.split(obj.getStringValue(
+          "levels")), level)) {
+        Set<String> principals = (obj.getIntValue("allow", 1) == 1) ? allowed : denied;
+        for (String field : ImmutableList.of("users", "groups")) {
+          RIGHTS_SPLITTER.split(obj.getStringValue(field)).forEach(name -> principals.add(
+              modelUtils.serializeRef(modelUtils.resolveRef(name, DocumentReference.class,
+                  wikiRef), GLOBAL)));
+        }
+      }
+    }
+    return allowed;
+  }
+
   @Override
   public void optimizeIndex() {
     getLucenePlugin().ifPresent(LucenePlugin::optimizeIndex);
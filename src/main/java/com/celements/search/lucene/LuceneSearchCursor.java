@@ -0,0 +1,281 @@
+package com.celements.search.lucene;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Objects;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.validation.constraints.NotNull;
+
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.ScoreDoc;
+
+import com.celements.search.lucene.query.QueryCodec;
+import com.celements.search.lucene.query.SearchAfterCollector;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Position of a page within the results of a search, see
+ * {@link LuceneSearchResult#nextPage(LuceneSearchCursor, Class)}. It holds the sort values and
+ * document id of the last hit of the previous page, thus the page is collected following it with
+ * a {@link SearchAfterCollector} instead of collecting all previous pages again. It's bound to the
+ * search it was created for by a fingerprint of its query's {@link QueryCodec#fingerprint}, sort
+ * fields, languages and checks, and can be passed around as request parameter with
+ * {@link #serialize()} and {@link #parse(String)}. The document id of the last hit is only valid
+ * for the index version it has been collected on, which the cursor holds as well.
+ */
+@Immutable
+public final class LuceneSearchCursor {
+
+  private static final byte FORMAT_VERSION = 3;
+
+  private static final byte VALUE_NULL = 0;
+  private static final byte VALUE_STRING = 1;
+  private static final byte VALUE_FLOAT = 2;
+  private static final byte VALUE_INT = 3;
+
+  private final HashCode searchKey;
+  private final int offset;
+  private final int limit;
+  private final boolean first;
+  private final long indexVersion;
+  private final int afterDoc;
+  private final float afterScore;
+  private final Object[] afterValues;
+
+  LuceneSearchCursor(@NotNull HashCode searchKey, int offset, int limit) {
+    this(searchKey, offset, limit, null, 0);
+  }
+
+  /**
+   * @param after
+   *          the last hit of the previous page as collected, null for the first page
+   * @param indexVersion
+   *          the version of the indexes the last hit has been collected on, see
+   *          {@link LuceneSearcher#getVersion()}
+   */
+  LuceneSearchCursor(@NotNull HashCode searchKey, int offset, int limit,
+      @Nullable ScoreDoc after, long indexVersion) {
+    checkArgument(searchKey.bits() == 128, "invalid search key");
+    checkArgument(offset >= 0, "offset must not be negative");
+    checkArgument(limit > 0, "limit must be positive");
+    this.searchKey = searchKey;
+    this.offset = offset;
+    this.limit = limit;
+    this.first = (after == null);
+    this.indexVersion = first ? 0 : indexVersion;
+    this.afterDoc = first ? -1 : after.doc;
+    this.afterScore = first ? Float.NaN : after.score;
+    this.afterValues = (after instanceof FieldDoc) ? ((FieldDoc) after).fields.clone() : null;
+    if (afterValues != null) {
+      for (Object value : afterValues) {
+        checkArgument((value == null) || (value instanceof String) || (value instanceof Float)
+            || (value instanceof Integer), "unsupported sort value: %s", value);
+      }
+    }
+  }
+
+  /**
+   * @return the fingerprint of the search this cursor belongs to
+   */
+  @NotNull
+  static HashCode getSearchKey(@NotNull HashCode queryFingerprint,
+      @NotNull List<String> sortFields, @NotNull List<String> languages, boolean skipChecks) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    hasher.putBytes(queryFingerprint.asBytes());
+    hasher.putInt(sortFields.size());
+    sortFields.forEach(sortField -> putString(hasher, sortField));
+    hasher.putInt(languages.size());
+    languages.forEach(language -> putString(hasher, language));
+    hasher.putBoolean(skipChecks);
+    return hasher.hash();
+  }
+
+  private static void putString(Hasher hasher, String str) {
+    hasher.putInt(str.length()).putString(str, StandardCharsets.UTF_8);
+  }
+
+  @NotNull
+  HashCode getSearchKey() {
+    return searchKey;
+  }
+
+  /**
+   * @return the index of the first result of the page
+   */
+  public int getOffset() {
+    return offset;
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  /**
+   * @return the version of the indexes {@link #getAfter()} has been collected on
+   */
+  long getIndexVersion() {
+    return indexVersion;
+  }
+
+  /**
+   * @return the last hit of the previous page, a {@link FieldDoc} if sorted by fields, null for
+   *         the first page
+   */
+  @Nullable
+  ScoreDoc getAfter() {
+    if (first) {
+      return null;
+    } else if (afterValues != null) {
+      return new FieldDoc(afterDoc, afterScore, afterValues.clone());
+    }
+    return new ScoreDoc(afterDoc, afterScore);
+  }
+
+  /**
+   * @param count
+   *          the number of results on this page
+   * @param last
+   *          the last hit collected for this page
+   * @param indexVersion
+   *          the version of the indexes the last hit has been collected on
+   * @return the cursor to the page following this one
+   */
+  @NotNull
+  LuceneSearchCursor next(int count, @NotNull ScoreDoc last, long indexVersion) {
+    return new LuceneSearchCursor(searchKey, offset + count, limit, checkNotNull(last),
+        indexVersion);
+  }
+
+  /**
+   * @return the cursor as url safe string, see {@link #parse(String)}
+   */
+  @NotNull
+  public String serialize() {
+    ByteArrayDataOutput out = ByteStreams.newDataOutput(64);
+    out.writeByte(FORMAT_VERSION);
+    out.write(searchKey.asBytes());
+    out.writeInt(offset);
+    out.writeInt(limit);
+    out.writeBoolean(first);
+    if (!first) {
+      out.writeLong(indexVersion);
+      out.writeInt(afterDoc);
+      out.writeFloat(afterScore);
+      out.writeInt((afterValues != null) ? afterValues.length : -1);
+      for (Object value : (afterValues != null) ? afterValues : new Object[0]) {
+        writeValue(out, value);
+      }
+    }
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(out.toByteArray());
+  }
+
+  /**
+   * @throws IllegalArgumentException
+   *           if the given string isn't a serialized cursor
+   */
+  @NotNull
+  public static LuceneSearchCursor parse(@NotNull String serialized) {
+    try {
+      ByteArrayDataInput in = ByteStreams.newDataInput(Base64.getUrlDecoder().decode(
+          checkNotNull(serialized)));
+      byte version = in.readByte();
+      checkArgument(version == FORMAT_VERSION, "unsupported cursor version: %s", version);
+      byte[] searchKey = new byte[16];
+      in.readFully(searchKey);
+      int offset = in.readInt();
+      int limit = in.readInt();
+      ScoreDoc after = null;
+      long indexVersion = 0;
+      if (!in.readBoolean()) {
+        indexVersion = in.readLong();
+        int doc = in.readInt();
+        float score = in.readFloat();
+        int valueCount = in.readInt();
+        if (valueCount >= 0) {
+          checkArgument(valueCount <= Byte.MAX_VALUE, "invalid sort value count: %s", valueCount);
+          Object[] values = new Object[valueCount];
+          for (int i = 0; i < valueCount; i++) {
+            values[i] = readValue(in);
+          }
+          after = new FieldDoc(doc, score, values);
+        } else {
+          after = new ScoreDoc(doc, score);
+        }
+      }
+      return new LuceneSearchCursor(HashCode.fromBytes(searchKey), offset, limit, after,
+          indexVersion);
+    } catch (IllegalStateException exc) {
+      throw new IllegalArgumentException("invalid cursor: " + serialized, exc);
+    }
+  }
+
+  private static void writeValue(ByteArrayDataOutput out, Object value) {
+    if (value instanceof String) {
+      out.writeByte(VALUE_STRING);
+      out.writeUTF((String) value);
+    } else if (value instanceof Float) {
+      out.writeByte(VALUE_FLOAT);
+      out.writeFloat((Float) value);
+    } else if (value instanceof Integer) {
+      out.writeByte(VALUE_INT);
+      out.writeInt((Integer) value);
+    } else {
+      out.writeByte(VALUE_NULL);
+    }
+  }
+
+  private static Object readValue(ByteArrayDataInput in) {
+    byte type = in.readByte();
+    switch (type) {
+      case VALUE_NULL:
+        return null;
+      case VALUE_STRING:
+        return in.readUTF();
+      case VALUE_FLOAT:
+        return in.readFloat();
+      case VALUE_INT:
+        return in.readInt();
+      default:
+        throw new IllegalArgumentException("invalid sort value type: " + type);
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(searchKey, offset, limit, indexVersion, afterDoc,
+        Arrays.hashCode(afterValues));
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj instanceof LuceneSearchCursor) {
+      LuceneSearchCursor other = (LuceneSearchCursor) obj;
+      return searchKey.equals(other.searchKey) && (offset == other.offset)
+          && (limit == other.limit) && (first == other.first)
+          && (indexVersion == other.indexVersion) && (afterDoc == other.afterDoc)
+          && (Float.compare(afterScore, other.afterScore) == 0)
+          && Arrays.equals(afterValues, other.afterValues);
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return "LuceneSearchCursor [offset=" + offset + ", limit=" + limit + ", indexVersion="
+        + indexVersion + ", afterDoc=" + afterDoc + ", afterValues=" + Arrays.toString(afterValues)
+        + "]";
+  }
+
+}
@@ -0,0 +1,61 @@
+package com.celements.search.lucene;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.List;
+import java.util.Optional;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.validation.constraints.NotNull;
+
+import org.xwiki.model.reference.EntityReference;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A page of search results as returned by
+ * {@link LuceneSearchResult#nextPage(LuceneSearchCursor, Class)}.
+ */
+@Immutable
+public final class LuceneSearchPage<T extends EntityReference> {
+
+  private final List<T> results;
+  private final LuceneSearchCursor cursor;
+  private final LuceneSearchCursor nextCursor;
+
+  LuceneSearchPage(@NotNull List<T> results, @NotNull LuceneSearchCursor cursor,
+      @Nullable LuceneSearchCursor nextCursor) {
+    this.results = ImmutableList.copyOf(results);
+    this.cursor = checkNotNull(cursor);
+    this.nextCursor = nextCursor;
+  }
+
+  @NotNull
+  public List<T> getResults() {
+    return results;
+  }
+
+  /**
+   * @return the cursor of this page
+   */
+  @NotNull
+  public LuceneSearchCursor getCursor() {
+    return cursor;
+  }
+
+  /**
+   * @return the cursor of the following page, absent if this is the last page
+   */
+  @NotNull
+  public Optional<LuceneSearchCursor> getNextCursor() {
+    return Optional.ofNullable(nextCursor);
+  }
+
+  @Override
+  public String toString() {
+    return "LuceneSearchPage [results=" + results.size() + ", cursor=" + cursor + ", nextCursor="
+        + nextCursor + "]";
+  }
+
+}
@@ -1,23 +1,62 @@
 package com.celements.search.lucene;
 
+import static com.google.common.base.Preconditions.*;
+
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.annotation.Nullable;
+import javax.validation.constraints.NotNull;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
 
 import com.celements.model.context.ModelContext;
 import com.celements.model.util.References;
+import com.celements.rights.access.EAccessLevel;
+import com.celements.rights.access.IRightsAccessFacadeRole;
+import com.celements.search.lucene.query.CountingCollector;
+import com.celements.search.lucene.query.HitCount;
+import com.celements.search.lucene.query.IQueryRestriction;
 import com.celements.search.lucene.query.LuceneQuery;
+import com.celements.search.lucene.query.QueryCodec;
+import com.celements.search.lucene.query.QueryRestrictionString;
+import com.celements.search.lucene.query.SearchAfterCollector;
+import com.celements.search.lucene.query.TimeLimitedQuery;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashCode;
 import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.plugin.lucene.IndexFields;
 import com.xpn.xwiki.plugin.lucene.LucenePlugin;
 import com.xpn.xwiki.plugin.lucene.SearchResult;
 import com.xpn.xwiki.plugin.lucene.SearchResults;
@@ -27,28 +66,91 @@ public class LuceneSearchResult {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(LuceneSearchResult.class);
 
+  /**
+   * the stored fields the result references are built of
+   */
+  private static final FieldSelector REFERENCE_FIELDS = new MapFieldSelector(
+      IndexFields.DOCUMENT_WIKI, IndexFields.DOCUMENT_SPACE, IndexFields.DOCUMENT_NAME,
+      IndexFields.DOCUMENT_TYPE, IndexFields.FILENAME);
+
+  /**
+   * number of results fetched at once by {@link #streamResults(Class)}
+   */
+  static final int DEFAULT_STREAM_CHUNK_SIZE = 1000;
+
   SearchResults searchResultsCache;
   LucenePlugin lucenePlugin;
 
+  private final HashCode queryFingerprint;
   private final String queryString;
+  private final Query query;
   private final List<String> sortFields;
   private final List<String> languages;
   private final boolean skipChecks;
+  private final boolean aclFiltered;
 
   private int offset = 0;
   private int limit = 0;
 
+  private HashCode searchKey;
+
   LuceneSearchResult(LuceneQuery query, List<String> sortFields, List<String> languages,
       boolean skipChecks) {
-    this(query.getQueryString(), sortFields, languages, skipChecks);
+    this(query, null, sortFields, languages, skipChecks, false);
   }
 
   LuceneSearchResult(String queryString, List<String> sortFields, List<String> languages,
       boolean skipChecks) {
+    this(queryString, null, sortFields, languages, skipChecks);
+  }
+
+  /**
+   * executes the given query as is, without rendering it to a query string to be parsed again
+   */
+  LuceneSearchResult(Query query, List<String> sortFields, List<String> languages,
+      boolean skipChecks) {
+    this(query.toString(), query, sortFields, languages, skipChecks);
+  }
+
+  /**
+   * executes the compiled query, the query string is the rendered restriction it's compiled from
+   */
+  LuceneSearchResult(String queryString, Query query, List<String> sortFields,
+      List<String> languages, boolean skipChecks) {
+    this(queryString, query, sortFields, languages, skipChecks, false);
+  }
+
+  /**
+   * executes the compiled query, which if acl filtered already matches only the documents the
+   * user may view, thus the hit by hit checks are omitted while the search remains one with
+   * checks and keeps their result limit
+   */
+  LuceneSearchResult(String queryString, Query query, List<String> sortFields,
+      List<String> languages, boolean skipChecks, boolean aclFiltered) {
+    this(new QueryRestrictionString(queryString), queryString, query, sortFields, languages,
+        skipChecks, aclFiltered);
+  }
+
+  /**
+   * executes the query compiled from the given restriction, see
+   * {@link #LuceneSearchResult(String, Query, List, List, boolean, boolean)}
+   */
+  LuceneSearchResult(LuceneQuery restr, Query query, List<String> sortFields,
+      List<String> languages, boolean skipChecks, boolean aclFiltered) {
+    this(restr, restr.getQueryString(), query, sortFields, languages, skipChecks, aclFiltered);
+  }
+
+  private LuceneSearchResult(IQueryRestriction restr, String queryString, Query query,
+      List<String> sortFields, List<String> languages, boolean skipChecks, boolean aclFiltered) {
+    checkArgument(!aclFiltered || (query != null), "only compiled queries can be acl filtered");
+    // taken eagerly, the restriction may still be changed by the caller
+    this.queryFingerprint = QueryCodec.fingerprint(restr);
     this.queryString = queryString;
+    this.query = query;
     this.sortFields = getList(sortFields);
     this.languages = getList(languages);
     this.skipChecks = skipChecks;
+    this.aclFiltered = aclFiltered;
   }
 
   private List<String> getList(List<String> list) {
@@ -83,6 +185,33 @@ public class LuceneSearchResult {
     return skipChecks;
   }
 
+  /**
+   * @return true if the view rights are checked hit by hit, i.e. checks aren't skipped and the
+   *         query isn't filtered by the indexed acl
+   */
+  private boolean isCheckedByHit() {
+    return !skipChecks && !aclFiltered;
+  }
+
+  /**
+   * @return the result limit of searches with checks, which acl filtered searches keep although
+   *         executed without checks
+   */
+  private int getCheckedResultLimit() {
+    int resultLimit = getLucenePlugin().getResultLimit(false, getContext());
+    return (resultLimit > 0) ? resultLimit : Integer.MAX_VALUE;
+  }
+
+  /**
+   * @return true if the collection of a time limited search has been stopped early due to
+   *         timeout or cancellation, thus the results and size are partial, see
+   *         {@link TimeLimitedQuery}
+   */
+  public boolean isPartial() {
+    return (query instanceof TimeLimitedQuery) && ((TimeLimitedQuery) query).getBudget()
+        .isStopped();
+  }
+
   public int getOffset() {
     return offset;
   }
@@ -124,17 +253,55 @@ public class LuceneSearchResult {
 
   public <T extends EntityReference> List<T> getResults(Class<T> token)
       throws LuceneSearchException {
-    return streamResults(token).collect(Collectors.toList());
+    return toReferences(getSearchResultList(), token);
   }
 
-  public <T extends EntityReference> Stream<T> streamResults(Class<T> token)
-      throws LuceneSearchException {
+  private <T extends EntityReference> List<T> toReferences(List<SearchResult> results,
+      Class<T> token) throws LuceneSearchException {
+    return asCompleteRefs(Lists.transform(results, SearchResult::getReference), token);
+  }
+
+  private <T extends EntityReference> List<T> asCompleteRefs(List<EntityReference> results,
+      Class<T> token) throws LuceneSearchException {
+    List<T> refs = new ArrayList<>(results.size());
     try {
-      return getSearchResultList().stream()
-          .map(result -> References.asCompleteRef(result.getReference(), token));
+      for (EntityReference result : results) {
+        refs.add(References.asCompleteRef(result, token));
+      }
     } catch (IllegalArgumentException iae) {
       throw new LuceneSearchException("Invalid token for query results", iae);
     }
+    return refs;
+  }
+
+  /**
+   * @see #streamResults(Class, int)
+   */
+  public <T extends EntityReference> Stream<T> streamResults(Class<T> token)
+      throws LuceneSearchException {
+    return streamResults(token, DEFAULT_STREAM_CHUNK_SIZE);
+  }
+
+  /**
+   * Lazily streams the results within the current offset and limit, all remaining results if no
+   * limit is set. The results are fetched in chunks of the given size as the stream advances, only
+   * the current chunk is held in memory and short-circuiting operations like
+   * {@link Stream#findFirst()} stop fetching. Each chunk of a compiled query is collected
+   * following the last hit of the previous chunk, see {@link #nextPage(LuceneSearchCursor, Class)},
+   * other queries are streamed from a single search. Chunks shortened by the checks don't end the
+   * stream, only an exhausted search does. Failing fetches throw an {@link IllegalStateException}
+   * caused by a {@link LuceneSearchException}, an invalid token an
+   * {@link IllegalArgumentException}.
+   *
+   * @throws LuceneSearchException
+   *           declared for compatibility with the previous eager implementation, failures surface
+   *           while the stream advances
+   */
+  public <T extends EntityReference> Stream<T> streamResults(Class<T> token, int chunkSize)
+      throws LuceneSearchException {
+    checkArgument(chunkSize > 0, "chunkSize must be positive");
+    return StreamSupport.stream(new ResultSpliterator(chunkSize), false)
+        .map(ref -> References.asCompleteRef(ref, token));
   }
 
   public Map<EntityReference, Float> getResultsScoreMap(int offset, int limit)
@@ -155,35 +322,267 @@ public class LuceneSearchResult {
     SearchResults results = luceneSearch();
     int offset = (getOffset() <= 0 ? 1 : getOffset() + 1);
     int limit = (getLimit() <= 0 ? getSize() : getLimit());
+    if (aclFiltered) {
+      limit = Math.min(limit, Math.max(0, getCheckedResultLimit() - offset + 1));
+    }
     return results.getResults(offset, limit);
   }
 
+  /**
+   * @return the cursor to the first page of the given size, see
+   *         {@link #nextPage(LuceneSearchCursor, Class)}
+   */
+  @NotNull
+  public LuceneSearchCursor getCursor(int limit) {
+    return new LuceneSearchCursor(getSearchKey(), 0, limit);
+  }
+
+  /**
+   * Returns the page of results the given cursor points to, independent of
+   * {@link #setOffset(int)} and {@link #setLimit(int)}. The page is collected following the last
+   * hit of the previous page held by the cursor, thus neither the previous pages are collected
+   * again nor is anything kept between requests. Only compiled queries can be paged.
+   * <p>
+   * The last hit is identified by its document id, which is only valid for the index version the
+   * cursor has been created on. If the index changed since, the page is restarted at the cursor's
+   * offset by collecting the results before it again.
+   *
+   * @throws IllegalArgumentException
+   *           if the cursor has been created for another search
+   */
+  @NotNull
+  public <T extends EntityReference> LuceneSearchPage<T> nextPage(
+      @NotNull LuceneSearchCursor cursor, @NotNull Class<T> token) throws LuceneSearchException {
+    checkArgument(getSearchKey().equals(cursor.getSearchKey()), "cursor of another search: %s",
+        cursor);
+    checkCompiled();
+    HitPage page;
+    long indexVersion;
+    try (LuceneSearcher searcher = LuceneSearcher.connect(getLucenePlugin())) {
+      indexVersion = searcher.getVersion();
+      page = collectPage(searcher, cursor, indexVersion);
+    } catch (IOException ioe) {
+      throw newLuceneSearchException(ioe);
+    }
+    List<T> results = asCompleteRefs(page.results, token);
+    LOGGER.debug("nextPage: returning [{}] results for {} of: {}", results.size(), cursor, this);
+    return new LuceneSearchPage<>(results, cursor, page.exhausted ? null : cursor.next(
+        results.size(), page.last, indexVersion));
+  }
+
+  private HitPage collectPage(LuceneSearcher searcher, LuceneSearchCursor cursor,
+      long indexVersion) throws IOException {
+    ScoreDoc after = cursor.getAfter();
+    if ((after != null) && (cursor.getIndexVersion() != indexVersion)) {
+      LOGGER.info("collectPage: index version changed to [{}], restarting {}", indexVersion,
+          cursor);
+      HitPage skipped = collectAfter(searcher, null, cursor.getOffset());
+      if (skipped.exhausted) {
+        return skipped.exhaust();
+      }
+      after = skipped.last;
+    }
+    return collectAfter(searcher, after, cursor.getLimit());
+  }
+
+  /**
+   * Collects the results following the given hit with a {@link SearchAfterCollector} on the
+   * plugin's searcher. Unless skipping checks or acl filtered the view rights are checked hit by
+   * hit as the plugin does, collecting further while hits are dropped, thus fewer results than
+   * the count are returned only once the collection is exhausted.
+   */
+  private HitPage collectAfter(@Nullable ScoreDoc after, int count) throws LuceneSearchException {
+    checkCompiled();
+    try (LuceneSearcher searcher = LuceneSearcher.connect(getLucenePlugin())) {
+      return collectAfter(searcher, after, count);
+    } catch (IOException ioe) {
+      throw newLuceneSearchException(ioe);
+    }
+  }
+
+  private HitPage collectAfter(LuceneSearcher searcher, @Nullable ScoreDoc after, int count)
+      throws IOException {
+    HitPage page = new HitPage(after);
+    while (!page.exhausted && (page.results.size() < count)) {
+      int remaining = count - page.results.size();
+      TopDocs hits = SearchAfterCollector.collect(searcher.getSearcher(), getExecutedQuery(),
+          null, getSort(), page.last, remaining);
+      for (ScoreDoc hit : hits.scoreDocs) {
+        EntityReference ref = loadReference(searcher.getSearcher(), hit.doc);
+        if ((ref != null) && (!isCheckedByHit() || hasViewRights(ref))) {
+          page.results.add(ref);
+        }
+        page.last = hit;
+      }
+      page.exhausted = hits.scoreDocs.length < remaining;
+    }
+    LOGGER.trace("collectAfter: collected [{}] results after [{}] for: {}", page.results.size(),
+        after, this);
+    return page;
+  }
+
+  private void checkCompiled() throws LuceneSearchException {
+    if (query == null) {
+      throw new LuceneSearchException("only compiled queries can be paged: " + getQueryString());
+    }
+  }
+
+  /**
+   * @return the reference of the indexed document or attachment, null if not stored
+   */
+  private EntityReference loadReference(IndexSearcher searcher, int doc) throws IOException {
+    Document document = searcher.doc(doc, REFERENCE_FIELDS);
+    String wiki = document.get(IndexFields.DOCUMENT_WIKI);
+    String space = document.get(IndexFields.DOCUMENT_SPACE);
+    String name = document.get(IndexFields.DOCUMENT_NAME);
+    if ((wiki == null) || (space == null) || (name == null)) {
+      LOGGER.warn("loadReference: skipping document [{}] without reference", doc);
+      return null;
+    }
+    DocumentReference docRef = new DocumentReference(wiki, space, name);
+    String fileName = document.get(IndexFields.FILENAME);
+    if (LucenePlugin.DOCTYPE_ATTACHMENT.equals(document.get(IndexFields.DOCUMENT_TYPE))
+        && (fileName != null)) {
+      return new AttachmentReference(fileName, docRef);
+    }
+    return docRef;
+  }
+
+  private boolean hasViewRights(EntityReference ref) {
+    DocumentReference docRef = (ref instanceof AttachmentReference)
+        ? ((AttachmentReference) ref).getDocumentReference()
+        : (DocumentReference) ref;
+    return Utils.getComponent(IRightsAccessFacadeRole.class).hasAccessLevel(docRef,
+        EAccessLevel.VIEW);
+  }
+
+  /**
+   * @return the sort by the sort fields as the plugin sorts, by their string values and reverse
+   *         if prefixed with '-', null to sort by relevance
+   */
+  @Nullable
+  Sort getSort() {
+    List<SortField> fields = new ArrayList<>();
+    for (String sortField : sortFields) {
+      if (!Strings.isNullOrEmpty(sortField)) {
+        boolean reverse = sortField.startsWith("-");
+        String field = (reverse || sortField.startsWith("+")) ? sortField.substring(1)
+            : sortField;
+        fields.add(new SortField(field, SortField.STRING, reverse));
+      }
+    }
+    return fields.isEmpty() ? null : new Sort(fields.toArray(new SortField[fields.size()]));
+  }
+
+  /**
+   * @return the fingerprint of this search, see {@link LuceneSearchCursor}
+   */
+  HashCode getSearchKey() {
+    if (searchKey == null) {
+      searchKey = LuceneSearchCursor.getSearchKey(queryFingerprint, sortFields, languages,
+          skipChecks);
+    }
+    return searchKey;
+  }
+
+  /**
+   * @return the number of results, counted without executing the whole search if there are no
+   *         hit by hit checks and the results haven't been fetched yet
+   */
   public int getSize() throws LuceneSearchException {
     int hitcount;
-    if (skipChecks) {
+    if (!isCheckedByHit() && (query != null) && (searchResultsCache == null)) {
+      hitcount = count(Integer.MAX_VALUE).getCount();
+    } else if (!isCheckedByHit()) {
       hitcount = luceneSearch().getTotalHitcount();
     } else {
       hitcount = luceneSearch().getHitcount();
     }
+    if (aclFiltered) {
+      hitcount = Math.min(hitcount, getCheckedResultLimit());
+    }
     LOGGER.debug("getSize: returning [{}] for: {}", hitcount, this);
     return hitcount;
   }
 
+  /**
+   * counts the matching documents on the plugin's searcher without loading, scoring or sorting
+   * them, the hit by hit checks of a search with checks aren't applied
+   */
+  HitCount count(int maxCount) throws LuceneSearchException {
+    if (query == null) {
+      throw new LuceneSearchException("only compiled queries can be counted: "
+          + getQueryString());
+    }
+    try (LuceneSearcher searcher = LuceneSearcher.connect(getLucenePlugin())) {
+      return CountingCollector.count(searcher.getSearcher(), getExecutedQuery(), null, maxCount);
+    } catch (IOException ioe) {
+      throw newLuceneSearchException(ioe);
+    }
+  }
+
+  /**
+   * @return the version of the indexes the plugin currently searches, see
+   *         {@link IndexReader#getVersion()}
+   */
+  long getIndexVersion() throws LuceneSearchException {
+    try (LuceneSearcher searcher = LuceneSearcher.connect(getLucenePlugin())) {
+      return searcher.getVersion();
+    } catch (IOException ioe) {
+      throw newLuceneSearchException(ioe);
+    }
+  }
+
+  /**
+   * @return the compiled query restricted to the languages, as the plugin does on search
+   */
+  private Query getExecutedQuery() {
+    if (languages.isEmpty()) {
+      return query;
+    }
+    BooleanQuery langQuery = new BooleanQuery();
+    for (String language : languages) {
+      langQuery.add(new TermQuery(new Term(IndexFields.DOCUMENT_LANGUAGE, language)),
+          Occur.SHOULD);
+    }
+    BooleanQuery executed = new BooleanQuery();
+    executed.add(query, Occur.MUST);
+    executed.add(langQuery, Occur.MUST);
+    return executed;
+  }
+
   SearchResults luceneSearch() throws LuceneSearchException {
+    if (searchResultsCache == null) {
+      searchResultsCache = executeSearch();
+    } else {
+      LOGGER.trace("luceneSearch: returning cached searchResults");
+    }
+    return searchResultsCache;
+  }
+
+  private SearchResults executeSearch() throws LuceneSearchException {
     try {
-      if (searchResultsCache == null) {
+      SearchResults results;
+      if (query != null) {
+        if (!isCheckedByHit()) {
+          results = getLucenePlugin().getSearchResultsWithoutChecks(query, getSortFieldsArray(),
+              null, getLanguageString(), getContext());
+        } else {
+          results = getLucenePlugin().getSearchResults(query, getSortFieldsArray(), null,
+              getLanguageString(), getContext());
+        }
+        LOGGER.trace("executeSearch: new searchResults for compiled query: {}", this);
+      } else {
         if (skipChecks) {
-          searchResultsCache = getLucenePlugin().getSearchResultsWithoutChecks(queryString,
+          results = getLucenePlugin().getSearchResultsWithoutChecks(queryString,
               getSortFieldsArray(), null, getLanguageString(), getContext());
         } else {
-          searchResultsCache = getLucenePlugin().getSearchResults(queryString, getSortFieldsArray(),
-              null, getLanguageString(), getContext());
+          results = getLucenePlugin().getSearchResults(queryString, getSortFieldsArray(), null,
+              getLanguageString(), getContext());
         }
-        LOGGER.trace("luceneSearch: new searchResults for: {}", this);
-      } else {
-        LOGGER.trace("luceneSearch: returning cached searchResults");
+        LOGGER.trace("executeSearch: new searchResults for: {}", this);
       }
-      return searchResultsCache;
+      return results;
     } catch (IOException ioe) {
       throw newLuceneSearchException(ioe);
     } catch (ParseException exc) {
@@ -192,15 +591,15 @@ public class LuceneSearchResult {
   }
 
   private LuceneSearchException newLuceneSearchException(Throwable cause) {
-    return new LuceneSearchException("Error while executing lucene search query:" + queryString,
-        cause);
+    return new LuceneSearchException("Error while executing lucene search query:"
+        + getQueryString(), cause);
   }
 
   @Override
   public String toString() {
-    return "LuceneSearchResult [queryString=" + queryString + ", sortFields=" + sortFields
-        + ", languages=" + languages + ", skipChecks=" + skipChecks + ", offset=" + offset
-        + ", limit=" + limit + "]";
+    return "LuceneSearchResult [queryString=" + getQueryString() + ", sortFields=" + sortFields
+        + ", languages=" + languages + ", skipChecks=" + skipChecks + ", aclFiltered="
+        + aclFiltered + ", offset=" + offset + ", limit=" + limit + "]";
   }
 
   private LucenePlugin getLucenePlugin() {
@@ -214,4 +613,93 @@ public class LuceneSearchResult {
     return Utils.getComponent(ModelContext.class).getXWikiContext();
   }
 
+  /**
+   * the checked results collected following a hit and the hit to continue after
+   */
+  private static class HitPage {
+
+    final List<EntityReference> results = new ArrayList<>();
+    ScoreDoc last;
+    boolean exhausted = false;
+
+    HitPage(ScoreDoc after) {
+      this.last = after;
+    }
+
+    /**
+     * @return an exhausted page without results following this one
+     */
+    HitPage exhaust() {
+      HitPage page = new HitPage(last);
+      page.exhausted = true;
+      return page;
+    }
+  }
+
+  /**
+   * fetches the results in chunks as the consumer advances, releasing the previous chunk
+   */
+  private class ResultSpliterator extends Spliterators.AbstractSpliterator<EntityReference> {
+
+    private final int chunkSize;
+    private long skip;
+    private long remaining;
+    private ScoreDoc last;
+    private SearchResults searchResults;
+    private int next;
+    private Iterator<EntityReference> chunk = Collections.emptyIterator();
+    private boolean exhausted = false;
+
+    ResultSpliterator(int chunkSize) {
+      super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+      this.chunkSize = chunkSize;
+      // collected hits are skipped up to the offset, the plugin's search starts at it
+      this.skip = (query != null) ? Math.max(0, getOffset()) : 0;
+      this.next = (query != null) ? 0 : Math.max(0, getOffset());
+      this.remaining = (getLimit() > 0) ? getLimit() : Long.MAX_VALUE;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super EntityReference> action) {
+      while (!chunk.hasNext() && !exhausted && (remaining > 0)) {
+        fetchChunk();
+      }
+      if (chunk.hasNext() && (remaining > 0)) {
+        remaining--;
+        action.accept(chunk.next());
+        return true;
+      }
+      return false;
+    }
+
+    private void fetchChunk() {
+      int count = (int) Math.min(Integer.MAX_VALUE, Math.min(chunkSize, remaining) + skip);
+      try {
+        List<EntityReference> results;
+        if (query != null) {
+          HitPage page = collectAfter(last, count);
+          results = page.results;
+          last = page.last;
+          exhausted = page.exhausted;
+        } else {
+          if (searchResults == null) {
+            searchResults = executeSearch();
+          }
+          results = new ArrayList<>(Lists.transform(searchResults.getResults(next + 1, count),
+              SearchResult::getReference));
+          next += results.size();
+          // a chunk may be shortened by the plugin's checks
+          exhausted = results.isEmpty();
+        }
+        int skipped = (int) Math.min(skip, results.size());
+        skip -= skipped;
+        LOGGER.trace("fetchChunk: fetched [{}] results, skipped [{}] for: {}", results.size(),
+            skipped, LuceneSearchResult.this);
+        chunk = results.subList(skipped, results.size()).iterator();
+      } catch (LuceneSearchException exc) {
+        throw new IllegalStateException(exc);
+      }
+    }
+  }
+
 }
@@ -271,6 +271,19 @@ public class LuceneSearchScriptService implements ScriptService {
     return null;
   }
 
+  /**
+   * @return the cursor serialized with {@link LuceneSearchCursor#serialize()}, e.g. given as
+   *         request parameter, or null if invalid
+   */
+  public LuceneSearchCursor parseSearchCursor(String cursor) {
+    try {
+      return LuceneSearchCursor.parse(Strings.nullToEmpty(cursor));
+    } catch (IllegalArgumentException iae) {
+      LOGGER.info("parseSearchCursor: invalid cursor [{}]", cursor, iae);
+      return null;
+    }
+  }
+
   public IndexQueuePriority getIndexQueuePriority(String prio) {
     String name = Strings.nullToEmpty(prio).toUpperCase();
     return Enums.getIfPresent(IndexQueuePriority.class, name).orNull();
@@ -8,27 +8,57 @@ import static com.celements.search.lucene.LuceneUtils.*;
 import static com.google.common.base.MoreObjects.*;
 import static java.util.stream.Collectors.*;
 
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
+import javax.annotation.Nullable;
+
 import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.queryParser.ParseException;
-import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.util.NumericUtils;
 import org.apache.lucene.util.Version;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.Requirement;
 import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
 import org.xwiki.model.reference.ClassReference;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
@@ -42,21 +72,56 @@ import com.celements.model.classes.fields.ClassField;
 import com.celements.model.classes.fields.CustomClassField;
 import com.celements.model.context.ModelContext;
 import com.celements.model.util.ModelUtils;
+import com.celements.rights.access.EAccessLevel;
+import com.celements.rights.access.IRightsAccessFacadeRole;
+import com.celements.search.lucene.analysis.NumericFields;
+import com.celements.search.lucene.analysis.PrefixFields;
 import com.celements.search.lucene.index.analysis.CelAnalyzer;
+import com.celements.search.lucene.query.AclFilter;
+import com.celements.search.lucene.query.FilterCache;
+import com.celements.search.lucene.query.FuzzyBounds;
+import com.celements.search.lucene.query.HitCount;
 import com.celements.search.lucene.query.IQueryRestriction;
 import com.celements.search.lucene.query.LuceneDocType;
 import com.celements.search.lucene.query.LuceneQuery;
+import com.celements.search.lucene.query.LuceneQueryCompiler;
+import com.celements.search.lucene.query.PlannedQuery;
+import com.celements.search.lucene.query.QueryCodec;
+import com.celements.search.lucene.query.QueryOptimizer;
+import com.celements.search.lucene.query.QueryPlan;
+import com.celements.search.lucene.query.QueryPlanner;
 import com.celements.search.lucene.query.QueryRestriction;
 import com.celements.search.lucene.query.QueryRestrictionGroup;
 import com.celements.search.lucene.query.QueryRestrictionGroup.Type;
+import com.celements.search.lucene.query.QueryRestrictionNumericRange;
+import com.celements.search.lucene.query.QueryRestrictionOverlap;
+import com.celements.search.lucene.query.QueryRestrictionParsed;
 import com.celements.search.lucene.query.QueryRestrictionString;
+import com.celements.search.lucene.query.QueryRestrictionTerms;
+import com.celements.search.lucene.query.RightsFilter;
+import com.celements.search.lucene.query.SearchBudget;
+import com.celements.search.lucene.query.TimeLimitedQuery;
+import com.celements.search.lucene.query.TokenFilterCache;
+import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
+import com.google.common.cache.AbstractCache.SimpleStatsCounter;
+import com.google.common.cache.AbstractCache.StatsCounter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.BoundType;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Range;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.xpn.xwiki.XWiki;
 import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.plugin.lucene.IndexFields;
 import com.xpn.xwiki.plugin.lucene.LucenePlugin;
+import com.xpn.xwiki.plugin.lucene.searcherProvider.ISearcherProviderRole;
 
 @Component
 public class LuceneSearchService implements ILuceneSearchService {
@@ -69,6 +134,40 @@ public class LuceneSearchService implements ILuceneSearchService {
   private static final boolean DEFAULT_TOKENIZE = true;
   private static final boolean DEFAULT_FUZZY = false;
 
+  static final String CFG_QUERY_CACHE_SIZE = "celements.search.lucene.queryCache.size";
+  static final int DEFAULT_QUERY_CACHE_SIZE = 1000;
+  static final String CFG_FILTER_CACHE_SIZE = "celements.search.lucene.filterCache.size";
+  static final int DEFAULT_FILTER_CACHE_SIZE = 1000;
+  static final String CFG_PARSE_CACHE_SIZE = "celements.search.lucene.parseCache.size";
+  static final int DEFAULT_PARSE_CACHE_SIZE = 1000;
+  static final String CFG_PREFIX_FIELDS = "celements.search.lucene.prefixFields";
+  static final String CFG_PREFIX_FIELDS_MIN_GRAM = "celements.search.lucene.prefixFields.minGram";
+  static final int DEFAULT_PREFIX_FIELDS_MIN_GRAM = 1;
+  static final String CFG_PREFIX_FIELDS_MAX_GRAM = "celements.search.lucene.prefixFields.maxGram";
+  static final int DEFAULT_PREFIX_FIELDS_MAX_GRAM = 10;
+  static final String CFG_FUZZY_PREFIX_LENGTH = "celements.search.lucene.fuzzy.prefixLength";
+  static final int DEFAULT_FUZZY_PREFIX_LENGTH = 1;
+  static final String CFG_FUZZY_MAX_EXPANSIONS = "celements.search.lucene.fuzzy.maxExpansions";
+  static final int DEFAULT_FUZZY_MAX_EXPANSIONS = 50;
+  static final String CFG_TOKEN_FILTER_CACHE_SIZE = "celements.search.lucene.tokenFilterCache.size";
+  static final int DEFAULT_TOKEN_FILTER_CACHE_SIZE = 10000;
+  static final String EXEC_TOKEN_FILTER_STATS = "celements.search.lucene.tokenFilterStats";
+  static final String CFG_RESULT_CACHE_SIZE = "celements.search.lucene.resultCache.size";
+  static final int DEFAULT_RESULT_CACHE_SIZE = 100000;
+  static final String CFG_RESULT_CACHE_EXPIRE = "celements.search.lucene.resultCache.expireSeconds";
+  static final int DEFAULT_RESULT_CACHE_EXPIRE = 60;
+  static final String CFG_ASYNC_THREADS = "celements.search.lucene.async.threads";
+  static final int DEFAULT_ASYNC_THREADS = 4;
+  static final String CFG_ASYNC_QUEUE_SIZE = "celements.search.lucene.async.queueSize";
+  static final int DEFAULT_ASYNC_QUEUE_SIZE = 100;
+  static final String CFG_RIGHTS_FILTER_ENABLED = "celements.search.lucene.rightsFilter.enabled";
+  static final List<String> RIGHTS_FILTER_KEY_FIELDS = ImmutableList.of(
+      IndexFields.DOCUMENT_WIKI, IndexFields.DOCUMENT_SPACE);
+  static final ClassReference RIGHTS_CLASS_REF = new ClassReference("XWiki", "XWikiRights");
+  static final String CFG_NUMERIC_FIELDS_ENABLED = "celements.search.lucene.numericFields.enabled";
+  static final String CFG_NUMERIC_FIELDS_PRECISION_STEP
+      = "celements.search.lucene.numericFields.precisionStep";
+
   @Requirement
   private ILuceneIndexService luceneIndexService;
 
@@ -81,6 +180,34 @@ public class LuceneSearchService implements ILuceneSearchService {
   @Requirement
   private ModelContext context;
 
+  @Requirement
+  private IRightsAccessFacadeRole rightsAccess;
+
+  @Requirement
+  private Execution execution;
+
+  @Requirement
+  private ISearcherProviderRole searcherProvider;
+
+  private volatile Cache<QueryCacheKey, Query> queryCache;
+  private volatile FilterCache filterCache;
+  private volatile Cache<QueryCacheKey, QueryRestrictionParsed> parseCache;
+  private volatile PrefixFields prefixFields;
+  private volatile FuzzyBounds fuzzyBounds;
+  private volatile NumericFields numericFields;
+  private volatile PluginHandle pluginHandle;
+  private volatile Cache<ResultCacheKey, LuceneSearchSnapshot> resultCache;
+  private volatile ExecutorService asyncExecutor;
+  /**
+   * analyzers used if the plugin isn't available, kept per version since the compiled query cache
+   * is keyed on the analyzer's identity
+   */
+  private final Map<Version, Analyzer> fallbackAnalyzers = new ConcurrentHashMap<>();
+  /**
+   * part of the scope of the view rights filters, thus incrementing it discards their bitsets
+   */
+  private final AtomicLong rightsVersion = new AtomicLong();
+
   @Override
   public java.text.DateFormat getSDF() {
     return new SimpleDateFormat("yyyyMMddHHmm");
@@ -163,8 +290,44 @@ public class LuceneSearchService implements ILuceneSearchService {
 
   @Override
   public QueryRestrictionString createRestriction(String query) throws ParseException {
-    return new QueryRestrictionString(new QueryParser(getVersion(), "", new StandardAnalyzer(
-        getVersion())).parse(query).toString());
+    return createRestriction(query, false);
+  }
+
+  @Override
+  public QueryRestrictionString createRestriction(String query, boolean keepParsed)
+      throws ParseException {
+    // parsed the same way as the compiler parses the plain query string
+    LuceneQueryCompiler compiler = getQueryCompiler();
+    QueryRestrictionParsed parsed;
+    try {
+      parsed = getParseCache().get(new QueryCacheKey(query, compiler.getAnalyzer(),
+          compiler.getVersion()), () -> {
+            Query parsedQuery = compiler.parse(query);
+            return new QueryRestrictionParsed(parsedQuery, parsedQuery.toString(
+                compiler.getDefaultField()));
+          });
+    } catch (ExecutionException exc) {
+      Throwables.throwIfInstanceOf(exc.getCause(), ParseException.class);
+      throw new IllegalStateException(exc.getCause());
+    } catch (UncheckedExecutionException exc) {
+      Throwables.throwIfUnchecked(exc.getCause());
+      throw exc;
+    }
+    return keepParsed ? parsed.copy() : parsed.copyUnparsed();
+  }
+
+  private Cache<QueryCacheKey, QueryRestrictionParsed> getParseCache() {
+    if (parseCache == null) {
+      synchronized (this) {
+        if (parseCache == null) {
+          int size = Math.max(0, cfgSrc.getProperty(CFG_PARSE_CACHE_SIZE,
+              DEFAULT_PARSE_CACHE_SIZE));
+          LOGGER.info("getParseCache: initialising with size '{}'", size);
+          parseCache = CacheBuilder.newBuilder().maximumSize(size).build();
+        }
+      }
+    }
+    return parseCache;
   }
 
   @Override
@@ -181,9 +344,8 @@ public class LuceneSearchService implements ILuceneSearchService {
   public QueryRestriction createRestriction(String field, String value, boolean tokenize,
       boolean fuzzy) {
     QueryRestriction restriction = new QueryRestriction(field, value, tokenize);
-    getLucenePlugin().map(LucenePlugin::getAnalyzer)
-        .flatMap(a -> tryCast(a, CelAnalyzer.class))
-        .ifPresent(restriction::setAnalyzer);
+    getPluginHandle().flatMap(PluginHandle::getTokenFilterCache)
+        .ifPresent(restriction::setTokenFilterCache);
     return fuzzy ? restriction.setFuzzy() : restriction;
   }
 
@@ -202,6 +364,14 @@ public class LuceneSearchService implements ILuceneSearchService {
     return createRestriction(IndexFields.DOCUMENT_FULLNAME, exactify(docRef));
   }
 
+  @Override
+  public QueryRestrictionTerms createTermsRestriction(String field, Collection<String> values) {
+    QueryRestrictionTerms restriction = new QueryRestrictionTerms(field, values);
+    getPluginHandle().flatMap(PluginHandle::getTokenFilterCache)
+        .ifPresent(restriction::setTokenFilterCache);
+    return restriction;
+  }
+
   @Override
   @Deprecated
   public QueryRestriction createObjectRestriction(DocumentReference classRef) {
@@ -360,6 +530,16 @@ public class LuceneSearchService implements ILuceneSearchService {
     return grp;
   }
 
+  @Override
+  public IQueryRestriction createDateOverlapRestriction(String startField, String endField,
+      Range<LocalDateTime> range) {
+    if (cfgSrc.getProperty(CFG_NUMERIC_FIELDS_ENABLED, false)) {
+      return createOverlapRestriction(startField, endField, mapRange(range,
+          NumericFields::dateToLong));
+    }
+    return createDateRangeRestriction(startField, endField, range);
+  }
+
   @Override
   public QueryRestriction createNumberRestriction(String field, Number number) {
     return createRestriction(field, IndexFields.numberToString(number), false).setAnalyzer(null);
@@ -380,6 +560,61 @@ public class LuceneSearchService implements ILuceneSearchService {
     return createRangeRestriction(field, mapRange(range, IndexFields::numberToString));
   }
 
+  @Override
+  public QueryRestrictionNumericRange createNumericRangeRestriction(String field,
+      Range<? extends Number> range) {
+    return new QueryRestrictionNumericRange(field, range, getNumericFields().getPrecisionStep());
+  }
+
+  @Override
+  public QueryRestrictionOverlap createOverlapRestriction(String startField, String endField,
+      Range<? extends Number> range) {
+    return new QueryRestrictionOverlap(startField, endField, range,
+        getNumericFields().getPrecisionStep());
+  }
+
+  @Override
+  public IQueryRestriction decodeRestriction(byte[] bytes) {
+    return QueryCodec.decode(bytes, getPluginHandle().flatMap(PluginHandle::getTokenFilterCache)
+        .orElse(null));
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T extends Comparable<?>> IQueryRestriction createRangeRestriction(ClassField<T> field,
+      Range<T> range) {
+    String name = field.serialize();
+    Class<T> type = field.getType();
+    boolean numeric = cfgSrc.getProperty(CFG_NUMERIC_FIELDS_ENABLED, false);
+    if (NumericFields.isNumber(type)) {
+      Range<? extends Number> numberRange = (Range<? extends Number>) range;
+      return numeric ? createNumericRangeRestriction(name, numberRange)
+          : createNumberRangeRestriction(name, numberRange);
+    } else if (NumericFields.isDate(type)) {
+      Range<LocalDateTime> dateRange = mapRange(range, value -> (value instanceof Date)
+          ? toDateTime((Date) value) : (LocalDateTime) value);
+      return numeric ? createNumericRangeRestriction(name, mapRange(dateRange,
+          NumericFields::dateToLong)) : createDateRangeRestriction(name, dateRange);
+    }
+    return createRangeRestriction(name, mapRange(range, value -> serializeClassFieldValue(field,
+        value)));
+  }
+
+  private NumericFields getNumericFields() {
+    if (numericFields == null) {
+      synchronized (this) {
+        if (numericFields == null) {
+          int precisionStep = cfgSrc.getProperty(CFG_NUMERIC_FIELDS_PRECISION_STEP,
+              NumericUtils.PRECISION_STEP_DEFAULT);
+          numericFields = new NumericFields((precisionStep > 0) ? precisionStep
+              : NumericUtils.PRECISION_STEP_DEFAULT);
+          LOGGER.info("getNumericFields: initialising with {}", numericFields);
+        }
+      }
+    }
+    return numericFields;
+  }
+
   @Override
   public QueryRestrictionGroup createAttachmentRestrictionGroup(List<String> mimeTypes,
       List<String> mimeTypesBlackList, List<String> filenamePrefs) {
@@ -395,25 +630,351 @@ public class LuceneSearchService implements ILuceneSearchService {
     return attGrp;
   }
 
+  @Override
+  public Query compile(IQueryRestriction restr) throws ParseException {
+    LuceneQueryCompiler compiler = getQueryCompiler();
+    // the fingerprint covers what the query string doesn't render, e.g. the fuzzy bounds
+    QueryCacheKey key = new QueryCacheKey(QueryCodec.fingerprint(restr), compiler.getAnalyzer(),
+        compiler.getVersion());
+    try {
+      // cached queries are shared between threads, never hand out the instance itself
+      return (Query) getQueryCache().get(key, () -> compiler.compile(
+          QueryOptimizer.optimize(restr))).clone();
+    } catch (ExecutionException exc) {
+      Throwables.throwIfInstanceOf(exc.getCause(), ParseException.class);
+      throw new IllegalStateException(exc.getCause());
+    } catch (UncheckedExecutionException exc) {
+      Throwables.throwIfUnchecked(exc.getCause());
+      throw exc;
+    }
+  }
+
+  @Override
+  public CacheStats getQueryCacheStats() {
+    return getQueryCache().stats();
+  }
+
+  @Override
+  public QueryPlan explain(IQueryRestriction restr, IndexReader reader) throws ParseException,
+      IOException {
+    return QueryPlanner.plan(compile(restr), reader);
+  }
+
+  @Override
+  public HitCount count(LuceneQuery query) throws LuceneSearchException {
+    return count(query, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public HitCount count(LuceneQuery query, int maxCount) throws LuceneSearchException {
+    // compiled and filtered the same way as the search itself, but the count can't apply the hit
+    // by hit checks, thus without acl the rights filter is always required
+    HitCount count = newSearchResult(query, null, null, false, null, true).count(maxCount);
+    LOGGER.debug("count: [{}] for [{}]", count, query);
+    return count;
+  }
+
+  private Cache<QueryCacheKey, Query> getQueryCache() {
+    if (queryCache == null) {
+      synchronized (this) {
+        if (queryCache == null) {
+          int size = Math.max(0, cfgSrc.getProperty(CFG_QUERY_CACHE_SIZE,
+              DEFAULT_QUERY_CACHE_SIZE));
+          LOGGER.info("getQueryCache: initialising with size '{}'", size);
+          queryCache = CacheBuilder.newBuilder().maximumSize(size).recordStats().build();
+        }
+      }
+    }
+    return queryCache;
+  }
+
+  private LuceneQueryCompiler getQueryCompiler() {
+    Analyzer analyzer = getPluginHandle().flatMap(PluginHandle::getAnalyzer)
+        .orElseGet(() -> fallbackAnalyzers.computeIfAbsent(getVersion(), StandardAnalyzer::new));
+    return new LuceneQueryCompiler(getVersion(), analyzer, getFilterCache(), getPrefixFields(),
+        getFuzzyBounds());
+  }
+
+  @Override
+  public FuzzyBounds getFuzzyBounds() {
+    if (fuzzyBounds == null) {
+      synchronized (this) {
+        if (fuzzyBounds == null) {
+          int prefixLength = Math.max(0, cfgSrc.getProperty(CFG_FUZZY_PREFIX_LENGTH,
+              DEFAULT_FUZZY_PREFIX_LENGTH));
+          int maxExpansions = Math.max(1, cfgSrc.getProperty(CFG_FUZZY_MAX_EXPANSIONS,
+              DEFAULT_FUZZY_MAX_EXPANSIONS));
+          fuzzyBounds = new FuzzyBounds(prefixLength, maxExpansions);
+          LOGGER.info("getFuzzyBounds: initialising with {}", fuzzyBounds);
+        }
+      }
+    }
+    return fuzzyBounds;
+  }
+
+  /**
+   * the configured fields need an edge n-gram companion field indexed with
+   * {@link PrefixFields#tokenStream}, none are configured by default
+   */
+  private PrefixFields getPrefixFields() {
+    if (prefixFields == null) {
+      synchronized (this) {
+        if (prefixFields == null) {
+          List<String> fields = Splitter.on(',').trimResults().omitEmptyStrings().splitToList(
+              cfgSrc.getProperty(CFG_PREFIX_FIELDS, ""));
+          int minGram = Math.max(1, cfgSrc.getProperty(CFG_PREFIX_FIELDS_MIN_GRAM,
+              DEFAULT_PREFIX_FIELDS_MIN_GRAM));
+          int maxGram = Math.max(minGram, cfgSrc.getProperty(CFG_PREFIX_FIELDS_MAX_GRAM,
+              DEFAULT_PREFIX_FIELDS_MAX_GRAM));
+          prefixFields = new PrefixFields(fields, minGram, maxGram);
+          LOGGER.info("getPrefixFields: initialising with {}", prefixFields);
+        }
+      }
+    }
+    return prefixFields;
+  }
+
+  private FilterCache getFilterCache() {
+    if (filterCache == null) {
+      synchronized (this) {
+        if (filterCache == null) {
+          int size = Math.max(0, cfgSrc.getProperty(CFG_FILTER_CACHE_SIZE,
+              DEFAULT_FILTER_CACHE_SIZE));
+          LOGGER.info("getFilterCache: initialising with size '{}'", size);
+          filterCache = new FilterCache(size);
+        }
+      }
+    }
+    return filterCache;
+  }
+
   @Override
   public LuceneSearchResult search(LuceneQuery query) {
-    return new LuceneSearchResult(query, null, null, false);
+    return search(query, null, null);
   }
 
   @Override
   public LuceneSearchResult search(LuceneQuery query, List<String> sortFields,
       List<String> languages) {
-    return new LuceneSearchResult(query, sortFields, languages, false);
+    return newSearchResult(query, sortFields, languages, false);
   }
 
   @Override
   public LuceneSearchResult searchWithoutChecks(LuceneQuery query) {
-    return new LuceneSearchResult(query, null, null, true);
+    return searchWithoutChecks(query, null, null);
   }
 
   @Override
   public LuceneSearchResult searchWithoutChecks(LuceneQuery query, List<String> sortFields,
       List<String> languages) {
+    return newSearchResult(query, sortFields, languages, true);
+  }
+
+  private LuceneSearchResult newSearchResult(LuceneQuery query, List<String> sortFields,
+      List<String> languages, boolean skipChecks) {
+    return newSearchResult(query, sortFields, languages, skipChecks, null);
+  }
+
+  private LuceneSearchResult newSearchResult(LuceneQuery query, List<String> sortFields,
+      List<String> languages, boolean skipChecks, @Nullable SearchBudget budget) {
+    return newSearchResult(query, sortFields, languages, skipChecks, budget,
+        cfgSrc.getProperty(CFG_RIGHTS_FILTER_ENABLED, false));
+  }
+
+  /**
+   * @param rightsFiltered
+   *          whether a search with checks but without acl is restricted by the
+   *          {@link #getViewRightsFilter()}
+   */
+  private LuceneSearchResult newSearchResult(LuceneQuery query, List<String> sortFields,
+      List<String> languages, boolean skipChecks, @Nullable SearchBudget budget,
+      boolean rightsFiltered) {
+    try {
+      Query compiled = compile(query);
+      Optional<Filter> aclFilter = !skipChecks ? getViewAclFilter() : Optional.empty();
+      if (aclFilter.isPresent()) {
+        // the indexed acl replaces the hit by hit checks of the plugin
+        compiled = filterBy(compiled, aclFilter.get());
+      } else if (!skipChecks && rightsFiltered) {
+        compiled = filterBy(compiled, getViewRightsFilter());
+      }
+      compiled = new PlannedQuery(compiled);
+      if (budget != null) {
+        compiled = new TimeLimitedQuery(compiled, budget);
+      }
+      return new LuceneSearchResult(query, compiled, sortFields, languages, skipChecks,
+          aclFilter.isPresent());
+    } catch (ParseException exc) {
+      LOGGER.info("newSearchResult: compiling failed, falling back to query string for: {}",
+          query, exc);
+      return new LuceneSearchResult(query, sortFields, languages, skipChecks);
+    }
+  }
+
+  /**
+   * restricts the query to the documents matching the rights filter, e.g. prunes the documents in
+   * spaces without view rights before the plugin checks hit by hit. The filter clause has no
+   * boost, thus the scores remain unchanged.
+   */
+  private Query filterBy(Query query, Filter rightsFilter) {
+    BooleanQuery filtered = new BooleanQuery();
+    filtered.add(query, Occur.MUST);
+    Query rightsQuery = new ConstantScoreQuery(rightsFilter);
+    rightsQuery.setBoost(0);
+    filtered.add(rightsQuery, Occur.MUST);
+    return filtered;
+  }
+
+  @Override
+  public Optional<Filter> getViewAclFilter() {
+    if (!luceneIndexService.isAclEnabled()) {
+      return Optional.empty();
+    } else if (rightsAccess.isAdmin()) {
+      return Optional.of(getFilterCache().get(new QueryWrapperFilter(new MatchAllDocsQuery())));
+    }
+    return Optional.of(getFilterCache().get(new AclFilter(getViewPrincipals())));
+  }
+
+  /**
+   * @return the globally serialized current user and its groups
+   */
+  private Set<String> getViewPrincipals() {
+    DocumentReference userRef = modelUtils.resolveRef(getXContext().getUser(),
+        DocumentReference.class);
+    Set<String> principals = new LinkedHashSet<>();
+    principals.add(modelUtils.serializeRef(userRef, GLOBAL));
+    try {
+      getXContext().getWiki().getGroupService(getXContext()).getAllGroupsReferencesForMember(
+          userRef, 0, 0, getXContext()).forEach(groupRef -> principals.add(
+              modelUtils.serializeRef(groupRef, GLOBAL)));
+    } catch (XWikiException xwe) {
+      LOGGER.warn("getViewPrincipals: failed to get groups of [{}]", userRef, xwe);
+    }
+    return principals;
+  }
+
+  @Override
+  public Filter getViewRightsFilter() {
+    Filter ownRightsFilter = getOwnRightsFilter().orElse(null);
+    String entityField = (ownRightsFilter != null) ? IndexFields.DOCUMENT_FULLNAME : null;
+    return getFilterCache().get(new RightsFilter(getViewRightsScope(),
+        RIGHTS_FILTER_KEY_FIELDS, ownRightsFilter, entityField, this::resolveViewRights));
+  }
+
+  /**
+   * documents with rights objects may grant more than their space, they and their attachments
+   * are left to the hit by hit checks
+   */
+  private Optional<Filter> getOwnRightsFilter() {
+    try {
+      return Optional.of(getFilterCache().get(new QueryWrapperFilter(compile(
+          createObjectRestriction(RIGHTS_CLASS_REF)))));
+    } catch (ParseException exc) {
+      LOGGER.warn("getOwnRightsFilter: failed, pruning documents with own rights by space", exc);
+      return Optional.empty();
+    }
+  }
+
+  @Override
+  public void invalidateRightsFilters() {
+    LOGGER.debug("invalidateRightsFilters: rights version [{}]", rightsVersion.incrementAndGet());
+  }
+
+  private Set<List<String>> resolveViewRights(Set<List<String>> keys) {
+    Set<List<String>> granted = keys.stream()
+        .filter(key -> rightsAccess.hasAccessLevel(new SpaceReference(key.get(1),
+            new WikiReference(key.get(0))), EAccessLevel.VIEW))
+        .collect(toSet());
+    LOGGER.debug("resolveViewRights: granted {} of {} spaces for [{}]", granted.size(),
+        keys.size(), getUserScope());
+    return granted;
+  }
+
+  @Override
+  public CompletableFuture<LuceneSearchSnapshot> searchAsync(LuceneQuery query,
+      SearchOptions options) {
+    SearchBudget budget = new SearchBudget(options.getTimeout().orElse(null));
+    LuceneSearchResult result = newSearchResult(query, options.getSortFields(),
+        options.getLanguages(), options.isSkipChecks(), budget)
+        .setOffset(options.getOffset()).setLimit(options.getLimit());
+    XWikiContext xcontext = newAsyncContext();
+    CompletableFuture<LuceneSearchSnapshot> future;
+    try {
+      future = CompletableFuture.supplyAsync(() -> executeAsync(result, xcontext),
+          getAsyncExecutor());
+    } catch (RejectedExecutionException exc) {
+      LOGGER.warn("searchAsync: rejected, too many pending searches for: {}", result);
+      future = new CompletableFuture<>();
+      future.completeExceptionally(exc);
+    }
+    // cancelling the future stops the collection at its next budget check
+    future.whenComplete((snapshot, exc) -> {
+      if (exc instanceof CancellationException) {
+        budget.cancel();
+      }
+    });
+    return future;
+  }
+
+  /**
+   * the request's context isn't thread safe and a clone shares its mutable state, thus the task
+   * gets a new context with the user, database and language the search depends on
+   */
+  private XWikiContext newAsyncContext() {
+    XWikiContext xcontext = new XWikiContext();
+    xcontext.setWiki(getXContext().getWiki());
+    xcontext.setMainXWiki(getXContext().getMainXWiki());
+    xcontext.setUser(getXContext().getUser());
+    xcontext.setDatabase(getXContext().getDatabase());
+    xcontext.setLanguage(getXContext().getLanguage());
+    return xcontext;
+  }
+
+  private LuceneSearchSnapshot executeAsync(LuceneSearchResult result, XWikiContext xcontext) {
+    ExecutionContext executionContext = new ExecutionContext();
+    executionContext.setProperty(XWikiContext.EXECUTIONCONTEXT_KEY, xcontext);
+    execution.setContext(executionContext);
+    try {
+      LuceneSearchSnapshot snapshot = getSnapshot(result);
+      LOGGER.debug("executeAsync: {} for: {}", snapshot, result);
+      return snapshot;
+    } catch (LuceneSearchException exc) {
+      throw new CompletionException(exc);
+    } finally {
+      // the plugin holds its searchers per thread
+      searcherProvider.closeAllForCurrentThread();
+      execution.removeContext();
+    }
+  }
+
+  private ExecutorService getAsyncExecutor() {
+    if (asyncExecutor == null) {
+      synchronized (this) {
+        if (asyncExecutor == null) {
+          int threads = Math.max(1, cfgSrc.getProperty(CFG_ASYNC_THREADS,
+              DEFAULT_ASYNC_THREADS));
+          int queueSize = Math.max(1, cfgSrc.getProperty(CFG_ASYNC_QUEUE_SIZE,
+              DEFAULT_ASYNC_QUEUE_SIZE));
+          LOGGER.info("getAsyncExecutor: initialising with threads '{}' and queue size '{}'",
+              threads, queueSize);
+          asyncExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+              new ArrayBlockingQueue<>(queueSize), new ThreadFactoryBuilder()
+                  .setNameFormat("lucene-search-async-%d").setDaemon(true).build());
+        }
+      }
+    }
+    return asyncExecutor;
+  }
+
+  @Override
+  public LuceneSearchResult search(Query query, List<String> sortFields,
+      List<String> languages) {
+    return new LuceneSearchResult(query, sortFields, languages, false);
+  }
+
+  @Override
+  public LuceneSearchResult searchWithoutChecks(Query query, List<String> sortFields,
+      List<String> languages) {
     return new LuceneSearchResult(query, sortFields, languages, true);
   }
 
@@ -429,6 +990,76 @@ public class LuceneSearchService implements ILuceneSearchService {
     return new LuceneSearchResult(queryString, sortFields, languages, true);
   }
 
+  @Override
+  public LuceneSearchSnapshot getSnapshot(LuceneSearchResult result) throws LuceneSearchException {
+    long indexVersion = result.getIndexVersion();
+    ResultCacheKey key = new ResultCacheKey(result, getRightsScope(result), indexVersion);
+    LuceneSearchSnapshot snapshot = getResultCache().getIfPresent(key);
+    if (snapshot == null) {
+      snapshot = new LuceneSearchSnapshot(result.getResultsScoreMap(), result.getSize(),
+          indexVersion, result.isPartial());
+      if (!snapshot.isPartial()) {
+        // partial results of a time limited search aren't shared
+        getResultCache().put(key, snapshot);
+      }
+    }
+    return snapshot;
+  }
+
+  /**
+   * results with checks depend on the view rights of the current user
+   */
+  private String getRightsScope(LuceneSearchResult result) {
+    return result.isSkipChecks() ? "" : getViewRightsScope();
+  }
+
+  /**
+   * the view rights of the current user, changed by {@link #invalidateRightsFilters()}
+   */
+  private String getViewRightsScope() {
+    return getUserScope() + "@" + rightsVersion.get();
+  }
+
+  private String getUserScope() {
+    return getXContext().getDatabase() + ":" + getXContext().getUser();
+  }
+
+  @Override
+  public void invalidateResultCache() {
+    LOGGER.debug("invalidateResultCache");
+    if (resultCache != null) {
+      resultCache.invalidateAll();
+    }
+  }
+
+  @Override
+  public CacheStats getResultCacheStats() {
+    return getResultCache().stats();
+  }
+
+  private Cache<ResultCacheKey, LuceneSearchSnapshot> getResultCache() {
+    if (resultCache == null) {
+      synchronized (this) {
+        if (resultCache == null) {
+          int size = Math.max(0, cfgSrc.getProperty(CFG_RESULT_CACHE_SIZE,
+              DEFAULT_RESULT_CACHE_SIZE));
+          int expire = Math.max(0, cfgSrc.getProperty(CFG_RESULT_CACHE_EXPIRE,
+              DEFAULT_RESULT_CACHE_EXPIRE));
+          LOGGER.info("getResultCache: initialising with size '{}' and expiry '{}s'", size,
+              expire);
+          resultCache = CacheBuilder.newBuilder()
+              .maximumWeight(size)
+              .weigher((ResultCacheKey key, LuceneSearchSnapshot snapshot) -> snapshot
+                  .getResultsScoreMap().size() + 1)
+              .expireAfterWrite(expire, TimeUnit.SECONDS)
+              .recordStats()
+              .build();
+        }
+      }
+    }
+    return resultCache;
+  }
+
   @Override
   public int getResultLimit() {
     return getResultLimit(false);
@@ -436,7 +1067,8 @@ public class LuceneSearchService implements ILuceneSearchService {
 
   @Override
   public int getResultLimit(boolean skipChecks) {
-    int limit = getLucenePlugin().map(p -> p.getResultLimit(skipChecks, getXContext())).orElse(0);
+    int limit = getPluginHandle().map(h -> h.plugin.getResultLimit(skipChecks, getXContext()))
+        .orElse(0);
     LOGGER.debug("getResultLimit: got '{}' for skipChecks '{}'", limit, skipChecks);
     return limit;
   }
@@ -454,17 +1086,170 @@ public class LuceneSearchService implements ILuceneSearchService {
     luceneIndexService.queueForIndexing(doc);
   }
 
-  private Optional<LucenePlugin> getLucenePlugin() {
+  /**
+   * the plugin is only looked up again if the wiki or the plugin's analyzer have changed
+   */
+  private Optional<PluginHandle> getPluginHandle() {
     try {
-      return Optional.of((LucenePlugin) getXContext().getWiki().getPlugin("lucene", getXContext()));
+      XWiki wiki = getXContext().getWiki();
+      PluginHandle handle = pluginHandle;
+      if ((handle == null) || !handle.isValidFor(wiki)) {
+        LucenePlugin plugin = (LucenePlugin) wiki.getPlugin("lucene", getXContext());
+        Analyzer analyzer = plugin.getAnalyzer();
+        handle = new PluginHandle(wiki, plugin, analyzer, tryCast(analyzer, CelAnalyzer.class)
+            .map(a -> new TokenFilterCache(a, Math.max(0, cfgSrc.getProperty(
+                CFG_TOKEN_FILTER_CACHE_SIZE, DEFAULT_TOKEN_FILTER_CACHE_SIZE)),
+                this::getExecutionTokenFilterStats))
+            .orElse(null));
+        LOGGER.info("getPluginHandle: resolved plugin with analyzer '{}'", handle.analyzer);
+        pluginHandle = handle;
+      }
+      return Optional.of(handle);
     } catch (NullPointerException npe) {
       LOGGER.warn("LucenePlugin not available, first request?");
       return Optional.empty();
     }
   }
 
+  @Override
+  public CacheStats getTokenFilterStats() {
+    return getPluginHandle().flatMap(PluginHandle::getTokenFilterCache)
+        .map(TokenFilterCache::stats)
+        .orElseGet(CacheStats::new);
+  }
+
+  @Override
+  public CacheStats getRequestTokenFilterStats() {
+    return getExecutionTokenFilterStats().map(StatsCounter::snapshot)
+        .orElseGet(CacheStats::new);
+  }
+
+  /**
+   * @return the token filter counters of the current execution, created on first use
+   */
+  private Optional<StatsCounter> getExecutionTokenFilterStats() {
+    ExecutionContext executionContext = execution.getContext();
+    if (executionContext == null) {
+      return Optional.empty();
+    }
+    StatsCounter stats = (StatsCounter) executionContext.getProperty(EXEC_TOKEN_FILTER_STATS);
+    if (stats == null) {
+      stats = new SimpleStatsCounter();
+      executionContext.setProperty(EXEC_TOKEN_FILTER_STATS, stats);
+    }
+    return Optional.of(stats);
+  }
+
   private XWikiContext getXContext() {
     return context.getXWikiContext();
   }
 
+  /**
+   * the lucene plugin as resolved for a wiki together with its analyzer at that time
+   */
+  private static final class PluginHandle {
+
+    private final XWiki wiki;
+    private final LucenePlugin plugin;
+    private final Analyzer analyzer;
+    private final TokenFilterCache tokenFilterCache;
+
+    PluginHandle(XWiki wiki, LucenePlugin plugin, Analyzer analyzer,
+        TokenFilterCache tokenFilterCache) {
+      this.wiki = wiki;
+      this.plugin = plugin;
+      this.analyzer = analyzer;
+      this.tokenFilterCache = tokenFilterCache;
+    }
+
+    boolean isValidFor(XWiki wiki) {
+      return (this.wiki == wiki) && (plugin.getAnalyzer() == analyzer);
+    }
+
+    Optional<Analyzer> getAnalyzer() {
+      return Optional.ofNullable(analyzer);
+    }
+
+    Optional<TokenFilterCache> getTokenFilterCache() {
+      return Optional.ofNullable(tokenFilterCache);
+    }
+
+  }
+
+  /**
+   * key of a snapshot, the index version changes with every commit to the searched indexes
+   */
+  private static final class ResultCacheKey {
+
+    private final HashCode searchKey;
+    private final int offset;
+    private final int limit;
+    private final String rightsScope;
+    private final long indexVersion;
+
+    ResultCacheKey(LuceneSearchResult result, String rightsScope, long indexVersion) {
+      this.searchKey = result.getSearchKey();
+      this.offset = result.getOffset();
+      this.limit = result.getLimit();
+      this.rightsScope = rightsScope;
+      this.indexVersion = indexVersion;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(searchKey, offset, limit, rightsScope, indexVersion);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj instanceof ResultCacheKey) {
+        ResultCacheKey other = (ResultCacheKey) obj;
+        return searchKey.equals(other.searchKey)
+            && (offset == other.offset)
+            && (limit == other.limit)
+            && rightsScope.equals(other.rightsScope)
+            && (indexVersion == other.indexVersion);
+      }
+      return false;
+    }
+
+  }
+
+  /**
+   * canonical key of a parsed or compiled query, the analyzer is compared by identity since
+   * analyzers don't implement equality
+   */
+  private static final class QueryCacheKey {
+
+    /**
+     * the query string for the parse cache, the restriction's fingerprint for the query cache
+     */
+    private final Object query;
+    private final Analyzer analyzer;
+    private final Version version;
+
+    QueryCacheKey(Object query, Analyzer analyzer, Version version) {
+      this.query = query;
+      this.analyzer = analyzer;
+      this.version = version;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(query, System.identityHashCode(analyzer), version);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj instanceof QueryCacheKey) {
+        QueryCacheKey other = (QueryCacheKey) obj;
+        return query.equals(other.query)
+            && (analyzer == other.analyzer)
+            && (version == other.version);
+      }
+      return false;
+    }
+
+  }
+
 }
@@ -0,0 +1,77 @@
+package com.celements.search.lucene;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.concurrent.Immutable;
+import javax.validation.constraints.NotNull;
+
+import org.xwiki.model.reference.EntityReference;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Immutable snapshot of the results of a {@link LuceneSearchResult} within its offset and limit,
+ * shared between requests by {@link ILuceneSearchService#getSnapshot(LuceneSearchResult)}.
+ */
+@Immutable
+public final class LuceneSearchSnapshot {
+
+  private final ImmutableMap<EntityReference, Float> resultsScoreMap;
+  private final int size;
+  private final long indexVersion;
+  private final boolean partial;
+
+  LuceneSearchSnapshot(@NotNull Map<EntityReference, Float> resultsScoreMap, int size,
+      long indexVersion, boolean partial) {
+    this.resultsScoreMap = ImmutableMap.copyOf(resultsScoreMap);
+    this.size = size;
+    this.indexVersion = indexVersion;
+    this.partial = partial;
+  }
+
+  /**
+   * @return the results in order, see {@link LuceneSearchResult#getResults()}
+   */
+  @NotNull
+  public List<EntityReference> getResults() {
+    return resultsScoreMap.keySet().asList();
+  }
+
+  /**
+   * @see LuceneSearchResult#getResultsScoreMap()
+   */
+  @NotNull
+  public Map<EntityReference, Float> getResultsScoreMap() {
+    return resultsScoreMap;
+  }
+
+  /**
+   * @see LuceneSearchResult#getSize()
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * @return the version of the indexes the snapshot has been taken from, changing with every
+   *         commit to them
+   */
+  public long getIndexVersion() {
+    return indexVersion;
+  }
+
+  /**
+   * @see LuceneSearchResult#isPartial()
+   */
+  public boolean isPartial() {
+    return partial;
+  }
+
+  @Override
+  public String toString() {
+    return "LuceneSearchSnapshot [results=" + resultsScoreMap.size() + ", size=" + size
+        + ", indexVersion=" + indexVersion + ", partial=" + partial + "]";
+  }
+
+}
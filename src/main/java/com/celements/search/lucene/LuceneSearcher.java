@@ -0,0 +1,77 @@
+package com.celements.search.lucene;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.validation.constraints.NotNull;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Searcher;
+
+import com.xpn.xwiki.plugin.lucene.LucenePlugin;
+import com.xpn.xwiki.plugin.lucene.searcherProvider.ISearcherProviderRole;
+
+/**
+ * The current searchers of the lucene plugin combined into a single {@link IndexSearcher}, for
+ * executing compiled queries with own collectors instead of the plugin's search. The plugin keeps
+ * its searchers connected per thread until {@link ISearcherProviderRole#closeAllForCurrentThread()},
+ * closing this only releases the combining reader.
+ */
+@NotThreadSafe
+final class LuceneSearcher implements Closeable {
+
+  private final IndexReader[] readers;
+  private final IndexSearcher searcher;
+
+  private LuceneSearcher(IndexReader[] readers) {
+    this.readers = readers;
+    // the sub readers are owned by the plugin, thus only their reference count is increased
+    this.searcher = new IndexSearcher((readers.length == 1) ? readers[0] : new MultiReader(
+        readers, false));
+  }
+
+  @NotNull
+  static LuceneSearcher connect(@NotNull LucenePlugin plugin) throws IOException {
+    Searcher[] searchers = checkNotNull(plugin).getConnectedSearcherProvider().getSearchers();
+    IndexReader[] readers = new IndexReader[searchers.length];
+    for (int i = 0; i < searchers.length; i++) {
+      readers[i] = ((IndexSearcher) searchers[i]).getIndexReader();
+    }
+    return new LuceneSearcher(readers);
+  }
+
+  @NotNull
+  IndexSearcher getSearcher() {
+    return searcher;
+  }
+
+  @NotNull
+  IndexReader getReader() {
+    return searcher.getIndexReader();
+  }
+
+  /**
+   * @return the version of the searched indexes, increasing with every commit to any of them
+   */
+  long getVersion() {
+    long version = 0;
+    for (IndexReader reader : readers) {
+      version += reader.getVersion();
+    }
+    return version;
+  }
+
+  @Override
+  public void close() throws IOException {
+    searcher.close();
+    if (readers.length != 1) {
+      searcher.getIndexReader().close();
+    }
+  }
+
+}
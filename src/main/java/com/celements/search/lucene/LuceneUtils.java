@@ -75,12 +75,20 @@ public final class LuceneUtils {
 
   public static String exactify(EntityReference ref, ReferenceSerializationMode mode) {
     String ret = serialize(ref, mode);
-    if (!spaceEndsWithDigit(ref)) {
+    if (isExactifiable(ref)) {
       ret = exactify(ret);
     }
     return ret;
   }
 
+  /**
+   * @return false if {@link #exactify(EntityReference)} leaves the reference unquoted, which it
+   *         does for documents and below in spaces ending with a digit (CELDEV-35)
+   */
+  public static boolean isExactifiable(EntityReference ref) {
+    return !spaceEndsWithDigit(ref);
+  }
+
   // XXX workaround issue CELDEV-35
   private static boolean spaceEndsWithDigit(EntityReference ref) {
     EntityReference spaceRef = ref.extractReference(EntityType.SPACE);
@@ -0,0 +1,119 @@
+package com.celements.search.lucene;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.validation.constraints.NotNull;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Options of {@link ILuceneSearchService#searchAsync}, each {@code with} method returns a modified
+ * copy.
+ */
+@Immutable
+public final class SearchOptions {
+
+  private static final SearchOptions DEFAULTS = new SearchOptions(ImmutableList.of(),
+      ImmutableList.of(), false, 0, 0, null);
+
+  private final ImmutableList<String> sortFields;
+  private final ImmutableList<String> languages;
+  private final boolean skipChecks;
+  private final int offset;
+  private final int limit;
+  private final Duration timeout;
+
+  private SearchOptions(List<String> sortFields, List<String> languages, boolean skipChecks,
+      int offset, int limit, Duration timeout) {
+    this.sortFields = ImmutableList.copyOf(sortFields);
+    this.languages = ImmutableList.copyOf(languages);
+    this.skipChecks = skipChecks;
+    this.offset = offset;
+    this.limit = limit;
+    this.timeout = timeout;
+  }
+
+  /**
+   * @return options with checks, without sort fields, languages, offset, limit and timeout
+   */
+  @NotNull
+  public static SearchOptions defaults() {
+    return DEFAULTS;
+  }
+
+  @NotNull
+  public ImmutableList<String> getSortFields() {
+    return sortFields;
+  }
+
+  @NotNull
+  public SearchOptions withSortFields(@NotNull List<String> sortFields) {
+    return new SearchOptions(sortFields, languages, skipChecks, offset, limit, timeout);
+  }
+
+  @NotNull
+  public ImmutableList<String> getLanguages() {
+    return languages;
+  }
+
+  @NotNull
+  public SearchOptions withLanguages(@NotNull List<String> languages) {
+    return new SearchOptions(sortFields, languages, skipChecks, offset, limit, timeout);
+  }
+
+  public boolean isSkipChecks() {
+    return skipChecks;
+  }
+
+  @NotNull
+  public SearchOptions withoutChecks() {
+    return new SearchOptions(sortFields, languages, true, offset, limit, timeout);
+  }
+
+  public int getOffset() {
+    return offset;
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  /**
+   * @see LuceneSearchResult#setOffset(int)
+   * @see LuceneSearchResult#setLimit(int)
+   */
+  @NotNull
+  public SearchOptions withPage(int offset, int limit) {
+    checkArgument(offset >= 0, "offset must not be negative");
+    checkArgument(limit >= 0, "limit must not be negative");
+    return new SearchOptions(sortFields, languages, skipChecks, offset, limit, timeout);
+  }
+
+  /**
+   * @return the time budget of the collection, unbounded if absent
+   */
+  @NotNull
+  public Optional<Duration> getTimeout() {
+    return Optional.ofNullable(timeout);
+  }
+
+  @NotNull
+  public SearchOptions withTimeout(@Nullable Duration timeout) {
+    checkArgument((timeout == null) || !timeout.isNegative(), "timeout must not be negative");
+    return new SearchOptions(sortFields, languages, skipChecks, offset, limit, timeout);
+  }
+
+  @Override
+  public String toString() {
+    return "SearchOptions [sortFields=" + sortFields + ", languages=" + languages
+        + ", skipChecks=" + skipChecks + ", offset=" + offset + ", limit=" + limit + ", timeout="
+        + timeout + "]";
+  }
+
+}
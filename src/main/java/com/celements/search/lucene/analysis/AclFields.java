@@ -0,0 +1,96 @@
+package com.celements.search.lucene.analysis;
+
+import java.util.Collection;
+import java.util.Objects;
+
+import javax.annotation.concurrent.Immutable;
+import javax.validation.constraints.NotNull;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Describes the view principals of a document as indexed for access control. The allowed field
+ * contains the globally serialized users and groups granted view rights, or {@link #PUBLIC} if
+ * no view rights are defined, the denied field those explicitly denied. A user matches a
+ * document if any of its principals or {@link #PUBLIC} is allowed and none of them is denied, or
+ * if any of its principals is in the admin field, i.e. administers the document's space.
+ */
+@Immutable
+public final class AclFields {
+
+  public static final String FIELD_ALLOWED = "acl_view";
+  public static final String FIELD_DENIED = "acl_view_denied";
+  public static final String FIELD_ADMIN = "acl_admin";
+
+  /**
+   * token of documents viewable by everyone, not a valid reference thus no principal's name
+   */
+  public static final String PUBLIC = "$public";
+
+  private final ImmutableSet<String> allowed;
+  private final ImmutableSet<String> denied;
+  private final ImmutableSet<String> admins;
+
+  public AclFields(@NotNull Collection<String> allowed, @NotNull Collection<String> denied) {
+    this(allowed, denied, ImmutableSet.of());
+  }
+
+  public AclFields(@NotNull Collection<String> allowed, @NotNull Collection<String> denied,
+      @NotNull Collection<String> admins) {
+    this.allowed = ImmutableSet.copyOf(allowed);
+    this.denied = ImmutableSet.copyOf(denied);
+    this.admins = ImmutableSet.copyOf(admins);
+  }
+
+  @NotNull
+  public ImmutableSet<String> getAllowed() {
+    return allowed;
+  }
+
+  @NotNull
+  public ImmutableSet<String> getDenied() {
+    return denied;
+  }
+
+  @NotNull
+  public ImmutableSet<String> getAdmins() {
+    return admins;
+  }
+
+  /**
+   * adds the allowed, denied and admin principals as untokenized, unstored fields
+   */
+  public void addTo(@NotNull Document luceneDoc) {
+    allowed.forEach(token -> luceneDoc.add(newField(FIELD_ALLOWED, token)));
+    denied.forEach(token -> luceneDoc.add(newField(FIELD_DENIED, token)));
+    admins.forEach(token -> luceneDoc.add(newField(FIELD_ADMIN, token)));
+  }
+
+  private static Field newField(String name, String token) {
+    return new Field(name, token, Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(allowed, denied, admins);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj instanceof AclFields) {
+      AclFields other = (AclFields) obj;
+      return allowed.equals(other.allowed) && denied.equals(other.denied)
+          && admins.equals(other.admins);
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return "AclFields [allowed=" + allowed + ", denied=" + denied + ", admins=" + admins + "]";
+  }
+
+}
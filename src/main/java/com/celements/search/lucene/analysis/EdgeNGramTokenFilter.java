@@ -0,0 +1,72 @@
+package com.celements.search.lucene.analysis;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+
+/**
+ * Replaces each token by its prefixes from {@code minGram} up to {@code maxGram} characters, all
+ * at the position of the original token. Tokens shorter than {@code minGram} are dropped. E.g.
+ * 'hans' with grams 1 to 3 results in 'h', 'ha' and 'han'.
+ */
+public final class EdgeNGramTokenFilter extends TokenFilter {
+
+  private final int minGram;
+  private final int maxGram;
+
+  private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+  private final PositionIncrementAttribute posIncrAtt = addAttribute(
+      PositionIncrementAttribute.class);
+
+  private char[] token;
+  private int gramLength;
+  private State state;
+
+  public EdgeNGramTokenFilter(TokenStream input, int minGram, int maxGram) {
+    super(input);
+    checkArgument(minGram > 0, "minGram must be positive");
+    checkArgument(maxGram >= minGram, "maxGram must not be smaller than minGram");
+    this.minGram = minGram;
+    this.maxGram = maxGram;
+  }
+
+  @Override
+  public boolean incrementToken() throws IOException {
+    while (true) {
+      if (token == null) {
+        if (!input.incrementToken()) {
+          return false;
+        } else if (termAtt.length() < minGram) {
+          continue;
+        }
+        token = Arrays.copyOf(termAtt.buffer(), termAtt.length());
+        gramLength = minGram;
+        state = captureState();
+      }
+      if (gramLength <= Math.min(maxGram, token.length)) {
+        restoreState(state);
+        termAtt.copyBuffer(token, 0, gramLength);
+        if (gramLength > minGram) {
+          posIncrAtt.setPositionIncrement(0);
+        }
+        gramLength++;
+        return true;
+      }
+      token = null;
+    }
+  }
+
+  @Override
+  public void reset() throws IOException {
+    super.reset();
+    token = null;
+    state = null;
+  }
+
+}
@@ -0,0 +1,95 @@
+package com.celements.search.lucene.analysis;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+
+import javax.annotation.concurrent.Immutable;
+import javax.validation.constraints.NotNull;
+
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericField;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Describes the trie encoding of numeric and date fields. Numbers are indexed as
+ * {@link NumericField} of their type, dates as long in the form yyyyMMddHHmm matching the
+ * resolution of the string encoded dates. Range restrictions on such fields are compiled to
+ * numeric range filters, which need the same precision step as used for indexing.
+ */
+@Immutable
+public final class NumericFields {
+
+  private static final ImmutableSet<Class<?>> NUMBER_TYPES = ImmutableSet.of(Integer.class,
+      Long.class, Float.class, Double.class);
+
+  private final int precisionStep;
+
+  public NumericFields(int precisionStep) {
+    checkArgument(precisionStep > 0, "precisionStep must be positive");
+    this.precisionStep = precisionStep;
+  }
+
+  public int getPrecisionStep() {
+    return precisionStep;
+  }
+
+  /**
+   * @return true for integer, long, float and double types
+   */
+  public static boolean isNumber(@NotNull Class<?> type) {
+    return NUMBER_TYPES.contains(type);
+  }
+
+  /**
+   * @return true for date types indexed with {@link #dateToLong(LocalDateTime)}
+   */
+  public static boolean isDate(@NotNull Class<?> type) {
+    return (type == LocalDateTime.class) || (type == Date.class);
+  }
+
+  /**
+   * @return the date as long in the form yyyyMMddHHmm, e.g. 202401311530
+   */
+  public static long dateToLong(@NotNull LocalDateTime date) {
+    return (date.getYear() * 100000000L) + (date.getMonthValue() * 1000000L)
+        + (date.getDayOfMonth() * 10000L) + (date.getHour() * 100L) + date.getMinute();
+  }
+
+  /**
+   * @return the numeric field to be indexed for the given number or date, not stored. A
+   *         {@link Date} is converted in the system's time zone, as are the string encoded dates.
+   * @throws IllegalArgumentException
+   *           if the value is neither a supported number nor date
+   */
+  @NotNull
+  public NumericField createField(@NotNull String name, @NotNull Object value) {
+    NumericField field = new NumericField(name, precisionStep, Field.Store.NO, true);
+    if (value instanceof Integer) {
+      field.setIntValue((Integer) value);
+    } else if (value instanceof Long) {
+      field.setLongValue((Long) value);
+    } else if (value instanceof Float) {
+      field.setFloatValue((Float) value);
+    } else if (value instanceof Double) {
+      field.setDoubleValue((Double) value);
+    } else if (value instanceof LocalDateTime) {
+      field.setLongValue(dateToLong((LocalDateTime) value));
+    } else if (value instanceof Date) {
+      field.setLongValue(dateToLong(LocalDateTime.ofInstant(((Date) value).toInstant(),
+          ZoneId.systemDefault())));
+    } else {
+      throw new IllegalArgumentException("unsupported numeric value: " + value);
+    }
+    return field;
+  }
+
+  @Override
+  public String toString() {
+    return "NumericFields [precisionStep=" + precisionStep + "]";
+  }
+
+}
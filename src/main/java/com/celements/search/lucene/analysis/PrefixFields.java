@@ -0,0 +1,82 @@
+package com.celements.search.lucene.analysis;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.Reader;
+import java.util.Collection;
+
+import javax.annotation.concurrent.Immutable;
+import javax.validation.constraints.NotNull;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Describes the edge n-gram companion fields of an index. For each configured field, e.g. the
+ * full text or title, the companion field named {@link #getPrefixField(String)} contains the
+ * prefixes of all its tokens as produced by {@link #tokenStream(Analyzer, String, Reader)}. Prefix
+ * searches on such fields are then a single term lookup on the companion field instead of a term
+ * dictionary expanding prefix query.
+ */
+@Immutable
+public final class PrefixFields {
+
+  public static final String FIELD_SUFFIX = "_prefix";
+
+  private final ImmutableSet<String> fields;
+  private final int minGram;
+  private final int maxGram;
+
+  public PrefixFields(@NotNull Collection<String> fields, int minGram, int maxGram) {
+    checkArgument(minGram > 0, "minGram must be positive");
+    checkArgument(maxGram >= minGram, "maxGram must not be smaller than minGram");
+    this.fields = ImmutableSet.copyOf(fields);
+    this.minGram = minGram;
+    this.maxGram = maxGram;
+  }
+
+  @NotNull
+  public ImmutableSet<String> getFields() {
+    return fields;
+  }
+
+  public int getMinGram() {
+    return minGram;
+  }
+
+  public int getMaxGram() {
+    return maxGram;
+  }
+
+  @NotNull
+  public static String getPrefixField(@NotNull String field) {
+    return field + FIELD_SUFFIX;
+  }
+
+  /**
+   * @return true if the given prefix on the field can be looked up in its companion field
+   */
+  public boolean isLookup(@NotNull String field, @NotNull String prefix) {
+    return fields.contains(field) && (prefix.length() >= minGram)
+        && (prefix.length() <= maxGram);
+  }
+
+  /**
+   * @return the token stream to be indexed into the companion field of the given field, the
+   *         tokens of the analyzer for the field split into their prefixes
+   */
+  @NotNull
+  public TokenStream tokenStream(@NotNull Analyzer analyzer, @NotNull String field,
+      @NotNull Reader reader) {
+    return new EdgeNGramTokenFilter(analyzer.tokenStream(field, reader), minGram, maxGram);
+  }
+
+  @Override
+  public String toString() {
+    return "PrefixFields [fields=" + fields + ", minGram=" + minGram + ", maxGram=" + maxGram
+        + "]";
+  }
+
+}
@@ -7,6 +7,7 @@ import static com.google.common.base.MoreObjects.*;
 import java.util.List;
 import java.util.Optional;
 
+import org.apache.lucene.document.Document;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.Requirement;
 import org.xwiki.model.EntityType;
@@ -20,10 +21,14 @@ import com.celements.common.observation.listener.AbstractRemoteEventListener;
 import com.celements.model.access.exception.DocumentNotExistsException;
 import com.celements.model.util.ModelUtils;
 import com.celements.model.util.References;
+import com.celements.search.lucene.ILuceneIndexService;
+import com.celements.search.lucene.analysis.AclFields;
 import com.celements.search.lucene.observation.event.LuceneQueueDeleteEvent;
 import com.celements.search.lucene.observation.event.LuceneQueueEvent;
 import com.celements.search.lucene.observation.event.LuceneQueueIndexEvent;
 import com.google.common.collect.ImmutableList;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiAttachment;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.plugin.lucene.AbstractIndexData;
@@ -42,6 +47,9 @@ public class QueueEventListener
   @Requirement
   private ModelUtils modelUtils;
 
+  @Requirement
+  private ILuceneIndexService indexService;
+
   @Override
   public String getName() {
     return NAME;
@@ -101,7 +109,8 @@ public class QueueEventListener
   }
 
   DocumentData newDocumentData(XWikiDocument doc) {
-    return new DocumentData(doc, false);
+    Optional<AclFields> acl = indexService.getViewAcl(doc);
+    return acl.isPresent() ? new AclDocumentData(doc, acl.get()) : new DocumentData(doc, false);
   }
 
   private AbstractIndexData newAttachmentData(AttachmentReference attRef) {
@@ -117,7 +126,9 @@ public class QueueEventListener
   }
 
   AttachmentData newAttachmentData(XWikiAttachment att) {
-    return new AttachmentData(att, false);
+    Optional<AclFields> acl = indexService.getViewAcl(att.getDoc());
+    return acl.isPresent() ? new AclAttachmentData(att, acl.get())
+        : new AttachmentData(att, false);
   }
 
   /**
@@ -141,6 +152,46 @@ public class QueueEventListener
         .filter(Optional::isPresent).map(Optional::get);
   }
 
+  /**
+   * adds the view principals to the indexed document, see {@link AclFields}
+   */
+  static class AclDocumentData extends DocumentData {
+
+    private final AclFields acl;
+
+    AclDocumentData(XWikiDocument doc, AclFields acl) {
+      super(doc, false);
+      this.acl = acl;
+    }
+
+    @Override
+    public void addDataToLuceneDocument(Document luceneDoc, XWikiContext context)
+        throws XWikiException {
+      super.addDataToLuceneDocument(luceneDoc, context);
+      acl.addTo(luceneDoc);
+    }
+  }
+
+  /**
+   * adds the view principals of the attachment's document to the indexed attachment
+   */
+  static class AclAttachmentData extends AttachmentData {
+
+    private final AclFields acl;
+
+    AclAttachmentData(XWikiAttachment att, AclFields acl) {
+      super(att, false);
+      this.acl = acl;
+    }
+
+    @Override
+    public void addDataToLuceneDocument(Document luceneDoc, XWikiContext context)
+        throws XWikiException {
+      super.addDataToLuceneDocument(luceneDoc, context);
+      acl.addTo(luceneDoc);
+    }
+  }
+
   private boolean isLucenePluginAvailable() {
     try {
       return (getLucenePlugin() != null);
@@ -0,0 +1,119 @@
+package com.celements.search.lucene.observation;
+
+import static com.celements.common.MoreObjectsCel.*;
+import static com.google.common.base.MoreObjects.*;
+
+import java.util.List;
+import java.util.Objects;
+
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.annotation.Requirement;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.observation.event.Event;
+
+import com.celements.common.observation.listener.AbstractLocalEventListener;
+import com.celements.model.util.ModelUtils;
+import com.celements.search.lucene.ILuceneIndexService;
+import com.celements.search.lucene.analysis.AclFields;
+import com.google.common.collect.ImmutableList;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * Re-indexes the documents affected by changed rights if the index contains {@link AclFields}:
+ * the space for global rights on its 'WebPreferences', the spaces without own view rights for
+ * global rights on 'XWiki.XWikiPreferences' and the attachments of a document for its rights. A
+ * document itself is re-indexed on its own update.
+ */
+@Component(QueueRightsEventConverter.NAME)
+public class QueueRightsEventConverter extends AbstractLocalEventListener<XWikiDocument, Object> {
+
+  public static final String NAME = "LuceneQueueRightsEventConverter";
+
+  static final String SPACE_PREFERENCES = "WebPreferences";
+  static final String WIKI_PREFERENCES = "XWiki.XWikiPreferences";
+  static final String RIGHTS_CLASS = "XWikiRights";
+  static final String GLOBAL_RIGHTS_CLASS = "XWikiGlobalRights";
+
+  @Requirement
+  private ILuceneIndexService indexService;
+
+  @Requirement
+  private ModelUtils modelUtils;
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public List<Event> getEvents() {
+    return ImmutableList.of(
+        new DocumentCreatedEvent(),
+        new DocumentUpdatedEvent(),
+        new DocumentDeletedEvent());
+  }
+
+  @Override
+  protected void onEventInternal(Event event, XWikiDocument doc, Object data) {
+    if (indexService.isAclEnabled()) {
+      DocumentReference docRef = doc.getDocumentReference();
+      if (isWikiPreferences(docRef) && rightsChanged(doc, GLOBAL_RIGHTS_CLASS)) {
+        modelUtils.getAllSpaces(docRef.getWikiReference())
+            .filter(spaceRef -> !indexService.hasSpaceViewRights(spaceRef))
+            .forEach(this::rebuild);
+      } else if (docRef.getName().equals(SPACE_PREFERENCES)
+          && rightsChanged(doc, GLOBAL_RIGHTS_CLASS)) {
+        rebuild(docRef.getLastSpaceReference());
+      }
+      if (!tryCast(event, DocumentDeletedEvent.class).isPresent()
+          && rightsChanged(doc, RIGHTS_CLASS)) {
+        queueAttachments(doc);
+      }
+    }
+  }
+
+  private boolean isWikiPreferences(DocumentReference docRef) {
+    return (docRef.getLastSpaceReference().getName() + "." + docRef.getName()).equals(
+        WIKI_PREFERENCES);
+  }
+
+  private void rebuild(SpaceReference spaceRef) {
+    indexService.rebuildIndex(spaceRef);
+    LOGGER.info("rebuilding [{}] for changed rights", spaceRef);
+  }
+
+  /**
+   * the attachments are indexed with the view principals of their document, thus queued with
+   * the default instead of the low priority of the document's update
+   */
+  private void queueAttachments(XWikiDocument doc) {
+    doc.getAttachmentList().stream()
+        .filter(Objects::nonNull)
+        .map(att -> new AttachmentReference(att.getFilename(), doc.getDocumentReference()))
+        .forEach(attRef -> {
+          indexService.queue(attRef);
+          LOGGER.debug("queued [{}] for changed rights", attRef);
+        });
+  }
+
+  private boolean rightsChanged(XWikiDocument doc, String rightsClass) {
+    return !getRights(doc, rightsClass).equals(getRights(doc.getOriginalDocument(),
+        rightsClass));
+  }
+
+  private List<BaseObject> getRights(XWikiDocument doc, String rightsClass) {
+    if (doc == null) {
+      return ImmutableList.of();
+    }
+    DocumentReference classRef = new DocumentReference(rightsClass, new SpaceReference(
+        "XWiki", doc.getDocumentReference().getWikiReference()));
+    return firstNonNull(doc.getXObjects(classRef), ImmutableList.<BaseObject>of());
+  }
+
+}
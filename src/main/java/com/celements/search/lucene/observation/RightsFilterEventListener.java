@@ -0,0 +1,75 @@
+package com.celements.search.lucene.observation;
+
+import static com.google.common.base.MoreObjects.*;
+
+import java.util.List;
+
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.annotation.Requirement;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.observation.event.Event;
+
+import com.celements.common.observation.listener.AbstractRemoteEventListener;
+import com.celements.search.lucene.ILuceneSearchService;
+import com.google.common.collect.ImmutableList;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * Invalidates the view rights filters of {@link ILuceneSearchService#getViewRightsFilter()} on
+ * changed rights or group memberships. Listens on remote events too, since every cluster node
+ * caches its own filters.
+ */
+@Component(RightsFilterEventListener.NAME)
+public class RightsFilterEventListener
+    extends AbstractRemoteEventListener<XWikiDocument, Object> {
+
+  public static final String NAME = "celements.search.RightsFilterEventListener";
+
+  static final List<String> RIGHTS_CLASSES = ImmutableList.of("XWikiRights",
+      "XWikiGlobalRights", "XWikiGroups");
+
+  @Requirement
+  private ILuceneSearchService searchService;
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public List<Event> getEvents() {
+    return ImmutableList.of(
+        new DocumentCreatedEvent(),
+        new DocumentUpdatedEvent(),
+        new DocumentDeletedEvent());
+  }
+
+  @Override
+  protected void onEventInternal(Event event, XWikiDocument doc, Object data) {
+    if (rightsChanged(doc)) {
+      searchService.invalidateRightsFilters();
+      LOGGER.info("invalidated rights filters for changed rights on [{}]",
+          doc.getDocumentReference());
+    }
+  }
+
+  private boolean rightsChanged(XWikiDocument doc) {
+    return RIGHTS_CLASSES.stream().anyMatch(className -> !getXObjects(doc, className).equals(
+        getXObjects(doc.getOriginalDocument(), className)));
+  }
+
+  private List<BaseObject> getXObjects(XWikiDocument doc, String className) {
+    if (doc == null) {
+      return ImmutableList.of();
+    }
+    DocumentReference classRef = new DocumentReference(className, new SpaceReference("XWiki",
+        doc.getDocumentReference().getWikiReference()));
+    return firstNonNull(doc.getXObjects(classRef), ImmutableList.<BaseObject>of());
+  }
+
+}
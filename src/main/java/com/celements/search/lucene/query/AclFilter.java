@@ -0,0 +1,90 @@
+package com.celements.search.lucene.query;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import javax.annotation.concurrent.Immutable;
+import javax.validation.constraints.NotNull;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.OpenBitSet;
+
+import com.celements.search.lucene.analysis.AclFields;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Matches the documents viewable by the given principals according to their indexed
+ * {@link AclFields}, i.e. a principal or {@link AclFields#PUBLIC} is allowed and no principal is
+ * denied, or a principal administers the document's space regardless of denials. Filters are
+ * equal by their principals, thus users with the same group memberships share the cached bitsets
+ * when wrapped by the {@link FilterCache}.
+ */
+@Immutable
+public final class AclFilter extends Filter {
+
+  private static final long serialVersionUID = 1L;
+
+  private final ImmutableSet<String> principals;
+
+  public AclFilter(@NotNull Collection<String> principals) {
+    this.principals = ImmutableSet.copyOf(principals);
+  }
+
+  @NotNull
+  public ImmutableSet<String> getPrincipals() {
+    return principals;
+  }
+
+  @Override
+  public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+    OpenBitSet bits = new OpenBitSet(reader.maxDoc());
+    TermDocs termDocs = reader.termDocs();
+    try {
+      apply(termDocs, new Term(AclFields.FIELD_ALLOWED, AclFields.PUBLIC), bits, true);
+      for (String principal : principals) {
+        apply(termDocs, new Term(AclFields.FIELD_ALLOWED, principal), bits, true);
+      }
+      for (String principal : principals) {
+        apply(termDocs, new Term(AclFields.FIELD_DENIED, principal), bits, false);
+      }
+      for (String principal : principals) {
+        apply(termDocs, new Term(AclFields.FIELD_ADMIN, principal), bits, true);
+      }
+    } finally {
+      termDocs.close();
+    }
+    return bits;
+  }
+
+  private static void apply(TermDocs termDocs, Term term, OpenBitSet bits, boolean set)
+      throws IOException {
+    termDocs.seek(term);
+    while (termDocs.next()) {
+      if (set) {
+        bits.fastSet(termDocs.doc());
+      } else {
+        bits.fastClear(termDocs.doc());
+      }
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    return principals.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return (obj instanceof AclFilter) && principals.equals(((AclFilter) obj).principals);
+  }
+
+  @Override
+  public String toString() {
+    return "AclFilter " + principals;
+  }
+
+}
@@ -0,0 +1,73 @@
+package com.celements.search.lucene.query;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.annotation.concurrent.Immutable;
+import javax.validation.constraints.NotNull;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.OpenBitSetDISI;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Matches documents accepted by all given filters. The filters are evaluated in the given order
+ * and evaluation stops as soon as no document is left, thus the most selective filter should be
+ * given first.
+ */
+@Immutable
+public final class ConjunctionFilter extends Filter {
+
+  private static final long serialVersionUID = 1L;
+
+  private final ImmutableList<Filter> filters;
+
+  public ConjunctionFilter(@NotNull List<Filter> filters) {
+    this.filters = ImmutableList.copyOf(filters);
+  }
+
+  @NotNull
+  public ImmutableList<Filter> getFilters() {
+    return filters;
+  }
+
+  @Override
+  public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+    OpenBitSetDISI result = null;
+    for (Filter filter : filters) {
+      DocIdSet docIdSet = filter.getDocIdSet(reader);
+      DocIdSetIterator iterator = (docIdSet != null) ? docIdSet.iterator() : null;
+      if (iterator == null) {
+        return DocIdSet.EMPTY_DOCIDSET;
+      } else if (result == null) {
+        result = new OpenBitSetDISI(iterator, reader.maxDoc());
+      } else {
+        result.inPlaceAnd(iterator);
+      }
+      if (result.isEmpty()) {
+        return DocIdSet.EMPTY_DOCIDSET;
+      }
+    }
+    return (result != null) ? result : DocIdSet.EMPTY_DOCIDSET;
+  }
+
+  @Override
+  public int hashCode() {
+    return filters.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return (obj instanceof ConjunctionFilter) && filters.equals(((ConjunctionFilter) obj).filters);
+  }
+
+  @Override
+  public String toString() {
+    return "ConjunctionFilter " + filters;
+  }
+
+}
@@ -0,0 +1,95 @@
+package com.celements.search.lucene.query;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.validation.constraints.NotNull;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Searcher;
+
+/**
+ * Counts the matching documents without scoring, sorting or loading them. Counting stops once
+ * the maximum count is reached, in which case the count is a lower bound only.
+ */
+@NotThreadSafe
+public final class CountingCollector extends Collector {
+
+  private final int maxCount;
+  private int count;
+  private boolean terminated;
+
+  public CountingCollector(int maxCount) {
+    checkArgument(maxCount > 0, "maxCount must be positive");
+    this.maxCount = maxCount;
+  }
+
+  /**
+   * @param searcher
+   *          the searcher to count on, e.g. the one the results are fetched from
+   * @param filter
+   *          optional filter restricting the counted documents, e.g. a cached rights filter
+   * @param maxCount
+   *          count at which counting stops, {@link Integer#MAX_VALUE} for an exact count
+   */
+  @NotNull
+  public static HitCount count(@NotNull Searcher searcher, @NotNull Query query,
+      @Nullable Filter filter, int maxCount) throws IOException {
+    CountingCollector collector = new CountingCollector(maxCount);
+    try {
+      checkNotNull(searcher).search(checkNotNull(query), filter, collector);
+    } catch (MaxCountReachedException exc) {
+      // expected, terminates the collection early
+    }
+    return collector.getHitCount();
+  }
+
+  @NotNull
+  public HitCount getHitCount() {
+    return new HitCount(count, !terminated);
+  }
+
+  @Override
+  public void setScorer(Scorer scorer) {
+    // scores aren't needed for counting
+  }
+
+  @Override
+  public void collect(int doc) {
+    if (count >= maxCount) {
+      terminated = true;
+      throw MaxCountReachedException.INSTANCE;
+    }
+    count++;
+  }
+
+  @Override
+  public void setNextReader(IndexReader reader, int docBase) {}
+
+  @Override
+  public boolean acceptsDocsOutOfOrder() {
+    return true;
+  }
+
+  /**
+   * lucene 3.4 has no means to terminate a collection other than throwing out of the collector
+   */
+  private static final class MaxCountReachedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    static final MaxCountReachedException INSTANCE = new MaxCountReachedException();
+
+    private MaxCountReachedException() {
+      super(null, null, false, false);
+    }
+  }
+
+}
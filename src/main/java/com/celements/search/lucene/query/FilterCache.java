@@ -0,0 +1,71 @@
+package com.celements.search.lucene.query;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.validation.constraints.NotNull;
+
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.CachingWrapperFilter.DeletesMode;
+import org.apache.lucene.search.Filter;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Shares {@link CachingWrapperFilter} instances between compiled queries. Equal filters map to
+ * the same caching instance, which keeps their bitsets per segment reader until the reader is
+ * garbage collected, so only segments changed since the last search are evaluated again.
+ */
+@ThreadSafe
+public final class FilterCache {
+
+  private final Cache<Filter, Filter> filters;
+
+  public FilterCache(long maximumSize) {
+    filters = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+  }
+
+  /**
+   * @return the shared caching filter wrapping a filter equal to the given one
+   */
+  @NotNull
+  public Filter get(@NotNull Filter filter) {
+    try {
+      return filters.get(checkNotNull(filter), () -> new CachedFilter(filter));
+    } catch (ExecutionException exc) {
+      throw new IllegalStateException(exc);
+    }
+  }
+
+  @NotNull
+  public CacheStats stats() {
+    return filters.stats();
+  }
+
+  /**
+   * exposes the wrapped filter, e.g. for cost estimations by the {@link QueryPlanner}
+   */
+  public static final class CachedFilter extends CachingWrapperFilter {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Filter delegate;
+
+    CachedFilter(Filter filter) {
+      // reopened readers share the segment core but may have new deletions
+      super(filter, DeletesMode.RECACHE);
+      this.delegate = filter;
+    }
+
+    @NotNull
+    public Filter getFilter() {
+      return delegate;
+    }
+
+  }
+
+}
@@ -0,0 +1,109 @@
+package com.celements.search.lucene.query;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import javax.annotation.concurrent.Immutable;
+import javax.validation.constraints.NotNull;
+
+import org.apache.lucene.search.FuzzyQuery;
+
+/**
+ * Limits the term expansion of fuzzy searches. Only terms sharing the first {@code prefixLength}
+ * characters with the searched term are considered, which confines the enumeration to the range
+ * of the sorted term dictionary starting with this prefix instead of scanning all its terms. Of
+ * these candidates at most {@code maxExpansions} of the most similar terms are searched for.
+ */
+@Immutable
+public final class FuzzyBounds {
+
+  /**
+   * unbounded, as used by the lucene query parser
+   */
+  public static final FuzzyBounds UNBOUNDED = new FuzzyBounds(FuzzyQuery.defaultPrefixLength,
+      FuzzyQuery.defaultMaxExpansions);
+
+  private final int prefixLength;
+  private final int maxExpansions;
+
+  public FuzzyBounds(int prefixLength, int maxExpansions) {
+    checkArgument(prefixLength >= 0, "prefixLength must not be negative");
+    checkArgument(maxExpansions > 0, "maxExpansions must be positive");
+    this.prefixLength = prefixLength;
+    this.maxExpansions = maxExpansions;
+  }
+
+  public int getPrefixLength() {
+    return prefixLength;
+  }
+
+  public int getMaxExpansions() {
+    return maxExpansions;
+  }
+
+  /**
+   * @return the bounds explicitly set on the fuzzy restrictions within the given tree in visiting
+   *         order, null for fuzzy restrictions without bounds. Needed alongside
+   *         {@link IQueryRestriction#getQueryString()} to identify a compiled query, since the
+   *         query syntax can't express the bounds.
+   */
+  @NotNull
+  public static List<FuzzyBounds> collect(@NotNull IQueryRestriction restr) {
+    List<FuzzyBounds> bounds = new ArrayList<>();
+    restr.accept(new IQueryRestrictionVisitor() {
+
+      @Override
+      public void visit(QueryRestriction restr) {
+        if (restr.getFuzzy().isPresent()) {
+          bounds.add(restr.getFuzzyBounds().orNull());
+        }
+      }
+
+      @Override
+      public void visit(QueryRestrictionGroup restrGrp) {
+        for (IQueryRestriction restr : restrGrp) {
+          if (restr != null) {
+            restr.accept(this);
+          }
+        }
+      }
+
+      @Override
+      public void visit(QueryRestrictionString restr) {}
+
+      @Override
+      public void visit(QueryRestrictionTerms restr) {}
+
+      @Override
+      public void visit(QueryRestrictionNumericRange restr) {}
+
+      @Override
+      public void visitOther(IQueryRestriction restr) {}
+    });
+    return bounds.isEmpty() ? Collections.emptyList() : bounds;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(prefixLength, maxExpansions);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj instanceof FuzzyBounds) {
+      FuzzyBounds other = (FuzzyBounds) obj;
+      return (prefixLength == other.prefixLength) && (maxExpansions == other.maxExpansions);
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return "FuzzyBounds [prefixLength=" + prefixLength + ", maxExpansions=" + maxExpansions + "]";
+  }
+
+}
@@ -0,0 +1,54 @@
+package com.celements.search.lucene.query;
+
+import java.util.Objects;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Number of hits as counted by the {@link CountingCollector}.
+ */
+@Immutable
+public final class HitCount {
+
+  private final int count;
+  private final boolean exact;
+
+  HitCount(int count, boolean exact) {
+    this.count = count;
+    this.exact = exact;
+  }
+
+  /**
+   * @return the number of hits, a lower bound if not {@link #isExact()}
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * @return false if counting stopped at the maximum count, thus more hits may exist
+   */
+  public boolean isExact() {
+    return exact;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(count, exact);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj instanceof HitCount) {
+      HitCount other = (HitCount) obj;
+      return (count == other.count) && (exact == other.exact);
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return (exact ? "" : ">=") + count;
+  }
+
+}
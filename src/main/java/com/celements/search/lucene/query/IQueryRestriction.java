@@ -20,4 +20,28 @@ public interface IQueryRestriction {
 
   public boolean isEmpty();
 
+  /**
+   * @return true if this restriction is immutable, see {@link #freeze()}
+   */
+  public default boolean isFrozen() {
+    return false;
+  }
+
+  /**
+   * Returns an immutable equal copy of this restriction, or this restriction itself if already
+   * frozen. Frozen restrictions compute their query string and hash code only once, are shared
+   * between equal subtrees and may be used concurrently, e.g. as cache keys. Modifying them
+   * throws an {@link UnsupportedOperationException}, {@link #copy()} returns a mutable copy.
+   *
+   * @throws UnsupportedOperationException
+   *           if the implementation doesn't support freezing
+   */
+  public default IQueryRestriction freeze() {
+    throw new UnsupportedOperationException("freeze not supported by " + getClass());
+  }
+
+  public default void accept(IQueryRestrictionVisitor visitor) {
+    visitor.visitOther(this);
+  }
+
 }
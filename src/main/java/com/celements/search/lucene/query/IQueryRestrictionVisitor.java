@@ -0,0 +1,24 @@
+package com.celements.search.lucene.query;
+
+/**
+ * Visitor over {@link IQueryRestriction} trees, see {@link IQueryRestriction#accept}. Groups are
+ * not traversed automatically, the visitor decides whether and how to descend into them.
+ */
+public interface IQueryRestrictionVisitor {
+
+  public void visit(QueryRestriction restr);
+
+  public void visit(QueryRestrictionString restr);
+
+  public void visit(QueryRestrictionTerms restr);
+
+  public void visit(QueryRestrictionNumericRange restr);
+
+  public void visit(QueryRestrictionGroup restrGrp);
+
+  /**
+   * called for implementations unknown to the visitor
+   */
+  public void visitOther(IQueryRestriction restr);
+
+}
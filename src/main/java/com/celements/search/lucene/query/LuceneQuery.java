@@ -17,6 +17,7 @@ import org.xwiki.model.reference.WikiReference;
 
 import com.celements.model.context.ModelContext;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.xpn.xwiki.plugin.lucene.IndexFields;
 import com.xpn.xwiki.web.Utils;
 
@@ -47,6 +48,7 @@ public class LuceneQuery extends QueryRestrictionGroup {
   }
 
   public void setDocTypes(@NotNull Collection<LuceneDocType> docTypes) {
+    checkNotFrozen();
     this.docTypes = ImmutableList.copyOf(docTypes);
   }
 
@@ -102,6 +104,7 @@ public class LuceneQuery extends QueryRestrictionGroup {
   }
 
   public void setWikis(List<WikiReference> wikiRefs) {
+    checkNotFrozen();
     if ((wikiRefs == null) || wikiRefs.isEmpty()) {
       wikis = Collections.emptyList();
     } else {
@@ -109,12 +112,35 @@ public class LuceneQuery extends QueryRestrictionGroup {
     }
   }
 
+  /**
+   * @return the doc type and wiki restrictions followed by the restrictions of this query
+   */
   @Override
-  public String getQueryString() {
-    QueryRestrictionGroup restrGrp = super.copy();
-    restrGrp.add(0, getAsRestrGrp(wikis));
-    restrGrp.add(0, getAsRestrGrp(docTypes));
-    return restrGrp.getQueryString();
+  Iterable<IQueryRestriction> getRestrictions() {
+    List<IQueryRestriction> prefixRestrs = new ArrayList<>(2);
+    for (QueryRestrictionGroup restrGrp : Arrays.asList(getAsRestrGrp(docTypes),
+        getAsRestrGrp(wikis))) {
+      if (!restrGrp.isEmpty() && !this.contains(restrGrp)) {
+        prefixRestrs.add(restrGrp);
+      }
+    }
+    return Iterables.concat(prefixRestrs, this);
+  }
+
+  /**
+   * @return an immutable copy of this query, see {@link IQueryRestriction#freeze()}
+   */
+  @Override
+  public LuceneQuery freeze() {
+    if (isFrozen()) {
+      return this;
+    }
+    LuceneQuery frozenQuery = new LuceneQuery();
+    frozenQuery.docTypes = docTypes;
+    frozenQuery.wikis = wikis;
+    frozenQuery.setType(getType());
+    frozenQuery.setNegate(getNegate());
+    return freezeInto(frozenQuery);
   }
 
   @Override
@@ -122,7 +148,9 @@ public class LuceneQuery extends QueryRestrictionGroup {
     LuceneQuery copy = new LuceneQuery();
     copy.docTypes = docTypes;
     copy.wikis = wikis;
-    copy.addAll(super.copy());
+    copy.setType(getType());
+    copy.setNegate(getNegate());
+    copyInto(copy);
     return copy;
   }
 
@@ -191,6 +219,9 @@ public class LuceneQuery extends QueryRestrictionGroup {
 
   @Override
   public int hashCode() {
+    if (isFrozen()) {
+      return super.hashCode();
+    }
     return new HashCodeBuilder().append(super.hashCode()).append(docTypes).append(wikis).hashCode();
   }
 
@@ -0,0 +1,551 @@
+package com.celements.search.lucene.query;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.validation.constraints.NotNull;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.MultiPhraseQuery;
+import org.apache.lucene.search.NumericRangeFilter;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.util.Version;
+
+import com.celements.search.lucene.analysis.PrefixFields;
+import com.celements.search.lucene.query.QueryRestrictionGroup.Type;
+import com.google.common.collect.BoundType;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Range;
+import com.xpn.xwiki.plugin.lucene.IndexFields;
+
+/**
+ * Compiles {@link IQueryRestriction} trees directly into lucene {@link Query} objects, producing
+ * the same query the {@link QueryParser} would build from
+ * {@link IQueryRestriction#getQueryString()} without rendering and re-parsing the string.
+ * Restrictions using query syntax which isn't modelled by the restriction itself (e.g. operators
+ * within a non tokenized value) are handed to the {@link QueryParser}.
+ * <p>
+ * If {@link PrefixFields} are provided, prefix searches on their fields are looked up as a single
+ * term in the edge n-gram companion field instead of expanding the prefix in the term dictionary.
+ * Fuzzy searches are limited by the {@link FuzzyBounds} of their restriction or the given default.
+ */
+@ThreadSafe
+public class LuceneQueryCompiler {
+
+  private static final Pattern RANGE_PATTERN = Pattern.compile(
+      "^([\\[{])\\s*(\\S+)\\s+TO\\s+(\\S+)\\s*([\\]}])$");
+  private static final Pattern OPERATOR_PATTERN = Pattern.compile(
+      "(^|\\s)(AND|OR|NOT|&&|\\|\\|)(\\s|$)");
+  private static final String SYNTAX_CHARS = "\\+-!():^[]\"{}~*?|&";
+
+  /**
+   * the default field of the lucene plugin's query parser
+   */
+  public static final String DEFAULT_FIELD = IndexFields.FULLTEXT;
+
+  /**
+   * the default operator of the lucene plugin's query parser
+   */
+  public static final QueryParser.Operator DEFAULT_OPERATOR = QueryParser.AND_OPERATOR;
+
+  private final Version version;
+  private final Analyzer analyzer;
+  private final String defaultField;
+  private final QueryParser.Operator defaultOperator;
+  private final FilterCache filterCache;
+  private final PrefixFields prefixFields;
+  private final FuzzyBounds fuzzyBounds;
+
+  public LuceneQueryCompiler(@NotNull Version version, @NotNull Analyzer analyzer) {
+    this(version, analyzer, null);
+  }
+
+  public LuceneQueryCompiler(@NotNull Version version, @NotNull Analyzer analyzer,
+      @Nullable FilterCache filterCache) {
+    this(version, analyzer, filterCache, null);
+  }
+
+  public LuceneQueryCompiler(@NotNull Version version, @NotNull Analyzer analyzer,
+      @Nullable FilterCache filterCache, @Nullable PrefixFields prefixFields) {
+    this(version, analyzer, filterCache, prefixFields, null);
+  }
+
+  /**
+   * @param fuzzyBounds
+   *          applying to fuzzy restrictions without own bounds, unbounded if null
+   */
+  public LuceneQueryCompiler(@NotNull Version version, @NotNull Analyzer analyzer,
+      @Nullable FilterCache filterCache, @Nullable PrefixFields prefixFields,
+      @Nullable FuzzyBounds fuzzyBounds) {
+    this(version, analyzer, DEFAULT_FIELD, DEFAULT_OPERATOR, filterCache, prefixFields,
+        fuzzyBounds);
+  }
+
+  /**
+   * @param defaultField
+   *          the default field of the query parser executing the search, applying to parsed
+   *          restrictions without field
+   * @param defaultOperator
+   *          the default operator of the query parser executing the search
+   */
+  public LuceneQueryCompiler(@NotNull Version version, @NotNull Analyzer analyzer,
+      @NotNull String defaultField, @NotNull QueryParser.Operator defaultOperator,
+      @Nullable FilterCache filterCache, @Nullable PrefixFields prefixFields,
+      @Nullable FuzzyBounds fuzzyBounds) {
+    this.version = checkNotNull(version);
+    this.analyzer = checkNotNull(analyzer);
+    this.defaultField = checkNotNull(defaultField);
+    this.defaultOperator = checkNotNull(defaultOperator);
+    this.filterCache = filterCache;
+    this.prefixFields = prefixFields;
+    this.fuzzyBounds = (fuzzyBounds != null) ? fuzzyBounds : FuzzyBounds.UNBOUNDED;
+  }
+
+  public Version getVersion() {
+    return version;
+  }
+
+  public Analyzer getAnalyzer() {
+    return analyzer;
+  }
+
+  public String getDefaultField() {
+    return defaultField;
+  }
+
+  public QueryParser.Operator getDefaultOperator() {
+    return defaultOperator;
+  }
+
+  /**
+   * @return the compiled query, an empty {@link BooleanQuery} if the restriction is empty
+   */
+  @NotNull
+  public Query compile(@NotNull IQueryRestriction restr) throws ParseException {
+    Query query = compileUnnegated(checkNotNull(restr));
+    if (query == null) {
+      query = new BooleanQuery();
+    } else if (isNegated(restr, restr.getNegate())) {
+      query = prohibit(query);
+    }
+    return query;
+  }
+
+  /**
+   * @return the query for the given restriction ignoring its negation, null if empty
+   */
+  @Nullable
+  Query compileUnnegated(IQueryRestriction restr) throws ParseException {
+    if (restr instanceof QueryRestrictionGroup) {
+      return compileGroup((QueryRestrictionGroup) restr);
+    } else if (restr instanceof QueryRestriction) {
+      return compileRestriction((QueryRestriction) restr);
+    } else if (restr instanceof QueryRestrictionTerms) {
+      return compileTerms((QueryRestrictionTerms) restr);
+    } else if (restr instanceof QueryRestrictionNumericRange) {
+      return compileNumericRange((QueryRestrictionNumericRange) restr);
+    } else if (restr instanceof QueryRestrictionOverlap) {
+      return compileOverlap((QueryRestrictionOverlap) restr);
+    } else if (restr instanceof QueryRestrictionParsed) {
+      return (Query) ((QueryRestrictionParsed) restr).getQuery().clone();
+    } else if (!restr.isEmpty()) {
+      return parse(restr.copy().setNegate(false).getQueryString());
+    }
+    return null;
+  }
+
+  /**
+   * mirrors {@link QueryRestrictionGroup#getQueryString()} including its
+   * {@link QueryRestrictionGroup#cleanup()} of negated expressions, the negation of the group
+   * itself is evaluated by {@link #isNegated(IQueryRestriction, boolean)}
+   */
+  private Query compileGroup(QueryRestrictionGroup grp) throws ParseException {
+    boolean cleanup = QueryRestrictionGroup.needsCleanup(grp.getRestrictions());
+    Type type = grp.getType();
+    if (cleanup) {
+      type = (type == Type.AND) ? Type.OR : Type.AND;
+    }
+    BooleanQuery query = new BooleanQuery();
+    for (IQueryRestriction restr : grp.getRestrictions()) {
+      Query clause = ((restr != null) && !restr.isEmpty()) ? compileUnnegated(restr) : null;
+      if (clause != null) {
+        if (isNegated(restr, restr.getNegate() && !cleanup)) {
+          query.add(clause, Occur.MUST_NOT);
+        } else {
+          query.add(clause, (type == Type.AND) ? Occur.MUST : Occur.SHOULD);
+        }
+      }
+    }
+    return unwrap(query);
+  }
+
+  /**
+   * @return true if the restriction with the given negation is rendered negated, considering
+   *         that {@link QueryRestrictionGroup#cleanup()} inverts the negation of groups
+   */
+  private boolean isNegated(IQueryRestriction restr, boolean negate) {
+    if (restr instanceof QueryRestrictionGroup) {
+      return negate ^ QueryRestrictionGroup.needsCleanup(
+          ((QueryRestrictionGroup) restr).getRestrictions());
+    }
+    return negate;
+  }
+
+  private Query compileRestriction(QueryRestriction restr) throws ParseException {
+    if (restr.getSpecifier().isEmpty()) {
+      return null;
+    }
+    Query query;
+    if (restr.isTokenizeQuery()) {
+      query = compileTokenized(restr);
+    } else {
+      query = compileUntokenized(restr);
+    }
+    if ((query != null) && restr.getBoost().isPresent() && (restr.getBoost().get() > 0)) {
+      query.setBoost(round(restr, restr.getBoost().get()));
+    }
+    return query;
+  }
+
+  private Query compileTokenized(QueryRestriction restr) {
+    String field = restr.getSpecifier();
+    List<String> tokens = restr.getTokens();
+    int proximity = restr.getProximity().or(0);
+    if (proximity > 1) {
+      StringBuilder phrase = new StringBuilder();
+      for (String token : tokens) {
+        phrase.append(' ').append(token);
+      }
+      return analyze(field, phrase.toString(), true, proximity);
+    }
+    BooleanQuery query = new BooleanQuery();
+    for (String token : tokens) {
+      Occur occur = Occur.MUST;
+      if ((token.charAt(0) == '+') || (token.charAt(0) == '-')) {
+        occur = (token.charAt(0) == '-') ? Occur.MUST_NOT : Occur.MUST;
+        token = token.substring(1);
+      }
+      Query clause;
+      if ((token.length() > 1) && token.startsWith("\"") && token.endsWith("\"")) {
+        clause = analyze(field, token.substring(1, token.length() - 1), true, 0);
+        if (tokens.size() == 1) {
+          clause = exact(clause);
+        }
+      } else {
+        token = stripQuotes(token);
+        if (!token.endsWith("*")) {
+          token += "*";
+        }
+        clause = expand(field, token);
+        if (restr.getFuzzy().isPresent() && (clause != null)) {
+          clause = or(clause, fuzzy(restr, field, token.substring(0, token.length() - 1)));
+        }
+      }
+      if (clause != null) {
+        query.add(clause, occur);
+      }
+    }
+    return unwrap(query);
+  }
+
+  private Query compileUntokenized(QueryRestriction restr) throws ParseException {
+    String field = restr.getSpecifier();
+    String value = restr.filterToken(restr.getQuery());
+    Matcher rangeMatcher = RANGE_PATTERN.matcher(value);
+    if (value.isEmpty()) {
+      return null;
+    } else if (rangeMatcher.matches() && !restr.getFuzzy().isPresent()) {
+      return new TermRangeQuery(field, lowercase(rangeMatcher.group(2)),
+          lowercase(rangeMatcher.group(3)), "[".equals(rangeMatcher.group(1)),
+          "]".equals(rangeMatcher.group(4)));
+    } else if (isPhrase(value) && !restr.getFuzzy().isPresent()) {
+      return exact(analyze(field, value.substring(1, value.length() - 1), true, 0));
+    } else if (!hasSyntax(value)) {
+      BooleanQuery query = new BooleanQuery();
+      for (String term : value.split("\\s+")) {
+        Query clause = restr.getFuzzy().isPresent() ? fuzzy(restr, field, term)
+            : analyze(field, term, false, 0);
+        if (clause != null) {
+          query.add(clause, Occur.MUST);
+        }
+      }
+      return unwrap(query);
+    }
+    return parse(restr.copy().setNegate(false).setBoost(0).getQueryString());
+  }
+
+  /**
+   * values analyzed to a single term are collected into a {@link TermsFilter}, others (e.g. split
+   * by the analyzer into multiple terms) fall back to phrase queries
+   */
+  private Query compileTerms(QueryRestrictionTerms restr) {
+    if (restr.isEmpty()) {
+      return null;
+    }
+    String field = restr.getField();
+    Set<Term> terms = new HashSet<>();
+    BooleanQuery query = new BooleanQuery();
+    for (String value : restr.getValues()) {
+      Query clause = analyze(field, restr.filterToken(value), true, 0);
+      if (clause instanceof TermQuery) {
+        terms.add(((TermQuery) clause).getTerm());
+      } else if (clause != null) {
+        query.add(clause, Occur.SHOULD);
+      }
+    }
+    if (!terms.isEmpty()) {
+      Query filterQuery = filter(new TermsFilter(terms));
+      if (query.clauses().isEmpty()) {
+        return filterQuery;
+      }
+      query.add(filterQuery, Occur.SHOULD);
+    }
+    return unwrap(query);
+  }
+
+  private Query compileNumericRange(QueryRestrictionNumericRange restr) {
+    if (restr.isEmpty()) {
+      return null;
+    }
+    return filter(newNumericRangeFilter(restr));
+  }
+
+  /**
+   * the bound on the end field is evaluated first since it's usually the more selective one,
+   * e.g. in an archive of events most have ended before the searched range
+   */
+  private Query compileOverlap(QueryRestrictionOverlap restr) {
+    if (restr.isEmpty()) {
+      return null;
+    }
+    List<Filter> filters = new ArrayList<>();
+    for (QueryRestrictionNumericRange bound : Arrays.asList(restr.getEndBound(),
+        restr.getStartBound())) {
+      if (bound != null) {
+        filters.add(newNumericRangeFilter(bound));
+      }
+    }
+    return filter((filters.size() == 1) ? filters.get(0) : new ConjunctionFilter(filters));
+  }
+
+  private static Filter newNumericRangeFilter(QueryRestrictionNumericRange restr) {
+    String field = restr.getField();
+    int step = restr.getPrecisionStep();
+    Range<? extends Number> range = restr.getRange();
+    Number min = range.hasLowerBound() ? range.lowerEndpoint() : null;
+    Number max = range.hasUpperBound() ? range.upperEndpoint() : null;
+    boolean minInclusive = !range.hasLowerBound() || (range.lowerBoundType() == BoundType.CLOSED);
+    boolean maxInclusive = !range.hasUpperBound() || (range.upperBoundType() == BoundType.CLOSED);
+    Filter filter;
+    if (restr.getType() == Integer.class) {
+      filter = NumericRangeFilter.newIntRange(field, step, (Integer) min, (Integer) max,
+          minInclusive, maxInclusive);
+    } else if (restr.getType() == Float.class) {
+      filter = NumericRangeFilter.newFloatRange(field, step, (Float) min, (Float) max,
+          minInclusive, maxInclusive);
+    } else if (restr.getType() == Double.class) {
+      filter = NumericRangeFilter.newDoubleRange(field, step, (Double) min, (Double) max,
+          minInclusive, maxInclusive);
+    } else {
+      filter = NumericRangeFilter.newLongRange(field, step, (Long) min, (Long) max,
+          minInclusive, maxInclusive);
+    }
+    return filter;
+  }
+
+  /**
+   * @return a constant score query of the cached filter if the query is an exact match on a
+   *         single term, else the query itself
+   */
+  private Query exact(Query query) {
+    if ((filterCache != null) && (query instanceof TermQuery)) {
+      return filter(new TermsFilter(ImmutableList.of(((TermQuery) query).getTerm())));
+    }
+    return query;
+  }
+
+  private Query filter(Filter filter) {
+    return new ConstantScoreQuery((filterCache != null) ? filterCache.get(filter) : filter);
+  }
+
+  private Query expand(String field, String token) {
+    String prefix = token.substring(0, token.length() - 1);
+    if (prefix.isEmpty()) {
+      return null;
+    } else if ((prefix.indexOf('*') >= 0) || (prefix.indexOf('?') >= 0)) {
+      return new WildcardQuery(new Term(field, lowercase(token)));
+    } else if ((prefixFields != null) && prefixFields.isLookup(field, prefix)) {
+      return new TermQuery(new Term(PrefixFields.getPrefixField(field), lowercase(prefix)));
+    } else {
+      return new PrefixQuery(new Term(field, lowercase(prefix)));
+    }
+  }
+
+  private Query fuzzy(QueryRestriction restr, String field, String term) {
+    float fuzzy = restr.getFuzzy().get();
+    float similarity = ((fuzzy >= 0) && (fuzzy <= 1)) ? round(restr, fuzzy)
+        : FuzzyQuery.defaultMinSimilarity;
+    if (similarity >= 1) {
+      return new TermQuery(new Term(field, lowercase(term)));
+    }
+    FuzzyBounds bounds = restr.getFuzzyBounds().or(fuzzyBounds);
+    return new FuzzyQuery(new Term(field, lowercase(term)), similarity, bounds.getPrefixLength(),
+        bounds.getMaxExpansions());
+  }
+
+  /**
+   * mirrors the analysis done in {@link QueryParser}'s field query creation
+   */
+  private Query analyze(String field, String text, boolean quoted, int slop) {
+    List<List<Term>> positions = new ArrayList<>();
+    boolean severalTokensAtSamePosition = false;
+    try (TokenStream stream = analyzer.reusableTokenStream(field, new StringReader(text))) {
+      CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+      PositionIncrementAttribute posIncrAtt = stream.addAttribute(
+          PositionIncrementAttribute.class);
+      stream.reset();
+      while (stream.incrementToken()) {
+        Term term = new Term(field, termAtt.toString());
+        if (positions.isEmpty() || (posIncrAtt.getPositionIncrement() > 0)) {
+          positions.add(new ArrayList<Term>());
+        } else {
+          severalTokensAtSamePosition = true;
+        }
+        positions.get(positions.size() - 1).add(term);
+      }
+      stream.end();
+    } catch (IOException exc) {
+      throw new IllegalStateException("analyzing failed for: " + text, exc);
+    }
+    if (positions.isEmpty()) {
+      return null;
+    } else if ((positions.size() == 1) && (positions.get(0).size() == 1)) {
+      return new TermQuery(positions.get(0).get(0));
+    } else if (!quoted || (positions.size() == 1)) {
+      BooleanQuery query = new BooleanQuery(positions.size() == 1);
+      Occur occur = (positions.size() > 1) ? Occur.MUST : Occur.SHOULD;
+      for (List<Term> terms : positions) {
+        for (Term term : terms) {
+          query.add(new TermQuery(term), occur);
+        }
+      }
+      return query;
+    } else if (severalTokensAtSamePosition) {
+      MultiPhraseQuery query = new MultiPhraseQuery();
+      query.setSlop(slop);
+      for (int i = 0; i < positions.size(); i++) {
+        query.add(positions.get(i).toArray(new Term[0]), i);
+      }
+      return query;
+    } else {
+      PhraseQuery query = new PhraseQuery();
+      query.setSlop(slop);
+      for (int i = 0; i < positions.size(); i++) {
+        query.add(positions.get(i).get(0), i);
+      }
+      return query;
+    }
+  }
+
+  /**
+   * @return the query as parsed by the query parser executing the search
+   */
+  @NotNull
+  public Query parse(@NotNull String queryString) throws ParseException {
+    QueryParser parser = new QueryParser(version, defaultField, analyzer);
+    parser.setDefaultOperator(defaultOperator);
+    return parser.parse(queryString);
+  }
+
+  private static Query or(Query... queries) {
+    BooleanQuery query = new BooleanQuery();
+    for (Query clause : queries) {
+      if (clause != null) {
+        query.add(clause, Occur.SHOULD);
+      }
+    }
+    return unwrap(query);
+  }
+
+  private static Query prohibit(Query query) {
+    BooleanQuery ret = new BooleanQuery();
+    ret.add(query, Occur.MUST_NOT);
+    return ret;
+  }
+
+  /**
+   * @return null for empty queries and the clause itself for single non prohibited clauses
+   */
+  private static Query unwrap(BooleanQuery query) {
+    BooleanClause[] clauses = query.getClauses();
+    if (clauses.length == 0) {
+      return null;
+    } else if ((clauses.length == 1) && !clauses[0].isProhibited()) {
+      return clauses[0].getQuery();
+    }
+    return query;
+  }
+
+  private static boolean isPhrase(String value) {
+    return (value.length() > 1) && value.startsWith("\"") && value.endsWith("\"")
+        && (value.indexOf('"', 1) == (value.length() - 1)) && (value.indexOf('\\') < 0);
+  }
+
+  private static boolean hasSyntax(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      if (SYNTAX_CHARS.indexOf(value.charAt(i)) >= 0) {
+        return true;
+      }
+    }
+    return OPERATOR_PATTERN.matcher(value).find();
+  }
+
+  private static String stripQuotes(String token) {
+    int start = token.startsWith("\"") ? 1 : 0;
+    int end = token.endsWith("\"") ? token.length() - 1 : token.length();
+    return (start < end) ? token.substring(start, end) : "";
+  }
+
+  /**
+   * expanded terms are lower cased by the {@link QueryParser} as well
+   */
+  private static String lowercase(String term) {
+    return term.toLowerCase();
+  }
+
+  /**
+   * values are rounded the same way they are when rendered into the query string
+   */
+  private static float round(QueryRestriction restr, float value) {
+    return Float.parseFloat(restr.getDecimalFormater().format(value));
+  }
+
+}
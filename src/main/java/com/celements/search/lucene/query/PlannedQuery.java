@@ -0,0 +1,57 @@
+package com.celements.search.lucene.query;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+
+import javax.validation.constraints.NotNull;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Wraps a query to be planned by the {@link QueryPlanner} with the reader it's executed on. The
+ * planning happens on {@link #rewrite(IndexReader)}, thus once per search.
+ */
+public class PlannedQuery extends Query {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PlannedQuery.class);
+
+  private final Query query;
+
+  public PlannedQuery(@NotNull Query query) {
+    this.query = checkNotNull(query);
+  }
+
+  @NotNull
+  public Query getQuery() {
+    return query;
+  }
+
+  @Override
+  public Query rewrite(IndexReader reader) throws IOException {
+    QueryPlan plan = QueryPlanner.plan(query, reader);
+    LOGGER.debug("rewrite: planned query with cost [{}]:\n{}", plan.getCost(), plan);
+    return plan.getQuery();
+  }
+
+  @Override
+  public String toString(String field) {
+    return query.toString(field);
+  }
+
+  @Override
+  public int hashCode() {
+    return query.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return (obj instanceof PlannedQuery) && query.equals(((PlannedQuery) obj).query);
+  }
+
+}
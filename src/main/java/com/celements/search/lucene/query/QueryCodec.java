@@ -0,0 +1,480 @@
+package com.celements.search.lucene.query;
+
+import static com.google.common.base.Preconditions.*;
+import static com.google.common.base.Strings.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.validation.constraints.NotNull;
+
+import org.xwiki.model.reference.WikiReference;
+
+import com.celements.search.lucene.query.QueryRestrictionGroup.Type;
+import com.google.common.collect.BoundType;
+import com.google.common.collect.Range;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Compact binary encoding of {@link IQueryRestriction} trees, e.g. for storing saved searches or
+ * shipping queries between cluster nodes. The encoding starts with a format version, followed by
+ * each restriction as a type tag, a flags byte and its fields with lengths and counts as varints.
+ * Decoding dispatches on the tags without reflection. The {@link #fingerprint(IQueryRestriction)}
+ * of the encoding is stable across nodes and restarts, unlike {@link Object#hashCode()}. Unlike
+ * the encoding it also covers restrictions of unknown implementations by their query string.
+ * <p>
+ * The analyzer of a restriction can't be encoded, only whether one was set. The decoded
+ * restrictions are given the analyzer of the token filter cache passed to
+ * {@link #decode(byte[], TokenFilterCache)}. Parsed restrictions are decoded unparsed, see
+ * {@link QueryRestrictionParsed#copyUnparsed()}, and frozen ones mutable.
+ */
+@NotThreadSafe
+public final class QueryCodec implements IQueryRestrictionVisitor {
+
+  public static final byte FORMAT_VERSION = 1;
+
+  private static final HashFunction FINGERPRINT = Hashing.murmur3_128();
+
+  private static final byte TAG_RESTRICTION = 1;
+  private static final byte TAG_STRING = 2;
+  private static final byte TAG_TERMS = 3;
+  private static final byte TAG_NUMERIC_RANGE = 4;
+  private static final byte TAG_OVERLAP = 5;
+  private static final byte TAG_GROUP = 6;
+  private static final byte TAG_QUERY = 7;
+  private static final byte TAG_OTHER = 8;
+
+  private static final int FLAG_NEGATE = 1;
+  private static final int FLAG_OR = 1 << 1;
+  private static final int FLAG_ANALYZED = 1 << 2;
+  private static final int FLAG_TOKENIZE = 1 << 3;
+  private static final int FLAG_FUZZY = 1 << 4;
+  private static final int FLAG_FUZZY_BOUNDS = 1 << 5;
+  private static final int FLAG_PROXIMITY = 1 << 6;
+  private static final int FLAG_BOOST = 1 << 7;
+
+  private static final int BOUND_LOWER = 1;
+  private static final int BOUND_LOWER_CLOSED = 1 << 1;
+  private static final int BOUND_UPPER = 1 << 2;
+  private static final int BOUND_UPPER_CLOSED = 1 << 3;
+
+  private static final byte NUMBER_INT = 1;
+  private static final byte NUMBER_LONG = 2;
+  private static final byte NUMBER_FLOAT = 3;
+  private static final byte NUMBER_DOUBLE = 4;
+
+  private final ByteArrayDataOutput out;
+  private final boolean fingerprint;
+
+  private QueryCodec(ByteArrayDataOutput out, boolean fingerprint) {
+    this.out = out;
+    this.fingerprint = fingerprint;
+  }
+
+  /**
+   * @throws IllegalArgumentException
+   *           if the tree contains restrictions of an unknown implementation
+   */
+  @NotNull
+  public static byte[] encode(@NotNull IQueryRestriction restr) {
+    return encode(restr, false);
+  }
+
+  private static byte[] encode(IQueryRestriction restr, boolean fingerprint) {
+    ByteArrayDataOutput out = ByteStreams.newDataOutput();
+    out.writeByte(FORMAT_VERSION);
+    checkNotNull(restr).accept(new QueryCodec(out, fingerprint));
+    return out.toByteArray();
+  }
+
+  /**
+   * @return the 128 bit murmur3 hash of {@link #encode(IQueryRestriction)}, equal for restrictions
+   *         with equal encodings. Restrictions of unknown implementations are hashed by their class
+   *         and query string, as which they are compiled.
+   */
+  @NotNull
+  public static HashCode fingerprint(@NotNull IQueryRestriction restr) {
+    return FINGERPRINT.hashBytes(encode(restr, true));
+  }
+
+  /**
+   * @param tokenFilterCache
+   *          set on the decoded restrictions which were encoded with an analyzer, may be null
+   * @throws IllegalArgumentException
+   *           if the bytes aren't a valid encoding of this format version
+   */
+  @NotNull
+  public static IQueryRestriction decode(@NotNull byte[] bytes,
+      @Nullable TokenFilterCache tokenFilterCache) {
+    try {
+      ByteArrayDataInput in = ByteStreams.newDataInput(checkNotNull(bytes));
+      byte version = in.readByte();
+      checkArgument(version == FORMAT_VERSION, "unsupported format version: %s", version);
+      IQueryRestriction restr = new Decoder(in, bytes.length, tokenFilterCache).readRestriction();
+      checkArgument(!hasRemaining(in), "trailing bytes after restriction");
+      return restr;
+    } catch (IllegalStateException exc) {
+      // thrown by the data input at the end of the bytes
+      throw new IllegalArgumentException("truncated encoding", exc);
+    }
+  }
+
+  private static boolean hasRemaining(ByteArrayDataInput in) {
+    try {
+      in.readByte();
+      return true;
+    } catch (IllegalStateException exc) {
+      return false;
+    }
+  }
+
+  @Override
+  public void visit(QueryRestriction restr) {
+    out.writeByte(TAG_RESTRICTION);
+    out.writeByte(flag(restr.getNegate(), FLAG_NEGATE)
+        | flag(restr.getAnalyzer() != null, FLAG_ANALYZED)
+        | flag(restr.isTokenizeQuery(), FLAG_TOKENIZE)
+        | flag(restr.getFuzzy().isPresent(), FLAG_FUZZY)
+        | flag(restr.getFuzzyBounds().isPresent(), FLAG_FUZZY_BOUNDS)
+        | flag(restr.getProximity().isPresent(), FLAG_PROXIMITY)
+        | flag(restr.getBoost().isPresent(), FLAG_BOOST));
+    writeString(restr.getSpecifier());
+    writeString(restr.getQuery());
+    if (restr.getFuzzy().isPresent()) {
+      out.writeFloat(restr.getFuzzy().get());
+    }
+    if (restr.getFuzzyBounds().isPresent()) {
+      writeVarInt(restr.getFuzzyBounds().get().getPrefixLength());
+      writeVarInt(restr.getFuzzyBounds().get().getMaxExpansions());
+    }
+    if (restr.getProximity().isPresent()) {
+      out.writeInt(restr.getProximity().get());
+    }
+    if (restr.getBoost().isPresent()) {
+      out.writeFloat(restr.getBoost().get());
+    }
+  }
+
+  @Override
+  public void visit(QueryRestrictionString restr) {
+    out.writeByte(TAG_STRING);
+    out.writeByte(flag(restr.getNegate(), FLAG_NEGATE));
+    writeString(nullToEmpty(restr.getRawQueryString()));
+  }
+
+  @Override
+  public void visit(QueryRestrictionTerms restr) {
+    out.writeByte(TAG_TERMS);
+    out.writeByte(flag(restr.getNegate(), FLAG_NEGATE)
+        | flag(restr.getAnalyzer() != null, FLAG_ANALYZED));
+    writeString(restr.getField());
+    writeVarInt(restr.getValues().size());
+    for (String value : restr.getValues()) {
+      writeString(value);
+    }
+  }
+
+  @Override
+  public void visit(QueryRestrictionNumericRange restr) {
+    out.writeByte(TAG_NUMERIC_RANGE);
+    out.writeByte(flag(restr.getNegate(), FLAG_NEGATE));
+    writeString(restr.getField());
+    writeRange(restr.getRange(), restr.getType());
+    writeVarInt(restr.getPrecisionStep());
+  }
+
+  @Override
+  public void visit(QueryRestrictionGroup restrGrp) {
+    int flags = flag(restrGrp.getNegate(), FLAG_NEGATE) | flag(restrGrp.getType() == Type.OR,
+        FLAG_OR);
+    if (restrGrp instanceof LuceneQuery) {
+      LuceneQuery query = (LuceneQuery) restrGrp;
+      out.writeByte(TAG_QUERY);
+      out.writeByte(flags);
+      writeVarInt(query.getDocTypes().size());
+      for (LuceneDocType docType : query.getDocTypes()) {
+        writeString(docType.key);
+      }
+      writeVarInt(query.getWikis().size());
+      for (WikiReference wikiRef : query.getWikis()) {
+        writeString(wikiRef.getName());
+      }
+    } else {
+      out.writeByte(TAG_GROUP);
+      out.writeByte(flags);
+    }
+    writeVarInt(restrGrp.size());
+    for (IQueryRestriction restr : restrGrp) {
+      restr.accept(this);
+    }
+  }
+
+  @Override
+  public void visitOther(IQueryRestriction restr) {
+    if (restr instanceof QueryRestrictionOverlap) {
+      QueryRestrictionOverlap overlap = (QueryRestrictionOverlap) restr;
+      out.writeByte(TAG_OVERLAP);
+      out.writeByte(flag(overlap.getNegate(), FLAG_NEGATE));
+      writeString(overlap.getStartField());
+      writeString(overlap.getEndField());
+      writeRange(overlap.getRange(), null);
+      writeVarInt(overlap.getPrecisionStep());
+    } else if (fingerprint) {
+      out.writeByte(TAG_OTHER);
+      writeString(restr.getClass().getName());
+      writeString(nullToEmpty(restr.getQueryString()));
+    } else {
+      throw new IllegalArgumentException("unable to encode " + restr.getClass());
+    }
+  }
+
+  private static int flag(boolean value, int flag) {
+    return value ? flag : 0;
+  }
+
+  private void writeRange(Range<? extends Number> range, @Nullable Class<? extends Number> type) {
+    Number endpoint = range.hasLowerBound() ? range.lowerEndpoint()
+        : (range.hasUpperBound() ? range.upperEndpoint() : null);
+    byte numberType = getNumberType((endpoint != null) ? endpoint.getClass() : type);
+    out.writeByte(numberType);
+    out.writeByte(flag(range.hasLowerBound(), BOUND_LOWER)
+        | flag(range.hasLowerBound() && (range.lowerBoundType() == BoundType.CLOSED),
+            BOUND_LOWER_CLOSED)
+        | flag(range.hasUpperBound(), BOUND_UPPER)
+        | flag(range.hasUpperBound() && (range.upperBoundType() == BoundType.CLOSED),
+            BOUND_UPPER_CLOSED));
+    if (range.hasLowerBound()) {
+      writeNumber(range.lowerEndpoint(), numberType);
+    }
+    if (range.hasUpperBound()) {
+      writeNumber(range.upperEndpoint(), numberType);
+    }
+  }
+
+  private static byte getNumberType(@Nullable Class<?> type) {
+    if (type == Integer.class) {
+      return NUMBER_INT;
+    } else if (type == Float.class) {
+      return NUMBER_FLOAT;
+    } else if (type == Double.class) {
+      return NUMBER_DOUBLE;
+    } else if ((type == Long.class) || (type == null)) {
+      return NUMBER_LONG;
+    }
+    throw new IllegalArgumentException("unable to encode numeric type " + type);
+  }
+
+  private void writeNumber(Number number, byte numberType) {
+    switch (numberType) {
+      case NUMBER_INT:
+        out.writeInt(number.intValue());
+        break;
+      case NUMBER_FLOAT:
+        out.writeFloat(number.floatValue());
+        break;
+      case NUMBER_DOUBLE:
+        out.writeDouble(number.doubleValue());
+        break;
+      default:
+        out.writeLong(number.longValue());
+    }
+  }
+
+  private void writeString(String str) {
+    byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+    writeVarInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private void writeVarInt(int value) {
+    checkArgument(value >= 0, "negative varint: %s", value);
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  private static final class Decoder {
+
+    private final ByteArrayDataInput in;
+    private final int length;
+    private final TokenFilterCache tokenFilterCache;
+
+    Decoder(ByteArrayDataInput in, int length, @Nullable TokenFilterCache tokenFilterCache) {
+      this.in = in;
+      this.length = length;
+      this.tokenFilterCache = tokenFilterCache;
+    }
+
+    IQueryRestriction readRestriction() {
+      byte tag = in.readByte();
+      int flags = in.readUnsignedByte();
+      switch (tag) {
+        case TAG_RESTRICTION:
+          return readQueryRestriction(flags);
+        case TAG_STRING:
+          return new QueryRestrictionString(readString()).setNegate(isSet(flags, FLAG_NEGATE));
+        case TAG_TERMS:
+          return readTerms(flags);
+        case TAG_NUMERIC_RANGE:
+          return new QueryRestrictionNumericRange(readString(), readRange(), readVarInt())
+              .setNegate(isSet(flags, FLAG_NEGATE));
+        case TAG_OVERLAP:
+          return new QueryRestrictionOverlap(readString(), readString(), readRange(),
+              readVarInt()).setNegate(isSet(flags, FLAG_NEGATE));
+        case TAG_GROUP:
+          return readChildren(new QueryRestrictionGroup(Type.AND), flags);
+        case TAG_QUERY:
+          return readQuery(flags);
+        default:
+          throw new IllegalArgumentException("unknown restriction tag: " + tag);
+      }
+    }
+
+    private QueryRestriction readQueryRestriction(int flags) {
+      QueryRestriction restr = new QueryRestriction(readString(), readString(), isSet(flags,
+          FLAG_TOKENIZE));
+      restr.setNegate(isSet(flags, FLAG_NEGATE));
+      if (isSet(flags, FLAG_FUZZY)) {
+        restr.setFuzzy(in.readFloat());
+      }
+      if (isSet(flags, FLAG_FUZZY_BOUNDS)) {
+        restr.setFuzzyBounds(new FuzzyBounds(readVarInt(), readVarInt()));
+      }
+      if (isSet(flags, FLAG_PROXIMITY)) {
+        restr.setProximity(in.readInt());
+      }
+      if (isSet(flags, FLAG_BOOST)) {
+        restr.setBoost(in.readFloat());
+      }
+      if (isSet(flags, FLAG_ANALYZED) && (tokenFilterCache != null)) {
+        restr.setTokenFilterCache(tokenFilterCache);
+      }
+      return restr;
+    }
+
+    private QueryRestrictionTerms readTerms(int flags) {
+      String field = readString();
+      int count = readLength();
+      List<String> values = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        values.add(readString());
+      }
+      QueryRestrictionTerms restr = new QueryRestrictionTerms(field, values);
+      restr.setNegate(isSet(flags, FLAG_NEGATE));
+      if (isSet(flags, FLAG_ANALYZED) && (tokenFilterCache != null)) {
+        restr.setTokenFilterCache(tokenFilterCache);
+      }
+      return restr;
+    }
+
+    private LuceneQuery readQuery(int flags) {
+      LuceneQuery query = new LuceneQuery();
+      int count = readLength();
+      List<LuceneDocType> docTypes = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        docTypes.add(LuceneDocType.parseEnum(readString()));
+      }
+      query.setDocTypes(docTypes);
+      count = readLength();
+      List<WikiReference> wikis = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        wikis.add(new WikiReference(readString()));
+      }
+      query.setWikis(wikis);
+      return readChildren(query, flags);
+    }
+
+    private <T extends QueryRestrictionGroup> T readChildren(T restrGrp, int flags) {
+      restrGrp.setType(isSet(flags, FLAG_OR) ? Type.OR : Type.AND);
+      restrGrp.setNegate(isSet(flags, FLAG_NEGATE));
+      int count = readLength();
+      restrGrp.ensureCapacity(count);
+      for (int i = 0; i < count; i++) {
+        // the encoded group has applied the checks of #add already
+        restrGrp.addUnchecked(readRestriction());
+      }
+      return restrGrp;
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private Range<? extends Number> readRange() {
+      byte numberType = in.readByte();
+      int bounds = in.readUnsignedByte();
+      Comparable lower = isSet(bounds, BOUND_LOWER) ? readNumber(numberType) : null;
+      Comparable upper = isSet(bounds, BOUND_UPPER) ? readNumber(numberType) : null;
+      BoundType lowerType = isSet(bounds, BOUND_LOWER_CLOSED) ? BoundType.CLOSED : BoundType.OPEN;
+      BoundType upperType = isSet(bounds, BOUND_UPPER_CLOSED) ? BoundType.CLOSED : BoundType.OPEN;
+      Range range;
+      if ((lower != null) && (upper != null)) {
+        range = Range.range(lower, lowerType, upper, upperType);
+      } else if (lower != null) {
+        range = Range.downTo(lower, lowerType);
+      } else if (upper != null) {
+        range = Range.upTo(upper, upperType);
+      } else {
+        range = Range.all();
+      }
+      return range;
+    }
+
+    private Comparable<?> readNumber(byte numberType) {
+      switch (numberType) {
+        case NUMBER_INT:
+          return in.readInt();
+        case NUMBER_LONG:
+          return in.readLong();
+        case NUMBER_FLOAT:
+          return in.readFloat();
+        case NUMBER_DOUBLE:
+          return in.readDouble();
+        default:
+          throw new IllegalArgumentException("unknown numeric type: " + numberType);
+      }
+    }
+
+    private String readString() {
+      byte[] bytes = new byte[readLength()];
+      in.readFully(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return a length or count, which can't exceed the encoding length since each element takes
+     *         at least one byte
+     */
+    private int readLength() {
+      int value = readVarInt();
+      checkArgument(value <= length, "invalid length: %s", value);
+      return value;
+    }
+
+    private int readVarInt() {
+      int value = 0;
+      for (int shift = 0; shift < 32; shift += 7) {
+        byte b = in.readByte();
+        value |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          checkArgument(value >= 0, "negative varint: %s", value);
+          return value;
+        }
+      }
+      throw new IllegalArgumentException("malformed varint");
+    }
+
+    private static boolean isSet(int flags, int flag) {
+      return (flags & flag) != 0;
+    }
+
+  }
+
+}
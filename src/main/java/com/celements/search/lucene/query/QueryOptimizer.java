@@ -0,0 +1,193 @@
+package com.celements.search.lucene.query;
+
+import static com.google.common.base.Preconditions.*;
+import static com.google.common.base.Strings.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+import javax.validation.constraints.NotNull;
+
+import com.celements.search.lucene.index.analysis.CelAnalyzer;
+import com.celements.search.lucene.query.QueryRestrictionGroup.Type;
+
+/**
+ * Rewrites {@link IQueryRestriction} trees into an equivalent but cheaper to execute form before
+ * they are compiled:
+ * <ul>
+ * <li>empty and duplicated restrictions are dropped</li>
+ * <li>nested non negated groups of the same type are flattened into their parent</li>
+ * <li>exact restrictions on the same field are merged into a {@link QueryRestrictionTerms}</li>
+ * <li>double negations are collapsed and groups with a single restriction are unwrapped</li>
+ * <li>groups consisting of negated restrictions only are matched against all documents instead
+ * of relying on the {@link QueryRestrictionGroup#cleanup()} rewriting, since lucene doesn't match
+ * any document for purely prohibited clauses</li>
+ * </ul>
+ * The given tree isn't modified, the returned tree may share unmodified restrictions with it.
+ */
+public final class QueryOptimizer {
+
+  static final QueryRestrictionString MATCH_ALL = new QueryRestrictionString("*:*").freeze();
+
+  private QueryOptimizer() {}
+
+  @NotNull
+  public static IQueryRestriction optimize(@NotNull IQueryRestriction restr) {
+    IQueryRestriction ret = optimizeRestriction(checkNotNull(restr));
+    if (ret.getNegate() && !ret.isEmpty()) {
+      ret = newGroup(Type.AND, false, Arrays.asList(MATCH_ALL, ret));
+    }
+    return ret;
+  }
+
+  private static IQueryRestriction optimizeRestriction(IQueryRestriction restr) {
+    if (restr instanceof QueryRestrictionGroup) {
+      return optimizeGroup((QueryRestrictionGroup) restr);
+    }
+    return restr;
+  }
+
+  private static IQueryRestriction optimizeGroup(QueryRestrictionGroup grp) {
+    Type type = grp.getType();
+    boolean negate = grp.getNegate();
+    Set<IQueryRestriction> flattened = new LinkedHashSet<>();
+    for (IQueryRestriction restr : grp.getRestrictions()) {
+      if ((restr != null) && !restr.isEmpty()) {
+        restr = optimizeRestriction(restr);
+        if (isFlattenable(restr, type)) {
+          flattened.addAll((QueryRestrictionGroup) restr);
+        } else if (!restr.isEmpty()) {
+          flattened.add(restr);
+        }
+      }
+    }
+    List<IQueryRestriction> restrs = mergeTerms(flattened, type);
+    if ((type == Type.AND) && restrs.stream().anyMatch(r -> !r.getNegate()
+        && !MATCH_ALL.equals(r))) {
+      // flattened pure negative groups are covered by the positive restrictions
+      restrs.remove(MATCH_ALL);
+    }
+    if (!restrs.isEmpty() && restrs.stream().allMatch(IQueryRestriction::getNegate)) {
+      if (negate) {
+        // NOT (NOT a AND NOT b) equals (a OR b), for a single restriction a double negation
+        type = (type == Type.AND) ? Type.OR : Type.AND;
+        negate = false;
+        restrs = negate(restrs, false);
+      } else if ((type == Type.OR) && (restrs.size() > 1)) {
+        // (NOT a OR NOT b) equals all documents except (a AND b)
+        restrs = Arrays.asList(MATCH_ALL, newGroup(Type.AND, true, negate(restrs, false)));
+        type = Type.AND;
+      } else {
+        restrs.add(0, MATCH_ALL);
+        type = Type.AND;
+      }
+    }
+    if (restrs.size() == 1) {
+      IQueryRestriction restr = restrs.get(0);
+      return negate ? restr.copy().setNegate(!restr.getNegate()) : restr;
+    }
+    return newGroup(type, negate, restrs);
+  }
+
+  private static boolean isFlattenable(IQueryRestriction restr, Type type) {
+    return (restr instanceof QueryRestrictionGroup) && !restr.getNegate()
+        && (((QueryRestrictionGroup) restr).getType() == type);
+  }
+
+  /**
+   * merges positive exact restrictions on the same field of OR groups, respectively negated ones
+   * of AND groups since (NOT a AND NOT b) equals NOT (a OR b)
+   */
+  private static List<IQueryRestriction> mergeTerms(Collection<IQueryRestriction> restrs,
+      Type type) {
+    boolean negated = (type == Type.AND);
+    Map<List<Object>, List<IQueryRestriction>> candidates = new LinkedHashMap<>();
+    for (IQueryRestriction restr : restrs) {
+      List<Object> key = getTermsKey(restr, negated);
+      if (key != null) {
+        candidates.computeIfAbsent(key, k -> new ArrayList<>()).add(restr);
+      }
+    }
+    List<IQueryRestriction> ret = new ArrayList<>();
+    for (IQueryRestriction restr : restrs) {
+      List<IQueryRestriction> merged = candidates.get(getTermsKey(restr, negated));
+      if ((merged == null) || (merged.size() < 2)) {
+        ret.add(restr);
+      } else if (merged.get(0) == restr) {
+        ret.add(newTerms(getTermsKey(restr, negated), merged).setNegate(negated));
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * @return the field and analyzer of mergeable restrictions, else null
+   */
+  @Nullable
+  private static List<Object> getTermsKey(IQueryRestriction restr, boolean negated) {
+    if (restr.getNegate() != negated) {
+      return null;
+    } else if (restr instanceof QueryRestrictionTerms) {
+      QueryRestrictionTerms terms = (QueryRestrictionTerms) restr;
+      return Arrays.asList(terms.getField(), terms.getAnalyzer());
+    } else if ((restr instanceof QueryRestriction)
+        && (getExactValue((QueryRestriction) restr) != null)) {
+      return Arrays.asList(((QueryRestriction) restr).getSpecifier(),
+          ((QueryRestriction) restr).getAnalyzer());
+    }
+    return null;
+  }
+
+  /**
+   * @return the unquoted value of restrictions exactly matching a single value (e.g. as created
+   *         with {@link com.celements.search.lucene.LuceneUtils#exactify(String)}), else null
+   */
+  @Nullable
+  static String getExactValue(QueryRestriction restr) {
+    String query = nullToEmpty(restr.getQuery()).trim();
+    if (!restr.getSpecifier().isEmpty() && !restr.getFuzzy().isPresent()
+        && (restr.getBoost().or(0f) <= 0) && (restr.getProximity().or(0) <= 1)
+        && (query.length() > 2) && (query.charAt(0) == '"')
+        && (query.indexOf('"', 1) == (query.length() - 1)) && (query.indexOf('\\') < 0)) {
+      return query.substring(1, query.length() - 1);
+    }
+    return null;
+  }
+
+  private static QueryRestrictionTerms newTerms(List<Object> key, List<IQueryRestriction> restrs) {
+    List<String> values = new ArrayList<>();
+    for (IQueryRestriction restr : restrs) {
+      if (restr instanceof QueryRestrictionTerms) {
+        values.addAll(((QueryRestrictionTerms) restr).getValues());
+      } else {
+        values.add(getExactValue((QueryRestriction) restr));
+      }
+    }
+    return new QueryRestrictionTerms((String) key.get(0), values).setAnalyzer(
+        (CelAnalyzer) key.get(1));
+  }
+
+  private static List<IQueryRestriction> negate(List<IQueryRestriction> restrs, boolean negate) {
+    List<IQueryRestriction> ret = new ArrayList<>();
+    for (IQueryRestriction restr : restrs) {
+      ret.add((restr.getNegate() == negate) ? restr : restr.copy().setNegate(negate));
+    }
+    return ret;
+  }
+
+  private static QueryRestrictionGroup newGroup(Type type, boolean negate,
+      List<IQueryRestriction> restrs) {
+    QueryRestrictionGroup grp = new QueryRestrictionGroup(type);
+    grp.addAll(restrs);
+    grp.setNegate(negate);
+    return grp;
+  }
+
+}
@@ -0,0 +1,54 @@
+package com.celements.search.lucene.query;
+
+import javax.annotation.concurrent.Immutable;
+import javax.validation.constraints.NotNull;
+
+import org.apache.lucene.search.Query;
+
+/**
+ * Execution plan as chosen by the {@link QueryPlanner}.
+ */
+@Immutable
+public final class QueryPlan {
+
+  private final Query query;
+  private final long cost;
+  private final String explanation;
+
+  QueryPlan(Query query, long cost, String explanation) {
+    this.query = query;
+    this.cost = cost;
+    this.explanation = explanation;
+  }
+
+  /**
+   * @return the query with its non scoring required clauses moved into filters
+   */
+  @NotNull
+  public Query getQuery() {
+    return query;
+  }
+
+  /**
+   * @return the estimated number of documents to be visited, {@link QueryPlanner#EXPENSIVE} if
+   *         unknown due to term expansion
+   */
+  public long getCost() {
+    return cost;
+  }
+
+  /**
+   * @return one line per clause, indented by nesting and stating the estimated cost, clauses
+   *         moved into filters are marked with '#'
+   */
+  @NotNull
+  public String explain() {
+    return explanation;
+  }
+
+  @Override
+  public String toString() {
+    return explain();
+  }
+
+}
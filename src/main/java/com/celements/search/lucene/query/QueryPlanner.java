@@ -0,0 +1,218 @@
+package com.celements.search.lucene.query;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.validation.constraints.NotNull;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.FilteredQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.MultiTermQuery.ConstantScoreAutoRewrite;
+import org.apache.lucene.search.MultiTermQuery.RewriteMethod;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.TermQuery;
+
+import com.celements.search.lucene.query.FilterCache.CachedFilter;
+
+/**
+ * Moves the non scoring required clauses of {@link BooleanQuery}s into filters. Term expanding
+ * clauses (e.g. prefix, wildcard or range queries) and constant score filters only contribute a
+ * constant to the score, as filters of a {@link FilteredQuery} they're neither scored nor
+ * counted for the coordination factor anymore. The order of the remaining clauses is kept, since
+ * the conjunction of required clauses advances all of them to the next common document anyway.
+ * The cost of each clause is estimated from the document frequencies of its terms for
+ * {@link QueryPlan#explain()}.
+ */
+public final class QueryPlanner {
+
+  /**
+   * cost of clauses expanding to an unknown number of terms
+   */
+  public static final long EXPENSIVE = Long.MAX_VALUE;
+
+  private final IndexReader reader;
+
+  private QueryPlanner(IndexReader reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * @return the plan containing the rewritten query, the given query isn't modified
+   */
+  @NotNull
+  public static QueryPlan plan(@NotNull Query query, @NotNull IndexReader reader)
+      throws IOException {
+    Clause planned = new QueryPlanner(checkNotNull(reader)).visit(checkNotNull(query), null, 0);
+    return new QueryPlan(planned.query, planned.cost, planned.explanation);
+  }
+
+  private Clause visit(Query query, Occur occur, int level) throws IOException {
+    if (query instanceof BooleanQuery) {
+      return visitBoolean((BooleanQuery) query, occur, level);
+    }
+    long cost = estimate(query);
+    return new Clause(query, occur, cost, describe(query, occur, false, cost, level));
+  }
+
+  private Clause visitBoolean(BooleanQuery query, Occur occur, int level) throws IOException {
+    List<Clause> clauses = new ArrayList<>();
+    List<Filter> filters = new ArrayList<>();
+    boolean hasRequired = false;
+    boolean hasScoringRequired = false;
+    boolean hasOptional = false;
+    long requiredCost = EXPENSIVE;
+    long optionalCost = 0;
+    for (BooleanClause clause : query.getClauses()) {
+      Clause planned = visit(clause.getQuery(), clause.getOccur(), level + 1);
+      clauses.add(planned);
+      if (clause.getOccur() == Occur.MUST) {
+        hasRequired = true;
+        hasScoringRequired |= (toFilter(planned.query) == null);
+        requiredCost = Math.min(requiredCost, planned.cost);
+      } else if (clause.getOccur() == Occur.SHOULD) {
+        hasOptional = true;
+        optionalCost = add(optionalCost, planned.cost);
+      }
+    }
+    // without required clauses left the optional ones would become required
+    boolean moveFilters = hasScoringRequired || !hasOptional;
+    BooleanQuery ret = new BooleanQuery(query.isCoordDisabled());
+    ret.setBoost(query.getBoost());
+    ret.setMinimumNumberShouldMatch(query.getMinimumNumberShouldMatch());
+    StringBuilder explanation = new StringBuilder();
+    for (Clause clause : clauses) {
+      Filter filter = (moveFilters && (clause.occur == Occur.MUST)) ? toFilter(clause.query)
+          : null;
+      if (filter != null) {
+        filters.add(filter);
+      } else {
+        ret.add(clause.query, clause.occur);
+      }
+      explanation.append((filter != null) ? describe(clause.query, clause.occur, true,
+          clause.cost, level + 1) : clause.explanation);
+    }
+    Query planned = ret;
+    if (!filters.isEmpty()) {
+      if (!hasScoringRequired && !hasOptional) {
+        ret.add(new MatchAllDocsQuery(), Occur.MUST);
+      }
+      for (Filter filter : filters) {
+        planned = new FilteredQuery(planned, filter);
+      }
+    }
+    long cost;
+    if (hasRequired) {
+      cost = requiredCost;
+    } else if (optionalCost > 0) {
+      cost = optionalCost;
+    } else {
+      cost = reader.maxDoc();
+    }
+    explanation.insert(0, describe(query, occur, false, cost, level));
+    return new Clause(planned, occur, cost, explanation.toString());
+  }
+
+  /**
+   * @return the filter matching the same documents as the given non scoring query, null if the
+   *         query is scored
+   */
+  private static Filter toFilter(Query query) {
+    if ((query instanceof ConstantScoreQuery) && (((ConstantScoreQuery) query)
+        .getFilter() != null)) {
+      return ((ConstantScoreQuery) query).getFilter();
+    } else if ((query instanceof MultiTermQuery) && isConstantScore(
+        ((MultiTermQuery) query).getRewriteMethod())) {
+      return new QueryWrapperFilter(query);
+    }
+    return null;
+  }
+
+  /**
+   * fuzzy queries or explicitly scoring rewrites score the expanded terms, the default rewrite of
+   * e.g. prefix, wildcard and range queries doesn't
+   */
+  private static boolean isConstantScore(RewriteMethod rewrite) {
+    return (rewrite instanceof ConstantScoreAutoRewrite)
+        || (rewrite == MultiTermQuery.CONSTANT_SCORE_FILTER_REWRITE)
+        || (rewrite == MultiTermQuery.CONSTANT_SCORE_BOOLEAN_QUERY_REWRITE);
+  }
+  private long estimate(Query query) throws IOException {
+    if (query instanceof TermQuery) {
+      return reader.docFreq(((TermQuery) query).getTerm());
+    } else if (query instanceof PhraseQuery) {
+      long cost = reader.maxDoc();
+      for (Term term : ((PhraseQuery) query).getTerms()) {
+        cost = Math.min(cost, reader.docFreq(term));
+      }
+      return cost;
+    } else if (query instanceof ConstantScoreQuery) {
+      Filter filter = ((ConstantScoreQuery) query).getFilter();
+      if (filter instanceof CachedFilter) {
+        filter = ((CachedFilter) filter).getFilter();
+      }
+      if (filter instanceof TermsFilter) {
+        long cost = 0;
+        for (Term term : ((TermsFilter) filter).getTerms()) {
+          cost += reader.docFreq(term);
+        }
+        return cost;
+      }
+    } else if (query instanceof MultiTermQuery) {
+      return EXPENSIVE;
+    }
+    return reader.maxDoc();
+  }
+
+  private static long add(long cost1, long cost2) {
+    return ((cost1 == EXPENSIVE) || (cost2 == EXPENSIVE)) ? EXPENSIVE : cost1 + cost2;
+  }
+
+  private static String describe(Query query, Occur occur, boolean filter, long cost,
+      int level) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < level; i++) {
+      sb.append("  ");
+    }
+    if (filter) {
+      sb.append('#');
+    } else if (occur != null) {
+      sb.append(occur);
+    }
+    sb.append(query.getClass().getSimpleName()).append(' ');
+    if (!(query instanceof BooleanQuery)) {
+      sb.append(query).append(' ');
+    }
+    sb.append("cost=").append((cost == EXPENSIVE) ? "expensive" : Long.toString(cost));
+    return sb.append('\n').toString();
+  }
+
+  private static final class Clause {
+
+    final Query query;
+    final Occur occur;
+    final long cost;
+    final String explanation;
+
+    Clause(Query query, Occur occur, long cost, String explanation) {
+      this.query = query;
+      this.occur = occur;
+      this.cost = cost;
+      this.explanation = explanation;
+    }
+
+  }
+
+}
@@ -4,15 +4,15 @@ import static com.google.common.base.Strings.*;
 
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
+import javax.validation.constraints.NotNull;
 
 import org.apache.commons.lang.StringUtils;
-import org.apache.lucene.queryParser.QueryParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,16 +23,20 @@ public class QueryRestriction implements IQueryRestriction {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(QueryRestriction.class);
 
-  private static final Pattern TOKEN_PATTERN = Pattern.compile("( ?\"[^\"]*\" ?)|[^ ]+");
-
   private boolean negate = false;
   private String specifier = null;
   private String query = null;
   private boolean tokenizeQuery = true;
   private Float fuzzy = null;
+  private FuzzyBounds fuzzyBounds = null;
   private Integer proximity = null;
   private Float boost = null;
   private CelAnalyzer analyzer = null;
+  private TokenFilterCache tokenFilterCache = null;
+
+  private boolean frozen = false;
+  private String frozenQueryString;
+  private int frozenHashCode;
 
   public QueryRestriction(String specifier, String query) {
     setSpecifier(specifier);
@@ -59,16 +63,19 @@ public class QueryRestriction implements IQueryRestriction {
 
   @Override
   public QueryRestriction setNegate(boolean negate) {
+    checkNotFrozen();
     this.negate = negate;
     return this;
   }
 
   public QueryRestriction setSpecifier(String specifier) {
+    checkNotFrozen();
     this.specifier = nullToEmpty(specifier).trim();
     return this;
   }
 
   public QueryRestriction setQuery(String query) {
+    checkNotFrozen();
     this.query = nullToEmpty(query).trim();
     return this;
   }
@@ -81,10 +88,15 @@ public class QueryRestriction implements IQueryRestriction {
    * @return
    */
   public QueryRestriction setTokenizeQuery(boolean tokenizeQuery) {
+    checkNotFrozen();
     this.tokenizeQuery = tokenizeQuery;
     return this;
   }
 
+  public boolean isTokenizeQuery() {
+    return tokenizeQuery;
+  }
+
   @Override
   public Optional<Float> getFuzzy() {
     return Optional.fromNullable(fuzzy);
@@ -92,6 +104,7 @@ public class QueryRestriction implements IQueryRestriction {
 
   @Override
   public QueryRestriction setFuzzy(@Nullable Float fuzzy) {
+    checkNotFrozen();
     this.fuzzy = fuzzy;
     return this;
   }
@@ -120,6 +133,20 @@ public class QueryRestriction implements IQueryRestriction {
     return setFuzzy(-1f); // use Lucene's default (which is 0.5)
   }
 
+  /**
+   * Limits the term expansion of a fuzzy search, if not set the bounds configured for the search
+   * service apply.
+   */
+  public QueryRestriction setFuzzyBounds(@Nullable FuzzyBounds fuzzyBounds) {
+    checkNotFrozen();
+    this.fuzzyBounds = fuzzyBounds;
+    return this;
+  }
+
+  public Optional<FuzzyBounds> getFuzzyBounds() {
+    return Optional.fromNullable(fuzzyBounds);
+  }
+
   /**
    * The term's words have to be in the given proximity e.g. at most 8 words apart.
    *
@@ -136,10 +163,15 @@ public class QueryRestriction implements IQueryRestriction {
   }
 
   public QueryRestriction setProximity(int proximity) {
+    checkNotFrozen();
     this.proximity = proximity;
     return this;
   }
 
+  public Optional<Integer> getProximity() {
+    return Optional.fromNullable(proximity);
+  }
+
   /**
    * A boost factor for the term. The higher the boost factor, the more relevant the term.
    * The boost factor has to be positive, can be < 1 though. The default is 1.
@@ -158,15 +190,36 @@ public class QueryRestriction implements IQueryRestriction {
   }
 
   public QueryRestriction setBoost(float boost) {
+    checkNotFrozen();
     this.boost = boost;
     return this;
   }
 
+  public Optional<Float> getBoost() {
+    return Optional.fromNullable(boost);
+  }
+
   public QueryRestriction setAnalyzer(CelAnalyzer analyzer) {
+    checkNotFrozen();
     this.analyzer = analyzer;
+    this.tokenFilterCache = null;
     return this;
   }
 
+  /**
+   * sets the analyzer of the given cache, which memoizes the filtered tokens
+   */
+  public QueryRestriction setTokenFilterCache(@NotNull TokenFilterCache tokenFilterCache) {
+    setAnalyzer(tokenFilterCache.getAnalyzer());
+    this.tokenFilterCache = tokenFilterCache;
+    return this;
+  }
+
+  @Nullable
+  CelAnalyzer getAnalyzer() {
+    return analyzer;
+  }
+
   /**
    * @deprecated instead use {@link #getQueryString()}
    * @return
@@ -178,51 +231,82 @@ public class QueryRestriction implements IQueryRestriction {
 
   @Override
   public String getQueryString() {
-    String ret = "";
-    if (!specifier.isEmpty()) {
-      ret = tokenizeQuery ? getTokenizedQuery() : filterToken(query);
+    if (frozen) {
+      return frozenQueryString;
+    }
+    StringBuilder sb = new StringBuilder();
+    appendQueryString(sb, negate);
+    return sb.toString();
+  }
+
+  /**
+   * appends the query string as returned by {@link #getQueryString()}, negated if requested
+   * instead of according to {@link #getNegate()}
+   */
+  void appendQueryString(StringBuilder sb, boolean negate) {
+    if (frozen && (negate == this.negate)) {
+      sb.append(frozenQueryString);
+    } else if (!specifier.isEmpty()) {
+      String ret = tokenizeQuery ? getTokenizedQuery() : filterToken(query);
       if (!ret.isEmpty()) {
         DecimalFormat formater = getDecimalFormater();
         ret = makeRestrictionFuzzy(ret, formater);
+        if (negate) {
+          sb.append("NOT ");
+        }
+        sb.append(specifier).append(":(");
         if ((proximity != null) && (proximity > 1)) {
-          ret = "\"" + ret + "\"~" + formater.format(proximity);
+          sb.append('"').append(ret).append("\"~").append(formater.format(proximity));
+        } else {
+          sb.append(ret);
         }
-        ret = specifier + ":(" + ret + ")";
+        sb.append(')');
         if ((boost != null) && (boost > 0)) {
-          ret += "^" + formater.format(boost);
-        }
-        if (negate) {
-          ret = "NOT " + ret;
+          sb.append('^').append(formater.format(boost));
         }
       }
     }
-    return ret;
   }
 
   private String getTokenizedQuery() {
-    Matcher m = TOKEN_PATTERN.matcher(query);
-    StringBuilder tokenizedQuery = new StringBuilder();
-    while (m.find()) {
-      String token = filterToken(m.group(0).trim());
-      if (!token.isEmpty() && !token.matches("[\"+-]")) {
-        tokenizedQuery.append(" ");
-        token = QueryParser.escape(token);
-        token = token.replaceAll("^(\\\\([+-]))?(\\\\(\"))?(.*?)(\\\\(\"))?$", "$2$4$5$7");
-        token = token.replaceAll("^(.+)\\\\([\\?\\*].*)$", "$1$2");
-        if (!token.matches("^[+-].*")) {
-          tokenizedQuery.append("+");
-        }
-        tokenizedQuery.append(token);
-        if (!token.matches("^.*[\\*\\\"]$") && ((proximity == null) || (proximity <= 1))) {
-          tokenizedQuery.append("*");
+    StringBuilder tokenizedQuery = new StringBuilder(query.length() + 16);
+    boolean prefixSearch = (proximity == null) || (proximity <= 1);
+    QueryTokenizer.scan(query, (seq, start, end) -> {
+      if (analyzer != null) {
+        seq = filterToken(seq.subSequence(start, end).toString());
+        start = 0;
+        end = seq.length();
+      }
+      if (!QueryTokenizer.isSkipped(seq, start, end)) {
+        if (tokenizedQuery.length() > 0) {
+          tokenizedQuery.append(' ');
         }
+        QueryTokenizer.appendToken(tokenizedQuery, seq, start, end, prefixSearch);
       }
-    }
-    return tokenizedQuery.toString().trim();
+    });
+    QueryTokenizer.trimEnd(tokenizedQuery);
+    return tokenizedQuery.toString();
+  }
+
+  /**
+   * @return the filtered tokens of the query as split for tokenized restrictions, including
+   *         their leading +/- operators, quotes and wildcards
+   */
+  List<String> getTokens() {
+    List<String> tokens = new ArrayList<>();
+    QueryTokenizer.scan(query, (seq, start, end) -> {
+      String token = filterToken(seq.subSequence(start, end).toString());
+      if (!QueryTokenizer.isSkipped(token, 0, token.length())) {
+        tokens.add(token);
+      }
+    });
+    return tokens;
   }
 
   String filterToken(String token) {
-    if (analyzer != null) {
+    if (tokenFilterCache != null) {
+      return tokenFilterCache.filterToken(token);
+    } else if (analyzer != null) {
       return analyzer.filterToken(token);
     } else {
       return token;
@@ -259,14 +343,44 @@ public class QueryRestriction implements IQueryRestriction {
     }
   }
 
+  @Override
+  public void accept(IQueryRestrictionVisitor visitor) {
+    visitor.visit(this);
+  }
+
+  @Override
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  @Override
+  public QueryRestriction freeze() {
+    if (frozen) {
+      return this;
+    }
+    QueryRestriction copy = copy();
+    copy.frozenQueryString = copy.getQueryString();
+    copy.frozenHashCode = copy.hashCode();
+    copy.frozen = true;
+    return QueryRestrictionInterner.intern(copy);
+  }
+
+  private void checkNotFrozen() {
+    if (frozen) {
+      throw new UnsupportedOperationException("frozen restriction " + this);
+    }
+  }
+
   @Override
   public QueryRestriction copy() {
     QueryRestriction copy = new QueryRestriction(specifier, query, tokenizeQuery);
     copy.fuzzy = fuzzy;
+    copy.fuzzyBounds = fuzzyBounds;
     copy.proximity = proximity;
     copy.boost = boost;
     copy.negate = negate;
     copy.analyzer = analyzer;
+    copy.tokenFilterCache = tokenFilterCache;
     return copy;
   }
 
@@ -277,17 +391,27 @@ public class QueryRestriction implements IQueryRestriction {
 
   @Override
   public int hashCode() {
-    return Objects.hash(boost, fuzzy, negate, proximity, query, specifier, tokenizeQuery, analyzer);
+    if (frozen) {
+      return frozenHashCode;
+    }
+    return Objects.hash(boost, fuzzy, fuzzyBounds, negate, proximity, query, specifier,
+        tokenizeQuery, analyzer);
   }
 
   @Override
   public boolean equals(Object obj) {
-    if (obj instanceof QueryRestriction) {
+    if (obj == this) {
+      return true;
+    } else if (obj instanceof QueryRestriction) {
       QueryRestriction other = (QueryRestriction) obj;
+      if (frozen && other.frozen && (frozenHashCode != other.frozenHashCode)) {
+        return false;
+      }
       return Objects.equals(specifier, other.specifier)
           && Objects.equals(query, other.query)
           && Objects.equals(boost, other.boost)
           && Objects.equals(fuzzy, other.fuzzy)
+          && Objects.equals(fuzzyBounds, other.fuzzyBounds)
           && Objects.equals(negate, other.negate)
           && Objects.equals(proximity, other.proximity)
           && Objects.equals(tokenizeQuery, other.tokenizeQuery)
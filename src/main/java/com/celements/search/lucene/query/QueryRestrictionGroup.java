@@ -1,8 +1,17 @@
 package com.celements.search.lucene.query;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
@@ -13,6 +22,11 @@ public class QueryRestrictionGroup extends ArrayList<IQueryRestriction> implemen
 
   private static final long serialVersionUID = 20140913164350L;
 
+  /**
+   * groups exceeding this size detect duplicates with a hash index instead of a linear scan
+   */
+  static final int INDEX_THRESHOLD = 16;
+
   public static enum Type {
     AND, OR;
   }
@@ -20,25 +34,90 @@ public class QueryRestrictionGroup extends ArrayList<IQueryRestriction> implemen
   private boolean negate = false;
   private Type type;
 
+  private transient boolean frozen = false;
+  private transient String frozenQueryString;
+  private transient int frozenHashCode;
+
+  /**
+   * hash index of the contained restrictions for large groups, valid as long as no structural
+   * modification happened since {@link #indexModCount}
+   */
+  private transient Set<IQueryRestriction> index;
+  private transient int indexModCount;
+
   public QueryRestrictionGroup(Type type) {
     this.type = type;
   }
 
   @Override
   public boolean add(IQueryRestriction restr) {
+    checkNotFrozen();
     if ((restr != null) && !restr.isEmpty() && !this.contains(restr)) {
-      return super.add(restr);
+      super.add(restr);
+      addToIndex(restr);
+      return true;
     }
     return false;
   }
 
   @Override
   public void add(int index, IQueryRestriction restr) {
+    checkNotFrozen();
     if ((restr != null) && !restr.isEmpty() && !this.contains(restr)) {
       super.add(index, restr);
+      addToIndex(restr);
     }
   }
 
+  /**
+   * Detects duplicates by hash for large groups. Like for any hash based collection, contained
+   * restrictions shouldn't be modified in a way affecting their equality.
+   */
+  @Override
+  public boolean contains(Object obj) {
+    Set<IQueryRestriction> idx = getIndex();
+    return (idx != null) ? idx.contains(obj) : super.contains(obj);
+  }
+
+  private Set<IQueryRestriction> getIndex() {
+    if (frozen) {
+      return index; // built while freezing, frozen groups may be used concurrently
+    }
+    if ((index != null) && (indexModCount != modCount)) {
+      index = null;
+    }
+    if ((index == null) && (size() > INDEX_THRESHOLD)) {
+      index = new HashSet<>(this);
+      indexModCount = modCount;
+    }
+    return index;
+  }
+
+  private void addToIndex(IQueryRestriction restr) {
+    if ((index != null) && (indexModCount == (modCount - 1))) {
+      index.add(restr);
+      indexModCount = modCount;
+    }
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends IQueryRestriction> restrs) {
+    boolean changed = false;
+    for (IQueryRestriction restr : restrs) {
+      changed |= add(restr);
+    }
+    return changed;
+  }
+
+  @Override
+  public boolean addAll(int index, Collection<? extends IQueryRestriction> restrs) {
+    int size = size();
+    for (IQueryRestriction restr : restrs) {
+      add(index + (size() - size), restr);
+    }
+    return size != size();
+  }
+
   @Override
   public boolean getNegate() {
     return negate;
@@ -46,6 +125,7 @@ public class QueryRestrictionGroup extends ArrayList<IQueryRestriction> implemen
 
   @Override
   public QueryRestrictionGroup setNegate(boolean negate) {
+    checkNotFrozen();
     this.negate = negate;
     return this;
   }
@@ -57,9 +137,29 @@ public class QueryRestrictionGroup extends ArrayList<IQueryRestriction> implemen
 
   @Override
   public IQueryRestriction setFuzzy(Float fuzzy) {
-    for (IQueryRestriction restr : this) {
-      if (!restr.getFuzzy().isPresent()) {
-        restr.setFuzzy(fuzzy);
+    checkNotFrozen();
+    index = null;
+    for (int i = 0; i < size(); i++) {
+      if (!get(i).getFuzzy().isPresent()) {
+        getMutable(i).setFuzzy(fuzzy);
+      }
+    }
+    return this;
+  }
+
+  /**
+   * sets the fuzzy bounds on all contained restrictions not defining their own
+   */
+  public QueryRestrictionGroup setFuzzyBounds(FuzzyBounds fuzzyBounds) {
+    checkNotFrozen();
+    index = null;
+    for (int i = 0; i < size(); i++) {
+      IQueryRestriction restr = get(i);
+      if (restr instanceof QueryRestrictionGroup) {
+        ((QueryRestrictionGroup) getMutable(i)).setFuzzyBounds(fuzzyBounds);
+      } else if ((restr instanceof QueryRestriction)
+          && !((QueryRestriction) restr).getFuzzyBounds().isPresent()) {
+        ((QueryRestriction) getMutable(i)).setFuzzyBounds(fuzzyBounds);
       }
     }
     return this;
@@ -70,32 +170,41 @@ public class QueryRestrictionGroup extends ArrayList<IQueryRestriction> implemen
   }
 
   public QueryRestrictionGroup setType(Type type) {
+    checkNotFrozen();
     this.type = type;
     return this;
   }
 
   @Override
   public String getQueryString() {
-    QueryRestrictionGroup copy = this.copy().cleanup();
-    String ret = "";
-    for (IQueryRestriction restr : copy) {
-      String queryStr = restr.getQueryString();
-      if (StringUtils.isNotBlank(queryStr)) {
-        if (!ret.isEmpty()) {
-          ret += " " + copy.getType() + " ";
-        }
-        ret += queryStr.trim();
-      }
+    if (frozen) {
+      return frozenQueryString;
     }
-    if (!ret.isEmpty()) {
-      if (copy.size() > 1) {
-        ret = "(" + ret + ")";
-      }
-      if (copy.getNegate()) {
-        ret = "NOT " + ret;
+    return QueryStringRenderer.render(this);
+  }
+
+  /**
+   * @return the restrictions forming this group when rendered or compiled
+   */
+  Iterable<IQueryRestriction> getRestrictions() {
+    return this;
+  }
+
+  /**
+   * @return true if {@link #cleanup()} would invert the given restrictions, i.e. there are
+   *         multiple of them and all are negated
+   */
+  static boolean needsCleanup(Iterable<IQueryRestriction> restrs) {
+    int count = 0;
+    for (IQueryRestriction restr : restrs) {
+      if ((restr != null) && !restr.isEmpty()) {
+        if (!restr.getNegate()) {
+          return false;
+        }
+        count++;
       }
     }
-    return ret;
+    return count > 1;
   }
 
   /**
@@ -104,13 +213,15 @@ public class QueryRestrictionGroup extends ArrayList<IQueryRestriction> implemen
    * !A || !B -> !(A && B)
    */
   public QueryRestrictionGroup cleanup() {
+    checkNotFrozen();
+    index = null;
     boolean onlyNegated = this.size() > 1;
     for (IQueryRestriction restr : this) {
       onlyNegated &= restr.getNegate();
     }
     if (onlyNegated) {
-      for (IQueryRestriction restr : this) {
-        restr.setNegate(false);
+      for (int i = 0; i < size(); i++) {
+        getMutable(i).setNegate(false);
       }
       this.setType(this.getType() == Type.AND ? Type.OR : Type.AND);
       this.setNegate(!this.getNegate());
@@ -119,30 +230,201 @@ public class QueryRestrictionGroup extends ArrayList<IQueryRestriction> implemen
   }
 
   @Override
-  public QueryRestrictionGroup copy() {
-    QueryRestrictionGroup copy = new QueryRestrictionGroup(this.getType());
+  public void accept(IQueryRestrictionVisitor visitor) {
+    visitor.visit(this);
+  }
+
+  @Override
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  @Override
+  public QueryRestrictionGroup freeze() {
+    if (frozen) {
+      return this;
+    }
+    QueryRestrictionGroup frozenGrp = new QueryRestrictionGroup(type);
+    frozenGrp.negate = negate;
+    return freezeInto(frozenGrp);
+  }
+
+  /**
+   * fills the given group with the frozen restrictions of this group and freezes it
+   */
+  <T extends QueryRestrictionGroup> T freezeInto(T frozenGrp) {
+    QueryRestrictionGroup grp = frozenGrp;
     for (IQueryRestriction restr : this) {
-      copy.add(restr.copy());
+      grp.add(restr.freeze());
     }
+    grp.frozenQueryString = grp.getQueryString();
+    grp.frozenHashCode = grp.hashCode();
+    grp.getIndex();
+    grp.frozen = true;
+    return QueryRestrictionInterner.intern(frozenGrp);
+  }
+
+  void checkNotFrozen() {
+    if (frozen) {
+      throw new UnsupportedOperationException("frozen restriction " + this);
+    }
+  }
+
+  /**
+   * Frozen restrictions are immutable and thus shared with the copy instead of being copied, e.g.
+   * variants derived from a frozen base query only copy its list of top level restrictions. Group
+   * operations modifying contained restrictions replace shared ones with a copy first, other
+   * modifications of them require replacing them with a copy via {@link #set(int, Object)}.
+   */
+  @Override
+  public QueryRestrictionGroup copy() {
+    QueryRestrictionGroup copy = new QueryRestrictionGroup(this.getType());
     copy.setNegate(this.getNegate());
+    copyInto(copy);
     return copy;
   }
 
+  /**
+   * adds the restrictions of this group to the given group, frozen ones are shared and the others
+   * copied
+   */
+  void copyInto(QueryRestrictionGroup copy) {
+    copy.checkNotFrozen();
+    copy.ensureCapacity(copy.size() + size());
+    for (IQueryRestriction restr : this) {
+      // the restrictions have passed the checks of #add already
+      copy.addUnchecked(restr.isFrozen() ? restr : restr.copy());
+    }
+  }
+
+  /**
+   * adds the restriction without the checks of {@link #add(IQueryRestriction)}, for restrictions
+   * taken from a group having applied them already
+   */
+  void addUnchecked(IQueryRestriction restr) {
+    checkNotFrozen();
+    super.add(restr);
+    addToIndex(restr);
+  }
+
+  /**
+   * @return the restriction at the given index, replaced by a mutable copy beforehand if it's a
+   *         frozen one possibly shared with other groups (copy on write)
+   */
+  private IQueryRestriction getMutable(int idx) {
+    IQueryRestriction restr = get(idx);
+    if (restr.isFrozen()) {
+      restr = restr.copy();
+      super.set(idx, restr);
+    }
+    return restr;
+  }
+
   @Override
   public boolean isEmpty() {
     return size() == 0;
   }
 
+  @Override
+  public IQueryRestriction set(int index, IQueryRestriction restr) {
+    checkNotFrozen();
+    this.index = null;
+    return super.set(index, restr);
+  }
+
+  @Override
+  public IQueryRestriction remove(int index) {
+    checkNotFrozen();
+    return super.remove(index);
+  }
+
+  @Override
+  public boolean remove(Object obj) {
+    checkNotFrozen();
+    return super.remove(obj);
+  }
+
+  @Override
+  public boolean removeAll(Collection<?> coll) {
+    checkNotFrozen();
+    return super.removeAll(coll);
+  }
+
+  @Override
+  public boolean retainAll(Collection<?> coll) {
+    checkNotFrozen();
+    return super.retainAll(coll);
+  }
+
+  @Override
+  public boolean removeIf(Predicate<? super IQueryRestriction> filter) {
+    checkNotFrozen();
+    return super.removeIf(filter);
+  }
+
+  @Override
+  public void replaceAll(UnaryOperator<IQueryRestriction> operator) {
+    checkNotFrozen();
+    super.replaceAll(operator);
+  }
+
+  @Override
+  public void sort(Comparator<? super IQueryRestriction> comparator) {
+    checkNotFrozen();
+    super.sort(comparator);
+  }
+
+  @Override
+  public void clear() {
+    checkNotFrozen();
+    super.clear();
+  }
+
+  @Override
+  protected void removeRange(int fromIndex, int toIndex) {
+    checkNotFrozen();
+    super.removeRange(fromIndex, toIndex);
+  }
+
+  @Override
+  public Iterator<IQueryRestriction> iterator() {
+    return frozen ? subList(0, size()).iterator() : super.iterator();
+  }
+
+  @Override
+  public ListIterator<IQueryRestriction> listIterator() {
+    return listIterator(0);
+  }
+
+  @Override
+  public ListIterator<IQueryRestriction> listIterator(int index) {
+    return frozen ? subList(0, size()).listIterator(index) : super.listIterator(index);
+  }
+
+  @Override
+  public List<IQueryRestriction> subList(int fromIndex, int toIndex) {
+    List<IQueryRestriction> subList = super.subList(fromIndex, toIndex);
+    return frozen ? Collections.unmodifiableList(subList) : subList;
+  }
+
   @Override
   public int hashCode() {
+    if (frozen) {
+      return frozenHashCode;
+    }
     return new HashCodeBuilder().append(super.hashCode()).append(this.getType()).append(
         this.getNegate()).hashCode();
   }
 
   @Override
   public boolean equals(Object obj) {
-    if (obj instanceof QueryRestrictionGroup) {
+    if (obj == this) {
+      return true;
+    } else if (obj instanceof QueryRestrictionGroup) {
       QueryRestrictionGroup other = (QueryRestrictionGroup) obj;
+      if (frozen && other.frozen && (frozenHashCode != other.frozenHashCode)) {
+        return false;
+      }
       return super.equals(obj) && new EqualsBuilder().append(this.getType(),
           other.getType()).append(this.getNegate(), other.getNegate()).isEquals();
     } else {
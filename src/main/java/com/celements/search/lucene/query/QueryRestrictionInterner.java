@@ -0,0 +1,30 @@
+package com.celements.search.lucene.query;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * Hash-conses frozen restrictions so that equal subtrees are shared, see
+ * {@link IQueryRestriction#freeze()}. Entries are weakly referenced and vanish once no query uses
+ * them any longer.
+ */
+@ThreadSafe
+final class QueryRestrictionInterner {
+
+  private static final Interner<IQueryRestriction> INTERNER = Interners.newWeakInterner();
+
+  private QueryRestrictionInterner() {}
+
+  /**
+   * @return the canonical instance equal to the given frozen restriction
+   */
+  @SuppressWarnings("unchecked")
+  static <T extends IQueryRestriction> T intern(T restr) {
+    IQueryRestriction interned = INTERNER.intern(restr);
+    // equals of groups accepts subclasses, so an interned instance of another type isn't shared
+    return (interned.getClass() == restr.getClass()) ? (T) interned : restr;
+  }
+
+}
@@ -0,0 +1,223 @@
+package com.celements.search.lucene.query;
+
+import static com.google.common.base.Preconditions.*;
+import static com.google.common.base.Strings.*;
+
+import java.util.Objects;
+
+import javax.validation.constraints.NotNull;
+
+import org.apache.lucene.search.NumericRangeFilter;
+import org.apache.lucene.util.NumericUtils;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.BoundType;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Range;
+
+/**
+ * Restricts a trie encoded numeric field to the given range. It's compiled to a
+ * {@link NumericRangeFilter} which visits only a few terms per precision step instead of all
+ * terms within the range, making open ended ranges as cheap as bounded ones. The field has to be
+ * indexed as numeric field of the type of the range endpoints with the same precision step.
+ */
+public class QueryRestrictionNumericRange implements IQueryRestriction {
+
+  private static final ImmutableSet<Class<?>> TYPES = ImmutableSet.of(Integer.class, Long.class,
+      Float.class, Double.class);
+
+  private boolean negate = false;
+  private final String field;
+  private final Range<? extends Number> range;
+  private final Class<? extends Number> type;
+  private final int precisionStep;
+
+  private boolean frozen = false;
+  private String frozenQueryString;
+  private int frozenHashCode;
+
+  public QueryRestrictionNumericRange(String field, Range<? extends Number> range) {
+    this(field, range, NumericUtils.PRECISION_STEP_DEFAULT);
+  }
+
+  /**
+   * @throws IllegalArgumentException
+   *           if the endpoints aren't either integers, longs, floats or doubles, an unbounded range
+   *           is treated as long range
+   */
+  public QueryRestrictionNumericRange(String field, Range<? extends Number> range,
+      int precisionStep) {
+    checkArgument(precisionStep > 0, "precisionStep must be positive");
+    this.field = nullToEmpty(field).trim();
+    this.range = checkNotNull(range);
+    this.type = determineType(range);
+    this.precisionStep = precisionStep;
+  }
+
+  private static Class<? extends Number> determineType(Range<? extends Number> range) {
+    Class<? extends Number> type = Long.class;
+    if (range.hasLowerBound()) {
+      type = range.lowerEndpoint().getClass();
+    }
+    if (range.hasUpperBound()) {
+      checkArgument(!range.hasLowerBound() || (range.upperEndpoint().getClass() == type),
+          "range endpoints of different types: %s", range);
+      type = range.upperEndpoint().getClass();
+    }
+    checkArgument(TYPES.contains(type), "unsupported numeric type: %s", type);
+    return type;
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  @NotNull
+  public Range<? extends Number> getRange() {
+    return range;
+  }
+
+  /**
+   * @return the type of the range endpoints, one of integer, long, float or double
+   */
+  @NotNull
+  public Class<? extends Number> getType() {
+    return type;
+  }
+
+  public int getPrecisionStep() {
+    return precisionStep;
+  }
+
+  @Override
+  public boolean getNegate() {
+    return negate;
+  }
+
+  @Override
+  public QueryRestrictionNumericRange setNegate(boolean negate) {
+    checkNotFrozen();
+    this.negate = negate;
+    return this;
+  }
+
+  @Override
+  public Optional<Float> getFuzzy() {
+    return Optional.of(1f);
+  }
+
+  @Override
+  public IQueryRestriction setFuzzy(Float fuzzy) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * @return the range in query syntax with '*' for unbounded endpoints, e.g. 'field:[10 TO *]'.
+   *         It identifies the restriction but can't be parsed by the lucene query parser, which
+   *         doesn't know about numeric fields.
+   */
+  @Override
+  public String getQueryString() {
+    if (frozen) {
+      return frozenQueryString;
+    }
+    StringBuilder sb = new StringBuilder();
+    appendQueryString(sb, negate);
+    return sb.toString();
+  }
+
+  /**
+   * appends the query string as returned by {@link #getQueryString()}, negated if requested
+   * instead of according to {@link #getNegate()}
+   */
+  void appendQueryString(StringBuilder sb, boolean negate) {
+    if (frozen && (negate == this.negate)) {
+      sb.append(frozenQueryString);
+    } else if (!isEmpty()) {
+      if (negate) {
+        sb.append("NOT ");
+      }
+      sb.append(field).append(':');
+      sb.append(range.hasLowerBound() && (range.lowerBoundType() == BoundType.OPEN) ? '{' : '[');
+      sb.append(range.hasLowerBound() ? range.lowerEndpoint() : "*");
+      sb.append(" TO ");
+      sb.append(range.hasUpperBound() ? range.upperEndpoint() : "*");
+      sb.append(range.hasUpperBound() && (range.upperBoundType() == BoundType.OPEN) ? '}' : ']');
+    }
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return field.isEmpty();
+  }
+
+  @Override
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  @Override
+  public QueryRestrictionNumericRange freeze() {
+    if (frozen) {
+      return this;
+    }
+    QueryRestrictionNumericRange copy = copy();
+    copy.frozenQueryString = copy.getQueryString();
+    copy.frozenHashCode = copy.hashCode();
+    copy.frozen = true;
+    return QueryRestrictionInterner.intern(copy);
+  }
+
+  private void checkNotFrozen() {
+    if (frozen) {
+      throw new UnsupportedOperationException("frozen restriction " + this);
+    }
+  }
+
+  @Override
+  public void accept(IQueryRestrictionVisitor visitor) {
+    visitor.visit(this);
+  }
+
+  @Override
+  public QueryRestrictionNumericRange copy() {
+    QueryRestrictionNumericRange copy = new QueryRestrictionNumericRange(field, range,
+        precisionStep);
+    copy.negate = negate;
+    return copy;
+  }
+
+  @Override
+  public int hashCode() {
+    if (frozen) {
+      return frozenHashCode;
+    }
+    return Objects.hash(negate, field, range, precisionStep);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) {
+      return true;
+    } else if (obj instanceof QueryRestrictionNumericRange) {
+      QueryRestrictionNumericRange other = (QueryRestrictionNumericRange) obj;
+      if (frozen && other.frozen && (frozenHashCode != other.frozenHashCode)) {
+        return false;
+      }
+      return Objects.equals(negate, other.negate)
+          && Objects.equals(field, other.field)
+          && Objects.equals(range, other.range)
+          && Objects.equals(type, other.type)
+          && (precisionStep == other.precisionStep);
+    } else {
+      return false;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "QueryRestrictionNumericRange [queryString=" + getQueryString() + ", type="
+        + type.getSimpleName() + ", precisionStep=" + precisionStep + "]";
+  }
+
+}
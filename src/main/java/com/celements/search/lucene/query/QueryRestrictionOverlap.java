@@ -0,0 +1,223 @@
+package com.celements.search.lucene.query;
+
+import static com.google.common.base.Preconditions.*;
+import static com.google.common.base.Strings.*;
+
+import java.util.Objects;
+
+import javax.annotation.Nullable;
+import javax.validation.constraints.NotNull;
+
+import org.apache.lucene.util.NumericUtils;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.BoundType;
+import com.google.common.collect.Range;
+
+/**
+ * Restricts documents describing an interval with trie encoded start and end fields, e.g. events,
+ * to those overlapping the given range. An interval overlaps if it starts before the range ends
+ * and ends after the range starts. Both bounds are evaluated as one cached filter, see
+ * {@link ConjunctionFilter}, instead of intersecting two open ended ranges each matching a large
+ * part of the index.
+ */
+public class QueryRestrictionOverlap implements IQueryRestriction {
+
+  private boolean negate = false;
+  private final String startField;
+  private final String endField;
+  private final Range<? extends Number> range;
+  private final int precisionStep;
+  private final QueryRestrictionNumericRange startBound;
+  private final QueryRestrictionNumericRange endBound;
+
+  private boolean frozen = false;
+  private String frozenQueryString;
+  private int frozenHashCode;
+
+  public QueryRestrictionOverlap(String startField, String endField,
+      Range<? extends Number> range) {
+    this(startField, endField, range, NumericUtils.PRECISION_STEP_DEFAULT);
+  }
+
+  /**
+   * @throws IllegalArgumentException
+   *           if the endpoints aren't either integers, longs, floats or doubles
+   */
+  public QueryRestrictionOverlap(String startField, String endField,
+      Range<? extends Number> range, int precisionStep) {
+    this.startField = nullToEmpty(startField).trim();
+    this.endField = nullToEmpty(endField).trim();
+    this.range = checkNotNull(range);
+    this.precisionStep = precisionStep;
+    startBound = range.hasUpperBound() ? new QueryRestrictionNumericRange(this.startField,
+        bound(range.upperEndpoint(), range.upperBoundType(), true), precisionStep) : null;
+    endBound = range.hasLowerBound() ? new QueryRestrictionNumericRange(this.endField,
+        bound(range.lowerEndpoint(), range.lowerBoundType(), false), precisionStep) : null;
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private static Range<? extends Number> bound(Number endpoint, BoundType type, boolean upper) {
+    Comparable comparable = (Comparable) endpoint;
+    Range range = upper ? Range.upTo(comparable, type) : Range.downTo(comparable, type);
+    return range;
+  }
+
+  public String getStartField() {
+    return startField;
+  }
+
+  public String getEndField() {
+    return endField;
+  }
+
+  @NotNull
+  public Range<? extends Number> getRange() {
+    return range;
+  }
+
+  public int getPrecisionStep() {
+    return precisionStep;
+  }
+
+  /**
+   * @return the restriction of the start field to the end of the range, null if unbounded
+   */
+  @Nullable
+  QueryRestrictionNumericRange getStartBound() {
+    return startBound;
+  }
+
+  /**
+   * @return the restriction of the end field to the start of the range, null if unbounded
+   */
+  @Nullable
+  QueryRestrictionNumericRange getEndBound() {
+    return endBound;
+  }
+
+  @Override
+  public boolean getNegate() {
+    return negate;
+  }
+
+  @Override
+  public QueryRestrictionOverlap setNegate(boolean negate) {
+    checkNotFrozen();
+    this.negate = negate;
+    return this;
+  }
+
+  @Override
+  public Optional<Float> getFuzzy() {
+    return Optional.of(1f);
+  }
+
+  @Override
+  public IQueryRestriction setFuzzy(Float fuzzy) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * @return the bounds in query syntax, e.g. '(end:[10 TO *] AND start:[* TO 20])', see
+   *         {@link QueryRestrictionNumericRange#getQueryString()}
+   */
+  @Override
+  public String getQueryString() {
+    if (frozen) {
+      return frozenQueryString;
+    }
+    StringBuilder sb = new StringBuilder();
+    if (!isEmpty()) {
+      if (negate) {
+        sb.append("NOT ");
+      }
+      sb.append('(');
+      if (endBound != null) {
+        sb.append(endBound.getQueryString());
+      }
+      if ((endBound != null) && (startBound != null)) {
+        sb.append(" AND ");
+      }
+      if (startBound != null) {
+        sb.append(startBound.getQueryString());
+      }
+      sb.append(')');
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return true if a field is missing or the range is unbounded, thus not restricting anything
+   */
+  @Override
+  public boolean isEmpty() {
+    return startField.isEmpty() || endField.isEmpty() || ((startBound == null)
+        && (endBound == null));
+  }
+
+  @Override
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  @Override
+  public QueryRestrictionOverlap freeze() {
+    if (frozen) {
+      return this;
+    }
+    QueryRestrictionOverlap copy = copy();
+    copy.frozenQueryString = copy.getQueryString();
+    copy.frozenHashCode = copy.hashCode();
+    copy.frozen = true;
+    return QueryRestrictionInterner.intern(copy);
+  }
+
+  private void checkNotFrozen() {
+    if (frozen) {
+      throw new UnsupportedOperationException("frozen restriction " + this);
+    }
+  }
+
+  @Override
+  public QueryRestrictionOverlap copy() {
+    QueryRestrictionOverlap copy = new QueryRestrictionOverlap(startField, endField, range,
+        precisionStep);
+    copy.negate = negate;
+    return copy;
+  }
+
+  @Override
+  public int hashCode() {
+    if (frozen) {
+      return frozenHashCode;
+    }
+    return Objects.hash(negate, startField, endField, range, precisionStep);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) {
+      return true;
+    } else if (obj instanceof QueryRestrictionOverlap) {
+      QueryRestrictionOverlap other = (QueryRestrictionOverlap) obj;
+      if (frozen && other.frozen && (frozenHashCode != other.frozenHashCode)) {
+        return false;
+      }
+      return Objects.equals(negate, other.negate)
+          && Objects.equals(startField, other.startField)
+          && Objects.equals(endField, other.endField)
+          && Objects.equals(range, other.range)
+          && (precisionStep == other.precisionStep);
+    } else {
+      return false;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "QueryRestrictionOverlap [queryString=" + getQueryString() + ", precisionStep="
+        + precisionStep + "]";
+  }
+
+}
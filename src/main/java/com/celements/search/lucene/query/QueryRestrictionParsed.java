@@ -0,0 +1,70 @@
+package com.celements.search.lucene.query;
+
+import static com.google.common.base.Preconditions.*;
+
+import javax.validation.constraints.NotNull;
+
+import org.apache.lucene.search.Query;
+
+/**
+ * {@link QueryRestrictionString} keeping the lucene {@link Query} it has been parsed into. The
+ * {@link LuceneQueryCompiler} uses this query as is instead of parsing the query string again,
+ * thus it isn't analyzed anew by the analyzer of the search.
+ */
+public class QueryRestrictionParsed extends QueryRestrictionString {
+
+  private final Query query;
+
+  public QueryRestrictionParsed(@NotNull Query query) {
+    this(query, query.toString());
+  }
+
+  /**
+   * @param queryString
+   *          the query rendered relative to the default field it has been parsed with, thus
+   *          parsing it again with the same default field yields the same query
+   */
+  public QueryRestrictionParsed(@NotNull Query query, @NotNull String queryString) {
+    super(queryString);
+    this.query = checkNotNull(query);
+  }
+
+  /**
+   * @return the parsed query, may be shared and thus must not be modified
+   */
+  @NotNull
+  public Query getQuery() {
+    return query;
+  }
+
+  /**
+   * @throws UnsupportedOperationException
+   *           always, the query string is given by the parsed query
+   */
+  @Override
+  public QueryRestrictionString setQueryString(String queryString) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public QueryRestrictionParsed copy() {
+    QueryRestrictionParsed copy = new QueryRestrictionParsed(query, getRawQueryString());
+    copy.setNegate(getNegate());
+    return copy;
+  }
+
+  /**
+   * @return a copy of this restriction as plain {@link QueryRestrictionString}, without the
+   *         parsed query
+   */
+  @NotNull
+  public QueryRestrictionString copyUnparsed() {
+    return new QueryRestrictionString(getRawQueryString()).setNegate(getNegate());
+  }
+
+  @Override
+  public String toString() {
+    return "QueryRestrictionParsed [queryString=" + getQueryString() + "]";
+  }
+
+}
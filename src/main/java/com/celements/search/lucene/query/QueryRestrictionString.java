@@ -11,6 +11,7 @@ public class QueryRestrictionString implements IQueryRestriction {
 
   private boolean negate = false;
   private String queryString;
+  private boolean frozen = false;
 
   public QueryRestrictionString(String queryString) {
     this.queryString = Strings.nullToEmpty(queryString);
@@ -23,6 +24,7 @@ public class QueryRestrictionString implements IQueryRestriction {
 
   @Override
   public QueryRestrictionString setNegate(boolean negate) {
+    checkNotFrozen();
     this.negate = negate;
     return this;
   }
@@ -38,13 +40,35 @@ public class QueryRestrictionString implements IQueryRestriction {
   }
 
   public QueryRestrictionString setQueryString(String queryString) {
+    checkNotFrozen();
     this.queryString = queryString;
     return this;
   }
 
+  /**
+   * @return the query string as given, without the negation and parenthesis added by
+   *         {@link #getQueryString()}
+   */
+  String getRawQueryString() {
+    return queryString;
+  }
+
   @Override
   public String getQueryString() {
-    return (negate ? "NOT " : "") + "(" + queryString + ")";
+    StringBuilder sb = new StringBuilder();
+    appendQueryString(sb, negate);
+    return sb.toString();
+  }
+
+  /**
+   * appends the query string as returned by {@link #getQueryString()}, negated if requested
+   * instead of according to {@link #getNegate()}
+   */
+  void appendQueryString(StringBuilder sb, boolean negate) {
+    if (negate) {
+      sb.append("NOT ");
+    }
+    sb.append('(').append(queryString).append(')');
   }
 
   @Override
@@ -52,6 +76,32 @@ public class QueryRestrictionString implements IQueryRestriction {
     return StringUtils.isBlank(queryString);
   }
 
+  @Override
+  public void accept(IQueryRestrictionVisitor visitor) {
+    visitor.visit(this);
+  }
+
+  @Override
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  @Override
+  public QueryRestrictionString freeze() {
+    if (frozen) {
+      return this;
+    }
+    QueryRestrictionString copy = copy();
+    copy.frozen = true;
+    return QueryRestrictionInterner.intern(copy);
+  }
+
+  private void checkNotFrozen() {
+    if (frozen) {
+      throw new UnsupportedOperationException("frozen restriction " + this);
+    }
+  }
+
   @Override
   public QueryRestrictionString copy() {
     QueryRestrictionString copy = new QueryRestrictionString(queryString);
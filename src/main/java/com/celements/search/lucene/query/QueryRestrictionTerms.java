@@ -0,0 +1,215 @@
+package com.celements.search.lucene.query;
+
+import static com.google.common.base.Strings.*;
+
+import java.util.Collection;
+import java.util.Objects;
+
+import javax.annotation.Nullable;
+import javax.validation.constraints.NotNull;
+
+import org.apache.lucene.queryParser.QueryParser;
+
+import com.celements.search.lucene.index.analysis.CelAnalyzer;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Restricts a field to exactly match any of the given values. It's compiled to a non scoring
+ * {@link TermsFilter} instead of a boolean clause per value, making it suitable for large value
+ * lists like document or space white- and blacklists.
+ */
+public class QueryRestrictionTerms implements IQueryRestriction {
+
+  private boolean negate = false;
+  private final String field;
+  private final ImmutableSet<String> values;
+  private CelAnalyzer analyzer = null;
+  private TokenFilterCache tokenFilterCache = null;
+
+  private boolean frozen = false;
+  private String frozenQueryString;
+  private int frozenHashCode;
+
+  public QueryRestrictionTerms(String field, Collection<String> values) {
+    this.field = nullToEmpty(field).trim();
+    ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+    for (String value : values) {
+      if (!isNullOrEmpty(value)) {
+        builder.add(value);
+      }
+    }
+    this.values = builder.build();
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  public ImmutableSet<String> getValues() {
+    return values;
+  }
+
+  @Override
+  public boolean getNegate() {
+    return negate;
+  }
+
+  @Override
+  public QueryRestrictionTerms setNegate(boolean negate) {
+    checkNotFrozen();
+    this.negate = negate;
+    return this;
+  }
+
+  @Override
+  public Optional<Float> getFuzzy() {
+    return Optional.of(1f);
+  }
+
+  @Override
+  public IQueryRestriction setFuzzy(Float fuzzy) {
+    throw new UnsupportedOperationException();
+  }
+
+  public QueryRestrictionTerms setAnalyzer(CelAnalyzer analyzer) {
+    checkNotFrozen();
+    this.analyzer = analyzer;
+    this.tokenFilterCache = null;
+    return this;
+  }
+
+  /**
+   * sets the analyzer of the given cache, which memoizes the filtered tokens
+   */
+  public QueryRestrictionTerms setTokenFilterCache(@NotNull TokenFilterCache tokenFilterCache) {
+    setAnalyzer(tokenFilterCache.getAnalyzer());
+    this.tokenFilterCache = tokenFilterCache;
+    return this;
+  }
+
+  @Nullable
+  CelAnalyzer getAnalyzer() {
+    return analyzer;
+  }
+
+  String filterToken(String token) {
+    if (tokenFilterCache != null) {
+      return tokenFilterCache.filterToken(token);
+    } else if (analyzer != null) {
+      return analyzer.filterToken(token);
+    } else {
+      return token;
+    }
+  }
+
+  @Override
+  public String getQueryString() {
+    if (frozen) {
+      return frozenQueryString;
+    }
+    StringBuilder sb = new StringBuilder();
+    appendQueryString(sb, negate);
+    return sb.toString();
+  }
+
+  /**
+   * appends the query string as returned by {@link #getQueryString()}, negated if requested
+   * instead of according to {@link #getNegate()}. The values are filtered like when compiled by
+   * {@link LuceneQueryCompiler}, thus the rendered and the compiled query match the same terms.
+   */
+  void appendQueryString(StringBuilder sb, boolean negate) {
+    if (frozen && (negate == this.negate)) {
+      sb.append(frozenQueryString);
+    } else if (!isEmpty()) {
+      if (negate) {
+        sb.append("NOT ");
+      }
+      sb.append(field).append(":(");
+      boolean first = true;
+      for (String value : values) {
+        if (!first) {
+          sb.append(" OR ");
+        }
+        sb.append('"').append(QueryParser.escape(filterToken(value))).append('"');
+        first = false;
+      }
+      sb.append(')');
+    }
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return field.isEmpty() || values.isEmpty();
+  }
+
+  @Override
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  @Override
+  public QueryRestrictionTerms freeze() {
+    if (frozen) {
+      return this;
+    }
+    QueryRestrictionTerms copy = copy();
+    copy.frozenQueryString = copy.getQueryString();
+    copy.frozenHashCode = copy.hashCode();
+    copy.frozen = true;
+    return QueryRestrictionInterner.intern(copy);
+  }
+
+  private void checkNotFrozen() {
+    if (frozen) {
+      throw new UnsupportedOperationException("frozen restriction " + this);
+    }
+  }
+
+  @Override
+  public void accept(IQueryRestrictionVisitor visitor) {
+    visitor.visit(this);
+  }
+
+  @Override
+  public QueryRestrictionTerms copy() {
+    QueryRestrictionTerms copy = new QueryRestrictionTerms(field, values);
+    copy.negate = negate;
+    copy.analyzer = analyzer;
+    copy.tokenFilterCache = tokenFilterCache;
+    return copy;
+  }
+
+  @Override
+  public int hashCode() {
+    if (frozen) {
+      return frozenHashCode;
+    }
+    return Objects.hash(negate, field, values, analyzer);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) {
+      return true;
+    } else if (obj instanceof QueryRestrictionTerms) {
+      QueryRestrictionTerms other = (QueryRestrictionTerms) obj;
+      if (frozen && other.frozen && (frozenHashCode != other.frozenHashCode)) {
+        return false;
+      }
+      return Objects.equals(negate, other.negate)
+          && Objects.equals(field, other.field)
+          && Objects.equals(values, other.values)
+          && Objects.equals(analyzer, other.analyzer);
+    } else {
+      return false;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "QueryRestrictionTerms [field=" + field + ", values=" + values.size() + ", negate="
+        + negate + "]";
+  }
+
+}
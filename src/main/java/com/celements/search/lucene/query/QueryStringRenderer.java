@@ -0,0 +1,138 @@
+package com.celements.search.lucene.query;
+
+import static com.google.common.base.Preconditions.*;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.validation.constraints.NotNull;
+
+import com.celements.search.lucene.query.QueryRestrictionGroup.Type;
+import com.google.common.base.Predicates;
+import com.google.common.collect.Iterables;
+
+/**
+ * Renders {@link IQueryRestriction} trees into their lucene query string in a single pass. The
+ * {@link QueryRestrictionGroup#cleanup()} of negated expressions is applied on the fly without
+ * copying or mutating the visited restrictions.
+ */
+@NotThreadSafe
+public final class QueryStringRenderer implements IQueryRestrictionVisitor {
+
+  private final StringBuilder out;
+
+  /**
+   * set while visiting the children of a group which has been cleaned up, their negation is
+   * consumed by the group
+   */
+  private boolean negationCleared = false;
+
+  private int depth = 0;
+
+  private QueryStringRenderer(StringBuilder out) {
+    this.out = out;
+  }
+
+  @NotNull
+  public static String render(@NotNull IQueryRestriction restr) {
+    StringBuilder sb = new StringBuilder();
+    checkNotNull(restr).accept(new QueryStringRenderer(sb));
+    return sb.toString();
+  }
+
+  /**
+   * appends the query string to the given builder, groups of empty restrictions are truncated
+   * from it again, thus no other target than a {@link StringBuilder} is supported
+   */
+  public static void render(@NotNull IQueryRestriction restr, @NotNull StringBuilder out) {
+    checkNotNull(restr).accept(new QueryStringRenderer(checkNotNull(out)));
+  }
+
+  @Override
+  public void visit(QueryRestriction restr) {
+    restr.appendQueryString(out, isNegated(restr));
+  }
+
+  @Override
+  public void visit(QueryRestrictionString restr) {
+    // groups skip empty restrictions, see QueryRestrictionGroup#add
+    if ((depth == 0) || !restr.isEmpty()) {
+      restr.appendQueryString(out, isNegated(restr));
+    }
+  }
+
+  @Override
+  public void visit(QueryRestrictionTerms restr) {
+    restr.appendQueryString(out, isNegated(restr));
+  }
+
+  @Override
+  public void visit(QueryRestrictionNumericRange restr) {
+    restr.appendQueryString(out, isNegated(restr));
+  }
+
+  @Override
+  public void visit(QueryRestrictionGroup restrGrp) {
+    if (restrGrp.isFrozen() && !negationCleared) {
+      out.append(restrGrp.getQueryString());
+      return;
+    }
+    Iterable<IQueryRestriction> restrs = restrGrp.getRestrictions();
+    boolean cleanup = QueryRestrictionGroup.needsCleanup(restrs);
+    boolean negate = isNegated(restrGrp) ^ cleanup;
+    Type type = ((restrGrp.getType() == Type.AND) ^ cleanup) ? Type.AND : Type.OR;
+    String operator = " " + type + " ";
+    int start = out.length();
+    if (negate) {
+      out.append("NOT ");
+    }
+    int parenthesis = -1;
+    if (Iterables.size(Iterables.filter(restrs, Predicates.notNull())) > 1) {
+      parenthesis = out.length();
+      out.append('(');
+    }
+    int count = 0;
+    depth++;
+    for (IQueryRestriction restr : restrs) {
+      if (restr != null) {
+        int mark = out.length();
+        if (count > 0) {
+          out.append(operator);
+        }
+        int restrStart = out.length();
+        negationCleared = cleanup;
+        restr.accept(this);
+        if (out.length() > restrStart) {
+          count++;
+        } else {
+          out.setLength(mark);
+        }
+      }
+    }
+    depth--;
+    if (count == 0) {
+      out.setLength(start);
+    } else if (parenthesis >= 0) {
+      if (count > 1) {
+        out.append(')');
+      } else {
+        // only possible for restrictions having become empty after being added to the group
+        out.deleteCharAt(parenthesis);
+      }
+    }
+  }
+
+  @Override
+  public void visitOther(IQueryRestriction restr) {
+    String queryString;
+    if (negationCleared && restr.getNegate()) {
+      queryString = restr.copy().setNegate(false).getQueryString();
+    } else {
+      queryString = restr.getQueryString();
+    }
+    out.append(queryString.trim());
+  }
+
+  private boolean isNegated(IQueryRestriction restr) {
+    return !negationCleared && restr.getNegate();
+  }
+
+}
@@ -0,0 +1,189 @@
+package com.celements.search.lucene.query;
+
+import javax.annotation.concurrent.Immutable;
+
+import org.apache.lucene.queryParser.QueryParser;
+
+/**
+ * Single-pass scanner splitting restriction queries into tokens and writing them escaped and
+ * prefix-marked into a {@link StringBuilder}, see {@link QueryRestriction#getQueryString()}.
+ * Tokens are separated by spaces, quoted sections (e.g. "Robert Peter") form a single token.
+ */
+@Immutable
+final class QueryTokenizer {
+
+  interface TokenConsumer {
+
+    void accept(CharSequence seq, int start, int end);
+
+  }
+
+  /**
+   * chars escaped by {@link QueryParser#escape(String)}, computed from it to always match the
+   * parser in use
+   */
+  private static final boolean[] ESCAPED = new boolean[128];
+
+  static {
+    for (char c = 0; c < ESCAPED.length; c++) {
+      ESCAPED[c] = QueryParser.escape(String.valueOf(c)).length() > 1;
+    }
+  }
+
+  private QueryTokenizer() {}
+
+  /**
+   * calls the consumer for every token in the query, trimmed the same way as {@link String#trim()}
+   */
+  static void scan(String query, TokenConsumer consumer) {
+    int len = query.length();
+    int pos = 0;
+    while (pos < len) {
+      int end = endOfQuoted(query, pos);
+      if ((end < 0) && (query.charAt(pos) != ' ')) {
+        end = pos;
+        while ((end < len) && (query.charAt(end) != ' ')) {
+          end++;
+        }
+      }
+      if (end < 0) {
+        pos++;
+      } else {
+        int start = pos;
+        int stop = end;
+        while ((start < stop) && (query.charAt(start) <= ' ')) {
+          start++;
+        }
+        while ((stop > start) && (query.charAt(stop - 1) <= ' ')) {
+          stop--;
+        }
+        consumer.accept(query, start, stop);
+        pos = end;
+      }
+    }
+  }
+
+  /**
+   * @return the end of a quoted token (with optional surrounding spaces) starting at pos, else -1
+   */
+  private static int endOfQuoted(String query, int pos) {
+    int quote = ((query.charAt(pos) == ' ') ? pos + 1 : pos);
+    if ((quote < query.length()) && (query.charAt(quote) == '"')) {
+      int end = query.indexOf('"', quote + 1);
+      if (end >= 0) {
+        end++;
+        return ((end < query.length()) && (query.charAt(end) == ' ')) ? end + 1 : end;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return true if the token carries no content, i.e. it is empty or a lone operator or quote
+   */
+  static boolean isSkipped(CharSequence seq, int start, int end) {
+    if (start >= end) {
+      return true;
+    }
+    char c = seq.charAt(start);
+    return ((end - start) == 1) && ((c == '"') || (c == '+') || (c == '-'));
+  }
+
+  /**
+   * Appends the token escaped and prefixed with its operator (required if none is given). An
+   * opening and closing quote, the leading operator and the last wildcard remain unescaped. If
+   * prefixSearch is set and the token doesn't end with a wildcard or quote, '*' is appended.
+   */
+  static void appendToken(StringBuilder sb, CharSequence seq, int start, int end,
+      boolean prefixSearch) {
+    if (hasLineTerminator(seq, start, end)) {
+      appendTokenRegex(sb, seq.subSequence(start, end).toString(), prefixSearch);
+      return;
+    }
+    int pos = start;
+    char first = seq.charAt(pos);
+    if ((first == '+') || (first == '-')) {
+      sb.append(first);
+      pos++;
+    } else {
+      sb.append('+');
+    }
+    boolean opened = false;
+    if ((pos < end) && (seq.charAt(pos) == '"')) {
+      sb.append('"');
+      opened = true;
+      pos++;
+    }
+    int stop = end;
+    boolean closed = (stop > pos) && (seq.charAt(stop - 1) == '"');
+    if (closed) {
+      stop--;
+    }
+    int lastWildcard = -1;
+    for (int i = stop - 1; i >= pos; i--) {
+      char c = seq.charAt(i);
+      if ((c == '*') || (c == '?')) {
+        lastWildcard = i;
+        break;
+      }
+    }
+    // an escaped wildcard at the very beginning of the token stays escaped
+    if ((lastWildcard == start) && !opened) {
+      lastWildcard = -1;
+    }
+    for (int i = pos; i < stop; i++) {
+      char c = seq.charAt(i);
+      if ((c < ESCAPED.length) && ESCAPED[c] && (i != lastWildcard)) {
+        sb.append('\\');
+      }
+      sb.append(c);
+    }
+    if (closed) {
+      sb.append('"');
+    }
+    char last = sb.charAt(sb.length() - 1);
+    if (prefixSearch && (last != '*') && (last != '"')) {
+      sb.append('*');
+    }
+  }
+
+  /**
+   * trims trailing whitespaces like {@link String#trim()}
+   */
+  static void trimEnd(StringBuilder sb) {
+    int len = sb.length();
+    while ((len > 0) && (sb.charAt(len - 1) <= ' ')) {
+      len--;
+    }
+    sb.setLength(len);
+  }
+
+  private static boolean hasLineTerminator(CharSequence seq, int start, int end) {
+    for (int i = start; i < end; i++) {
+      char c = seq.charAt(i);
+      if ((c == '\n') || (c == '\r') || (c == '\u0085') || (c == '\u2028')
+          || (c == '\u2029')) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * regex based variant for the rare tokens containing line terminators, on which the regular
+   * expressions defining the token format behave specially
+   */
+  private static void appendTokenRegex(StringBuilder sb, String token, boolean prefixSearch) {
+    token = QueryParser.escape(token);
+    token = token.replaceAll("^(\\\\([+-]))?(\\\\(\"))?(.*?)(\\\\(\"))?$", "$2$4$5$7");
+    token = token.replaceAll("^(.+)\\\\([\\?\\*].*)$", "$1$2");
+    if (!token.matches("^[+-].*")) {
+      sb.append('+');
+    }
+    sb.append(token);
+    if (!token.matches("^.*[\\*\\\"]$") && prefixSearch) {
+      sb.append('*');
+    }
+  }
+
+}
@@ -0,0 +1,261 @@
+package com.celements.search.lucene.query;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.validation.constraints.NotNull;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.OpenBitSet;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Matches the documents granted by a {@link Resolver}. Documents are grouped by the stored values
+ * of the key fields, e.g. wiki and space, and all keys of a segment are resolved in a single batch
+ * instead of hit by hit. The stored values are read instead of the indexed terms since the key
+ * fields may be analyzed into several terms, which the {@link FieldCache} can't tell apart. The
+ * keys per document are computed once per segment and shared by all scopes. Documents matching
+ * the own rights filter, e.g. carrying rights objects, aren't granted by their key but always
+ * matched and left to the hit by hit checks, as are the documents sharing their entity field
+ * value, e.g. their attachments. Filters are equal by scope, key fields and own rights, thus when
+ * shared via the {@link FilterCache} a scope (e.g. a user and the version of the rights) keeps
+ * its bitset per segment reader, i.e. per index generation.
+ */
+@Immutable
+public final class RightsFilter extends Filter {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * resolves the rights of a scope for many keys at once
+   */
+  @FunctionalInterface
+  public interface Resolver {
+
+    /**
+     * @param keys
+     *          the distinct values of the key fields in the order of the fields
+     * @return the granted keys
+     */
+    @NotNull
+    Set<List<String>> resolve(@NotNull Set<List<String>> keys);
+
+  }
+
+  /**
+   * document keys per segment core, collected once the segment is garbage collected
+   */
+  private static final Cache<Object, ConcurrentMap<List<?>, DocKeys>> DOC_KEYS = CacheBuilder
+      .newBuilder().weakKeys().build();
+
+  private final String scope;
+  private final ImmutableList<String> keyFields;
+  private final Filter ownRightsFilter;
+  private final String entityField;
+  private final transient Resolver resolver;
+
+  public RightsFilter(@NotNull String scope, @NotNull List<String> keyFields,
+      @NotNull Resolver resolver) {
+    this(scope, keyFields, null, null, resolver);
+  }
+
+  /**
+   * @param ownRightsFilter
+   *          matches the documents with own rights, which are matched regardless of their key
+   * @param entityField
+   *          the stored field whose value the documents of an entity share, e.g. the full name of
+   *          a document and its attachments
+   */
+  public RightsFilter(@NotNull String scope, @NotNull List<String> keyFields,
+      @Nullable Filter ownRightsFilter, @Nullable String entityField,
+      @NotNull Resolver resolver) {
+    this.scope = checkNotNull(scope);
+    this.keyFields = ImmutableList.copyOf(keyFields);
+    checkArgument(!this.keyFields.isEmpty(), "no key fields given");
+    checkArgument((ownRightsFilter == null) == (entityField == null),
+        "own rights filter and entity field must be given together");
+    this.ownRightsFilter = ownRightsFilter;
+    this.entityField = entityField;
+    this.resolver = checkNotNull(resolver);
+  }
+
+  @NotNull
+  public String getScope() {
+    return scope;
+  }
+
+  @NotNull
+  public ImmutableList<String> getKeyFields() {
+    return keyFields;
+  }
+
+  @Nullable
+  public Filter getOwnRightsFilter() {
+    return ownRightsFilter;
+  }
+
+  @Nullable
+  public String getEntityField() {
+    return entityField;
+  }
+
+  @Override
+  public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+    DocKeys docKeys = getDocKeys(reader);
+    Set<List<String>> granted = resolver.resolve(docKeys.keys.keySet());
+    boolean[] grantedOrds = new boolean[docKeys.keys.size()];
+    docKeys.keys.forEach((key, ord) -> grantedOrds[ord] = granted.contains(key));
+    OpenBitSet bits = new OpenBitSet(reader.maxDoc());
+    for (int doc = 0; doc < docKeys.docOrds.length; doc++) {
+      int ord = docKeys.docOrds[doc];
+      if ((ord >= 0) && grantedOrds[ord] && !reader.isDeleted(doc)) {
+        bits.fastSet(doc);
+      }
+    }
+    if (ownRightsFilter != null) {
+      addOwnRights(reader, docKeys, bits);
+    }
+    return bits;
+  }
+
+  /**
+   * adds the documents with own rights and the documents of the same entity within their key
+   */
+  private void addOwnRights(IndexReader reader, DocKeys docKeys, OpenBitSet bits)
+      throws IOException {
+    DocIdSet ownRights = ownRightsFilter.getDocIdSet(reader);
+    DocIdSetIterator iter = (ownRights != null) ? ownRights.iterator() : null;
+    if (iter == null) {
+      return;
+    }
+    Set<Long> entities = new HashSet<>();
+    for (int doc = iter.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iter.nextDoc()) {
+      if (!reader.isDeleted(doc)) {
+        bits.fastSet(doc);
+      }
+      if ((docKeys.docOrds[doc] >= 0) && (docKeys.entityOrds[doc] >= 0)) {
+        entities.add(getEntityKey(docKeys.docOrds[doc], docKeys.entityOrds[doc]));
+      }
+    }
+    for (int doc = 0; !entities.isEmpty() && (doc < docKeys.docOrds.length); doc++) {
+      if (entities.contains(getEntityKey(docKeys.docOrds[doc], docKeys.entityOrds[doc]))
+          && !reader.isDeleted(doc)) {
+        bits.fastSet(doc);
+      }
+    }
+  }
+
+  private static long getEntityKey(int keyOrd, int entityOrd) {
+    return ((long) keyOrd << 32) | (entityOrd & 0xffffffffL);
+  }
+
+  private DocKeys getDocKeys(IndexReader reader) throws IOException {
+    try {
+      ConcurrentMap<List<?>, DocKeys> docKeysPerFields = DOC_KEYS.get(
+          reader.getCoreCacheKey(), ConcurrentHashMap::new);
+      List<?> fields = Arrays.asList(keyFields, entityField);
+      DocKeys docKeys = docKeysPerFields.get(fields);
+      if (docKeys == null) {
+        docKeys = new DocKeys(reader, keyFields, entityField);
+        docKeysPerFields.putIfAbsent(fields, docKeys);
+      }
+      return docKeys;
+    } catch (ExecutionException exc) {
+      throw new IllegalStateException(exc);
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(scope, keyFields, ownRightsFilter, entityField);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj instanceof RightsFilter) {
+      RightsFilter other = (RightsFilter) obj;
+      return scope.equals(other.scope) && keyFields.equals(other.keyFields)
+          && Objects.equals(ownRightsFilter, other.ownRightsFilter)
+          && Objects.equals(entityField, other.entityField);
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return "RightsFilter [scope=" + scope + ", keyFields=" + keyFields + ", ownRightsFilter="
+        + ownRightsFilter + ", entityField=" + entityField + "]";
+  }
+
+  /**
+   * the distinct keys of a segment and the key ordinal per document, -1 if deleted or missing a
+   * key field, as well as the ordinal of the entity field value per document, -1 if missing.
+   */
+  private static final class DocKeys {
+
+    final Map<List<String>, Integer> keys = new LinkedHashMap<>();
+    final int[] docOrds;
+    final int[] entityOrds;
+
+    DocKeys(IndexReader reader, List<String> keyFields, @Nullable String entityField)
+        throws IOException {
+      List<String> fields = new ArrayList<>(keyFields);
+      if (entityField != null) {
+        fields.add(entityField);
+      }
+      MapFieldSelector selector = new MapFieldSelector(fields);
+      Map<String, Integer> entities = new HashMap<>();
+      docOrds = new int[reader.maxDoc()];
+      entityOrds = new int[reader.maxDoc()];
+      Arrays.fill(docOrds, -1);
+      Arrays.fill(entityOrds, -1);
+      for (int doc = 0; doc < docOrds.length; doc++) {
+        if (!reader.isDeleted(doc)) {
+          Document document = reader.document(doc, selector);
+          docOrds[doc] = getOrd(document, keyFields);
+          String entity = (entityField != null) ? document.get(entityField) : null;
+          if (entity != null) {
+            entityOrds[doc] = entities.computeIfAbsent(entity, e -> entities.size());
+          }
+        }
+      }
+    }
+
+    private int getOrd(Document doc, List<String> keyFields) {
+      ImmutableList.Builder<String> key = ImmutableList.builder();
+      for (String field : keyFields) {
+        String value = doc.get(field);
+        if (value == null) {
+          return -1;
+        }
+        key.add(value);
+      }
+      return keys.computeIfAbsent(key.build(), k -> keys.size());
+    }
+  }
+
+}
@@ -0,0 +1,175 @@
+package com.celements.search.lucene.query;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.validation.constraints.NotNull;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.FieldCache.StringIndex;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreCachingWrappingScorer;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Searcher;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopDocsCollector;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopScoreDocCollector;
+
+/**
+ * Collects the top hits following a position within the sort order of a search, thus a page is
+ * collected without the hits of all previous pages as paging by offset does. The position is the
+ * last hit of the previous page as collected, a {@link FieldDoc} holding its sort values if
+ * sorted or a {@link ScoreDoc} if sorted by relevance. Ties are broken by the document id like
+ * the top docs collectors do, thus positions remain valid as long as the index isn't changed.
+ * Supported are sorts by relevance, document id and string fields.
+ */
+@NotThreadSafe
+public final class SearchAfterCollector extends Collector {
+
+  private final SortField[] sortFields;
+  private final ScoreDoc after;
+  private final Object[] afterValues;
+  private final TopDocsCollector<?> delegate;
+  private final StringIndex[] stringIndexes;
+  private Scorer scorer;
+  private int docBase;
+
+  /**
+   * @param sort
+   *          the sort of the hits, null for relevance
+   * @param after
+   *          the last hit of the previous page, null for the first page
+   * @param count
+   *          the number of hits to collect
+   */
+  public SearchAfterCollector(@Nullable Sort sort, @Nullable ScoreDoc after, int count)
+      throws IOException {
+    checkArgument(count > 0, "count must be positive");
+    if (sort != null) {
+      sortFields = sort.getSort();
+      delegate = TopFieldCollector.create(sort, count, true, true, false, true);
+    } else {
+      sortFields = new SortField[] { SortField.FIELD_SCORE };
+      delegate = TopScoreDocCollector.create(count, true);
+    }
+    for (SortField sortField : sortFields) {
+      checkArgument((sortField.getType() == SortField.SCORE)
+          || (sortField.getType() == SortField.DOC) || (sortField.getType() == SortField.STRING),
+          "unsupported sort field: %s", sortField);
+    }
+    checkArgument((after == null) || (sort == null) || ((after instanceof FieldDoc)
+        && (((FieldDoc) after).fields.length == sortFields.length)), "invalid position: %s",
+        after);
+    this.after = after;
+    this.afterValues = (after == null) ? null : (sort != null) ? ((FieldDoc) after).fields
+        : new Object[] { after.score };
+    this.stringIndexes = new StringIndex[sortFields.length];
+  }
+
+  /**
+   * @param searcher
+   *          the searcher to collect on, positions are only valid for the same searcher
+   * @param filter
+   *          optional filter restricting the collected documents
+   * @return the hits following the given one, fewer than the count if no further hits match
+   */
+  @NotNull
+  public static TopDocs collect(@NotNull Searcher searcher, @NotNull Query query,
+      @Nullable Filter filter, @Nullable Sort sort, @Nullable ScoreDoc after, int count)
+      throws IOException {
+    SearchAfterCollector collector = new SearchAfterCollector(sort, after, count);
+    checkNotNull(searcher).search(checkNotNull(query), filter, collector);
+    return collector.getTopDocs();
+  }
+
+  /**
+   * @return the collected hits, with their sort values if sorted
+   */
+  @NotNull
+  public TopDocs getTopDocs() {
+    return delegate.topDocs();
+  }
+
+  @Override
+  public void setScorer(Scorer scorer) throws IOException {
+    // the score is needed for the position and by the delegate
+    this.scorer = new ScoreCachingWrappingScorer(scorer);
+    delegate.setScorer(this.scorer);
+  }
+
+  @Override
+  public void collect(int doc) throws IOException {
+    if ((after == null) || isAfter(doc)) {
+      delegate.collect(doc);
+    }
+  }
+
+  private boolean isAfter(int doc) throws IOException {
+    for (int i = 0; i < sortFields.length; i++) {
+      int cmp = compare(i, doc);
+      if (cmp != 0) {
+        return sortFields[i].getReverse() ? (cmp < 0) : (cmp > 0);
+      }
+    }
+    return (docBase + doc) > after.doc;
+  }
+
+  /**
+   * @return the comparison of the given document with the position for the sort field, positive
+   *         if it sorts after the position in ascending order
+   */
+  private int compare(int i, int doc) throws IOException {
+    switch (sortFields[i].getType()) {
+      case SortField.SCORE:
+        // higher scores come first
+        return Float.compare((Float) afterValues[i], scorer.score());
+      case SortField.DOC:
+        return Integer.compare(docBase + doc, after.doc);
+      default:
+        StringIndex index = stringIndexes[i];
+        return compare(index.lookup[index.order[doc]], (String) afterValues[i]);
+    }
+  }
+
+  /**
+   * missing values come first as sorted by the string comparator
+   */
+  private static int compare(String value, String afterValue) {
+    if (value == null) {
+      return (afterValue == null) ? 0 : -1;
+    } else if (afterValue == null) {
+      return 1;
+    }
+    return value.compareTo(afterValue);
+  }
+
+  @Override
+  public void setNextReader(IndexReader reader, int docBase) throws IOException {
+    this.docBase = docBase;
+    for (int i = 0; i < sortFields.length; i++) {
+      if (sortFields[i].getType() == SortField.STRING) {
+        // shared with the string comparator of the sort
+        stringIndexes[i] = FieldCache.DEFAULT.getStringIndex(reader, sortFields[i].getField());
+      }
+    }
+    delegate.setNextReader(reader, docBase);
+  }
+
+  @Override
+  public boolean acceptsDocsOutOfOrder() {
+    // the delegate is created for documents in order
+    return false;
+  }
+
+}
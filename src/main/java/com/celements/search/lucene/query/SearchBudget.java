@@ -0,0 +1,104 @@
+package com.celements.search.lucene.query;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Time budget and cancellation flag of a search, enforced during collection by the
+ * {@link TimeLimitedQuery}. Cancelling is cooperative: the collection stops at its next check.
+ */
+@ThreadSafe
+public final class SearchBudget {
+
+  private final Duration timeout;
+  private volatile boolean cancelled;
+  private volatile Execution lastExecution;
+
+  /**
+   * @param timeout
+   *          the time budget per execution, unbounded if null
+   */
+  public SearchBudget(@Nullable Duration timeout) {
+    checkArgument((timeout == null) || !timeout.isNegative(), "timeout must not be negative");
+    this.timeout = timeout;
+  }
+
+  @NotNull
+  public Optional<Duration> getTimeout() {
+    return Optional.ofNullable(timeout);
+  }
+
+  /**
+   * stops running and future executions of the search
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * @return true if the collection of the last started execution has been stopped early due to
+   *         timeout or cancellation, thus its results are partial. Stopped previous executions
+   *         don't affect later ones.
+   */
+  public boolean isStopped() {
+    Execution execution = lastExecution;
+    return (execution != null) && execution.isStopped();
+  }
+
+  /**
+   * @return a new execution of the search starting now
+   */
+  @NotNull
+  Execution newExecution() {
+    Execution execution = new Execution((timeout != null) ? (System.nanoTime()
+        + timeout.toNanos()) : Long.MAX_VALUE);
+    lastExecution = execution;
+    return execution;
+  }
+
+  /**
+   * a single execution of the search with its own deadline
+   */
+  final class Execution {
+
+    private final long deadline;
+    private volatile boolean stopped;
+
+    private Execution(long deadline) {
+      this.deadline = deadline;
+    }
+
+    boolean isStopped() {
+      return stopped;
+    }
+
+    /**
+     * @return true if the collection has to stop, marking the results as partial
+     */
+    boolean isExhausted() {
+      boolean exhausted = cancelled || ((timeout != null) && ((System.nanoTime()
+          - deadline) >= 0));
+      if (exhausted) {
+        stopped = true;
+      }
+      return exhausted;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "SearchBudget [timeout=" + timeout + ", cancelled=" + cancelled + ", stopped="
+        + isStopped() + "]";
+  }
+
+}
@@ -0,0 +1,76 @@
+package com.celements.search.lucene.query;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import javax.annotation.concurrent.Immutable;
+import javax.validation.constraints.NotNull;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.OpenBitSet;
+
+import com.google.common.collect.ImmutableSortedSet;
+
+/**
+ * Filter matching all documents containing at least one of the given terms. The bitset is built
+ * per segment directly from the postings, thus unlike a boolean query of term clauses it neither
+ * scores nor is it limited by {@link org.apache.lucene.search.BooleanQuery#getMaxClauseCount()}.
+ */
+@Immutable
+public final class TermsFilter extends Filter {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * sorted to seek through the term dictionary in index order
+   */
+  private final ImmutableSortedSet<Term> terms;
+
+  public TermsFilter(@NotNull Collection<Term> terms) {
+    this.terms = ImmutableSortedSet.copyOf(checkNotNull(terms));
+  }
+
+  @NotNull
+  public ImmutableSortedSet<Term> getTerms() {
+    return terms;
+  }
+
+  @Override
+  public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+    OpenBitSet bits = new OpenBitSet(reader.maxDoc());
+    TermDocs termDocs = reader.termDocs();
+    try {
+      for (Term term : terms) {
+        termDocs.seek(term);
+        while (termDocs.next()) {
+          bits.set(termDocs.doc());
+        }
+      }
+    } finally {
+      termDocs.close();
+    }
+    return bits;
+  }
+
+  @Override
+  public int hashCode() {
+    return terms.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return (obj instanceof TermsFilter) && terms.equals(((TermsFilter) obj).terms);
+  }
+
+  @Override
+  public String toString() {
+    return "TermsFilter " + terms;
+  }
+
+}
@@ -0,0 +1,253 @@
+package com.celements.search.lucene.query;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+import java.util.Set;
+
+import javax.validation.constraints.NotNull;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Searcher;
+import org.apache.lucene.search.Weight;
+
+import com.celements.search.lucene.query.SearchBudget.Execution;
+
+/**
+ * Wraps a query to stop its collection once the {@link SearchBudget} is exhausted, the hits
+ * collected so far make up partial results. The time budget starts per execution with the
+ * creation of the weight, thus executing the search again, e.g. for the next page, gets the full
+ * budget again. The budget is checked every {@value #CHECK_INTERVAL} documents, either while
+ * iterating the wrapped scorer or, for top scorers possibly scoring out of order, while
+ * collecting from it. The term expansion on rewrite isn't covered.
+ */
+public class TimeLimitedQuery extends Query {
+
+  private static final long serialVersionUID = 1L;
+
+  static final int CHECK_INTERVAL = 256;
+
+  private final Query query;
+  private final SearchBudget budget;
+
+  public TimeLimitedQuery(@NotNull Query query, @NotNull SearchBudget budget) {
+    this.query = checkNotNull(query);
+    this.budget = checkNotNull(budget);
+  }
+
+  @NotNull
+  public Query getQuery() {
+    return query;
+  }
+
+  @NotNull
+  public SearchBudget getBudget() {
+    return budget;
+  }
+
+  @Override
+  public Query rewrite(IndexReader reader) throws IOException {
+    Query rewritten = query.rewrite(reader);
+    return (rewritten != query) ? new TimeLimitedQuery(rewritten, budget) : this;
+  }
+
+  @Override
+  public Weight createWeight(Searcher searcher) throws IOException {
+    return new LimitedWeight(query.createWeight(searcher), budget.newExecution());
+  }
+
+  @Override
+  public void extractTerms(Set<Term> terms) {
+    query.extractTerms(terms);
+  }
+
+  /**
+   * renders the wrapped query, thus the search is identified as without time limit
+   */
+  @Override
+  public String toString(String field) {
+    return query.toString(field);
+  }
+
+  @Override
+  public int hashCode() {
+    return (31 * query.hashCode()) + budget.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj instanceof TimeLimitedQuery) {
+      TimeLimitedQuery other = (TimeLimitedQuery) obj;
+      return query.equals(other.query) && (budget == other.budget);
+    }
+    return false;
+  }
+
+  private class LimitedWeight extends Weight {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Weight weight;
+    private final Execution execution;
+
+    LimitedWeight(Weight weight, Execution execution) {
+      this.weight = weight;
+      this.execution = execution;
+    }
+
+    @Override
+    public Query getQuery() {
+      return TimeLimitedQuery.this;
+    }
+
+    @Override
+    public float getValue() {
+      return weight.getValue();
+    }
+
+    @Override
+    public float sumOfSquaredWeights() throws IOException {
+      return weight.sumOfSquaredWeights();
+    }
+
+    @Override
+    public void normalize(float norm) {
+      weight.normalize(norm);
+    }
+
+    @Override
+    public Explanation explain(IndexReader reader, int doc) throws IOException {
+      return weight.explain(reader, doc);
+    }
+
+    @Override
+    public Scorer scorer(IndexReader reader, boolean scoreDocsInOrder, boolean topScorer)
+        throws IOException {
+      if (execution.isStopped()) {
+        // the remaining segments aren't scored anymore
+        return null;
+      }
+      Scorer scorer = weight.scorer(reader, scoreDocsInOrder, topScorer);
+      return (scorer != null) ? new LimitedScorer(this, scorer, execution) : null;
+    }
+
+    @Override
+    public boolean scoresDocsOutOfOrder() {
+      return weight.scoresDocsOutOfOrder();
+    }
+  }
+
+  private static class LimitedScorer extends Scorer {
+
+    private final Scorer scorer;
+    private final Execution execution;
+    private int count;
+    private boolean exhausted;
+
+    LimitedScorer(Weight weight, Scorer scorer, Execution execution) {
+      super(weight);
+      this.scorer = scorer;
+      this.execution = execution;
+    }
+
+    @Override
+    public int docID() {
+      return exhausted ? NO_MORE_DOCS : scorer.docID();
+    }
+
+    @Override
+    public int nextDoc() throws IOException {
+      return checkBudget() ? scorer.nextDoc() : NO_MORE_DOCS;
+    }
+
+    @Override
+    public int advance(int target) throws IOException {
+      return checkBudget() ? scorer.advance(target) : NO_MORE_DOCS;
+    }
+
+    @Override
+    public float score() throws IOException {
+      return scorer.score();
+    }
+
+    @Override
+    public float freq() throws IOException {
+      return scorer.freq();
+    }
+
+    /**
+     * top scorers collect by their own loop, e.g. out of order, thus the budget is checked per
+     * collected document instead
+     */
+    @Override
+    public void score(Collector collector) throws IOException {
+      try {
+        scorer.score(new LimitedCollector(collector));
+      } catch (BudgetExhaustedException exc) {
+        // expected, terminates the collection early
+      }
+    }
+
+    /**
+     * @return false if the budget is exhausted
+     */
+    private boolean checkBudget() {
+      if (!exhausted && ((count++ % CHECK_INTERVAL) == 0)) {
+        exhausted = execution.isExhausted();
+      }
+      return !exhausted;
+    }
+
+    private class LimitedCollector extends Collector {
+
+      private final Collector collector;
+
+      LimitedCollector(Collector collector) {
+        this.collector = collector;
+      }
+
+      @Override
+      public void setScorer(Scorer scorer) throws IOException {
+        collector.setScorer(scorer);
+      }
+
+      @Override
+      public void collect(int doc) throws IOException {
+        if (!checkBudget()) {
+          throw BudgetExhaustedException.INSTANCE;
+        }
+        collector.collect(doc);
+      }
+
+      @Override
+      public void setNextReader(IndexReader reader, int docBase) throws IOException {
+        collector.setNextReader(reader, docBase);
+      }
+
+      @Override
+      public boolean acceptsDocsOutOfOrder() {
+        return collector.acceptsDocsOutOfOrder();
+      }
+    }
+  }
+
+  /**
+   * lucene 3.4 has no means to terminate a collection other than throwing out of the collector
+   */
+  private static final class BudgetExhaustedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    static final BudgetExhaustedException INSTANCE = new BudgetExhaustedException();
+
+    private BudgetExhaustedException() {
+      super(null, null, false, false);
+    }
+  }
+
+}
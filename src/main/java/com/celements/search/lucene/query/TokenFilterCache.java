@@ -0,0 +1,81 @@
+package com.celements.search.lucene.query;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.validation.constraints.NotNull;
+
+import com.celements.search.lucene.index.analysis.CelAnalyzer;
+import com.google.common.cache.AbstractCache.StatsCounter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Memoizes {@link CelAnalyzer#filterToken(String)} of frequent tokens, e.g. doc types, spaces or
+ * common search terms, for the given analyzer. The misses of {@link #stats()} count how often the
+ * analysis actually ran. Hits and misses are additionally recorded on the counter of the current
+ * scope, e.g. a request, if one is supplied.
+ */
+@ThreadSafe
+public final class TokenFilterCache {
+
+  private final CelAnalyzer analyzer;
+  private final Cache<String, String> tokens;
+  private final Supplier<Optional<StatsCounter>> scopeStats;
+
+  public TokenFilterCache(@NotNull CelAnalyzer analyzer, long maximumSize) {
+    this(analyzer, maximumSize, Optional::empty);
+  }
+
+  /**
+   * @param scopeStats
+   *          supplies the counter of the current scope, e.g. of the request, if any
+   */
+  public TokenFilterCache(@NotNull CelAnalyzer analyzer, long maximumSize,
+      @NotNull Supplier<Optional<StatsCounter>> scopeStats) {
+    this.analyzer = checkNotNull(analyzer);
+    this.scopeStats = checkNotNull(scopeStats);
+    tokens = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+  }
+
+  @NotNull
+  public CelAnalyzer getAnalyzer() {
+    return analyzer;
+  }
+
+  /**
+   * @return the token filtered by the analyzer
+   */
+  @NotNull
+  public String filterToken(@NotNull String token) {
+    boolean[] analyzed = new boolean[1];
+    try {
+      String filtered = tokens.get(checkNotNull(token), () -> {
+        analyzed[0] = true;
+        return analyzer.filterToken(token);
+      });
+      scopeStats.get().ifPresent(stats -> {
+        if (analyzed[0]) {
+          stats.recordMisses(1);
+        } else {
+          stats.recordHits(1);
+        }
+      });
+      return filtered;
+    } catch (ExecutionException | UncheckedExecutionException exc) {
+      throw new IllegalStateException("filtering token failed: " + token, exc.getCause());
+    }
+  }
+
+  @NotNull
+  public CacheStats stats() {
+    return tokens.stats();
+  }
+
+}
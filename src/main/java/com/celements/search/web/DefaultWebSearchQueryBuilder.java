@@ -1,6 +1,5 @@
 package com.celements.search.web;
 
-import static com.celements.search.lucene.LuceneUtils.*;
 import static com.celements.search.web.classes.WebSearchConfigClass.*;
 import static com.google.common.base.MoreObjects.*;
 import static com.google.common.base.Preconditions.*;
@@ -10,6 +9,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
@@ -39,14 +39,17 @@ import com.celements.model.context.ModelContext;
 import com.celements.model.object.xwiki.XWikiObjectFetcher;
 import com.celements.model.util.ModelUtils;
 import com.celements.pagetype.IPageTypeClassConfig;
+import com.celements.pagetype.PageTypeReference;
 import com.celements.pagetype.classes.PageTypeClass;
 import com.celements.search.lucene.ILuceneSearchService;
 import com.celements.search.lucene.LuceneUtils;
+import com.celements.search.lucene.query.FuzzyBounds;
 import com.celements.search.lucene.query.IQueryRestriction;
 import com.celements.search.lucene.query.LuceneDocType;
 import com.celements.search.lucene.query.LuceneQuery;
 import com.celements.search.lucene.query.QueryRestrictionGroup;
 import com.celements.search.lucene.query.QueryRestrictionGroup.Type;
+import com.celements.search.lucene.query.QueryRestrictionTerms;
 import com.celements.search.web.classes.WebSearchConfigClass;
 import com.celements.search.web.packages.WebSearchPackage;
 import com.google.common.base.Strings;
@@ -202,31 +205,49 @@ public class DefaultWebSearchQueryBuilder implements WebSearchQueryBuilder {
 
   private IQueryRestriction getRestrSpaces(boolean isBlacklist) {
     ClassField<List<SpaceReference>> field = isBlacklist ? FIELD_SPACES_BLACK_LIST : FIELD_SPACES;
-    return buildRestrictionFromField(field,
-        spaceRef -> searchService.createSpaceRestriction(spaceRef)).setNegate(isBlacklist);
+    // space references are always exactified, see LuceneUtils#isExactifiable
+    return buildTermsRestrictionFromField(IndexFields.DOCUMENT_SPACE, field,
+        LuceneUtils::serialize).setNegate(isBlacklist);
   }
 
   private IQueryRestriction getRestrDocs(boolean isBlacklist) {
     ClassField<List<DocumentReference>> field = isBlacklist ? FIELD_DOCS_BLACK_LIST : FIELD_DOCS;
-    return buildRestrictionFromField(field, docRef -> searchService.createDocRestriction(docRef))
-        .setNegate(isBlacklist);
+    Map<Boolean, List<DocumentReference>> docRefs = getValues(field).stream()
+        .collect(partitioningBy(LuceneUtils::isExactifiable));
+    IQueryRestriction restr = searchService.createTermsRestriction(IndexFields.DOCUMENT_FULLNAME,
+        docRefs.get(true).stream().map(LuceneUtils::serialize).collect(toList()));
+    if (!docRefs.get(false).isEmpty()) {
+      // XXX workaround issue CELDEV-35, not exactified as by LuceneUtils#exactify
+      QueryRestrictionGroup grp = searchService.createRestrictionGroup(Type.OR);
+      grp.add(restr);
+      docRefs.get(false).forEach(docRef -> grp.add(searchService.createDocRestriction(docRef)));
+      restr = grp;
+    }
+    return restr.setNegate(isBlacklist);
   }
 
   private IQueryRestriction getRestrPageTypes(boolean isBlacklist) {
-    return buildRestrictionFromField((isBlacklist ? FIELD_PAGETYPES_BLACK_LIST : FIELD_PAGETYPES),
-        pageTypeRef -> searchService.createRestriction(PageTypeClass.FIELD_PAGE_TYPE,
-            exactify(pageTypeRef.getConfigName())))
-                .setNegate(isBlacklist);
+    return buildTermsRestrictionFromField(PageTypeClass.FIELD_PAGE_TYPE.serialize(),
+        (isBlacklist ? FIELD_PAGETYPES_BLACK_LIST : FIELD_PAGETYPES),
+        PageTypeReference::getConfigName).setNegate(isBlacklist);
+  }
+
+  private <T> QueryRestrictionTerms buildTermsRestrictionFromField(String luceneField,
+      ClassField<List<T>> field, Function<T, String> serializer) {
+    return searchService.createTermsRestriction(luceneField, getValues(field).stream()
+        .map(serializer)
+        .collect(toList()));
   }
 
-  private <T> IQueryRestriction buildRestrictionFromField(ClassField<List<T>> field,
-      Function<T, IQueryRestriction> restrictionFunc) {
+  private <T> List<T> getValues(ClassField<List<T>> field) {
     List<T> values = new ArrayList<>();
     if (field instanceof ListField) {
       values.addAll(getDefaultValues((ListField<T>) field));
     }
     fetch(field).ifPresent(values::addAll);
-    return buildRestrictionGroup(Type.OR, values, restrictionFunc);
+    return values.stream()
+        .filter(Objects::nonNull)
+        .collect(toList());
   }
 
   private <T> List<T> getDefaultValues(ListField<T> field) {
@@ -247,6 +268,14 @@ public class DefaultWebSearchQueryBuilder implements WebSearchQueryBuilder {
       grp.add(searchPackageGrp);
     }
     fetch(FIELD_FUZZY_SEARCH).ifPresent(grp::setFuzzy);
+    Optional<Integer> prefixLength = fetch(FIELD_FUZZY_PREFIX_LENGTH);
+    Optional<Integer> maxExpansions = fetch(FIELD_FUZZY_MAX_EXPANSIONS);
+    if (prefixLength.isPresent() || maxExpansions.isPresent()) {
+      FuzzyBounds defaults = searchService.getFuzzyBounds();
+      grp.setFuzzyBounds(new FuzzyBounds(
+          Math.max(0, prefixLength.orElse(defaults.getPrefixLength())),
+          Math.max(1, maxExpansions.orElse(defaults.getMaxExpansions()))));
+    }
     return grp;
   }
 
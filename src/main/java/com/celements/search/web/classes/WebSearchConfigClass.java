@@ -20,6 +20,7 @@ import com.celements.model.classes.fields.list.ComponentListField;
 import com.celements.model.classes.fields.list.CustomListField;
 import com.celements.model.classes.fields.list.StringListField;
 import com.celements.model.classes.fields.number.FloatField;
+import com.celements.model.classes.fields.number.IntField;
 import com.celements.pagetype.PageTypeReference;
 import com.celements.search.web.packages.WebSearchPackage;
 
@@ -43,6 +44,12 @@ public class WebSearchConfigClass extends AbstractClassDefinition
   public static final ClassField<Float> FIELD_FUZZY_SEARCH = new FloatField.Builder(CLASS_REF,
       "fuzzySearch").build();
 
+  public static final ClassField<Integer> FIELD_FUZZY_PREFIX_LENGTH = new IntField.Builder(
+      CLASS_REF, "fuzzyPrefixLength").build();
+
+  public static final ClassField<Integer> FIELD_FUZZY_MAX_EXPANSIONS = new IntField.Builder(
+      CLASS_REF, "fuzzyMaxExpansions").build();
+
   public static final ClassField<List<DocumentReference>> FIELD_DOCS = new CustomListField.Builder<>(
       CLASS_REF, "docs", new ReferenceMarshaller<>(DocumentReference.class)).multiSelect(true)
           .separator(",").build();
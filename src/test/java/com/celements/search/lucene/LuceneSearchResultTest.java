@@ -10,8 +10,17 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Searcher;
+import org.apache.lucene.search.TermQuery;
 import org.easymock.Capture;
 import org.junit.Before;
 import org.junit.Test;
@@ -21,13 +30,19 @@ import org.xwiki.model.reference.EntityReference;
 import org.xwiki.model.reference.WikiReference;
 
 import com.celements.common.test.AbstractComponentTest;
+import com.celements.rights.access.EAccessLevel;
+import com.celements.rights.access.IRightsAccessFacadeRole;
+import com.celements.search.lucene.query.FuzzyBounds;
 import com.celements.search.lucene.query.LuceneDocType;
 import com.celements.search.lucene.query.LuceneQuery;
+import com.celements.search.lucene.query.QueryRestriction;
 import com.google.common.collect.ImmutableList;
 import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.plugin.lucene.IndexFields;
 import com.xpn.xwiki.plugin.lucene.LucenePlugin;
 import com.xpn.xwiki.plugin.lucene.SearchResult;
 import com.xpn.xwiki.plugin.lucene.SearchResults;
+import com.xpn.xwiki.plugin.lucene.searcherProvider.SearcherProvider;
 
 public class LuceneSearchResultTest extends AbstractComponentTest {
 
@@ -233,6 +248,60 @@ public class LuceneSearchResultTest extends AbstractComponentTest {
     assertEquals(1234, ret);
   }
 
+  @Test
+  public void test_getSize_counted() throws Exception {
+    try (TestIndex index = newIndex(10)) {
+      LuceneSearchResult result = new LuceneSearchResult("field:value", new TermQuery(new Term(
+          "field", "value")), null, Arrays.asList("de"), true);
+      result.lucenePlugin = lucenePluginMock;
+      expectSearchers(index.getReader());
+
+      replayDefault();
+      int ret = result.getSize();
+      verifyDefault();
+
+      assertEquals(2, ret);
+    }
+  }
+
+  @Test
+  public void test_getSize_aclFiltered() throws Exception {
+    try (TestIndex index = newIndex(10)) {
+      LuceneSearchResult result = new LuceneSearchResult("field:value", new TermQuery(new Term(
+          "field", "value")), null, Arrays.asList("de"), false, true);
+      result.lucenePlugin = lucenePluginMock;
+      expectSearchers(index.getReader());
+      expect(lucenePluginMock.getResultLimit(false, context)).andReturn(1);
+
+      replayDefault();
+      int ret = result.getSize();
+      verifyDefault();
+
+      assertFalse(result.isSkipChecks());
+      assertEquals("capped to the result limit of searches with checks", 1, ret);
+    }
+  }
+
+  @Test
+  public void test_LuceneSearch_aclFiltered() throws Exception {
+    Query query = new TermQuery(new Term("field", "value"));
+    LuceneSearchResult result = new LuceneSearchResult("field:value", query, null, null, false,
+        true);
+    result.lucenePlugin = lucenePluginMock;
+    SearchResults sResultsMock = createMockAndAddToDefault(SearchResults.class);
+
+    expect(lucenePluginMock.getSearchResultsWithoutChecks(same(query), anyObject(
+        String[].class), isNull(String.class), eq(""), same(context))).andReturn(sResultsMock)
+            .once();
+
+    replayDefault();
+    SearchResults ret = result.luceneSearch();
+    verifyDefault();
+
+    assertSame(sResultsMock, ret);
+    assertFalse(result.isSkipChecks());
+  }
+
   @Test
   public void test_LuceneSearch_alreadySet() throws Exception {
     LuceneQuery query = new LuceneQuery();
@@ -289,6 +358,34 @@ public class LuceneSearchResultTest extends AbstractComponentTest {
     assertSame(sResultsMock, ret);
   }
 
+  @Test
+  public void test_LuceneSearch_compiledQuery() throws Exception {
+    Query query = new TermQuery(new Term("field", "value"));
+    LuceneSearchResult result = new LuceneSearchResult(query, null, null, false);
+    result.lucenePlugin = lucenePluginMock;
+    SearchResults sResultsMock = createMockAndAddToDefault(SearchResults.class);
+
+    expect(lucenePluginMock.getSearchResults(same(query), anyObject(String[].class),
+        isNull(String.class), eq(""), same(context))).andReturn(sResultsMock).once();
+
+    replayDefault();
+    SearchResults ret = result.luceneSearch();
+    verifyDefault();
+
+    assertSame(sResultsMock, ret);
+    assertEquals("field:value", result.getQueryString());
+  }
+
+  @Test
+  public void test_getQueryString_compiledRestriction() throws Exception {
+    LuceneQuery query = new LuceneQuery();
+    query.add(new QueryRestriction("field", "value"));
+    LuceneSearchResult result = new LuceneSearchResult(query.getQueryString(), new TermQuery(
+        new Term("field", "value")), null, null, false);
+
+    assertEquals(query.getQueryString(), result.getQueryString());
+  }
+
   @Test
   public void test_LuceneSearch_IOException() throws Exception {
     LuceneQuery query = new LuceneQuery();
@@ -327,6 +424,234 @@ public class LuceneSearchResultTest extends AbstractComponentTest {
     verifyDefault();
   }
 
+  @Test
+  public void test_streamResults_chunks() throws Exception {
+    LuceneQuery query = new LuceneQuery();
+    LuceneSearchResult result = newResult(query, null, null, false);
+    result.setOffset(1);
+    SearchResults sResultsMock = createMockAndAddToDefault(SearchResults.class);
+    List<SearchResult> list = new ArrayList<>();
+    List<DocumentReference> docRefs = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      list.add(createMockAndAddToDefault(SearchResult.class));
+      docRefs.add(new DocumentReference("db", "space", "doc" + i));
+      expect(list.get(i).getReference()).andReturn(docRefs.get(i)).once();
+    }
+
+    expect(lucenePluginMock.getSearchResults(eq(query.getQueryString()), anyObject(String[].class),
+        isNull(String.class), eq(""), same(context))).andReturn(sResultsMock).once();
+    expect(sResultsMock.getResults(eq(2), eq(2))).andReturn(list.subList(0, 2)).once();
+    expect(sResultsMock.getResults(eq(4), eq(2))).andReturn(list.subList(2, 3)).once();
+    expect(sResultsMock.getResults(eq(5), eq(2))).andReturn(Collections.<SearchResult>emptyList())
+        .once();
+
+    replayDefault();
+    List<DocumentReference> ret = result.streamResults(DocumentReference.class, 2).collect(
+        Collectors.toList());
+    verifyDefault();
+
+    assertEquals(docRefs, ret);
+  }
+
+  @Test
+  public void test_streamResults_collected() throws Exception {
+    IRightsAccessFacadeRole rightsAccessMock = registerComponentMock(
+        IRightsAccessFacadeRole.class);
+    try (TestIndex index = newIndex(10)) {
+      LuceneSearchResult result = new LuceneSearchResult("field:value", new TermQuery(new Term(
+          "field", "value")), Arrays.asList("-" + IndexFields.DOCUMENT_NAME), null, false);
+      result.lucenePlugin = lucenePluginMock;
+      result.setOffset(1);
+      expectSearchers(index.getReader());
+      for (int i = 0; i < 10; i += 2) {
+        expect(rightsAccessMock.hasAccessLevel(newDocRef(i), EAccessLevel.VIEW)).andReturn(
+            i != 6).once();
+      }
+
+      replayDefault();
+      List<DocumentReference> ret = result.streamResults(DocumentReference.class, 2).collect(
+          Collectors.toList());
+      verifyDefault();
+
+      assertEquals("denied hits mustn't end the stream", Arrays.asList(newDocRef(4), newDocRef(
+          2), newDocRef(0)), ret);
+    }
+  }
+
+  @Test
+  public void test_streamResults_shortCircuit() throws Exception {
+    LuceneQuery query = new LuceneQuery();
+    LuceneSearchResult result = newResult(query, null, null, false);
+    result.setLimit(50);
+    SearchResults sResultsMock = createMockAndAddToDefault(SearchResults.class);
+    SearchResult sResultMock = createMockAndAddToDefault(SearchResult.class);
+    DocumentReference docRef = new DocumentReference("db", "space", "doc");
+
+    expect(lucenePluginMock.getSearchResults(eq(query.getQueryString()), anyObject(String[].class),
+        isNull(String.class), eq(""), same(context))).andReturn(sResultsMock).once();
+    expect(sResultsMock.getResults(eq(1), eq(20))).andReturn(Arrays.asList(sResultMock,
+        createMockAndAddToDefault(SearchResult.class))).once();
+    expect(sResultMock.getReference()).andReturn(docRef).once();
+
+    replayDefault();
+    Optional<DocumentReference> ret = result.streamResults(DocumentReference.class, 20)
+        .findFirst();
+    verifyDefault();
+
+    assertEquals(Optional.of(docRef), ret);
+  }
+
+  @Test
+  public void test_nextPage() throws Exception {
+    try (TestIndex index = newIndex(10)) {
+      LuceneSearchResult result = new LuceneSearchResult("field:value", new TermQuery(new Term(
+          "field", "value")), Arrays.asList("-" + IndexFields.DOCUMENT_NAME), null, true);
+      result.lucenePlugin = lucenePluginMock;
+      expectSearchers(index.getReader());
+
+      replayDefault();
+      LuceneSearchPage<DocumentReference> page1 = result.nextPage(result.getCursor(2),
+          DocumentReference.class);
+      LuceneSearchPage<DocumentReference> page2 = result.nextPage(LuceneSearchCursor.parse(
+          page1.getNextCursor().get().serialize()), DocumentReference.class);
+      LuceneSearchPage<DocumentReference> page3 = result.nextPage(page2.getNextCursor().get(),
+          DocumentReference.class);
+      verifyDefault();
+
+      assertEquals(Arrays.asList(newDocRef(8), newDocRef(6)), page1.getResults());
+      assertEquals(Arrays.asList(newDocRef(4), newDocRef(2)), page2.getResults());
+      assertEquals(2, page2.getCursor().getOffset());
+      assertEquals(Arrays.asList(newDocRef(0)), page3.getResults());
+      assertEquals(4, page3.getCursor().getOffset());
+      assertFalse(page3.getNextCursor().isPresent());
+    }
+  }
+
+  @Test
+  public void test_nextPage_indexChanged() throws Exception {
+    try (TestIndex index = newIndex(10)) {
+      LuceneSearchResult result = new LuceneSearchResult("field:value", new TermQuery(new Term(
+          "field", "value")), Arrays.asList("-" + IndexFields.DOCUMENT_NAME), null, true);
+      result.lucenePlugin = lucenePluginMock;
+      expectSearchers(index.getReader());
+      // the last hit of a cursor from another index version, which would exhaust the search
+      LuceneSearchCursor stale = new LuceneSearchCursor(result.getSearchKey(), 2, 2,
+          new FieldDoc(0, Float.NaN, new Object[] { "doc0" }), index.getReader().getVersion() - 1);
+
+      replayDefault();
+      LuceneSearchPage<DocumentReference> page = result.nextPage(stale, DocumentReference.class);
+      verifyDefault();
+
+      assertEquals("the page is restarted at the offset", Arrays.asList(newDocRef(4),
+          newDocRef(2)), page.getResults());
+      assertEquals(index.getReader().getVersion(), page.getNextCursor().get().getIndexVersion());
+    }
+  }
+
+  @Test
+  public void test_nextPage_checks() throws Exception {
+    IRightsAccessFacadeRole rightsAccessMock = registerComponentMock(
+        IRightsAccessFacadeRole.class);
+    try (TestIndex index = newIndex(10)) {
+      LuceneSearchResult result = new LuceneSearchResult("field:value", new TermQuery(new Term(
+          "field", "value")), Arrays.asList("-" + IndexFields.DOCUMENT_NAME), null, false);
+      result.lucenePlugin = lucenePluginMock;
+      expectSearchers(index.getReader());
+      for (int i = 0; i < 10; i += 2) {
+        expect(rightsAccessMock.hasAccessLevel(newDocRef(i), EAccessLevel.VIEW)).andReturn(
+            (i != 6) && (i != 4)).once();
+      }
+
+      replayDefault();
+      LuceneSearchPage<DocumentReference> page1 = result.nextPage(result.getCursor(2),
+          DocumentReference.class);
+      LuceneSearchPage<DocumentReference> page2 = result.nextPage(page1.getNextCursor().get(),
+          DocumentReference.class);
+      verifyDefault();
+
+      assertEquals("denied hits mustn't shorten the page", Arrays.asList(newDocRef(8),
+          newDocRef(2)), page1.getResults());
+      assertEquals(Arrays.asList(newDocRef(0)), page2.getResults());
+      assertFalse(page2.getNextCursor().isPresent());
+    }
+  }
+
+  @Test
+  public void test_nextPage_otherSearch() throws Exception {
+    LuceneSearchResult result = newResult(new LuceneQuery(), null, null, false);
+    LuceneSearchCursor cursor = newResult(new LuceneQuery(), null, null, true).getCursor(10);
+
+    replayDefault();
+    try {
+      result.nextPage(cursor, DocumentReference.class);
+      fail("expecting IllegalArgumentException");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+    verifyDefault();
+  }
+
+  @Test
+  public void test_getSearchKey_fingerprint() {
+    LuceneQuery query = new LuceneQuery();
+    query.add(new QueryRestriction("field", "value").setFuzzy().setFuzzyBounds(
+        new FuzzyBounds(1, 5)));
+    LuceneQuery otherBounds = new LuceneQuery();
+    otherBounds.add(new QueryRestriction("field", "value").setFuzzy().setFuzzyBounds(
+        new FuzzyBounds(2, 5)));
+    LuceneSearchResult result = newResult(query, null, null, false);
+    LuceneSearchResult other = newResult(otherBounds, null, null, false);
+    assertEquals(result.getQueryString(), other.getQueryString());
+    assertNotEquals("fuzzy bounds aren't rendered but must be part of the key",
+        result.getSearchKey(), other.getSearchKey());
+    assertEquals(result.getSearchKey(), newResult(query.copy(), null, null, false)
+        .getSearchKey());
+  }
+
+  @Test
+  public void test_cursor_serialize() {
+    LuceneSearchCursor cursor = newResult(new LuceneQuery(), null, null, false).getCursor(10)
+        .next(10, new FieldDoc(3, 0.5f, new Object[] { "name", null, 1f }), 42);
+    LuceneSearchCursor parsed = LuceneSearchCursor.parse(cursor.serialize());
+    assertEquals(cursor, parsed);
+    assertEquals(10, parsed.getOffset());
+    assertEquals(10, parsed.getLimit());
+    assertEquals(42, parsed.getIndexVersion());
+    FieldDoc after = (FieldDoc) parsed.getAfter();
+    assertEquals(3, after.doc);
+    assertArrayEquals(new Object[] { "name", null, 1f }, after.fields);
+    try {
+      LuceneSearchCursor.parse("invalid");
+      fail("expecting IllegalArgumentException");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+  }
+
+  /**
+   * every second document has the value, every third the language 'de', the references are
+   * stored as {@link #newDocRef(int)}
+   */
+  private TestIndex newIndex(int count) throws IOException {
+    return TestIndex.create(writer -> {
+      for (int i = 0; i < count; i++) {
+        writer.addDocument(TestIndex.doc("field", ((i % 2) == 0) ? "value" : "other",
+            IndexFields.DOCUMENT_LANGUAGE, ((i % 3) == 0) ? "de" : "en",
+            IndexFields.DOCUMENT_WIKI, "db", IndexFields.DOCUMENT_SPACE, "space",
+            IndexFields.DOCUMENT_NAME, "doc" + i, IndexFields.DOCUMENT_TYPE,
+            LucenePlugin.DOCTYPE_WIKIPAGE));
+      }
+    });
+  }
+
+  private void expectSearchers(IndexReader reader) throws IOException {
+    SearcherProvider searcherProviderMock = createMockAndAddToDefault(SearcherProvider.class);
+    expect(lucenePluginMock.getConnectedSearcherProvider()).andReturn(searcherProviderMock)
+        .anyTimes();
+    expect(searcherProviderMock.getSearchers()).andReturn(new Searcher[] { new IndexSearcher(
+        reader) }).anyTimes();
+  }
+
   private LuceneSearchResult newResult(LuceneQuery query, List<String> sortFields,
       List<String> languages, boolean skipChecks) {
     query.setDocTypes(ImmutableList.of(LuceneDocType.DOC));
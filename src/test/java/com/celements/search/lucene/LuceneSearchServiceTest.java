@@ -4,6 +4,7 @@ import static com.celements.common.test.CelementsTestUtils.*;
 import static org.easymock.EasyMock.*;
 import static org.junit.Assert.*;
 
+import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -11,6 +12,18 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
+import org.apache.lucene.analysis.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Searcher;
+import org.apache.lucene.store.RAMDirectory;
 import org.junit.Before;
 import org.junit.Test;
 import org.xwiki.model.reference.DocumentReference;
@@ -21,15 +34,22 @@ import org.xwiki.model.reference.WikiReference;
 import com.celements.common.date.DateFormat;
 import com.celements.common.test.AbstractComponentTest;
 import com.celements.search.lucene.index.analysis.CelementsSimpleAnalyzer;
+import com.celements.search.lucene.query.FuzzyBounds;
 import com.celements.search.lucene.query.IQueryRestriction;
 import com.celements.search.lucene.query.LuceneQuery;
 import com.celements.search.lucene.query.QueryRestriction;
 import com.celements.search.lucene.query.QueryRestrictionGroup;
 import com.celements.search.lucene.query.QueryRestrictionGroup.Type;
+import com.celements.search.lucene.query.QueryRestrictionParsed;
+import com.celements.search.lucene.query.QueryRestrictionString;
+import com.google.common.cache.CacheStats;
 import com.xpn.xwiki.XWiki;
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.plugin.lucene.IndexFields;
 import com.xpn.xwiki.plugin.lucene.LucenePlugin;
+import com.xpn.xwiki.plugin.lucene.SearchResult;
+import com.xpn.xwiki.plugin.lucene.SearchResults;
+import com.xpn.xwiki.plugin.lucene.searcherProvider.SearcherProvider;
 import com.xpn.xwiki.web.Utils;
 
 public class LuceneSearchServiceTest extends AbstractComponentTest {
@@ -446,6 +466,177 @@ public class LuceneSearchServiceTest extends AbstractComponentTest {
     verifyDefault();
   }
 
+  @Test
+  public void test_tokenFilterCache() throws Exception {
+    try (CelementsSimpleAnalyzer analyzer = new CelementsSimpleAnalyzer(LucenePlugin.VERSION)) {
+      expect(plugin.getAnalyzer()).andReturn(analyzer).anyTimes();
+      replayDefault();
+      CacheStats before = searchService.getTokenFilterStats();
+      CacheStats requestBefore = searchService.getRequestTokenFilterStats();
+      QueryRestriction restr1 = searchService.createRestriction("field", "Hans Peter");
+      QueryRestriction restr2 = searchService.createRestriction("field", "Hans");
+      restr1.getQueryString();
+      restr2.getQueryString();
+      CacheStats stats = searchService.getTokenFilterStats().minus(before);
+      CacheStats requestStats = searchService.getRequestTokenFilterStats().minus(requestBefore);
+      verifyDefault();
+      assertEquals(2, stats.missCount());
+      assertEquals(1, stats.hitCount());
+      assertEquals(2, requestStats.missCount());
+      assertEquals(1, requestStats.hitCount());
+      assertEquals(new QueryRestriction("field", "Hans").setAnalyzer(analyzer), restr2);
+    }
+  }
+
+  @Test
+  public void test_getSnapshot() throws Exception {
+    RAMDirectory directory = new RAMDirectory();
+    addDocument(directory);
+    IndexReader reader1 = IndexReader.open(directory);
+    addDocument(directory);
+    IndexReader reader2 = IndexReader.open(directory);
+    SearcherProvider searcherProviderMock = createMockAndAddToDefault(SearcherProvider.class);
+    expect(plugin.getConnectedSearcherProvider()).andReturn(searcherProviderMock).anyTimes();
+    expect(searcherProviderMock.getSearchers()).andReturn(new Searcher[] { new IndexSearcher(
+        reader1) }).times(2).andReturn(new Searcher[] { new IndexSearcher(reader2) });
+    SearchResults sResultsMock1 = createMockAndAddToDefault(SearchResults.class);
+    SearchResults sResultsMock2 = createMockAndAddToDefault(SearchResults.class);
+    SearchResult sResultMock = createMockAndAddToDefault(SearchResult.class);
+    DocumentReference docRef = new DocumentReference("xwikidb", "space", "doc");
+    expect(plugin.getSearchResultsWithoutChecks(eq("field:value"), anyObject(String[].class),
+        isNull(String.class), eq(""), same(context))).andReturn(sResultsMock1).andReturn(
+            sResultsMock2);
+    for (SearchResults sResultsMock : Arrays.asList(sResultsMock1, sResultsMock2)) {
+      expect(sResultsMock.getResults(1, 10)).andReturn(Arrays.asList(sResultMock)).once();
+      expect(sResultsMock.getTotalHitcount()).andReturn(1).anyTimes();
+    }
+    expect(sResultMock.getReference()).andReturn(docRef).times(2);
+    expect(sResultMock.getScore()).andReturn(0.5f).times(2);
+
+    replayDefault();
+    CacheStats before = searchService.getResultCacheStats();
+    LuceneSearchSnapshot snapshot1 = searchService.getSnapshot(newResult());
+    LuceneSearchSnapshot snapshot2 = searchService.getSnapshot(newResult());
+    LuceneSearchSnapshot snapshot3 = searchService.getSnapshot(newResult());
+    CacheStats stats = searchService.getResultCacheStats().minus(before);
+    verifyDefault();
+
+    assertSame(snapshot1, snapshot2);
+    assertNotSame(snapshot1, snapshot3);
+    assertEquals(Arrays.asList(docRef), snapshot1.getResults());
+    assertEquals(0.5f, snapshot1.getResultsScoreMap().get(docRef), 0f);
+    assertEquals(1, snapshot1.getSize());
+    assertEquals(reader1.getVersion(), snapshot1.getIndexVersion());
+    assertEquals(reader2.getVersion(), snapshot3.getIndexVersion());
+    assertEquals(1, stats.hitCount());
+    assertEquals(2, stats.missCount());
+    reader1.close();
+    reader2.close();
+  }
+
+  private static void addDocument(RAMDirectory directory) throws IOException {
+    try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(
+        LucenePlugin.VERSION, new KeywordAnalyzer()))) {
+      Document doc = new Document();
+      doc.add(new Field("field", "value", Field.Store.NO, Field.Index.NOT_ANALYZED));
+      writer.addDocument(doc);
+    }
+  }
+
+  private LuceneSearchResult newResult() {
+    LuceneSearchResult result = searchService.searchWithoutChecks("field:value", null, null);
+    result.lucenePlugin = plugin;
+    return result.setLimit(10);
+  }
+
+  @Test
+  public void test_createRestriction_query() throws Exception {
+    expect(plugin.getAnalyzer()).andReturn(null).anyTimes();
+    replayDefault();
+    QueryRestrictionString restr = searchService.createRestriction("Field:Value AND other");
+    assertEquals("(+Field:value +other)", restr.getQueryString());
+    assertFalse(restr instanceof QueryRestrictionParsed);
+    QueryRestrictionString restr2 = searchService.createRestriction("Field:Value AND other");
+    assertNotSame(restr, restr2);
+    assertEquals(restr.getQueryString(), restr2.getQueryString());
+    restr2.setNegate(true);
+    assertFalse(searchService.createRestriction("Field:Value AND other").getNegate());
+    QueryRestrictionString parsed = searchService.createRestriction("Field:Value AND other", true);
+    assertTrue(parsed instanceof QueryRestrictionParsed);
+    assertEquals(restr.getQueryString(), parsed.getQueryString());
+    assertEquals(searchService.compile(parsed), ((QueryRestrictionParsed) parsed).getQuery());
+    verifyDefault();
+  }
+
+  @Test
+  public void test_createRestriction_query_defaultField() throws Exception {
+    expect(plugin.getAnalyzer()).andReturn(null).anyTimes();
+    replayDefault();
+    try (TestIndex index = TestIndex.create(writer -> {
+      writer.addDocument(TestIndex.doc(IndexFields.FULLTEXT, "foo", IndexFields.DOCUMENT_TITLE,
+          "bar"));
+      writer.addDocument(TestIndex.doc(IndexFields.FULLTEXT, "other", IndexFields.DOCUMENT_TITLE,
+          "bar"));
+    })) {
+      String query = "foo AND " + IndexFields.DOCUMENT_TITLE + ":bar";
+      for (boolean keepParsed : Arrays.asList(false, true)) {
+        Query compiled = searchService.compile(searchService.createRestriction(query,
+            keepParsed));
+        assertEquals("keepParsed " + keepParsed, 1, index.getSearcher().search(compiled,
+            10).totalHits);
+      }
+    }
+    verifyDefault();
+  }
+
+  @Test(expected = ParseException.class)
+  public void test_createRestriction_query_invalid() throws Exception {
+    replayDefault();
+    try {
+      searchService.createRestriction("Field:(Value");
+    } finally {
+      verifyDefault();
+    }
+  }
+
+  @Test
+  public void test_getViewRightsFilter() throws Exception {
+    try (CelementsSimpleAnalyzer analyzer = new CelementsSimpleAnalyzer(LucenePlugin.VERSION)) {
+      expect(plugin.getAnalyzer()).andReturn(analyzer).anyTimes();
+      replayDefault();
+      Filter filter1 = searchService.getViewRightsFilter();
+      Filter filter2 = searchService.getViewRightsFilter();
+      searchService.invalidateRightsFilters();
+      Filter filter3 = searchService.getViewRightsFilter();
+      verifyDefault();
+      assertSame(filter1, filter2);
+      assertNotEquals("invalidated filters mustn't be shared", filter1, filter3);
+    }
+  }
+
+  @Test
+  public void test_compile_cached() throws Exception {
+    try (CelementsSimpleAnalyzer analyzer = new CelementsSimpleAnalyzer(LucenePlugin.VERSION)) {
+      expect(plugin.getAnalyzer()).andReturn(analyzer).anyTimes();
+      replayDefault();
+      Query query1 = searchService.compile(searchService.createRestriction("Field", "value"));
+      Query query2 = searchService.compile(searchService.createRestriction("Field", "value"));
+      Query query3 = searchService.compile(searchService.createRestriction("Field", "other"));
+      searchService.compile(searchService.createRestriction("Field", "value").setFuzzy()
+          .setFuzzyBounds(new FuzzyBounds(1, 5)));
+      searchService.compile(searchService.createRestriction("Field", "value").setFuzzy()
+          .setFuzzyBounds(new FuzzyBounds(2, 5)));
+      verifyDefault();
+      assertEquals(query1, query2);
+      assertNotSame(query1, query2);
+      assertNotEquals(query1, query3);
+      CacheStats stats = searchService.getQueryCacheStats();
+      assertEquals("fuzzy bounds aren't rendered but must be part of the key", 1,
+          stats.hitCount());
+      assertEquals(4, stats.missCount());
+    }
+  }
+
   @Test
   public void testGetResultLimit() {
     int limit = 1234;
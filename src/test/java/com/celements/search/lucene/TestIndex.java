@@ -0,0 +1,125 @@
+package com.celements.search.lucene;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import javax.validation.constraints.NotNull;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.RAMDirectory;
+
+import com.celements.search.lucene.index.analysis.CelementsSimpleAnalyzer;
+import com.google.common.collect.ImmutableSet;
+import com.xpn.xwiki.plugin.lucene.IndexFields;
+import com.xpn.xwiki.plugin.lucene.LucenePlugin;
+
+/**
+ * In-memory index for tests with the field analysis of the lucene plugin's index: the reference
+ * fields, which searches match with quoted phrases, and the fulltext are analyzed by the
+ * {@link CelementsSimpleAnalyzer}, other fields are indexed untokenized. All fields are stored.
+ */
+public final class TestIndex implements Closeable {
+
+  /**
+   * the fields the lucene plugin indexes analyzed
+   */
+  public static final ImmutableSet<String> ANALYZED_FIELDS = ImmutableSet.of(
+      IndexFields.DOCUMENT_WIKI, IndexFields.DOCUMENT_SPACE, IndexFields.DOCUMENT_NAME,
+      IndexFields.DOCUMENT_FULLNAME, IndexFields.DOCUMENT_TYPE, IndexFields.DOCUMENT_TITLE,
+      IndexFields.OBJECT, IndexFields.FILENAME, IndexFields.MIMETYPE, IndexFields.FULLTEXT);
+
+  @FunctionalInterface
+  public interface Filler {
+
+    void fill(@NotNull IndexWriter writer) throws IOException;
+
+  }
+
+  private final RAMDirectory directory;
+  private final CelementsSimpleAnalyzer analyzer;
+  private final IndexReader reader;
+  private final IndexSearcher searcher;
+
+  private TestIndex(RAMDirectory directory, CelementsSimpleAnalyzer analyzer)
+      throws IOException {
+    this.directory = directory;
+    this.analyzer = analyzer;
+    this.reader = IndexReader.open(directory);
+    this.searcher = new IndexSearcher(reader);
+  }
+
+  @NotNull
+  public static TestIndex create(@NotNull Filler filler) throws IOException {
+    return create(0, filler);
+  }
+
+  /**
+   * @param maxBufferedDocs
+   *          if positive a segment is flushed after this number of documents
+   */
+  @NotNull
+  public static TestIndex create(int maxBufferedDocs, @NotNull Filler filler)
+      throws IOException {
+    RAMDirectory directory = new RAMDirectory();
+    CelementsSimpleAnalyzer analyzer = new CelementsSimpleAnalyzer(LucenePlugin.VERSION);
+    IndexWriterConfig config = new IndexWriterConfig(LucenePlugin.VERSION, analyzer);
+    if (maxBufferedDocs > 0) {
+      config.setMaxBufferedDocs(maxBufferedDocs);
+    }
+    try (IndexWriter writer = new IndexWriter(directory, config)) {
+      filler.fill(writer);
+    }
+    return new TestIndex(directory, analyzer);
+  }
+
+  /**
+   * @return the stored field, analyzed if the lucene plugin analyzes it
+   */
+  @NotNull
+  public static Field field(@NotNull String name, @NotNull String value) {
+    return new Field(name, value, Field.Store.YES, ANALYZED_FIELDS.contains(name)
+        ? Field.Index.ANALYZED : Field.Index.NOT_ANALYZED);
+  }
+
+  /**
+   * @param namesAndValues
+   *          alternating field names and values
+   */
+  @NotNull
+  public static Document doc(@NotNull String... namesAndValues) {
+    Document doc = new Document();
+    for (int i = 0; (i + 1) < namesAndValues.length; i += 2) {
+      doc.add(field(namesAndValues[i], namesAndValues[i + 1]));
+    }
+    return doc;
+  }
+
+  @NotNull
+  public CelementsSimpleAnalyzer getAnalyzer() {
+    return analyzer;
+  }
+
+  @NotNull
+  public IndexReader getReader() {
+    return reader;
+  }
+
+  @NotNull
+  public IndexSearcher getSearcher() {
+    return searcher;
+  }
+
+  @Override
+  public void close() throws IOException {
+    searcher.close();
+    reader.close();
+    analyzer.close();
+    directory.close();
+  }
+
+}
@@ -0,0 +1,82 @@
+package com.celements.search.lucene.analysis;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.analysis.WhitespaceTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.xpn.xwiki.plugin.lucene.LucenePlugin;
+
+public class EdgeNGramTokenFilterTest {
+
+  @Test
+  public void test_grams() throws Exception {
+    assertEquals(ImmutableList.of("h:1", "ha:0", "han:0", "p:1", "pe:0", "pet:0"), tokens(
+        "hans pet", 1, 3));
+  }
+
+  @Test
+  public void test_minGram() throws Exception {
+    assertEquals(ImmutableList.of("ha:1", "han:0", "hans:0", "pe:1"), tokens("hans a pe", 2, 10));
+  }
+
+  @Test
+  public void test_empty() throws Exception {
+    assertEquals(ImmutableList.of(), tokens("", 1, 3));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_illegalGrams() {
+    new EdgeNGramTokenFilter(newTokenizer(""), 3, 2);
+  }
+
+  @Test
+  public void test_prefixFields() throws Exception {
+    PrefixFields prefixFields = new PrefixFields(ImmutableList.of("title"), 2, 4);
+    assertEquals("title_prefix", PrefixFields.getPrefixField("title"));
+    assertTrue(prefixFields.isLookup("title", "ha"));
+    assertTrue(prefixFields.isLookup("title", "hans"));
+    assertFalse(prefixFields.isLookup("title", "h"));
+    assertFalse(prefixFields.isLookup("title", "hansi"));
+    assertFalse(prefixFields.isLookup("content", "hans"));
+    try (WhitespaceAnalyzer analyzer = new WhitespaceAnalyzer(LucenePlugin.VERSION)) {
+      assertEquals(ImmutableList.of("ha:1", "han:0", "hans:0"), tokens(prefixFields.tokenStream(
+          analyzer, "title", new StringReader("hansi"))));
+    }
+  }
+
+  private static List<String> tokens(String text, int minGram, int maxGram) throws Exception {
+    return tokens(new EdgeNGramTokenFilter(newTokenizer(text), minGram, maxGram));
+  }
+
+  private static List<String> tokens(TokenStream stream) throws Exception {
+    List<String> tokens = new ArrayList<>();
+    try {
+      CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+      PositionIncrementAttribute posIncrAtt = stream.addAttribute(
+          PositionIncrementAttribute.class);
+      stream.reset();
+      while (stream.incrementToken()) {
+        tokens.add(termAtt + ":" + posIncrAtt.getPositionIncrement());
+      }
+      stream.end();
+    } finally {
+      stream.close();
+    }
+    return tokens;
+  }
+
+  private static TokenStream newTokenizer(String text) {
+    return new WhitespaceTokenizer(LucenePlugin.VERSION, new StringReader(text));
+  }
+
+}
@@ -16,6 +16,7 @@ import com.celements.common.observation.listener.AbstractRemoteEventListener;
 import com.celements.common.test.AbstractComponentTest;
 import com.celements.model.access.IModelAccessFacade;
 import com.celements.model.access.exception.DocumentNotExistsException;
+import com.celements.search.lucene.ILuceneIndexService;
 import com.celements.search.lucene.index.queue.IndexQueuePriority;
 import com.celements.search.lucene.observation.event.LuceneQueueDeleteEvent;
 import com.celements.search.lucene.observation.event.LuceneQueueEvent;
@@ -35,6 +36,7 @@ public class QueueEventListenerTest extends AbstractComponentTest {
   @Before
   public void prepareTest() throws Exception {
     registerComponentMock(IModelAccessFacade.class);
+    registerComponentMock(ILuceneIndexService.class);
     listener = (TestQueueEventListener) Utils.getComponent(EventListener.class,
         QueueEventListener.NAME);
     expect(getWikiMock().getPlugin(eq("lucene"), same(getContext())))
@@ -0,0 +1,162 @@
+package com.celements.search.lucene.observation;
+
+import static com.celements.common.test.CelementsTestUtils.*;
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.observation.EventListener;
+
+import com.celements.common.observation.listener.AbstractEventListener;
+import com.celements.common.test.AbstractComponentTest;
+import com.celements.model.util.ModelUtils;
+import com.celements.search.lucene.ILuceneIndexService;
+import com.google.common.collect.ImmutableList;
+import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.web.Utils;
+
+public class QueueRightsEventConverterTest extends AbstractComponentTest {
+
+  private QueueRightsEventConverter listener;
+
+  @Before
+  public void prepareTest() throws Exception {
+    registerComponentMock(ILuceneIndexService.class);
+    registerComponentMock(ModelUtils.class);
+    listener = (QueueRightsEventConverter) Utils.getComponent(EventListener.class,
+        QueueRightsEventConverter.NAME);
+  }
+
+  @Test
+  public void test_remote() {
+    assertTrue("needs to listen on local events only, LuceneQueueEvents are distributed remotely",
+        listener instanceof AbstractEventListener);
+  }
+
+  @Test
+  public void test_getEvents() {
+    assertEquals(3, listener.getEvents().size());
+    assertSame(DocumentCreatedEvent.class, listener.getEvents().get(0).getClass());
+    assertSame(DocumentUpdatedEvent.class, listener.getEvents().get(1).getClass());
+    assertSame(DocumentDeletedEvent.class, listener.getEvents().get(2).getClass());
+  }
+
+  @Test
+  public void test_onEvent_spacePreferences() throws Exception {
+    XWikiDocument doc = createDocWithRights(new DocumentReference("wiki", "space",
+        "WebPreferences"));
+    expect(getMock(ILuceneIndexService.class).isAclEnabled()).andReturn(true);
+    expect(getMock(ILuceneIndexService.class).rebuildIndex(
+        doc.getDocumentReference().getLastSpaceReference())).andReturn(null);
+
+    replayDefault();
+    listener.onEvent(new DocumentUpdatedEvent(), doc, null);
+    verifyDefault();
+  }
+
+  @Test
+  public void test_onEvent_wikiPreferences() throws Exception {
+    XWikiDocument doc = createDocWithRights(new DocumentReference("wiki", "XWiki",
+        "XWikiPreferences"));
+    SpaceReference spaceRef = new SpaceReference("space", new WikiReference("wiki"));
+    SpaceReference inheritingRef = new SpaceReference("inheriting", new WikiReference("wiki"));
+    expect(getMock(ILuceneIndexService.class).isAclEnabled()).andReturn(true);
+    expect(getMock(ModelUtils.class).getAllSpaces(new WikiReference("wiki"))).andReturn(
+        Stream.of(spaceRef, inheritingRef));
+    expect(getMock(ILuceneIndexService.class).hasSpaceViewRights(spaceRef)).andReturn(true);
+    expect(getMock(ILuceneIndexService.class).hasSpaceViewRights(inheritingRef)).andReturn(
+        false);
+    expect(getMock(ILuceneIndexService.class).rebuildIndex(inheritingRef)).andReturn(null);
+
+    replayDefault();
+    listener.onEvent(new DocumentUpdatedEvent(), doc, null);
+    verifyDefault();
+  }
+
+  @Test
+  public void test_onEvent_rightsUnchanged() throws Exception {
+    XWikiDocument doc = createDocWithRights(new DocumentReference("wiki", "space",
+        "WebPreferences"));
+    doc.setOriginalDocument(doc.clone());
+    expect(getMock(ILuceneIndexService.class).isAclEnabled()).andReturn(true);
+
+    replayDefault();
+    listener.onEvent(new DocumentUpdatedEvent(), doc, null);
+    verifyDefault();
+  }
+
+  @Test
+  public void test_onEvent_otherDoc() throws Exception {
+    XWikiDocument doc = createDocWithRights(new DocumentReference("wiki", "space", "doc"));
+    expect(getMock(ILuceneIndexService.class).isAclEnabled()).andReturn(true);
+
+    replayDefault();
+    listener.onEvent(new DocumentUpdatedEvent(), doc, null);
+    verifyDefault();
+  }
+
+  @Test
+  public void test_onEvent_docRights() throws Exception {
+    XWikiDocument doc = createDocWithRights(new DocumentReference("wiki", "space", "doc"),
+        "XWikiRights");
+    AttachmentReference attRef = new AttachmentReference("file", doc.getDocumentReference());
+    doc.setAttachmentList(ImmutableList.of(new XWikiAttachment(doc, attRef.getName())));
+    expect(getMock(ILuceneIndexService.class).isAclEnabled()).andReturn(true);
+    getMock(ILuceneIndexService.class).queue(attRef);
+
+    replayDefault();
+    listener.onEvent(new DocumentUpdatedEvent(), doc, null);
+    verifyDefault();
+  }
+
+  @Test
+  public void test_onEvent_docRights_deleted() throws Exception {
+    XWikiDocument doc = createDocWithRights(new DocumentReference("wiki", "space", "doc"),
+        "XWikiRights");
+    doc.setAttachmentList(ImmutableList.of(new XWikiAttachment(doc, "file")));
+    expect(getMock(ILuceneIndexService.class).isAclEnabled()).andReturn(true);
+
+    replayDefault();
+    listener.onEvent(new DocumentDeletedEvent(), doc, null);
+    verifyDefault();
+  }
+
+  @Test
+  public void test_onEvent_aclDisabled() throws Exception {
+    XWikiDocument doc = createDocWithRights(new DocumentReference("wiki", "space",
+        "WebPreferences"));
+    expect(getMock(ILuceneIndexService.class).isAclEnabled()).andReturn(false);
+
+    replayDefault();
+    listener.onEvent(new DocumentUpdatedEvent(), doc, null);
+    verifyDefault();
+  }
+
+  private XWikiDocument createDocWithRights(DocumentReference docRef) {
+    return createDocWithRights(docRef, "XWikiGlobalRights");
+  }
+
+  private XWikiDocument createDocWithRights(DocumentReference docRef, String rightsClass) {
+    XWikiDocument doc = new XWikiDocument(docRef);
+    BaseObject obj = new BaseObject();
+    obj.setXClassReference(new DocumentReference("wiki", "XWiki", rightsClass));
+    obj.setStringValue("levels", "view");
+    obj.setStringValue("groups", "XWiki.XWikiAllGroup");
+    obj.setIntValue("allow", 1);
+    doc.addXObject(obj);
+    return doc;
+  }
+
+}
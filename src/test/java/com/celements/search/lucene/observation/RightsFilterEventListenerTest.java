@@ -0,0 +1,97 @@
+package com.celements.search.lucene.observation;
+
+import static com.celements.common.test.CelementsTestUtils.*;
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.observation.EventListener;
+
+import com.celements.common.observation.listener.AbstractRemoteEventListener;
+import com.celements.common.test.AbstractComponentTest;
+import com.celements.search.lucene.ILuceneSearchService;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.web.Utils;
+
+public class RightsFilterEventListenerTest extends AbstractComponentTest {
+
+  private RightsFilterEventListener listener;
+
+  @Before
+  public void prepareTest() throws Exception {
+    registerComponentMock(ILuceneSearchService.class);
+    listener = (RightsFilterEventListener) Utils.getComponent(EventListener.class,
+        RightsFilterEventListener.NAME);
+  }
+
+  @Test
+  public void test_remote() {
+    assertTrue("needs to listen on remote events, the filters are cached per node",
+        listener instanceof AbstractRemoteEventListener);
+  }
+
+  @Test
+  public void test_getEvents() {
+    assertEquals(3, listener.getEvents().size());
+    assertSame(DocumentCreatedEvent.class, listener.getEvents().get(0).getClass());
+    assertSame(DocumentUpdatedEvent.class, listener.getEvents().get(1).getClass());
+    assertSame(DocumentDeletedEvent.class, listener.getEvents().get(2).getClass());
+  }
+
+  @Test
+  public void test_onEvent_rights() throws Exception {
+    XWikiDocument doc = createDocWithObject("XWikiRights");
+    getMock(ILuceneSearchService.class).invalidateRightsFilters();
+    expectLastCall().once();
+
+    replayDefault();
+    listener.onEvent(new DocumentUpdatedEvent(), doc, null);
+    verifyDefault();
+  }
+
+  @Test
+  public void test_onEvent_groups() throws Exception {
+    XWikiDocument doc = createDocWithObject("XWikiGroups");
+    getMock(ILuceneSearchService.class).invalidateRightsFilters();
+    expectLastCall().once();
+
+    replayDefault();
+    listener.onEvent(new DocumentUpdatedEvent(), doc, null);
+    verifyDefault();
+  }
+
+  @Test
+  public void test_onEvent_unchanged() throws Exception {
+    XWikiDocument doc = createDocWithObject("XWikiRights");
+    doc.setOriginalDocument(doc.clone());
+
+    replayDefault();
+    listener.onEvent(new DocumentUpdatedEvent(), doc, null);
+    verifyDefault();
+  }
+
+  @Test
+  public void test_onEvent_otherObject() throws Exception {
+    XWikiDocument doc = createDocWithObject("OtherClass");
+
+    replayDefault();
+    listener.onEvent(new DocumentUpdatedEvent(), doc, null);
+    verifyDefault();
+  }
+
+  private XWikiDocument createDocWithObject(String className) {
+    XWikiDocument doc = new XWikiDocument(new DocumentReference("wiki", "space", "doc"));
+    BaseObject obj = new BaseObject();
+    obj.setXClassReference(new DocumentReference("wiki", "XWiki", className));
+    obj.setStringValue("member", "XWiki.User");
+    doc.addXObject(obj);
+    return doc;
+  }
+
+}
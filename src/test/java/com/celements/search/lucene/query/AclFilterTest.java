@@ -0,0 +1,91 @@
+package com.celements.search.lucene.query;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.celements.search.lucene.TestIndex;
+import com.celements.search.lucene.analysis.AclFields;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+public class AclFilterTest {
+
+  private static final String USER = "xwiki:XWiki.User";
+  private static final String OTHER = "xwiki:XWiki.Other";
+  private static final String GROUP = "xwiki:XWiki.Group";
+
+  private TestIndex index;
+  private IndexSearcher searcher;
+
+  @Before
+  public void prepare() throws Exception {
+    index = TestIndex.create(writer -> {
+      addDocument(writer, new AclFields(ImmutableList.of(AclFields.PUBLIC), ImmutableList.of()));
+      addDocument(writer, new AclFields(ImmutableList.of(AclFields.PUBLIC), ImmutableList.of(
+          USER)));
+      addDocument(writer, new AclFields(ImmutableList.of(USER), ImmutableList.of()));
+      addDocument(writer, new AclFields(ImmutableList.of(OTHER, GROUP), ImmutableList.of()));
+      addDocument(writer, new AclFields(ImmutableList.of(GROUP), ImmutableList.of(OTHER)));
+      addDocument(writer, new AclFields(ImmutableList.of(OTHER), ImmutableList.of(GROUP),
+          ImmutableList.of(USER)));
+    });
+    searcher = index.getSearcher();
+  }
+
+  private static void addDocument(IndexWriter writer, AclFields acl) throws IOException {
+    Document doc = new Document();
+    acl.addTo(doc);
+    writer.addDocument(doc);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    index.close();
+  }
+
+  @Test
+  public void test_public() throws Exception {
+    assertEquals(2, count(new AclFilter(ImmutableSet.of())));
+  }
+
+  @Test
+  public void test_user() throws Exception {
+    assertEquals(3, count(new AclFilter(ImmutableSet.of(USER))));
+  }
+
+  @Test
+  public void test_groups() throws Exception {
+    assertEquals(5, count(new AclFilter(ImmutableSet.of(USER, GROUP))));
+    assertEquals(3, count(new AclFilter(ImmutableSet.of(OTHER, GROUP))));
+  }
+
+  @Test
+  public void test_admin() throws Exception {
+    assertEquals(4, count(new AclFilter(ImmutableSet.of(GROUP))));
+    assertEquals("admin of the space despite a denied group", 5, count(new AclFilter(
+        ImmutableSet.of(USER, GROUP))));
+  }
+
+  @Test
+  public void test_equals() {
+    AclFilter filter = new AclFilter(ImmutableList.of(USER, GROUP));
+    assertEquals(filter, new AclFilter(ImmutableList.of(GROUP, USER, GROUP)));
+    assertEquals(filter.hashCode(), new AclFilter(ImmutableList.of(GROUP, USER)).hashCode());
+    assertNotEquals(filter, new AclFilter(ImmutableList.of(USER)));
+  }
+
+  private int count(AclFilter filter) throws Exception {
+    return CountingCollector.count(searcher, new MatchAllDocsQuery(), filter, Integer.MAX_VALUE)
+        .getCount();
+  }
+
+}
@@ -0,0 +1,80 @@
+package com.celements.search.lucene.query;
+
+import static org.junit.Assert.*;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.TermQuery;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.celements.search.lucene.TestIndex;
+import com.google.common.collect.ImmutableList;
+
+public class CountingCollectorTest {
+
+  private TestIndex index;
+  private IndexSearcher searcher;
+
+  @Before
+  public void prepare() throws Exception {
+    index = TestIndex.create(writer -> {
+      for (int i = 0; i < 100; i++) {
+        writer.addDocument(TestIndex.doc("space", "space" + (i % 10), "rights", (i < 50)
+            ? "public" : "private"));
+      }
+    });
+    searcher = index.getSearcher();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    index.close();
+  }
+
+  @Test
+  public void test_count_exact() throws Exception {
+    HitCount count = CountingCollector.count(searcher, new TermQuery(new Term("space", "space1")),
+        null, Integer.MAX_VALUE);
+    assertEquals(10, count.getCount());
+    assertTrue(count.isExact());
+    assertEquals("10", count.toString());
+  }
+
+  @Test
+  public void test_count_maxCount() throws Exception {
+    HitCount count = CountingCollector.count(searcher, new MatchAllDocsQuery(), null, 25);
+    assertEquals(25, count.getCount());
+    assertFalse(count.isExact());
+    assertEquals(">=25", count.toString());
+  }
+
+  @Test
+  public void test_count_maxCount_notReached() throws Exception {
+    HitCount count = CountingCollector.count(searcher, new MatchAllDocsQuery(), null, 100);
+    assertEquals(100, count.getCount());
+    assertTrue(count.isExact());
+  }
+
+  @Test
+  public void test_count_filter() throws Exception {
+    HitCount count = CountingCollector.count(searcher, new TermQuery(new Term("space", "space1")),
+        new FilterCache(10).get(new TermsFilter(ImmutableList.of(new Term("rights",
+            "public")))), Integer.MAX_VALUE);
+    assertEquals(5, count.getCount());
+    assertTrue(count.isExact());
+  }
+
+  @Test
+  public void test_maxCount_invalid() {
+    try {
+      new CountingCollector(0);
+      fail("expecting IllegalArgumentException");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+  }
+
+}
@@ -0,0 +1,352 @@
+package com.celements.search.lucene.query;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.model.reference.WikiReference;
+
+import com.celements.search.lucene.analysis.PrefixFields;
+import com.celements.search.lucene.index.analysis.CelementsSimpleAnalyzer;
+import com.celements.search.lucene.query.QueryRestrictionGroup.Type;
+import com.google.common.collect.ImmutableList;
+import com.xpn.xwiki.plugin.lucene.LucenePlugin;
+
+public class LuceneQueryCompilerTest {
+
+  private CelementsSimpleAnalyzer analyzer;
+  private LuceneQueryCompiler compiler;
+
+  @Before
+  public void prepare() {
+    analyzer = new CelementsSimpleAnalyzer(LucenePlugin.VERSION);
+    compiler = new LuceneQueryCompiler(LucenePlugin.VERSION, analyzer);
+  }
+
+  @After
+  public void tearDown() {
+    analyzer.close();
+  }
+
+  @Test
+  public void test_tokenized() throws Exception {
+    assertCompiled(new QueryRestriction("field", "Hans Peter"));
+    assertEquals(new PrefixQuery(new Term("field", "hans")),
+        compiler.compile(new QueryRestriction("field", "Hans")));
+  }
+
+  @Test
+  public void test_tokenized_operators() throws Exception {
+    assertCompiled(new QueryRestriction("field", "+Hans -Peter"));
+    assertCompiled(new QueryRestriction("field", "Hans 50% - 100%"));
+  }
+
+  @Test
+  public void test_tokenized_quoted() throws Exception {
+    assertCompiled(new QueryRestriction("field", "Hans \"Robert Peter\""));
+    assertCompiled(new QueryRestriction("field", "\"exact\""));
+  }
+
+  @Test
+  public void test_tokenized_wildcards() throws Exception {
+    assertCompiled(new QueryRestriction("field", "Hans Pe?er"));
+    assertCompiled(new QueryRestriction("field", "Hans Pet*"));
+  }
+
+  @Test
+  public void test_tokenized_fuzzy() throws Exception {
+    assertCompiled(new QueryRestriction("field", "Hans Peter").setFuzzy(.8f));
+    assertCompiled(new QueryRestriction("field", "Hans Peter").setFuzzy(.888888f));
+    assertCompiled(new QueryRestriction("field", "Hans Peter").setFuzzy());
+  }
+
+  @Test
+  public void test_tokenized_proximity() throws Exception {
+    assertCompiled(new QueryRestriction("field", "Hans Peter").setProximity(8));
+  }
+
+  @Test
+  public void test_boost() throws Exception {
+    assertCompiled(new QueryRestriction("field", "Hans Peter").setBoost(.83333f));
+    assertCompiled(new QueryRestriction("field", "Hans").setBoost(8f));
+  }
+
+  @Test
+  public void test_untokenized() throws Exception {
+    assertCompiled(new QueryRestriction("field", "Hans Peter", false));
+    assertCompiled(new QueryRestriction("field", "\"Hans Peter\"", false));
+    assertCompiled(new QueryRestriction("field", "Hans Peter", false).setFuzzy(.5f));
+  }
+
+  @Test
+  public void test_untokenized_range() throws Exception {
+    assertCompiled(new QueryRestriction("field", "[0 TO 199001151213]", false));
+    assertCompiled(new QueryRestriction("field", "{Hans TO Peter}", false));
+    assertEquals(new TermRangeQuery("field", "0", "zzzz", true, false),
+        compiler.compile(new QueryRestriction("field", "[0 TO zzzz}", false)));
+  }
+
+  @Test
+  public void test_untokenized_syntax() throws Exception {
+    assertCompiled(new QueryRestriction("field", "Hans OR Peter", false));
+    assertCompiled(new QueryRestriction("field", "Hans~0.7", false));
+  }
+
+  @Test
+  public void test_negate() throws Exception {
+    assertCompiled(new QueryRestriction("field", "Hans").setNegate(true));
+  }
+
+  @Test
+  public void test_empty() throws Exception {
+    assertEquals(new BooleanQuery(), compiler.compile(new QueryRestriction("", "Hans")));
+    assertEquals(new BooleanQuery(), compiler.compile(new QueryRestriction("field", "")));
+    assertEquals(new BooleanQuery(), compiler.compile(new QueryRestrictionGroup(Type.OR)));
+  }
+
+  @Test
+  public void test_group() throws Exception {
+    assertCompiled(newGroup(Type.AND, false, false));
+    assertCompiled(newGroup(Type.OR, false, false));
+    assertCompiled(newGroup(Type.AND, true, false));
+    assertCompiled(newGroup(Type.OR, false, true));
+  }
+
+  @Test
+  public void test_group_cleanup() throws Exception {
+    assertCompiled(newGroup(Type.AND, true, true));
+    assertCompiled(newGroup(Type.OR, true, true).setNegate(true));
+  }
+
+  @Test
+  public void test_group_nested() throws Exception {
+    QueryRestrictionGroup grp = new QueryRestrictionGroup(Type.OR);
+    grp.add(newGroup(Type.AND, false, true));
+    grp.add(newGroup(Type.OR, true, true));
+    grp.add(new QueryRestriction("field", "value").setFuzzy(.5f));
+    assertCompiled(grp);
+  }
+
+  @Test
+  public void test_restrictionString() throws Exception {
+    assertCompiled(new QueryRestrictionString("field:(+hans* -peter)"));
+    assertCompiled(new QueryRestrictionString("field:hans OR other:peter").setNegate(true));
+  }
+
+  @Test
+  public void test_restrictionString_parserDefaults() throws Exception {
+    assertEquals(LuceneQueryCompiler.DEFAULT_FIELD, compiler.getDefaultField());
+    assertEquals(LuceneQueryCompiler.DEFAULT_OPERATOR, compiler.getDefaultOperator());
+    compiler = new LuceneQueryCompiler(LucenePlugin.VERSION, analyzer, "other",
+        QueryParser.OR_OPERATOR, null, null, null);
+    QueryParser parser = new QueryParser(LucenePlugin.VERSION, "other", analyzer);
+    parser.setDefaultOperator(QueryParser.OR_OPERATOR);
+    assertEquals(parser.parse("hans field:peter"), compiler.compile(new QueryRestrictionString(
+        "hans field:peter")));
+  }
+
+  @Test
+  public void test_luceneQuery() throws Exception {
+    LuceneQuery query = new LuceneQuery();
+    query.setWiki(new WikiReference("xwikidb"));
+    query.setDocTypes(ImmutableList.of(LuceneDocType.DOC, LuceneDocType.ATT));
+    query.add(new QueryRestriction("field", "Hans Peter"));
+    query.add(newGroup(Type.OR, true, false));
+    assertCompiled(query);
+  }
+
+  @Test
+  public void test_terms() throws Exception {
+    QueryRestrictionTerms restr = new QueryRestrictionTerms("field", ImmutableList.of("Doc1",
+        "Doc2", "Doc1"));
+    assertEquals("field:(\"Doc1\" OR \"Doc2\")", restr.getQueryString());
+    assertEquals("field:(\"a\\-b\")", new QueryRestrictionTerms("field", ImmutableList.of(
+        "a-b")).getQueryString());
+    Query query = compiler.compile(restr);
+    assertTrue(query instanceof ConstantScoreQuery);
+    assertEquals(new TermsFilter(ImmutableList.of(new Term("field", "doc1"),
+        new Term("field", "doc2"))), ((ConstantScoreQuery) query).getFilter());
+  }
+
+  @Test
+  public void test_terms_filterToken() throws Exception {
+    QueryRestrictionTerms restr = new QueryRestrictionTerms("field", ImmutableList.of("Bär",
+        "Dôc1")).setAnalyzer(analyzer);
+    assertEquals("field:(\"bar\" OR \"doc1\")", restr.getQueryString());
+    Set<Term> parsed = new HashSet<>();
+    compiler.parse(restr.getQueryString()).extractTerms(parsed);
+    Query query = compiler.compile(restr);
+    assertTrue(query instanceof ConstantScoreQuery);
+    assertEquals(parsed, ((TermsFilter) ((ConstantScoreQuery) query).getFilter()).getTerms());
+  }
+
+  @Test
+  public void test_terms_phrase() throws Exception {
+    QueryRestrictionTerms restr = new QueryRestrictionTerms("field", ImmutableList.of("value",
+        "Hans Peter"));
+    BooleanQuery expected = new BooleanQuery();
+    PhraseQuery phrase = new PhraseQuery();
+    phrase.add(new Term("field", "hans"));
+    phrase.add(new Term("field", "peter"));
+    expected.add(phrase, BooleanClause.Occur.SHOULD);
+    expected.add(new ConstantScoreQuery(new TermsFilter(ImmutableList.of(new Term("field",
+        "value")))), BooleanClause.Occur.SHOULD);
+    assertEquals(expected, compiler.compile(restr));
+  }
+
+  @Test
+  public void test_terms_negated() throws Exception {
+    QueryRestrictionGroup grp = new QueryRestrictionGroup(Type.AND);
+    grp.add(new QueryRestriction("field1", "value1"));
+    grp.add(new QueryRestrictionTerms("field2", ImmutableList.of("value2")).setNegate(true));
+    BooleanQuery expected = new BooleanQuery();
+    expected.add(new PrefixQuery(new Term("field1", "value1")), BooleanClause.Occur.MUST);
+    expected.add(new ConstantScoreQuery(new TermsFilter(ImmutableList.of(new Term("field2",
+        "value2")))), BooleanClause.Occur.MUST_NOT);
+    assertEquals(expected, compiler.compile(grp));
+    assertEquals("(field1:(+value1*) AND NOT field2:(\"value2\"))", grp.getQueryString());
+  }
+
+  @Test
+  public void test_terms_empty() throws Exception {
+    QueryRestrictionTerms restr = new QueryRestrictionTerms("field", ImmutableList.<String>of());
+    assertTrue(restr.isEmpty());
+    assertEquals("", restr.getQueryString());
+    assertEquals(new BooleanQuery(), compiler.compile(restr));
+  }
+
+  @Test
+  public void test_fuzzy_default() throws Exception {
+    BooleanQuery expected = new BooleanQuery();
+    expected.add(new PrefixQuery(new Term("field", "hans")), BooleanClause.Occur.SHOULD);
+    expected.add(new FuzzyQuery(new Term("field", "hans")), BooleanClause.Occur.SHOULD);
+    assertEquals(expected, compiler.compile(new QueryRestriction("field", "Hans").setFuzzy()));
+  }
+
+  @Test
+  public void test_filterCache_exact() throws Exception {
+    FilterCache filterCache = new FilterCache(10);
+    compiler = new LuceneQueryCompiler(LucenePlugin.VERSION, analyzer, filterCache);
+    TermsFilter expected = new TermsFilter(ImmutableList.of(new Term("field", "value")));
+    Query query1 = compiler.compile(new QueryRestriction("field", "\"Value\""));
+    Query query2 = compiler.compile(new QueryRestriction("field", "\"Value\"", false));
+    assertTrue(query1 instanceof ConstantScoreQuery);
+    assertTrue(query2 instanceof ConstantScoreQuery);
+    Filter filter = ((ConstantScoreQuery) query1).getFilter();
+    assertSame(filter, ((ConstantScoreQuery) query2).getFilter());
+    assertSame(filter, filterCache.get(expected));
+    assertEquals(2, filterCache.stats().hitCount());
+    assertEquals(1, filterCache.stats().missCount());
+  }
+
+  @Test
+  public void test_filterCache_notExact() throws Exception {
+    compiler = new LuceneQueryCompiler(LucenePlugin.VERSION, analyzer, new FilterCache(10));
+    assertCompiled(new QueryRestriction("field", "Value"));
+    assertCompiled(new QueryRestriction("field", "Hans \"Peter\""));
+    assertCompiled(new QueryRestriction("field", "\"Hans Peter\""));
+    assertCompiled(new QueryRestriction("field", "Value", false));
+  }
+
+  @Test
+  public void test_filterCache_terms() throws Exception {
+    FilterCache filterCache = new FilterCache(10);
+    compiler = new LuceneQueryCompiler(LucenePlugin.VERSION, analyzer, filterCache);
+    QueryRestrictionTerms restr = new QueryRestrictionTerms("field", ImmutableList.of("a", "b"));
+    assertSame(((ConstantScoreQuery) compiler.compile(restr)).getFilter(),
+        ((ConstantScoreQuery) compiler.compile(restr.copy())).getFilter());
+  }
+
+  @Test
+  public void test_prefixFields() throws Exception {
+    compiler = new LuceneQueryCompiler(LucenePlugin.VERSION, analyzer, null, new PrefixFields(
+        ImmutableList.of("field"), 2, 5));
+    BooleanQuery expected = new BooleanQuery();
+    expected.add(new TermQuery(new Term("field_prefix", "hans")), Occur.MUST);
+    expected.add(new PrefixQuery(new Term("field", "p")), Occur.MUST);
+    expected.add(new PrefixQuery(new Term("field", "robert")), Occur.MUST);
+    expected.add(new WildcardQuery(new Term("field", "m?x*")), Occur.MUST);
+    assertEquals(expected, compiler.compile(new QueryRestriction("field", "Hans P Robert M?x")));
+    assertEquals(new PrefixQuery(new Term("other", "hans")), compiler.compile(
+        new QueryRestriction("other", "Hans")));
+  }
+
+  @Test
+  public void test_fuzzyBounds() throws Exception {
+    compiler = new LuceneQueryCompiler(LucenePlugin.VERSION, analyzer, null, null,
+        new FuzzyBounds(2, 10));
+    assertEquals(new FuzzyQuery(new Term("field", "hans"), .8f, 2, 10), compiler.compile(
+        new QueryRestriction("field", "Hans", false).setFuzzy(.8f)));
+    assertEquals(new FuzzyQuery(new Term("field", "hans"), .8f, 1, 50), compiler.compile(
+        new QueryRestriction("field", "Hans", false).setFuzzy(.8f).setFuzzyBounds(
+            new FuzzyBounds(1, 50))));
+    assertNotEquals(new FuzzyQuery(new Term("field", "hans"), .8f, 2, 50), compiler.compile(
+        new QueryRestriction("field", "Hans", false).setFuzzy(.8f)));
+  }
+
+  @Test
+  public void test_fuzzyBounds_collect() {
+    QueryRestrictionGroup grp = new QueryRestrictionGroup(Type.OR);
+    grp.add(new QueryRestriction("field", "a").setFuzzy());
+    grp.add(new QueryRestriction("field", "b"));
+    grp.add(new QueryRestriction("field", "c").setFuzzy().setFuzzyBounds(new FuzzyBounds(1, 5)));
+    assertEquals(Arrays.asList(null, new FuzzyBounds(1, 5)), FuzzyBounds.collect(grp));
+    grp.setFuzzyBounds(new FuzzyBounds(2, 5));
+    assertEquals(Arrays.asList(new FuzzyBounds(2, 5), new FuzzyBounds(1, 5)),
+        FuzzyBounds.collect(grp));
+  }
+
+  private QueryRestrictionGroup newGroup(Type type, boolean negate1, boolean negate2) {
+    QueryRestrictionGroup grp = new QueryRestrictionGroup(type);
+    grp.add(new QueryRestriction("field1", "value1").setNegate(negate1));
+    grp.add(new QueryRestriction("field2", "\"value2\"").setNegate(negate2));
+    return grp;
+  }
+
+  private void assertCompiled(IQueryRestriction restr) throws Exception {
+    Query expected = compiler.parse(restr.getQueryString());
+    assertEquals(restr.getQueryString(), normalize(expected), normalize(compiler.compile(restr)));
+  }
+
+  /**
+   * unwraps single non prohibited boolean clauses since the parser keeps them for required
+   * clauses, e.g. 'field:(+value*)'
+   */
+  private static Query normalize(Query query) {
+    if (query instanceof BooleanQuery) {
+      BooleanClause[] clauses = ((BooleanQuery) query).getClauses();
+      if ((clauses.length == 1) && !clauses[0].isProhibited()) {
+        Query ret = normalize(clauses[0].getQuery());
+        ret.setBoost(ret.getBoost() * query.getBoost());
+        return ret;
+      }
+      BooleanQuery ret = new BooleanQuery(((BooleanQuery) query).isCoordDisabled());
+      ret.setBoost(query.getBoost());
+      for (BooleanClause clause : clauses) {
+        ret.add(normalize(clause.getQuery()), clause.getOccur());
+      }
+      return ret;
+    }
+    return (Query) query.clone();
+  }
+
+}
@@ -151,6 +151,23 @@ public class LuceneQueryTest extends AbstractComponentTest {
     assertEquals(query.getQueryString(), query.getQueryString());
   }
 
+  @Test
+  public void testCopy_frozen() {
+    LuceneQuery frozen = getNewFilledQuery(Arrays.asList(LuceneDocType.DOC)).freeze();
+    String queryString = frozen.getQueryString();
+    LuceneQuery queryCopy = frozen.copy();
+    assertFalse(queryCopy.isFrozen());
+    assertEquals(frozen, queryCopy);
+    assertEquals(queryString, queryCopy.getQueryString());
+    for (int i = 0; i < frozen.size(); i++) {
+      assertSame(frozen.get(i), queryCopy.get(i));
+    }
+    queryCopy.add(new QueryRestriction("field6", "value6"));
+    queryCopy.setFuzzy(0.5f);
+    assertNotEquals(queryString, queryCopy.getQueryString());
+    assertEquals(queryString, frozen.getQueryString());
+  }
+
   @Test
   public void testEquals() {
     LuceneQuery query = getNewFilledQuery(Arrays.asList(LuceneDocType.DOC));
@@ -189,6 +206,39 @@ public class LuceneQueryTest extends AbstractComponentTest {
     assertFalse(query.hashCode() == queryCopy.hashCode());
   }
 
+  @Test
+  public void testFreeze() {
+    query = getNewFilledQuery(Arrays.asList(LuceneDocType.DOC));
+    query.setWiki(new WikiReference("xwikidb"));
+    LuceneQuery frozen = query.freeze();
+    assertTrue(frozen.isFrozen());
+    assertEquals(query, frozen);
+    assertEquals(query.hashCode(), frozen.hashCode());
+    assertEquals(query.getQueryString(), frozen.getQueryString());
+    assertEquals(query.getDocTypes(), frozen.getDocTypes());
+    assertEquals(query.getWikis(), frozen.getWikis());
+    assertSame(frozen, query.copy().freeze());
+    try {
+      frozen.setWiki(new WikiReference("otherwiki"));
+      fail("expecting UnsupportedOperationException");
+    } catch (UnsupportedOperationException exc) {
+      assertEquals(query.getWikis(), frozen.getWikis());
+    }
+  }
+
+  @Test
+  public void testOptimize() {
+    query = getNewFilledQuery(Arrays.asList(LuceneDocType.DOC, LuceneDocType.ATT));
+    query.setWikis(Arrays.asList(new WikiReference("xwikidb"), new WikiReference("otherwiki")));
+    String queryString = query.getQueryString();
+    IQueryRestriction optimized = QueryOptimizer.optimize(query);
+    assertEquals("(type:(\"wikipage\" OR \"attachment\") AND wiki:(\"xwikidb\" OR \"otherwiki\")"
+        + " AND (field1:(+value1*) OR field2:(+value2*)) AND (field3:(+value3*) "
+        + "OR field4:(+value4*)) AND field5:(+value5*))",
+        optimized.getQueryString());
+    assertEquals(queryString, query.getQueryString());
+  }
+
   private LuceneQuery getNewFilledQuery(List<LuceneDocType> docTypes) {
     LuceneQuery query = new LuceneQuery();
     query.setDocTypes(docTypes);
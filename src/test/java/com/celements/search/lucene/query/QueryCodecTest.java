@@ -0,0 +1,183 @@
+package com.celements.search.lucene.query;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.junit.Test;
+import org.xwiki.model.reference.WikiReference;
+
+import com.celements.search.lucene.query.QueryRestrictionGroup.Type;
+import com.google.common.collect.Range;
+
+public class QueryCodecTest {
+
+  @Test
+  public void test_roundtrip() {
+    LuceneQuery query = createQuery();
+    byte[] bytes = QueryCodec.encode(query);
+    assertEquals(QueryCodec.FORMAT_VERSION, bytes[0]);
+    IQueryRestriction decoded = QueryCodec.decode(bytes, null);
+    assertTrue(decoded instanceof LuceneQuery);
+    assertEquals(query.getQueryString(), decoded.getQueryString());
+    assertEquals(query.getDocTypes(), ((LuceneQuery) decoded).getDocTypes());
+    assertEquals(query.getWikis(), ((LuceneQuery) decoded).getWikis());
+    assertEquals(query.get(0), ((LuceneQuery) decoded).get(0));
+    assertEquals(query.get(1), ((LuceneQuery) decoded).get(1));
+    assertArrayEquals(bytes, QueryCodec.encode(decoded));
+  }
+
+  @Test
+  public void test_roundtrip_frozen() {
+    LuceneQuery frozen = createQuery().freeze();
+    IQueryRestriction decoded = QueryCodec.decode(QueryCodec.encode(frozen), null);
+    assertFalse(decoded.isFrozen());
+    assertEquals(frozen.getQueryString(), decoded.getQueryString());
+    assertEquals(QueryCodec.fingerprint(frozen), QueryCodec.fingerprint(decoded));
+  }
+
+  @Test
+  public void test_roundtrip_parsed() {
+    QueryRestrictionParsed parsed = new QueryRestrictionParsed(new TermQuery(new Term("f", "v")));
+    parsed.setNegate(true);
+    IQueryRestriction decoded = QueryCodec.decode(QueryCodec.encode(parsed), null);
+    assertEquals(QueryRestrictionString.class, decoded.getClass());
+    assertTrue(decoded.getNegate());
+    assertEquals(parsed.getQueryString(), decoded.getQueryString());
+  }
+
+  @Test
+  public void test_roundtrip_ranges() {
+    QueryRestrictionGroup restrGrp = new QueryRestrictionGroup(Type.OR);
+    restrGrp.add(new QueryRestrictionNumericRange("int", Range.openClosed(-5, 1000)));
+    restrGrp.add(new QueryRestrictionNumericRange("double", Range.atLeast(0.5d), 8));
+    restrGrp.add(new QueryRestrictionNumericRange("long", Range.<Long>all()));
+    restrGrp.add(new QueryRestrictionOverlap("start", "end", Range.lessThan(2.5f)));
+    IQueryRestriction decoded = QueryCodec.decode(QueryCodec.encode(restrGrp), null);
+    assertEquals(restrGrp, decoded);
+    assertEquals(restrGrp.getQueryString(), decoded.getQueryString());
+  }
+
+  @Test
+  public void test_compact() {
+    QueryRestriction restr = new QueryRestriction("field", "value");
+    // version, tag, flags, 2x length, 10 chars
+    assertEquals(15, QueryCodec.encode(restr).length);
+  }
+
+  @Test
+  public void test_fingerprint() {
+    assertEquals(128, QueryCodec.fingerprint(createQuery()).bits());
+    assertEquals(QueryCodec.fingerprint(createQuery()), QueryCodec.fingerprint(createQuery()));
+    LuceneQuery query = createQuery();
+    ((QueryRestriction) query.get(0)).setFuzzyBounds(new FuzzyBounds(2, 10));
+    assertNotEquals(QueryCodec.fingerprint(createQuery()), QueryCodec.fingerprint(query));
+    query = createQuery();
+    query.setWiki(new WikiReference("otherwiki"));
+    assertNotEquals(QueryCodec.fingerprint(createQuery()), QueryCodec.fingerprint(query));
+  }
+
+  @Test
+  public void test_encode_unknown() {
+    try {
+      QueryCodec.encode(newUnknown("field:value"));
+      fail("expecting IllegalArgumentException");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+  }
+
+  @Test
+  public void test_fingerprint_unknown() {
+    LuceneQuery query = createQuery();
+    query.add(newUnknown("field:value"));
+    assertEquals(QueryCodec.fingerprint(query), QueryCodec.fingerprint(query.copy()));
+    LuceneQuery other = createQuery();
+    other.add(newUnknown("field:other"));
+    assertNotEquals(QueryCodec.fingerprint(query), QueryCodec.fingerprint(other));
+    assertNotEquals(QueryCodec.fingerprint(query), QueryCodec.fingerprint(createQuery()));
+  }
+
+  private static IQueryRestriction newUnknown(String queryString) {
+    return new IQueryRestriction() {
+
+      @Override
+      public String getQueryString() {
+        return queryString;
+      }
+
+      @Override
+      public boolean getNegate() {
+        return false;
+      }
+
+      @Override
+      public IQueryRestriction setNegate(boolean negate) {
+        return this;
+      }
+
+      @Override
+      public com.google.common.base.Optional<Float> getFuzzy() {
+        return com.google.common.base.Optional.absent();
+      }
+
+      @Override
+      public IQueryRestriction setFuzzy(Float fuzzy) {
+        return this;
+      }
+
+      @Override
+      public IQueryRestriction copy() {
+        return this;
+      }
+
+      @Override
+      public boolean isEmpty() {
+        return queryString.isEmpty();
+      }
+    };
+  }
+
+  @Test
+  public void test_decode_invalid() {
+    byte[] bytes = QueryCodec.encode(createQuery());
+    assertInvalid(new byte[0]);
+    assertInvalid(Arrays.copyOf(bytes, bytes.length - 1));
+    assertInvalid(Arrays.copyOf(bytes, bytes.length + 1));
+    byte[] otherVersion = bytes.clone();
+    otherVersion[0] = QueryCodec.FORMAT_VERSION + 1;
+    assertInvalid(otherVersion);
+    byte[] unknownTag = bytes.clone();
+    unknownTag[1] = 99;
+    assertInvalid(unknownTag);
+  }
+
+  private static void assertInvalid(byte[] bytes) {
+    try {
+      QueryCodec.decode(bytes, null);
+      fail("expecting IllegalArgumentException");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+  }
+
+  private static LuceneQuery createQuery() {
+    LuceneQuery query = new LuceneQuery();
+    query.setDocTypes(Arrays.asList(LuceneDocType.DOC, LuceneDocType.ATT));
+    query.setWikis(Arrays.asList(new WikiReference("wiki1"), new WikiReference("wiki2")));
+    query.add(new QueryRestriction("title", "hällo wörld*").setFuzzy(0.7f).setBoost(2.5f));
+    query.add(new QueryRestriction("content", "exact", false).setProximity(4).setNegate(true));
+    QueryRestrictionGroup orGrp = new QueryRestrictionGroup(Type.OR);
+    orGrp.add(new QueryRestrictionTerms("space", Arrays.asList("a", "b", "c")));
+    orGrp.add(new QueryRestrictionString("field:value").setNegate(true));
+    orGrp.add(new QueryRestrictionNumericRange("date", Range.closed(202401010000L,
+        202412312359L)));
+    orGrp.setNegate(true);
+    query.add(orGrp);
+    query.add(new QueryRestrictionOverlap("start", "end", Range.closedOpen(10L, 20L)));
+    return query;
+  }
+
+}
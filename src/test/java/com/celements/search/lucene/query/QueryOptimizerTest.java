@@ -0,0 +1,177 @@
+package com.celements.search.lucene.query;
+
+import static com.celements.search.lucene.query.QueryOptimizer.*;
+import static org.junit.Assert.*;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.junit.Test;
+
+import com.celements.search.lucene.index.analysis.CelementsSimpleAnalyzer;
+import com.celements.search.lucene.query.QueryRestrictionGroup.Type;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.xpn.xwiki.plugin.lucene.LucenePlugin;
+
+public class QueryOptimizerTest {
+
+  @Test
+  public void test_restriction() {
+    QueryRestriction restr = new QueryRestriction("field", "value");
+    assertSame(restr, optimize(restr));
+  }
+
+  @Test
+  public void test_flatten() {
+    QueryRestrictionGroup grp = newGroup(Type.AND, new QueryRestriction("f1", "v1"));
+    grp.add(newGroup(Type.AND, new QueryRestriction("f2", "v2"), newGroup(Type.AND,
+        new QueryRestriction("f3", "v3"), new QueryRestriction("f4", "v4"))));
+    grp.add(newGroup(Type.OR, new QueryRestriction("f5", "v5"), new QueryRestriction("f6",
+        "v6")));
+    assertEquals("(f1:(+v1*) AND f2:(+v2*) AND f3:(+v3*) AND f4:(+v4*) "
+        + "AND (f5:(+v5*) OR f6:(+v6*)))", optimize(grp).getQueryString());
+    assertEquals(3, grp.size());
+  }
+
+  @Test
+  public void test_flatten_negated() {
+    QueryRestrictionGroup grp = newGroup(Type.AND, new QueryRestriction("f1", "v1"));
+    grp.add(newGroup(Type.AND, new QueryRestriction("f2", "v2"), new QueryRestriction("f3",
+        "v3")).setNegate(true));
+    assertEquals(grp.getQueryString(), optimize(grp).getQueryString());
+  }
+
+  @Test
+  public void test_duplicates() {
+    QueryRestrictionGroup grp = newGroup(Type.OR, new QueryRestriction("f1", "v1"),
+        newGroup(Type.OR, new QueryRestriction("f1", "v1"), new QueryRestriction("f2", "v2")));
+    assertEquals("(f1:(+v1*) OR f2:(+v2*))", optimize(grp).getQueryString());
+  }
+
+  @Test
+  public void test_empty() {
+    QueryRestrictionGroup grp = newGroup(Type.AND, newGroup(Type.OR), new QueryRestriction("f1",
+        "v1"));
+    assertEquals(new QueryRestriction("f1", "v1"), optimize(grp));
+    assertTrue(optimize(newGroup(Type.AND)).isEmpty());
+  }
+
+  @Test
+  public void test_unwrap() {
+    QueryRestrictionGroup grp = newGroup(Type.AND, new QueryRestriction("f1", "v1"),
+        newGroup(Type.OR, new QueryRestriction("f2", "v2")).setNegate(true));
+    assertEquals("(f1:(+v1*) AND NOT f2:(+v2*))", optimize(grp).getQueryString());
+  }
+
+  @Test
+  public void test_doubleNegation() {
+    QueryRestrictionGroup grp = newGroup(Type.AND, new QueryRestriction("f1", "v1"),
+        newGroup(Type.OR, new QueryRestriction("f2", "v2").setNegate(true)).setNegate(true));
+    assertEquals("(f1:(+v1*) AND f2:(+v2*))", optimize(grp).getQueryString());
+  }
+
+  @Test
+  public void test_negatedGroup_deMorgan() {
+    QueryRestrictionGroup grp = newGroup(Type.AND, new QueryRestriction("f1", "v1").setNegate(
+        true), new QueryRestriction("f2", "v2").setNegate(true)).setNegate(true);
+    assertEquals("(f1:(+v1*) OR f2:(+v2*))", optimize(grp).getQueryString());
+  }
+
+  @Test
+  public void test_pureNegative_and() {
+    QueryRestrictionGroup grp = newGroup(Type.AND, new QueryRestriction("f1", "v1").setNegate(
+        true), new QueryRestriction("f2", "v2").setNegate(true));
+    assertEquals("((*:*) AND NOT f1:(+v1*) AND NOT f2:(+v2*))", optimize(grp).getQueryString());
+  }
+
+  @Test
+  public void test_pureNegative_or() {
+    QueryRestrictionGroup grp = newGroup(Type.OR, new QueryRestriction("f1", "v1").setNegate(
+        true), new QueryRestriction("f2", "v2").setNegate(true));
+    assertEquals("((*:*) AND NOT (f1:(+v1*) AND f2:(+v2*)))", optimize(grp).getQueryString());
+  }
+
+  @Test
+  public void test_pureNegative_nested() {
+    QueryRestrictionGroup grp = newGroup(Type.OR, new QueryRestriction("f1", "v1"),
+        newGroup(Type.AND, new QueryRestriction("f2", "v2").setNegate(true)));
+    assertEquals("(f1:(+v1*) OR ((*:*) AND NOT f2:(+v2*)))", optimize(grp).getQueryString());
+  }
+
+  @Test
+  public void test_pureNegative_flattened() {
+    QueryRestrictionGroup grp = newGroup(Type.AND, new QueryRestriction("f1", "v1"),
+        newGroup(Type.AND, new QueryRestriction("f2", "v2").setNegate(true)));
+    assertEquals("(f1:(+v1*) AND NOT f2:(+v2*))", optimize(grp).getQueryString());
+  }
+
+  @Test
+  public void test_pureNegative_root() {
+    IQueryRestriction restr = new QueryRestriction("f1", "v1").setNegate(true);
+    assertEquals("((*:*) AND NOT f1:(+v1*))", optimize(restr).getQueryString());
+  }
+
+  @Test
+  public void test_pureNegative_compiled() throws Exception {
+    try (CelementsSimpleAnalyzer analyzer = new CelementsSimpleAnalyzer(LucenePlugin.VERSION)) {
+      IQueryRestriction restr = new QueryRestriction("f1", "v1").setNegate(true);
+      BooleanQuery expected = new BooleanQuery();
+      expected.add(new MatchAllDocsQuery(), Occur.MUST);
+      expected.add(new PrefixQuery(new Term("f1", "v1")), Occur.MUST_NOT);
+      assertEquals(expected, new LuceneQueryCompiler(LucenePlugin.VERSION, analyzer).compile(
+          optimize(restr)));
+    }
+  }
+
+  @Test
+  public void test_mergeTerms_or() {
+    QueryRestrictionGroup grp = newGroup(Type.OR, new QueryRestriction("f1", "\"a\""),
+        new QueryRestriction("f2", "\"x\""), new QueryRestriction("f1", "\"b\"", false),
+        new QueryRestrictionTerms("f1", ImmutableList.of("c", "a")),
+        new QueryRestriction("f1", "d"));
+    IQueryRestriction optimized = optimize(grp);
+    assertEquals("(f1:(\"a\" OR \"b\" OR \"c\") OR f2:(+\"x\") OR f1:(+d*))",
+        optimized.getQueryString());
+    QueryRestrictionTerms terms = (QueryRestrictionTerms) ((QueryRestrictionGroup) optimized).get(
+        0);
+    assertEquals(ImmutableSet.of("a", "b", "c"), terms.getValues());
+  }
+
+  @Test
+  public void test_mergeTerms_and() {
+    QueryRestrictionGroup grp = newGroup(Type.AND, new QueryRestriction("f1", "\"a\""),
+        new QueryRestriction("f1", "\"b\""), new QueryRestriction("f1", "\"c\"").setNegate(true),
+        new QueryRestriction("f1", "\"d\"").setNegate(true));
+    assertEquals("(f1:(+\"a\") AND f1:(+\"b\") AND NOT f1:(\"c\" OR \"d\"))",
+        optimize(grp).getQueryString());
+  }
+
+  @Test
+  public void test_mergeTerms_notExact() {
+    QueryRestrictionGroup grp = newGroup(Type.OR, new QueryRestriction("f1", "\"a\"").setBoost(2),
+        new QueryRestriction("f1", "\"b\"").setFuzzy(), new QueryRestriction("f1", "\"c d\" e"));
+    assertEquals(grp.getQueryString(), optimize(grp).getQueryString());
+  }
+
+  @Test
+  public void test_notModified() {
+    QueryRestrictionGroup grp = newGroup(Type.OR, new QueryRestriction("f1", "v1").setNegate(
+        true), newGroup(Type.OR, new QueryRestriction("f2", "\"v2\""), new QueryRestriction("f2",
+            "\"v3\"")));
+    QueryRestrictionGroup copy = grp.copy();
+    optimize(grp);
+    assertEquals(copy, grp);
+  }
+
+  private static QueryRestrictionGroup newGroup(Type type, IQueryRestriction... restrs) {
+    QueryRestrictionGroup grp = new QueryRestrictionGroup(type);
+    for (IQueryRestriction restr : restrs) {
+      grp.add(restr);
+    }
+    return grp;
+  }
+
+}
@@ -0,0 +1,143 @@
+package com.celements.search.lucene.query;
+
+import static org.junit.Assert.*;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.FilteredQuery;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.TermQuery;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.celements.search.lucene.TestIndex;
+import com.google.common.collect.ImmutableList;
+
+public class QueryPlannerTest {
+
+  private TestIndex index;
+  private IndexReader reader;
+
+  @Before
+  public void prepare() throws Exception {
+    index = TestIndex.create(writer -> {
+      for (int i = 0; i < 100; i++) {
+        writer.addDocument(TestIndex.doc("type", "wikipage", "space", "space" + (i % 10), "id",
+            "id" + i));
+      }
+    });
+    reader = index.getReader();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    index.close();
+  }
+
+  @Test
+  public void test_plan_filters() throws Exception {
+    BooleanQuery query = new BooleanQuery();
+    Query prefix = new PrefixQuery(new Term("id", "id1"));
+    Query type = new TermQuery(new Term("type", "wikipage"));
+    Filter spaceFilter = new FilterCache(10).get(new TermsFilter(ImmutableList.of(
+        new Term("space", "space1"), new Term("space", "space2"))));
+    Query id = new TermQuery(new Term("id", "id12"));
+    query.add(prefix, Occur.MUST);
+    query.add(type, Occur.MUST);
+    query.add(new TermQuery(new Term("space", "space3")), Occur.MUST_NOT);
+    query.add(new ConstantScoreQuery(spaceFilter), Occur.MUST);
+    query.add(id, Occur.MUST);
+    QueryPlan plan = QueryPlanner.plan(query, reader);
+    FilteredQuery spaceFiltered = (FilteredQuery) plan.getQuery();
+    assertSame(spaceFilter, spaceFiltered.getFilter());
+    FilteredQuery prefixFiltered = (FilteredQuery) spaceFiltered.getQuery();
+    assertEquals(new QueryWrapperFilter(prefix), prefixFiltered.getFilter());
+    BooleanClause[] clauses = ((BooleanQuery) prefixFiltered.getQuery()).getClauses();
+    assertEquals(3, clauses.length);
+    assertSame(type, clauses[0].getQuery());
+    assertSame(Occur.MUST_NOT, clauses[1].getOccur());
+    assertSame(id, clauses[2].getQuery());
+    assertEquals(1, plan.getCost());
+    assertSame(prefix, query.getClauses()[0].getQuery());
+    String[] lines = plan.explain().split("\n");
+    assertEquals(6, lines.length);
+    assertEquals("BooleanQuery cost=1", lines[0]);
+    assertEquals("  #PrefixQuery id:id1* cost=expensive", lines[1]);
+    assertEquals("  +TermQuery type:wikipage cost=100", lines[2]);
+    assertEquals("  +TermQuery id:id12 cost=1", lines[5]);
+    assertSearched(query, 1);
+  }
+
+  @Test
+  public void test_plan_filtersOnly() throws Exception {
+    BooleanQuery query = new BooleanQuery();
+    query.add(new PrefixQuery(new Term("id", "id1")), Occur.MUST);
+    query.add(new TermQuery(new Term("space", "space1")), Occur.MUST_NOT);
+    FilteredQuery planned = (FilteredQuery) QueryPlanner.plan(query, reader).getQuery();
+    BooleanClause[] clauses = ((BooleanQuery) planned.getQuery()).getClauses();
+    assertEquals(2, clauses.length);
+    assertEquals(new MatchAllDocsQuery(), clauses[1].getQuery());
+    assertSearched(query, 9);
+  }
+
+  @Test
+  public void test_plan_optional() throws Exception {
+    BooleanQuery query = new BooleanQuery();
+    query.add(new PrefixQuery(new Term("id", "id1")), Occur.MUST);
+    query.add(new TermQuery(new Term("space", "space1")), Occur.SHOULD);
+    assertEquals(query, QueryPlanner.plan(query, reader).getQuery());
+    assertSearched(query, 11);
+  }
+
+  @Test
+  public void test_plan_scoredExpansion() throws Exception {
+    BooleanQuery query = new BooleanQuery();
+    query.add(new TermQuery(new Term("space", "space2")), Occur.SHOULD);
+    query.add(new FuzzyQuery(new Term("id", "id12")), Occur.MUST);
+    assertEquals(query, QueryPlanner.plan(query, reader).getQuery());
+  }
+
+  @Test
+  public void test_plan_nested() throws Exception {
+    BooleanQuery nested = new BooleanQuery();
+    nested.add(new TermQuery(new Term("space", "space1")), Occur.SHOULD);
+    nested.add(new TermQuery(new Term("space", "space2")), Occur.SHOULD);
+    BooleanQuery query = new BooleanQuery();
+    query.add(new TermQuery(new Term("type", "wikipage")), Occur.MUST);
+    query.add(nested, Occur.MUST);
+    QueryPlan plan = QueryPlanner.plan(query, reader);
+    assertEquals(20, plan.getCost());
+    assertEquals(query, plan.getQuery());
+  }
+
+  @Test
+  public void test_plannedQuery_search() throws Exception {
+    BooleanQuery query = new BooleanQuery();
+    query.add(new PrefixQuery(new Term("id", "id1")), Occur.MUST);
+    query.add(new TermQuery(new Term("space", "space1")), Occur.MUST);
+    try (IndexSearcher searcher = new IndexSearcher(reader)) {
+      assertEquals(searcher.search(query, 100).totalHits, searcher.search(new PlannedQuery(
+          query), 100).totalHits);
+      assertEquals(2, searcher.search(new PlannedQuery(query), 100).totalHits);
+    }
+  }
+
+  private void assertSearched(Query query, int expected) throws Exception {
+    try (IndexSearcher searcher = new IndexSearcher(reader)) {
+      assertEquals(expected, searcher.search(query, 100).totalHits);
+      assertEquals(expected, searcher.search(new PlannedQuery(query), 100).totalHits);
+    }
+  }
+
+}
@@ -2,9 +2,12 @@ package com.celements.search.lucene.query;
 
 import static org.junit.Assert.*;
 
+import java.util.Iterator;
+
 import org.junit.Test;
 
 import com.celements.search.lucene.query.QueryRestrictionGroup.Type;
+import com.google.common.base.Optional;
 
 public class QueryRestrictionGroupTest {
 
@@ -191,6 +194,149 @@ public class QueryRestrictionGroupTest {
     assertFalse(restrGrp1.equals(restrGrp2));
   }
 
+  @Test
+  public void testAdd_large_duplicates() {
+    QueryRestrictionGroup restrGrp = new QueryRestrictionGroup(Type.OR);
+    int count = 10 * QueryRestrictionGroup.INDEX_THRESHOLD;
+    for (int i = 0; i < count; i++) {
+      assertTrue(restrGrp.add(new QueryRestriction("field", "value" + i)));
+    }
+    for (int i = count - 1; i >= 0; i--) {
+      assertFalse(restrGrp.add(new QueryRestriction("field", "value" + i)));
+      assertTrue(restrGrp.contains(new QueryRestriction("field", "value" + i)));
+    }
+    assertEquals(count, restrGrp.size());
+    for (int i = 0; i < count; i++) {
+      assertEquals(new QueryRestriction("field", "value" + i), restrGrp.get(i));
+    }
+  }
+
+  @Test
+  public void testAdd_large_afterRemove() {
+    QueryRestrictionGroup restrGrp = new QueryRestrictionGroup(Type.OR);
+    int count = 2 * QueryRestrictionGroup.INDEX_THRESHOLD;
+    for (int i = 0; i < count; i++) {
+      restrGrp.add(new QueryRestriction("field", "value" + i));
+    }
+    restrGrp.remove(new QueryRestriction("field", "value0"));
+    Iterator<IQueryRestriction> iter = restrGrp.iterator();
+    iter.next();
+    iter.remove();
+    restrGrp.set(0, new QueryRestriction("field", "other"));
+    assertFalse(restrGrp.contains(new QueryRestriction("field", "value2")));
+    assertTrue(restrGrp.add(new QueryRestriction("field", "value0")));
+    assertTrue(restrGrp.add(new QueryRestriction("field", "value1")));
+    assertTrue(restrGrp.add(new QueryRestriction("field", "value2")));
+    assertFalse(restrGrp.add(new QueryRestriction("field", "other")));
+    assertEquals(count + 1, restrGrp.size());
+  }
+
+  @Test
+  public void testFreeze() {
+    QueryRestrictionGroup restrGrp = getNewFilledRestrGrp(Type.AND);
+    restrGrp.setNegate(true);
+    QueryRestrictionGroup frozen = restrGrp.freeze();
+    assertTrue(frozen.isFrozen());
+    assertSame(frozen, frozen.freeze());
+    assertEquals(restrGrp, frozen);
+    assertEquals(restrGrp.hashCode(), frozen.hashCode());
+    assertEquals(restrGrp.getQueryString(), frozen.getQueryString());
+    for (IQueryRestriction restr : frozen) {
+      assertTrue(restr.isFrozen());
+    }
+    assertFalse(restrGrp.copy().isFrozen());
+  }
+
+  @Test
+  public void testFreeze_sharedSubtrees() {
+    QueryRestrictionGroup frozen1 = getNewFilledRestrGrp(Type.AND).freeze();
+    QueryRestrictionGroup restrGrp = new QueryRestrictionGroup(Type.OR);
+    restrGrp.add(getNewFilledRestrGrp(Type.AND));
+    restrGrp.add(new QueryRestriction("field6", "value6"));
+    QueryRestrictionGroup frozen2 = restrGrp.freeze();
+    assertSame(frozen1, frozen2.get(0));
+    assertSame(frozen1.get(0), ((QueryRestrictionGroup) frozen2.get(0)).get(0));
+  }
+
+  @Test
+  public void testFreeze_immutable() {
+    QueryRestrictionGroup frozen = getNewFilledRestrGrp(Type.AND).freeze();
+    String queryString = frozen.getQueryString();
+    assertUnsupported(() -> frozen.add(new QueryRestriction("field6", "value6")));
+    assertUnsupported(() -> frozen.remove(0));
+    assertUnsupported(() -> frozen.clear());
+    assertUnsupported(() -> frozen.setNegate(true));
+    assertUnsupported(() -> frozen.cleanup());
+    assertUnsupported(() -> {
+      Iterator<IQueryRestriction> iter = frozen.iterator();
+      iter.next();
+      iter.remove();
+    });
+    assertUnsupported(() -> frozen.subList(0, 1).clear());
+    assertUnsupported(() -> ((QueryRestrictionGroup) frozen.get(0)).setType(Type.OR));
+    assertEquals(queryString, frozen.getQueryString());
+    assertEquals(3, frozen.size());
+  }
+
+  @Test
+  public void testCopy_sharesFrozen() {
+    QueryRestrictionGroup frozen = getNewFilledRestrGrp(Type.AND).freeze();
+    QueryRestrictionGroup copy = frozen.copy();
+    assertFalse(copy.isFrozen());
+    assertEquals(frozen, copy);
+    assertEquals(frozen.getQueryString(), copy.getQueryString());
+    for (int i = 0; i < frozen.size(); i++) {
+      assertSame(frozen.get(i), copy.get(i));
+    }
+    QueryRestrictionGroup mixed = new QueryRestrictionGroup(Type.OR);
+    mixed.add(frozen);
+    mixed.add(new QueryRestriction("field6", "value6"));
+    QueryRestrictionGroup mixedCopy = mixed.copy();
+    assertSame(frozen, mixedCopy.get(0));
+    assertNotSame(mixed.get(1), mixedCopy.get(1));
+    assertEquals(mixed, mixedCopy);
+  }
+
+  @Test
+  public void testCopy_copyOnWrite() {
+    QueryRestrictionGroup frozen = getNewFilledRestrGrp(Type.AND).freeze();
+    String queryString = frozen.getQueryString();
+    QueryRestrictionGroup copy = frozen.copy();
+    copy.add(new QueryRestriction("field6", "value6"));
+    copy.setFuzzy(0.5f);
+    copy.setFuzzyBounds(new FuzzyBounds(2, 10));
+    assertEquals(queryString, frozen.getQueryString());
+    assertFalse(frozen.get(2).getFuzzy().isPresent());
+    assertNotSame(frozen.get(2), copy.get(2));
+    assertEquals(Optional.of(0.5f), copy.get(2).getFuzzy());
+    assertEquals(Optional.of(new FuzzyBounds(2, 10)),
+        ((QueryRestriction) ((QueryRestrictionGroup) copy.get(0)).get(0)).getFuzzyBounds());
+    assertEquals(4, copy.size());
+  }
+
+  @Test
+  public void testCopy_copyOnWrite_cleanup() {
+    QueryRestrictionGroup negated = new QueryRestrictionGroup(Type.OR);
+    negated.add(new QueryRestriction("field1", "value1").setNegate(true));
+    negated.add(new QueryRestriction("field2", "value2").setNegate(true));
+    negated.freeze();
+    QueryRestrictionGroup copy = negated.copy();
+    copy.cleanup();
+    assertTrue(copy.getNegate());
+    assertFalse(copy.get(0).getNegate());
+    assertTrue(negated.get(0).getNegate());
+    assertFalse(negated.getNegate());
+  }
+
+  private static void assertUnsupported(Runnable runnable) {
+    try {
+      runnable.run();
+      fail("expecting UnsupportedOperationException");
+    } catch (UnsupportedOperationException exc) {
+      // expected
+    }
+  }
+
   private QueryRestrictionGroup getNewFilledRestrGrp(Type type) {
     Type otherType = type == Type.AND ? Type.OR : Type.AND;
     QueryRestrictionGroup restrGrp = new QueryRestrictionGroup(type);
@@ -0,0 +1,164 @@
+package com.celements.search.lucene.query;
+
+import static org.junit.Assert.*;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.NumericRangeFilter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.celements.search.lucene.TestIndex;
+import com.celements.search.lucene.analysis.NumericFields;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Range;
+import com.xpn.xwiki.plugin.lucene.LucenePlugin;
+
+public class QueryRestrictionNumericRangeTest {
+
+  private TestIndex index;
+  private IndexReader reader;
+  private LuceneQueryCompiler compiler;
+
+  @Before
+  public void prepare() throws Exception {
+    NumericFields numericFields = new NumericFields(4);
+    index = TestIndex.create(writer -> {
+      for (int i = 0; i < 100; i++) {
+        Document doc = new Document();
+        doc.add(numericFields.createField("number", i));
+        doc.add(numericFields.createField("date", LocalDateTime.of(2020, 1, 1, 12, 0).plusDays(
+            i)));
+        doc.add(numericFields.createField("start", i * 10));
+        doc.add(numericFields.createField("end", (i * 10) + 5));
+        writer.addDocument(doc);
+      }
+    });
+    reader = index.getReader();
+    compiler = new LuceneQueryCompiler(LucenePlugin.VERSION, index.getAnalyzer(),
+        new FilterCache(10));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    index.close();
+  }
+
+  @Test
+  public void test_getQueryString() {
+    assertEquals("number:[10 TO 20]", new QueryRestrictionNumericRange("number", Range.closed(10,
+        20)).getQueryString());
+    assertEquals("NOT number:{10 TO *]", new QueryRestrictionNumericRange("number",
+        Range.greaterThan(10L)).setNegate(true).getQueryString());
+    assertEquals("number:[* TO 1.5}", new QueryRestrictionNumericRange("number", Range.lessThan(
+        1.5)).getQueryString());
+    assertEquals("", new QueryRestrictionNumericRange("", Range.all()).getQueryString());
+  }
+
+  @Test
+  public void test_type() {
+    assertSame(Integer.class, new QueryRestrictionNumericRange("n", Range.atLeast(1)).getType());
+    assertSame(Long.class, new QueryRestrictionNumericRange("n", Range.all()).getType());
+    assertSame(Float.class, new QueryRestrictionNumericRange("n", Range.atMost(1f)).getType());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_type_unsupported() {
+    new QueryRestrictionNumericRange("n", Range.atLeast((short) 1));
+  }
+
+  @Test
+  public void test_copy_freeze() {
+    QueryRestrictionNumericRange restr = new QueryRestrictionNumericRange("n", Range.closed(1, 2),
+        8).setNegate(true);
+    assertEquals(restr, restr.copy());
+    assertEquals(restr, restr.freeze());
+    assertNotEquals(restr, new QueryRestrictionNumericRange("n", Range.closed(1L, 2L), 8)
+        .setNegate(true));
+  }
+
+  @Test
+  public void test_compile() throws Exception {
+    QueryRestrictionNumericRange restr = new QueryRestrictionNumericRange("number",
+        Range.closedOpen(10, 20));
+    ConstantScoreQuery query = (ConstantScoreQuery) compiler.compile(restr);
+    assertEquals(NumericRangeFilter.newIntRange("number", 4, 10, 20, true, false),
+        ((FilterCache.CachedFilter) query.getFilter()).getFilter());
+    assertEquals(10, search(restr));
+  }
+
+  @Test
+  public void test_compile_openEnded() throws Exception {
+    assertEquals(90, search(new QueryRestrictionNumericRange("number", Range.atLeast(10))));
+    assertEquals(11, search(new QueryRestrictionNumericRange("number", Range.atMost(10))));
+    assertEquals(100, search(new QueryRestrictionNumericRange("date", Range.all())));
+  }
+
+  @Test
+  public void test_compile_date() throws Exception {
+    long from = NumericFields.dateToLong(LocalDateTime.of(2020, 2, 1, 0, 0));
+    assertEquals(202002010000L, from);
+    assertEquals(69, search(new QueryRestrictionNumericRange("date", Range.atLeast(from))));
+  }
+
+  @Test
+  public void test_createField_date() {
+    NumericFields numericFields = new NumericFields(4);
+    LocalDateTime dateTime = LocalDateTime.of(2020, 2, 1, 12, 30);
+    Date date = Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+    assertEquals(202002011230L, numericFields.createField("date", date).getNumericValue());
+    assertEquals(numericFields.createField("date", dateTime).getNumericValue(),
+        numericFields.createField("date", date).getNumericValue());
+  }
+
+  @Test
+  public void test_compile_negated() throws Exception {
+    QueryRestrictionGroup grp = new QueryRestrictionGroup(QueryRestrictionGroup.Type.AND);
+    grp.add(new QueryRestrictionNumericRange("number", Range.lessThan(50)));
+    grp.add(new QueryRestrictionNumericRange("number", Range.closed(10, 19)).setNegate(true));
+    assertEquals(40, search(grp));
+  }
+
+  @Test
+  public void test_overlap_getQueryString() {
+    assertEquals("(end:[10 TO *] AND start:[* TO 20})", new QueryRestrictionOverlap("start",
+        "end", Range.closedOpen(10, 20)).getQueryString());
+    assertEquals("NOT (end:{10 TO *])", new QueryRestrictionOverlap("start", "end",
+        Range.greaterThan(10)).setNegate(true).getQueryString());
+    assertTrue(new QueryRestrictionOverlap("start", "end", Range.all()).isEmpty());
+    assertTrue(new QueryRestrictionOverlap("", "end", Range.atLeast(1)).isEmpty());
+  }
+
+  @Test
+  public void test_overlap_compile() throws Exception {
+    QueryRestrictionOverlap restr = new QueryRestrictionOverlap("start", "end", Range.closed(103,
+        124));
+    ConstantScoreQuery query = (ConstantScoreQuery) compiler.compile(restr);
+    ConjunctionFilter filter = (ConjunctionFilter) ((FilterCache.CachedFilter) query.getFilter())
+        .getFilter();
+    assertEquals(ImmutableList.of(NumericRangeFilter.newIntRange("end", 4, 103, null, true, true),
+        NumericRangeFilter.newIntRange("start", 4, null, 124, true, true)), filter.getFilters());
+    // intervals [100, 105], [110, 115] and [120, 125]
+    assertEquals(3, search(restr));
+    assertEquals(1, search(new QueryRestrictionOverlap("start", "end", Range.open(105, 120))));
+    assertEquals(1, search(new QueryRestrictionOverlap("start", "end", Range.closed(5, 5))));
+    assertEquals(0, search(new QueryRestrictionOverlap("start", "end", Range.open(5, 10))));
+    assertEquals(10, search(new QueryRestrictionOverlap("start", "end", Range.atLeast(900))));
+    assertEquals(100, search(new QueryRestrictionOverlap("start", "end", Range.atMost(2000))));
+    assertEquals(0, search(new QueryRestrictionOverlap("start", "end", Range.atLeast(2000))));
+  }
+
+  private int search(IQueryRestriction restr) throws Exception {
+    try (IndexSearcher searcher = new IndexSearcher(reader)) {
+      return searcher.search(compiler.compile(restr), 1000).totalHits;
+    }
+  }
+
+}
@@ -213,4 +213,32 @@ public class QueryRestrictionTest {
     QueryRestriction restr = new QueryRestriction("XWiki.XWikiUsers.first_name", "Hans Peter");
     assertEquals("XWiki.XWikiUsers.first_name:(+Hans* +Peter*)", restr.getQueryString());
   }
+
+  @Test
+  public void testFreeze() {
+    QueryRestriction restr = new QueryRestriction("XWiki.XWikiUsers.first_name", "Hans Peter");
+    restr.setBoost(8f);
+    QueryRestriction frozen = restr.freeze();
+    assertTrue(frozen.isFrozen());
+    assertFalse(restr.isFrozen());
+    assertSame(frozen, frozen.freeze());
+    assertEquals(restr, frozen);
+    assertEquals(restr.hashCode(), frozen.hashCode());
+    assertEquals(restr.getQueryString(), frozen.getQueryString());
+    assertSame(frozen, restr.copy().freeze());
+  }
+
+  @Test
+  public void testFreeze_immutable() {
+    QueryRestriction frozen = new QueryRestriction("field", "value").freeze();
+    try {
+      frozen.setQuery("other");
+      fail("expecting UnsupportedOperationException");
+    } catch (UnsupportedOperationException exc) {
+      assertEquals("field:(+value*)", frozen.getQueryString());
+    }
+    QueryRestriction copy = frozen.copy().setNegate(true);
+    assertFalse(copy.isFrozen());
+    assertEquals("NOT field:(+value*)", copy.getQueryString());
+  }
 }
@@ -0,0 +1,123 @@
+package com.celements.search.lucene.query;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import com.celements.search.lucene.query.QueryRestrictionGroup.Type;
+
+public class QueryStringRendererTest {
+
+  @Test
+  public void test_render_restriction() {
+    assertEquals("field:(+value*)", QueryStringRenderer.render(
+        new QueryRestriction("field", "value")));
+    assertEquals("NOT field:(+value*)", QueryStringRenderer.render(
+        new QueryRestriction("field", "value").setNegate(true)));
+  }
+
+  @Test
+  public void test_render_group() {
+    QueryRestrictionGroup restrGrp = new QueryRestrictionGroup(Type.AND);
+    restrGrp.add(new QueryRestriction("field1", "value1").setNegate(true));
+    restrGrp.add(new QueryRestriction("field2", "value2").setNegate(true));
+    assertEquals("NOT (field1:(+value1*) OR field2:(+value2*))",
+        QueryStringRenderer.render(restrGrp));
+    assertTrue(restrGrp.get(0).getNegate());
+    assertTrue(restrGrp.get(1).getNegate());
+    assertSame(Type.AND, restrGrp.getType());
+    assertFalse(restrGrp.getNegate());
+  }
+
+  @Test
+  public void test_render_stringBuilder() {
+    QueryRestrictionGroup restrGrp = new QueryRestrictionGroup(Type.OR);
+    restrGrp.add(new QueryRestriction("field1", "value1"));
+    restrGrp.add(new QueryRestrictionString("field2:value2"));
+    StringBuilder sb = new StringBuilder("query: ");
+    QueryStringRenderer.render(restrGrp, sb);
+    assertEquals("query: (field1:(+value1*) OR (field2:value2))", sb.toString());
+    QueryStringRenderer.render(new QueryRestrictionGroup(Type.AND), sb);
+    assertEquals("query: (field1:(+value1*) OR (field2:value2))", sb.toString());
+  }
+
+  @Test
+  public void test_render_emptyAfterAdd() {
+    QueryRestrictionGroup restrGrp = new QueryRestrictionGroup(Type.AND);
+    QueryRestriction restr = new QueryRestriction("field1", "value1");
+    restrGrp.add(restr);
+    restrGrp.add(new QueryRestriction("field2", "value2"));
+    restr.setQuery("");
+    assertEquals("field2:(+value2*)", restrGrp.getQueryString());
+    assertEquals(getLegacyQueryString(restrGrp), restrGrp.getQueryString());
+  }
+
+  @Test
+  public void test_render_random() {
+    Random random = new Random(42);
+    for (int i = 0; i < 2000; i++) {
+      IQueryRestriction restr = newRandomRestriction(random, 0);
+      assertEquals(getLegacyQueryString(restr), QueryStringRenderer.render(restr));
+    }
+  }
+
+  private static IQueryRestriction newRandomRestriction(Random random, int depth) {
+    IQueryRestriction restr;
+    int kind = random.nextInt(depth < 4 ? 6 : 3);
+    if (kind == 0) {
+      restr = new QueryRestrictionString((random.nextInt(5) == 0) ? "" : "f:v" + random.nextInt(3));
+    } else if (kind <= 2) {
+      restr = new QueryRestriction("f" + random.nextInt(3), (random.nextInt(5) == 0) ? ""
+          : "v" + random.nextInt(3));
+    } else {
+      QueryRestrictionGroup restrGrp = new QueryRestrictionGroup(random.nextBoolean() ? Type.AND
+          : Type.OR);
+      int size = random.nextInt(5);
+      for (int i = 0; i < size; i++) {
+        restrGrp.add(newRandomRestriction(random, depth + 1));
+      }
+      restr = restrGrp;
+    }
+    return restr.setNegate(random.nextInt(3) > 0);
+  }
+
+  /**
+   * copying implementation of {@link QueryRestrictionGroup#getQueryString()} prior to
+   * {@link QueryStringRenderer}, serving as reference for its output
+   */
+  private static String getLegacyQueryString(IQueryRestriction restr) {
+    if (!(restr instanceof QueryRestrictionGroup)) {
+      return restr.getQueryString();
+    }
+    // copies like the former QueryRestrictionGroup#copy, re-adding the children skips emptied ones
+    QueryRestrictionGroup restrGrp = (QueryRestrictionGroup) restr;
+    QueryRestrictionGroup copy = new QueryRestrictionGroup(restrGrp.getType());
+    for (IQueryRestriction child : restrGrp) {
+      copy.add(child.copy());
+    }
+    copy.setNegate(restrGrp.getNegate()).cleanup();
+    String ret = "";
+    for (IQueryRestriction child : copy) {
+      String queryStr = getLegacyQueryString(child);
+      if (StringUtils.isNotBlank(queryStr)) {
+        if (!ret.isEmpty()) {
+          ret += " " + copy.getType() + " ";
+        }
+        ret += queryStr.trim();
+      }
+    }
+    if (!ret.isEmpty()) {
+      if (copy.size() > 1) {
+        ret = "(" + ret + ")";
+      }
+      if (copy.getNegate()) {
+        ret = "NOT " + ret;
+      }
+    }
+    return ret;
+  }
+
+}
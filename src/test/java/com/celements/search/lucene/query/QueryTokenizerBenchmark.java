@@ -0,0 +1,69 @@
+package com.celements.search.lucene.query;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the tokenization of restriction queries by {@link QueryTokenizer} with the previous
+ * regex based implementation, see {@link QueryTokenizerTest} for their equivalence. Not executed
+ * by the test suite, run it with {@link #main(String[])} from the test classpath. Both variants
+ * tokenize the same trimmed input without token filtering and return the bare tokenized query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryTokenizerBenchmark {
+
+  @Param({ "Hans", "Hans Peter Muster", "+Hans -\"Robert Peter\" Pet* 50% a:b (c) [d TO e]" })
+  public String query;
+
+  private String input;
+
+  @Setup
+  public void setup() {
+    input = query.trim();
+  }
+
+  @Benchmark
+  public String scanner() {
+    StringBuilder sb = new StringBuilder(input.length() + 16);
+    QueryTokenizer.scan(input, (seq, start, end) -> {
+      if (!QueryTokenizer.isSkipped(seq, start, end)) {
+        if (sb.length() > 0) {
+          sb.append(' ');
+        }
+        QueryTokenizer.appendToken(sb, seq, start, end, true);
+      }
+    });
+    QueryTokenizer.trimEnd(sb);
+    return sb.toString();
+  }
+
+  @Benchmark
+  public String regex() {
+    return QueryTokenizerTest.getLegacyTokenizedQuery(input, null);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(QueryTokenizerBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+
+}
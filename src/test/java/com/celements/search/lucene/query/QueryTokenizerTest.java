@@ -0,0 +1,121 @@
+package com.celements.search.lucene.query;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.queryParser.QueryParser;
+import org.junit.Test;
+
+public class QueryTokenizerTest {
+
+  private static final String ALPHABET = "ab Z09 \"\"+-*?\\:()[]{}^~!|&%.\t\nä";
+
+  @Test
+  public void test_plain() {
+    assertTokenized("Hans Peter");
+    assertTokenized("  Hans   Peter  ");
+    assertTokenized("Hans\tPeter");
+    assertTokenized("");
+    assertTokenized(" ");
+  }
+
+  @Test
+  public void test_operators() {
+    assertTokenized("+Hans -Peter");
+    assertTokenized("Hans 50% - 100%");
+    assertTokenized("+ - \" Hans");
+    assertTokenized("--Hans +-Peter");
+  }
+
+  @Test
+  public void test_quoted() {
+    assertTokenized("Hans \"Robert Peter\"");
+    assertTokenized("Hans\"Robert Peter\"Muster");
+    assertTokenized("\"Robert Peter");
+    assertTokenized("-\"Robert Peter\" +\"Hans\"");
+    assertTokenized("\"\" \"a\"\"b\"");
+  }
+
+  @Test
+  public void test_wildcards() {
+    assertTokenized("Hans Pe?er Pet* *ans ?ans");
+    assertTokenized("\"*ans\" +*ans -?");
+    assertTokenized("Pe*t?r* a*b\"");
+  }
+
+  @Test
+  public void test_specialChars() {
+    assertTokenized("Hans:Peter (a) [b TO c] {d} ^e ~f !g |h &i \\j");
+    assertTokenized("a\nb \"c\nd\" e\r\n");
+  }
+
+  @Test
+  public void test_proximity() {
+    assertTokenized("Hans Peter", 3);
+    assertTokenized("Hans \"Robert Peter\" Pet*", 2);
+  }
+
+  @Test
+  public void test_random() {
+    Random random = new Random(42);
+    for (int i = 0; i < 20000; i++) {
+      StringBuilder query = new StringBuilder();
+      int length = random.nextInt(16);
+      for (int j = 0; j < length; j++) {
+        query.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+      }
+      assertTokenized(query.toString(), (random.nextInt(4) == 0) ? 2 : null);
+    }
+  }
+
+  private static void assertTokenized(String query) {
+    assertTokenized(query, null);
+  }
+
+  private static void assertTokenized(String query, Integer proximity) {
+    QueryRestriction restr = new QueryRestriction("field", query, true);
+    if (proximity != null) {
+      restr.setProximity(proximity);
+    }
+    String expected = getLegacyTokenizedQuery(query.trim(), proximity);
+    if (!expected.isEmpty()) {
+      if (proximity != null) {
+        expected = "\"" + expected + "\"~" + proximity;
+      }
+      expected = "field:(" + expected + ")";
+    }
+    assertEquals("'" + query + "'", expected, restr.getQueryString());
+  }
+
+  private static final Pattern TOKEN_PATTERN = Pattern.compile("( ?\"[^\"]*\" ?)|[^ ]+");
+
+  /**
+   * regex based implementation of {@link QueryRestriction#getQueryString()} tokenization prior to
+   * {@link QueryTokenizer}, serving as reference for its output
+   */
+  static String getLegacyTokenizedQuery(String query, Integer proximity) {
+    Matcher m = TOKEN_PATTERN.matcher(query);
+    StringBuilder tokenizedQuery = new StringBuilder();
+    while (m.find()) {
+      String token = m.group(0).trim();
+      if (!token.isEmpty() && !token.matches("[\"+-]")) {
+        tokenizedQuery.append(" ");
+        token = QueryParser.escape(token);
+        token = token.replaceAll("^(\\\\([+-]))?(\\\\(\"))?(.*?)(\\\\(\"))?$", "$2$4$5$7");
+        token = token.replaceAll("^(.+)\\\\([\\?\\*].*)$", "$1$2");
+        if (!token.matches("^[+-].*")) {
+          tokenizedQuery.append("+");
+        }
+        tokenizedQuery.append(token);
+        if (!token.matches("^.*[\\*\\\"]$") && ((proximity == null) || (proximity <= 1))) {
+          tokenizedQuery.append("*");
+        }
+      }
+    }
+    return tokenizedQuery.toString().trim();
+  }
+
+}
@@ -0,0 +1,152 @@
+package com.celements.search.lucene.query;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.celements.search.lucene.TestIndex;
+import com.google.common.collect.ImmutableList;
+import com.xpn.xwiki.plugin.lucene.LucenePlugin;
+
+public class RightsFilterTest {
+
+  private static final List<String> KEY_FIELDS = ImmutableList.of("wiki", "space");
+
+  private TestIndex index;
+  private IndexSearcher searcher;
+  private Filter ownRights;
+  private List<Set<List<String>>> resolved;
+
+  @Before
+  public void prepare() throws Exception {
+    index = TestIndex.create(writer -> {
+      for (int i = 0; i < 100; i++) {
+        Document doc = TestIndex.doc("wiki", "wiki" + (i % 2), "space", "space" + (i % 5),
+            "fullname", "space" + (i % 5) + ".doc" + i);
+        if (i == 1) {
+          doc.add(TestIndex.field("object", "XWiki.XWikiRights"));
+        }
+        writer.addDocument(doc);
+      }
+      // an attachment of the document with own rights
+      writer.addDocument(TestIndex.doc("wiki", "wiki1", "space", "space1", "fullname",
+          "space1.doc1"));
+      writer.addDocument(new Document());
+    });
+    searcher = index.getSearcher();
+    ownRights = newOwnRightsFilter();
+    resolved = new ArrayList<>();
+  }
+
+  /**
+   * matches the rights objects as analyzed, like the compiled object restriction
+   */
+  private Filter newOwnRightsFilter() throws ParseException {
+    return new QueryWrapperFilter(new QueryParser(LucenePlugin.VERSION, "object",
+        index.getAnalyzer()).parse("\"XWiki.XWikiRights\""));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    index.close();
+  }
+
+  @Test
+  public void test_batch() throws Exception {
+    RightsFilter filter = new RightsFilter("xwiki:XWiki.User", KEY_FIELDS, this::resolve);
+    HitCount count = CountingCollector.count(searcher, new MatchAllDocsQuery(), filter,
+        Integer.MAX_VALUE);
+    assertEquals(20, count.getCount());
+    assertEquals(1, resolved.size());
+    assertEquals(10, resolved.get(0).size());
+  }
+
+  @Test
+  public void test_cached() throws Exception {
+    FilterCache filterCache = new FilterCache(10);
+    for (int i = 0; i < 3; i++) {
+      HitCount count = CountingCollector.count(searcher, new MatchAllDocsQuery(), filterCache.get(
+          new RightsFilter("xwiki:XWiki.User", KEY_FIELDS, this::resolve)), Integer.MAX_VALUE);
+      assertEquals(20, count.getCount());
+    }
+    assertEquals(1, resolved.size());
+    CountingCollector.count(searcher, new MatchAllDocsQuery(), filterCache.get(new RightsFilter(
+        "xwiki:XWiki.Other", KEY_FIELDS, this::resolve)), Integer.MAX_VALUE);
+    assertEquals(2, resolved.size());
+  }
+
+  @Test
+  public void test_ownRights() throws Exception {
+    RightsFilter filter = new RightsFilter("xwiki:XWiki.User", KEY_FIELDS, ownRights,
+        "fullname", this::resolve);
+    HitCount count = CountingCollector.count(searcher, new MatchAllDocsQuery(), filter,
+        Integer.MAX_VALUE);
+    assertEquals("the document with own rights and its attachment aren't pruned", 22,
+        count.getCount());
+    assertEquals(1, resolved.size());
+    assertEquals(10, resolved.get(0).size());
+  }
+
+  @Test
+  public void test_analyzedKeys() throws Exception {
+    try (TestIndex analyzed = TestIndex.create(writer -> {
+      for (int i = 0; i < 10; i++) {
+        // the space names share the term 'space'
+        String space = ((i % 2) == 0) ? "Space A" : "Space B";
+        writer.addDocument(TestIndex.doc("wiki", "wiki0", "space", space, "fullname", space
+            + ".Doc" + i));
+      }
+    })) {
+      RightsFilter filter = new RightsFilter("xwiki:XWiki.User", KEY_FIELDS, keys -> keys
+          .stream().filter(key -> key.get(1).equals("Space A")).collect(Collectors.toSet()));
+      HitCount count = CountingCollector.count(analyzed.getSearcher(), new MatchAllDocsQuery(),
+          filter, Integer.MAX_VALUE);
+      assertEquals("only the documents of the granted space", 5, count.getCount());
+    }
+  }
+
+  @Test
+  public void test_ownRights_invalid() {
+    try {
+      new RightsFilter("scope", KEY_FIELDS, ownRights, null, this::resolve);
+      fail("expecting IllegalArgumentException");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+  }
+
+  @Test
+  public void test_equals() throws Exception {
+    RightsFilter filter = new RightsFilter("scope", KEY_FIELDS, keys -> keys);
+    assertEquals(filter, new RightsFilter("scope", KEY_FIELDS, this::resolve));
+    assertEquals(filter.hashCode(), new RightsFilter("scope", KEY_FIELDS, keys -> keys)
+        .hashCode());
+    assertNotEquals(filter, new RightsFilter("other", KEY_FIELDS, keys -> keys));
+    assertNotEquals(filter, new RightsFilter("scope", ImmutableList.of("space"), keys -> keys));
+    assertNotEquals(filter, new RightsFilter("scope", KEY_FIELDS, ownRights, "fullname",
+        keys -> keys));
+    assertEquals(new RightsFilter("scope", KEY_FIELDS, ownRights, "fullname", keys -> keys),
+        new RightsFilter("scope", KEY_FIELDS, newOwnRightsFilter(), "fullname", this::resolve));
+  }
+
+  private Set<List<String>> resolve(Set<List<String>> keys) {
+    resolved.add(keys);
+    return keys.stream().filter(key -> key.equals(ImmutableList.of("wiki0", "space2")) || key
+        .equals(ImmutableList.of("wiki1", "space3"))).collect(Collectors.toSet());
+  }
+
+}
@@ -0,0 +1,126 @@
+package com.celements.search.lucene.query;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.celements.search.lucene.TestIndex;
+
+public class SearchAfterCollectorTest {
+
+  private TestIndex index;
+  private IndexSearcher searcher;
+
+  /**
+   * multiple segments, every tenth document misses the name and the word occurs up to four times
+   */
+  @Before
+  public void prepare() throws Exception {
+    index = TestIndex.create(10, writer -> {
+      for (int i = 0; i < 100; i++) {
+        Document doc = new Document();
+        if ((i % 10) != 0) {
+          doc.add(TestIndex.field("name", "name" + (i % 7)));
+        }
+        for (int j = 0; j <= (i % 4); j++) {
+          doc.add(TestIndex.field("text", "word"));
+        }
+        writer.addDocument(doc);
+      }
+    });
+    searcher = index.getSearcher();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    index.close();
+  }
+
+  @Test
+  public void test_collect_sorted() throws Exception {
+    Sort sort = new Sort(new SortField("name", SortField.STRING));
+    assertPaged(new MatchAllDocsQuery(), sort, 15);
+  }
+
+  @Test
+  public void test_collect_sorted_reverse() throws Exception {
+    Sort sort = new Sort(new SortField("name", SortField.STRING, true), SortField.FIELD_SCORE);
+    assertPaged(new TermQuery(new Term("text", "word")), sort, 7);
+  }
+
+  @Test
+  public void test_collect_relevance() throws Exception {
+    assertPaged(new TermQuery(new Term("text", "word")), null, 15);
+  }
+
+  @Test
+  public void test_collect_afterLast() throws Exception {
+    TopDocs all = SearchAfterCollector.collect(searcher, new MatchAllDocsQuery(), null, null,
+        null, 200);
+    assertEquals(100, all.scoreDocs.length);
+    TopDocs after = SearchAfterCollector.collect(searcher, new MatchAllDocsQuery(), null, null,
+        all.scoreDocs[99], 10);
+    assertEquals(0, after.scoreDocs.length);
+  }
+
+  @Test
+  public void test_unsupportedSort() throws Exception {
+    try {
+      new SearchAfterCollector(new Sort(new SortField("name", SortField.INT)), null, 10);
+      fail("expecting IllegalArgumentException");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+  }
+
+  @Test
+  public void test_invalidPosition() throws Exception {
+    try {
+      new SearchAfterCollector(new Sort(new SortField("name", SortField.STRING)), new ScoreDoc(
+          1, 1f), 10);
+      fail("expecting IllegalArgumentException");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+  }
+
+  /**
+   * asserts the pages collected after each other equal the top docs collected at once
+   */
+  private void assertPaged(Query query, Sort sort, int count) throws Exception {
+    TopDocs expected = (sort != null) ? searcher.search(query, null, 100, sort)
+        : searcher.search(query, 100);
+    List<Integer> docs = new ArrayList<>();
+    ScoreDoc after = null;
+    TopDocs page;
+    do {
+      page = SearchAfterCollector.collect(searcher, query, null, sort, after, count);
+      for (ScoreDoc hit : page.scoreDocs) {
+        docs.add(hit.doc);
+        after = hit;
+      }
+    } while (page.scoreDocs.length == count);
+    List<Integer> expectedDocs = new ArrayList<>();
+    for (ScoreDoc hit : expected.scoreDocs) {
+      expectedDocs.add(hit.doc);
+    }
+    assertEquals(100, expectedDocs.size());
+    assertEquals(expectedDocs, docs);
+  }
+
+}
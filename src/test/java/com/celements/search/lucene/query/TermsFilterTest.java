@@ -0,0 +1,80 @@
+package com.celements.search.lucene.query;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.celements.search.lucene.TestIndex;
+import com.google.common.collect.ImmutableList;
+
+public class TermsFilterTest {
+
+  private TestIndex index;
+  private IndexSearcher searcher;
+
+  @Before
+  public void prepare() throws Exception {
+    index = TestIndex.create(writer -> {
+      for (int i = 0; i < 100; i++) {
+        writer.addDocument(TestIndex.doc("id", Integer.toString(i), "space", "space" + (i % 10)));
+        if ((i % 30) == 0) {
+          writer.commit(); // multiple segments
+        }
+      }
+      writer.deleteDocuments(new Term("id", "11"));
+    });
+    searcher = index.getSearcher();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    index.close();
+  }
+
+  @Test
+  public void test_filter() throws Exception {
+    TermsFilter filter = new TermsFilter(ImmutableList.of(new Term("space", "space1"),
+        new Term("space", "space3"), new Term("space", "missing"), new Term("other", "space2")));
+    List<Integer> ids = search(filter);
+    assertEquals(19, ids.size());
+    for (int id : ids) {
+      assertTrue(Integer.toString(id), ((id % 10) == 1) || ((id % 10) == 3));
+      assertNotEquals(11, id);
+    }
+  }
+
+  @Test
+  public void test_filter_empty() throws Exception {
+    assertTrue(search(new TermsFilter(ImmutableList.<Term>of())).isEmpty());
+  }
+
+  @Test
+  public void test_equals() {
+    TermsFilter filter = new TermsFilter(ImmutableList.of(new Term("f", "a"), new Term("f", "b")));
+    assertEquals(filter, new TermsFilter(ImmutableList.of(new Term("f", "b"), new Term("f",
+        "a"))));
+    assertEquals(filter.hashCode(), new TermsFilter(ImmutableList.of(new Term("f", "b"),
+        new Term("f", "a"))).hashCode());
+    assertNotEquals(filter, new TermsFilter(ImmutableList.of(new Term("f", "a"))));
+  }
+
+  private List<Integer> search(TermsFilter filter) throws Exception {
+    TopDocs topDocs = searcher.search(new ConstantScoreQuery(filter), 1000);
+    List<Integer> ids = new ArrayList<>();
+    for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+      ids.add(Integer.parseInt(searcher.doc(scoreDoc.doc).get("id")));
+    }
+    return ids;
+  }
+
+}
@@ -0,0 +1,170 @@
+package com.celements.search.lucene.query;
+
+import static org.junit.Assert.*;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.celements.search.lucene.TestIndex;
+
+public class TimeLimitedQueryTest {
+
+  private TestIndex index;
+  private IndexSearcher searcher;
+
+  @Before
+  public void prepare() throws Exception {
+    index = TestIndex.create(writer -> {
+      for (int i = 0; i < 1000; i++) {
+        writer.addDocument(TestIndex.doc("type", "wikipage", "id", "id" + i));
+      }
+    });
+    searcher = index.getSearcher();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    index.close();
+  }
+
+  @Test
+  public void test_unbounded() throws Exception {
+    SearchBudget budget = new SearchBudget(null);
+    assertEquals(1000, count(new TimeLimitedQuery(newQuery(), budget)));
+    assertFalse(budget.isStopped());
+  }
+
+  @Test
+  public void test_timeout() throws Exception {
+    SearchBudget budget = new SearchBudget(Duration.ZERO);
+    assertEquals(0, count(new TimeLimitedQuery(newQuery(), budget)));
+    assertTrue(budget.isStopped());
+    assertFalse(budget.isCancelled());
+  }
+
+  @Test
+  public void test_timeout_perExecution() throws Exception {
+    SearchBudget budget = new SearchBudget(Duration.ofMinutes(1));
+    Query query = new TimeLimitedQuery(newQuery(), budget);
+    assertEquals(1000, count(query));
+    assertEquals(1000, count(query));
+    assertFalse(budget.isStopped());
+  }
+
+  @Test
+  public void test_timeout_stoppedPerExecution() throws Exception {
+    SearchBudget budget = new SearchBudget(Duration.ofMillis(200));
+    Query query = new TimeLimitedQuery(newQuery(), budget);
+    AtomicInteger count = new AtomicInteger();
+    searcher.search(query, new Collector() {
+
+      @Override
+      public void setScorer(Scorer scorer) {}
+
+      @Override
+      public void collect(int doc) {
+        if (count.getAndIncrement() == 0) {
+          sleep(300);
+        }
+      }
+
+      @Override
+      public void setNextReader(IndexReader reader, int docBase) {}
+
+      @Override
+      public boolean acceptsDocsOutOfOrder() {
+        return true;
+      }
+    });
+    assertTrue(count.get() < 1000);
+    assertTrue(budget.isStopped());
+    assertEquals(1000, count(query));
+    assertFalse(budget.isStopped());
+  }
+
+  @Test
+  public void test_timeout_outOfOrder() throws Exception {
+    SearchBudget budget = new SearchBudget(Duration.ZERO);
+    assertEquals(0, count(new TimeLimitedQuery(newOptionalQuery(), budget)));
+    assertTrue(budget.isStopped());
+  }
+
+  @Test
+  public void test_scoresDocsOutOfOrder() throws Exception {
+    Query query = newOptionalQuery();
+    assertTrue(searcher.createNormalizedWeight(query).scoresDocsOutOfOrder());
+    assertTrue(searcher.createNormalizedWeight(new TimeLimitedQuery(query, new SearchBudget(
+        null))).scoresDocsOutOfOrder());
+    assertEquals(1000, count(new TimeLimitedQuery(query, new SearchBudget(null))));
+  }
+
+  @Test
+  public void test_cancel() throws Exception {
+    SearchBudget budget = new SearchBudget(Duration.ofMinutes(1));
+    budget.cancel();
+    assertEquals(0, count(new TimeLimitedQuery(newQuery(), budget)));
+    assertTrue(budget.isStopped());
+    assertTrue(budget.isCancelled());
+  }
+
+  @Test
+  public void test_search_scores() throws Exception {
+    TopDocs expected = searcher.search(newQuery(), 10);
+    TopDocs limited = searcher.search(new TimeLimitedQuery(newQuery(), new SearchBudget(null)),
+        10);
+    assertEquals(expected.totalHits, limited.totalHits);
+    assertEquals(expected.getMaxScore(), limited.getMaxScore(), 0);
+    for (int i = 0; i < expected.scoreDocs.length; i++) {
+      assertEquals(expected.scoreDocs[i].doc, limited.scoreDocs[i].doc);
+    }
+  }
+
+  @Test
+  public void test_toString() {
+    Query query = newQuery();
+    assertEquals(query.toString(), new TimeLimitedQuery(query, new SearchBudget(null))
+        .toString());
+  }
+
+  private Query newQuery() {
+    BooleanQuery query = new BooleanQuery();
+    query.add(new TermQuery(new Term("type", "wikipage")), Occur.MUST);
+    query.add(new PrefixQuery(new Term("id", "id")), Occur.MUST);
+    return query;
+  }
+
+  private Query newOptionalQuery() {
+    BooleanQuery query = new BooleanQuery();
+    query.add(new TermQuery(new Term("type", "wikipage")), Occur.SHOULD);
+    query.add(new PrefixQuery(new Term("id", "id1")), Occur.SHOULD);
+    return query;
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException exc) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private int count(Query query) throws Exception {
+    return CountingCollector.count(searcher, query, null, Integer.MAX_VALUE).getCount();
+  }
+
+}
@@ -235,10 +235,43 @@ public class WebSearchQueryBuilderTest extends AbstractComponentTest {
     assertEquals(buildQueryString(queryStr, searchTerm), query.getQueryString());
   }
 
+  @Test
+  public void test_build_spacesAndDocs() throws Exception {
+    XWikiDocument cfgDoc = createCfgDoc(docRef, false);
+    BaseObject obj = getCfgObj(cfgDoc);
+    obj.setStringValue(WebSearchConfigClass.FIELD_SPACES.getName(), "Space1,Other");
+    obj.setStringValue(WebSearchConfigClass.FIELD_SPACES_BLACK_LIST.getName(), "Space2");
+    obj.setStringValue(WebSearchConfigClass.FIELD_DOCS.getName(), "Space.Doc,Space1.Doc");
+    obj.setStringValue(WebSearchConfigClass.FIELD_DOCS_BLACK_LIST.getName(),
+        "Other.Doc,Space2.Doc");
+    builder.setConfigDoc(cfgDoc);
+    expect(webSearchServiceMock.getAvailablePackages(cfgDoc)).andReturn(
+        ImmutableSet.<WebSearchPackage>of(Utils.getComponent(WebSearchPackage.class,
+            ContentWebSearchPackage.NAME)))
+        .atLeastOnce();
+
+    replayDefault();
+    LuceneQuery query = builder.build();
+    verifyDefault();
+
+    // documents in spaces ending with a digit aren't exactified, see LuceneUtils#exactify
+    assertEquals(buildQueryString("space:(\"Space1\" OR \"Other\") AND NOT space:(\"Space2\") "
+        + "AND (fullname:(\"Space.Doc\") OR fullname:(+Space1.Doc*)) "
+        + "AND NOT (fullname:(\"Other.Doc\") OR fullname:(+Space2.Doc*)) "
+        + "AND type:(+\"wikipage\")"), query.getQueryString());
+  }
+
   private String buildQueryString(String query, Object... arguments) {
     return MessageFormat.format("(" + QUERY_START + query + ")", arguments);
   }
 
+  private BaseObject getCfgObj(XWikiDocument cfgDoc) {
+    ClassReference classRef = Utils.getComponent(ClassDefinition.class,
+        WebSearchConfigClass.CLASS_DEF_HINT).getClassReference();
+    return cfgDoc.getXObject(classRef.getDocRef(cfgDoc.getDocumentReference()
+        .getWikiReference()));
+  }
+
   private XWikiDocument createCfgDoc(DocumentReference docRef, boolean linkedDocsOnly) {
     ClassReference classRef = Utils.getComponent(ClassDefinition.class,
         WebSearchConfigClass.CLASS_DEF_HINT).getClassReference();